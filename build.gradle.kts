@@ -9,6 +9,13 @@ repositories {
     mavenCentral()
 }
 
+// Benchmarks live in their own source set so they never ship with the game
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+configurations["jmhImplementation"].extendsFrom(configurations.implementation.get())
+
 dependencies {
     // Testing
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
@@ -22,9 +29,48 @@ dependencies {
     // Annotations
     implementation("org.jspecify:jspecify:1.0.0")
 
+    // Benchmarks
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+}
+
+// The batch combat kernels have a Vector API path, which needs the incubator module to compile and to run
+val vectorModule = listOf("--add-modules", "jdk.incubator.vector")
+tasks.withType<JavaCompile>().configureEach {
+    options.compilerArgs.addAll(vectorModule)
+}
+
+// Runs the JMH benchmarks, e.g. gradle jmh -Pjmh.includes=SectorIndex
+// Reports allocation rates with the gc profiler unless -Pjmh.profilers is given (empty to turn it off).
+// Extra JMH options can be passed with -Pjmh.args, e.g. -Pjmh.args="-p fleetSize=1000 -rf json"
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks"
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    jvmArgs("-Dlog4j2.configurationFile=log4j2-bench.xml")  // Inherited by the forked benchmark JVMs
+    jvmArgs(vectorModule)
+    args(project.findProperty("jmh.includes")?.toString() ?: ".*")
+
+    val profilers = project.findProperty("jmh.profilers")?.toString() ?: "gc"
+    profilers.split(",").filter { it.isNotBlank() }.forEach { args("-prof", it.trim()) }
+    project.findProperty("jmh.args")?.toString()?.split(" ")?.filter { it.isNotBlank() }?.let { args(it) }
 }
+
+// Runs the GameServer load generator, e.g. gradle loadtest -Pload.args="2000 200 50 unix 100"
+// Arguments are clients, commands per client, players, the transport (tcp or unix) and the think time in ms
+tasks.register<JavaExec>("loadtest") {
+    group = "verification"
+    description = "Measures GameServer throughput and latency with simulated clients"
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.tom.game.LoadGenerator")
+    jvmArgs("-Dlog4j2.configurationFile=log4j2-bench.xml")
+    project.findProperty("load.args")?.toString()?.split(" ")?.filter { it.isNotBlank() }?.let { args(it) }
+}
+
 tasks.test {
     useJUnitPlatform()
+    jvmArgs(vectorModule)
     testLogging {
         events("passed", "skipped", "failed")
     }
@@ -0,0 +1,86 @@
+package org.tom.entities;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares <code>Fleet.attackWithAll</code> against <code>Fleet.attackWithAllBatched</code> for a fleet attacking
+ * an enemy starbase. The base is restored before every invocation of both variants.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchCombatBenchmark
+{
+    @Param({"100", "10000"})
+    private int fleetSize;
+
+    private Fleet attackers;
+    private Starbase target;
+
+
+    /**
+     * Builds a fleet of damaged starships in the same sector as an enemy base with three docked ships
+     */
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        Sector sector = new Sector(0, 0);
+        EntityStore store = new EntityStore(fleetSize + 8);
+
+        attackers = new Fleet(new Player(1));
+        Starship[] ships = new Starship[fleetSize];
+        for (int i = 0; i < fleetSize; i++)
+        {
+            ships[i] = new Starship(sector, store);
+        }
+        attackers.addEntities(ships);
+
+        // Damaged attackers, so that hits are not all the same
+        for (int i = 0; i < fleetSize; i++)
+        {
+            ships[i].setHealth(40 + i % 60);
+        }
+
+        Fleet defenders = new Fleet(new Player(2));
+        target = new Starbase(sector, store);
+        defenders.addEntities(target);
+        for (int i = 0; i < 3; i++)
+        {
+            Starship docked = new Starship(sector, store);
+            defenders.addEntities(docked);
+            docked.dockToStarbase(target);
+        }
+    }
+
+
+    @Benchmark
+    public double sequential()
+    {
+        restoreTarget();
+        attackers.attackWithAll(target);
+        return target.getHealth();
+    }
+
+
+    @Benchmark
+    public double batched()
+    {
+        restoreTarget();
+        return attackers.attackWithAllBatched(target).damage();
+    }
+
+
+    /**
+     * Brings the base back to full health, undoing its destruction by the previous invocation
+     */
+    private void restoreTarget()
+    {
+        target.store.setFlag(target.slot, EntityStore.DESTROYED, false);
+        target.setHealth(Double.MAX_VALUE);     // Clamped to full health
+    }
+}
@@ -0,0 +1,61 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures estimating a battle between two fleets of <code>ships</code> starships and a starbase each: a fixed
+ * 1000 simulations, and an early-stopping estimate to within 0.02 with a 50 ms budget.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BattleEstimatorBenchmark
+{
+    @Param({"10", "50"})
+    private int ships;
+
+    private BattleEstimator estimator;
+    private long seed;
+
+
+    @Setup(Level.Trial)
+    public void setFleets()
+    {
+        Configurator.setRootLevel(org.apache.logging.log4j.Level.OFF);     // Adding ships logs each one
+
+        EntityStore store = new EntityStore(2 * ships + 2);
+        Sector sector = new Sector(0, 0);
+        Fleet first = new Fleet(new Player(1));
+        Fleet second = new Fleet(new Player(2));
+        for (Fleet fleet : new Fleet[]{first, second})
+        {
+            fleet.addEntities(new Starbase(sector, store));
+            for (int i = 0; i < ships; i++)
+            {
+                fleet.addEntities(new Starship(sector, store));
+            }
+        }
+        estimator = new BattleEstimator(first, second, sector);
+    }
+
+
+    @Benchmark
+    public BattleEstimate fixed()
+    {
+        return estimator.estimate(1000, seed++);
+    }
+
+
+    @Benchmark
+    public BattleEstimate earlyStopping()
+    {
+        return estimator.estimateUntil(0.02, Duration.ofMillis(50), 100_000, seed++);
+    }
+}
@@ -0,0 +1,192 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the per-entity combat paths at scale: <code>Starship.attack</code>, <code>Entity.takeDamage</code>,
+ * <code>Starbase.getDefenceStrength</code>, <code>Fleet.moveAllEntities</code> and
+ * <code>Fleet.dockStarshipsTo</code>. Each is measured across fleet sizes, the share of ships docked to starbases
+ * and with logging at info or switched off. Run with the gc profiler (the default for the <code>jmh</code> task)
+ * to see the allocation rate per operation alongside the throughput.
+ * <p>
+ * Single-entity benchmarks step a cursor through the fleet so every call touches a different ship, and restore
+ * any entity they destroy so the measured path stays the same throughout the run.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class CombatHotPathBenchmark
+{
+    private static final int SHIPS_PER_BASE = 1000;     // Docked ships are spread over bases of at most this many
+
+    @Param({"10", "1000", "100000", "1000000"})
+    private int fleetSize;
+
+    @Param({"0", "0.1", "0.5"})
+    private double dockedRatio;
+
+    @Param({"OFF", "INFO"})
+    private String logLevel;
+
+    private final Sector home = new Sector(0, 0);
+    private final Sector away = new Sector(1, 0);
+
+    private Fleet attackers;
+    private Fleet defenders;
+    private Starship[] attackerShips;
+    private Starship[] defenderShips;
+    private List<Starbase> defenderBases;
+    private Starship[] undockedDefenders;    // Ships free to dock in dockStarshipsTo
+    private int cursor;
+    private boolean movedAway;
+
+
+    /**
+     * Builds two fleets of <code>fleetSize</code> starships in the same sector. The defenders have enough
+     * starbases to take their docked share, and the attackers dock the same share so that many of them skip
+     * their attack.
+     */
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        Configurator.setRootLevel(org.apache.logging.log4j.Level.OFF);     // Building the world is not measured
+
+        EntityStore store = new EntityStore(2 * fleetSize + 2 * (fleetSize / SHIPS_PER_BASE + 1));
+        attackers = new Fleet(new Player(1));
+        defenders = new Fleet(new Player(2));
+        attackerShips = buildFleet(attackers, store);
+        defenderShips = buildFleet(defenders, store);
+        defenderBases = defenders.getStarbases();
+
+        List<Starship> free = new ArrayList<>();
+        for (Starship s : defenderShips)
+        {
+            if (!s.getDocked()) free.add(s);
+        }
+        undockedDefenders = free.toArray(new Starship[0]);
+
+        Configurator.setRootLevel(org.apache.logging.log4j.Level.valueOf(logLevel));
+    }
+
+
+    /**
+     * Helper method for <code>setUp</code> that fills a fleet with starships and docks the first
+     * <code>dockedRatio</code> of them to its starbases
+     */
+    private Starship[] buildFleet(Fleet fleet, EntityStore store)
+    {
+        Starship[] ships = new Starship[fleetSize];
+        for (int i = 0; i < fleetSize; i++)
+        {
+            ships[i] = new Starship(home, store);
+        }
+        fleet.addEntities(ships);
+
+        int docked = (int) (fleetSize * dockedRatio);
+        Starbase base = null;
+        for (int i = 0; i < docked; i++)
+        {
+            if (i % SHIPS_PER_BASE == 0)
+            {
+                base = new Starbase(home, store);
+                fleet.addEntities(base);
+            }
+            ships[i].dockToStarbase(base);
+        }
+
+        // The attack target needs a base even when nothing docks
+        if (fleet.getStarbases().isEmpty()) fleet.addEntities(new Starbase(home, store));
+        return ships;
+    }
+
+
+    @TearDown(Level.Trial)
+    public void resetLogging()
+    {
+        Configurator.setRootLevel(org.apache.logging.log4j.Level.WARN);
+    }
+
+
+    /**
+     * Gets the next index of the cursor over an array of length <code>n</code>
+     */
+    private int next(int n)
+    {
+        int i = cursor;
+        cursor = i + 1 == n ? 0 : i + 1;
+        return i;
+    }
+
+
+    /**
+     * Brings a destroyed entity back to full health and crew
+     */
+    private static void restore(Entity entity)
+    {
+        entity.store.setFlag(entity.slot, EntityStore.DESTROYED, false);
+        entity.setHealth(Double.MAX_VALUE);     // Clamped to full health
+        if (entity instanceof Starship s) s.setCrew(Integer.MAX_VALUE);
+    }
+
+
+    @Benchmark
+    public double attack()
+    {
+        Starbase target = defenderBases.getFirst();
+        attackerShips[next(fleetSize)].attack(target);
+        if (target.isDestroyed()) restore(target);
+        return target.getHealth();
+    }
+
+
+    @Benchmark
+    public double takeDamage()
+    {
+        Starship ship = defenderShips[next(fleetSize)];
+        ship.takeDamage(30);
+        if (ship.isDestroyed()) restore(ship);
+        return ship.getHealth();
+    }
+
+
+    @Benchmark
+    public double getDefenceStrength()
+    {
+        return defenderBases.get(next(defenderBases.size())).getDefenceStrength();
+    }
+
+
+    @Benchmark
+    public boolean moveAllEntities()
+    {
+        movedAway = !movedAway;
+        attackers.moveAllEntities(movedAway ? away : home);
+        return movedAway;
+    }
+
+
+    /**
+     * Docks one free ship through the fleet and undocks it again, so the docked lists keep their size
+     */
+    @Benchmark
+    public boolean dockStarshipsTo()
+    {
+        if (undockedDefenders.length == 0) return false;
+
+        Starship ship = undockedDefenders[next(undockedDefenders.length)];
+        Starbase base = defenderBases.getFirst();
+        defenders.dockStarshipsTo(base, ship);
+        boolean docked = ship.getDocked();
+        ship.undockFromStarbase(base);
+        return docked;
+    }
+}
@@ -0,0 +1,64 @@
+package org.tom.entities;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the scalar and Vector API combat kernels over <code>ships</code> ships: attack, defence, applied
+ * damage and crew loss for every ship, as one batch would be resolved in a turn.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CombatKernelsBenchmark
+{
+    @Param({"1000", "100000"})
+    private int ships;
+
+    private double[] health;
+    private int[] crew;
+    private double[] attack;
+    private double[] defence;
+    private double[] applied;
+    private int[] lost;
+
+
+    @Setup(Level.Trial)
+    public void setShips()
+    {
+        SplittableRandom random = new SplittableRandom(1);
+        health = random.doubles(ships, 0, 100).toArray();
+        crew = random.ints(ships, 1, 11).toArray();
+        attack = new double[ships];
+        defence = new double[ships];
+        applied = new double[ships];
+        lost = new int[ships];
+    }
+
+
+    @Benchmark
+    public int[] scalar()
+    {
+        CombatKernels.scalarAttack(health, attack, 0, ships);
+        CombatKernels.scalarDefence(health, crew, defence, 0, ships);
+        CombatKernels.scalarAppliedDamage(attack, defence, health, applied, 0, ships);
+        CombatKernels.scalarCrewLost(applied, crew, lost, 0, ships);
+        return lost;
+    }
+
+
+    @Benchmark
+    public int[] vector()
+    {
+        VectorKernels.attack(health, attack, ships);
+        VectorKernels.defence(health, crew, defence, ships);
+        VectorKernels.appliedDamage(attack, defence, health, applied, ships);
+        VectorKernels.crewLost(applied, crew, lost, ships);
+        return lost;
+    }
+}
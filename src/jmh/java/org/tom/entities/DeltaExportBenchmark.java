@@ -0,0 +1,70 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures exporting a turn's delta from a world of <code>entities</code> starships when a fraction of them have
+ * been damaged and moved. The changes are made before each invocation, as exporting clears them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class DeltaExportBenchmark
+{
+    @Param({"1000000"})
+    private int entities;
+
+    @Param({"0.001", "0.01", "0.1", "1"})
+    private double changedFraction;
+
+    private Starship[] ships;
+    private StateDelta tracker;
+    private SplittableRandom random;
+
+
+    @Setup(Level.Trial)
+    public void setWorld()
+    {
+        Configurator.setRootLevel(org.apache.logging.log4j.Level.OFF);     // Adding a million ships logs each one
+
+        EntityStore store = new EntityStore(entities);
+        Fleet fleet = new Fleet(new Player(1));
+        ships = new Starship[entities];
+        for (int i = 0; i < entities; i++)
+        {
+            ships[i] = new Starship(new Sector(i % 100, i / 100 % 100), store);
+        }
+        fleet.addEntities(ships);
+
+        tracker = StateDelta.track(store);
+        random = new SplittableRandom(42);
+    }
+
+
+    @Setup(Level.Invocation)
+    public void changeShips()
+    {
+        int changed = (int) (entities * changedFraction);
+        int start = random.nextInt(entities);
+        for (int i = 0; i < changed; i++)
+        {
+            Starship ship = ships[(int) ((start + (long) i * 7919) % entities)];      // Spread over the store
+            ship.setHealth(random.nextInt(1, 100));
+            ship.setSector(new Sector(random.nextInt(100), random.nextInt(100)));
+        }
+    }
+
+
+    @Benchmark
+    public byte[] export()
+    {
+        return tracker.write();
+    }
+}
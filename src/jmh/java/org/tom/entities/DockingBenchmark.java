@@ -0,0 +1,62 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures docking a wave of <code>ships</code> starships to one starbase with <code>Fleet.dockStarshipsTo</code>,
+ * then undocking them all in docking order. Both used to be quadratic in the number of ships.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DockingBenchmark
+{
+    @Param({"100000"})
+    private int ships;
+
+    private Fleet fleet;
+    private Starbase base;
+    private Starship[] wave;
+
+
+    @Setup(Level.Trial)
+    public void quietLogs()
+    {
+        Configurator.setRootLevel(org.apache.logging.log4j.Level.OFF);     // Adding 100k ships logs each one
+    }
+
+
+    @Setup(Level.Invocation)
+    public void setFleet()
+    {
+        EntityStore store = new EntityStore(ships + 1);
+        fleet = new Fleet(new Player(1));
+        base = new Starbase(new Sector(0, 0), store);
+        wave = new Starship[ships];
+        for (int i = 0; i < ships; i++)
+        {
+            wave[i] = new Starship(new Sector(0, 0), store);
+        }
+        fleet.addEntities(base);
+        fleet.addEntities(wave);
+    }
+
+
+    @Benchmark
+    public int dockAndUndock()
+    {
+        fleet.dockStarshipsTo(base, wave);
+        int docked = base.getDockedStarships().size();
+        for (Starship s : wave)
+        {
+            s.undockFromStarbase(base);
+        }
+        return docked;
+    }
+}
@@ -0,0 +1,82 @@
+package org.tom.entities;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures moving a fleet of <code>starships</code> starships of which <code>destroyed</code> percent are
+ * destroyed, with the wrecks left in the fleet against purged from it, and the cost of the purge itself
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FleetPurgeBenchmark
+{
+    @Param({"100000"})
+    private int starships;
+
+    @Param({"50", "90"})
+    private int destroyed;
+
+    private Fleet unpurged;
+    private Fleet purged;
+    private int turn;
+
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        unpurged = buildFleet();
+        purged = buildFleet();
+        purged.purgeDestroyed();
+    }
+
+
+    /**
+     * Builds a fleet with every starship in one store, the first <code>destroyed</code> percent of each hundred
+     * destroyed
+     */
+    private Fleet buildFleet()
+    {
+        EntityStore store = new EntityStore(starships);
+        Fleet fleet = new Fleet(new Player(1));
+        List<Starship> ships = new ArrayList<>(starships);
+        for (int i = 0; i < starships; i++)
+        {
+            ships.add(new Starship(new Sector(0, 0), store));
+        }
+        fleet.addAll(ships);
+        for (int i = 0; i < starships; i++)
+        {
+            if (i % 100 < destroyed) ships.get(i).setHealth(0);
+        }
+        return fleet;
+    }
+
+
+    @Benchmark
+    public void moveUnpurged()
+    {
+        unpurged.moveAllEntities(new Sector(++turn & 7, 0));
+    }
+
+
+    @Benchmark
+    public void movePurged()
+    {
+        purged.moveAllEntities(new Sector(++turn & 7, 0));
+    }
+
+
+    @Benchmark
+    public int purge()
+    {
+        return buildFleet().purgeDestroyed();
+    }
+}
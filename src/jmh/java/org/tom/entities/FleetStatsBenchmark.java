@@ -0,0 +1,68 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a victory and scoring check over a fleet of <code>ships</code> starships done by iterating the fleet,
+ * as <code>Main</code> used to, with the same check read from the fleet's <code>FleetStats</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FleetStatsBenchmark
+{
+    @Param({"1000", "100000"})
+    private int ships;
+
+    private Fleet fleet;
+
+
+    @Setup(Level.Trial)
+    public void setFleet()
+    {
+        Configurator.setRootLevel(org.apache.logging.log4j.Level.OFF);     // Adding ships logs each one
+
+        EntityStore store = new EntityStore(ships + 1);
+        fleet = new Fleet(new Player(1));
+        fleet.addEntities(new Starbase(new Sector(0, 0), store));
+        for (int i = 0; i < ships; i++)
+        {
+            Starship ship = new Starship(new Sector(0, 0), store);
+            fleet.addEntities(ship);
+            ship.takeDamage(i % 90);
+        }
+    }
+
+
+    @Benchmark
+    public double iterate()
+    {
+        boolean basesLeft = false;
+        for (Starbase base : fleet.getStarbases())
+        {
+            basesLeft |= !base.isDestroyed();
+        }
+        double attack = 0;
+        int live = 0;
+        for (Starship ship : fleet.getStarships())
+        {
+            attack += ship.getAttackStrength();
+            if (!ship.isDestroyed()) live++;
+        }
+        return basesLeft ? attack + live : 0;
+    }
+
+
+    @Benchmark
+    public double stats()
+    {
+        FleetStats stats = fleet.getStats();
+        return stats.allStarbasesDestroyed() ? 0 : stats.getTotalAttackStrength() + stats.getLiveStarships();
+    }
+}
@@ -0,0 +1,51 @@
+package org.tom.entities;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of recording one operation in <code>Metrics</code>, with timing off and on, from one thread
+ * and from several at once to show the striped counters do not contend
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark
+{
+    @Param({"false", "true"})
+    private boolean timing;
+
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        Metrics.reset();
+        Metrics.setTiming(timing);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        Metrics.setTiming(false);
+    }
+
+
+    @Benchmark
+    public void record()
+    {
+        Metrics.record(Metrics.Operation.ATTACK, Metrics.Outcome.APPLIED, Metrics.start());
+    }
+
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended()
+    {
+        Metrics.record(Metrics.Operation.ATTACK, Metrics.Outcome.APPLIED, Metrics.start());
+    }
+}
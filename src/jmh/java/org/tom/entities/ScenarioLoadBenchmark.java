@@ -0,0 +1,81 @@
+package org.tom.entities;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading a scenario of <code>entities</code> entities from its text and binary forms. Each fleet is
+ * written as runs of 100 starships per sector, a tenth of them docked, so the 10M case fits in a few megabytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ScenarioLoadBenchmark
+{
+    private static final int RUN = 100;
+
+    @Param({"1000000", "10000000"})
+    private int entities;
+
+    private Path text;
+    private Path binary;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        text = Files.createTempFile("scenario", ".txt");
+        binary = Files.createTempFile("scenario", ".scn");
+
+        int runs = entities / 2 / RUN;
+        try (BufferedWriter out = Files.newBufferedWriter(text); Scenario.Writer writer = Scenario.write(binary))
+        {
+            out.write("entities " + entities + "\n");
+            for (int p = 1; p <= 2; p++)
+            {
+                out.write("fleet " + p + "\nstarbase 0 0\n");
+                writer.fleet(p).starbases(0, 0, 1);
+                for (int i = 0; i < runs; i++)
+                {
+                    int x = i % 1000;
+                    int y = i / 1000;
+                    int count = i == 0 ? RUN - 1 : RUN;         // Leave room for the starbase
+                    boolean docked = i % 10 == 0;
+                    out.write("starship " + x + " " + y + " " + count + (docked ? " dock 0\n" : "\n"));
+                    writer.starships(x, y, count, docked ? 0 : -1);
+                }
+            }
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException
+    {
+        Files.deleteIfExists(text);
+        Files.deleteIfExists(binary);
+    }
+
+
+    @Benchmark
+    public List<Fleet> text() throws IOException
+    {
+        return Scenario.load(text);
+    }
+
+
+    @Benchmark
+    public List<Fleet> binary() throws IOException
+    {
+        return Scenario.load(binary);
+    }
+}
@@ -0,0 +1,107 @@
+package org.tom.entities;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares looking up the hostile entities in a sector through <code>SectorIndex</code> against scanning
+ * every entity of every fleet
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SectorIndexBenchmark
+{
+    @Param({"1000", "100000"})
+    private int shipsPerFleet;
+
+    @Param({"100"})
+    private int gridSize;       // Ships are spread over a gridSize x gridSize map
+
+    private List<Fleet> fleets;
+    private SectorIndex index;
+    private Fleet attacker;
+    private Sector[] probes;
+    private int next;
+
+
+    /**
+     * Builds two fleets spread randomly over the map, both tracked by the index
+     */
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        SplittableRandom random = new SplittableRandom(42);
+        index = new SectorIndex();
+        fleets = new ArrayList<>();
+
+        for (int p = 1; p <= 2; p++)
+        {
+            Fleet fleet = new Fleet(new Player(p));
+            index.track(fleet);
+            Starship[] ships = new Starship[shipsPerFleet];
+            for (int i = 0; i < shipsPerFleet; i++)
+            {
+                ships[i] = new Starship(new Sector(random.nextInt(gridSize), random.nextInt(gridSize)));
+            }
+            fleet.addEntities(ships);
+            fleets.add(fleet);
+        }
+        attacker = fleets.getFirst();
+
+        probes = new Sector[1024];
+        for (int i = 0; i < probes.length; i++)
+        {
+            probes[i] = new Sector(random.nextInt(gridSize), random.nextInt(gridSize));
+        }
+    }
+
+
+    @Benchmark
+    public List<Entity> indexedLookup()
+    {
+        return index.hostilesIn(nextProbe(), attacker);
+    }
+
+
+    @Benchmark
+    public List<Entity> linearScan()
+    {
+        Sector sector = nextProbe();
+        List<Entity> hostiles = new ArrayList<>();
+
+        for (Fleet fleet : fleets)
+        {
+            for (Starship s : fleet.getStarships())
+            {
+                if (s.getSector().equals(sector) && !s.isDestroyed() && !Objects.equals(s.getFleet(), attacker))
+                {
+                    hostiles.add(s);
+                }
+            }
+        }
+        return hostiles;
+    }
+
+
+    @Benchmark
+    public void indexedRadius(Blackhole blackhole)
+    {
+        blackhole.consume(index.entitiesWithin(nextProbe(), 3));
+    }
+
+
+    private Sector nextProbe()
+    {
+        return probes[next++ & (probes.length - 1)];
+    }
+}
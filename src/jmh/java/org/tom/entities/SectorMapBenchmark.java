@@ -0,0 +1,108 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the <code>SectorMap</code> queries on a 10,000 x 10,000 map holding <code>ships</code> starships split
+ * between two fleets and spread randomly, and a turn of a fleet following its route
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class SectorMapBenchmark
+{
+    private static final int SIZE = 10_000;
+
+    @Param({"1000", "1000000"})
+    private int ships;
+
+    private SectorMap map;
+    private Fleet attacker;
+    private Fleet mover;
+    private Sector[] probes;
+    private int next;
+
+
+    /**
+     * Builds the two fleets on the map, and a small third fleet that patrols between two corners
+     */
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        Configurator.setRootLevel(org.apache.logging.log4j.Level.OFF);     // Adding a million ships logs each one
+
+        SplittableRandom random = new SplittableRandom(42);
+        EntityStore store = new EntityStore(ships + 100);
+        map = new SectorMap(SIZE, SIZE);
+
+        for (int p = 1; p <= 2; p++)
+        {
+            Fleet fleet = new Fleet(new Player(p));
+            map.track(fleet);
+            Starship[] fleetShips = new Starship[ships / 2];
+            for (int i = 0; i < fleetShips.length; i++)
+            {
+                fleetShips[i] = new Starship(new Sector(random.nextInt(SIZE), random.nextInt(SIZE)), store);
+            }
+            fleet.addEntities(fleetShips);
+            if (p == 1) attacker = fleet;
+        }
+
+        mover = new Fleet(new Player(3));
+        map.track(mover);
+        for (int i = 0; i < 100; i++)
+        {
+            mover.addEntities(new Starship(new Sector(0, 0), store));
+        }
+
+        probes = new Sector[1024];
+        for (int i = 0; i < probes.length; i++)
+        {
+            probes[i] = new Sector(random.nextInt(SIZE), random.nextInt(SIZE));
+        }
+    }
+
+
+    @Benchmark
+    public Optional<Entity> nearestHostile()
+    {
+        return map.nearestHostile(nextProbe(), attacker);
+    }
+
+
+    @Benchmark
+    public List<Entity> hostilesWithin()
+    {
+        return map.hostilesWithin(nextProbe(), 50, attacker);
+    }
+
+
+    @Benchmark
+    public int occupancy()
+    {
+        return map.occupancy(nextProbe(), attacker);
+    }
+
+
+    @Benchmark
+    public int advance()
+    {
+        if (map.getRoute(mover).isEmpty()) map.setRoute(mover, List.of(new Sector(SIZE - 1, SIZE - 1), new Sector(0, 0)));
+        return map.advance(10);
+    }
+
+
+    private Sector nextProbe()
+    {
+        return probes[next++ & (probes.length - 1)];
+    }
+}
@@ -0,0 +1,85 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a throwaway skirmish between two fleets of <code>ships</code> starships and a starbase, fought for a few
+ * rounds, built either from fresh objects in a fresh store or from a reused <code>SkirmishArena</code>. Run with
+ * the gc profiler (the default for <code>gradle jmh</code>) to compare allocation rates and GC time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SkirmishBenchmark
+{
+    private static final int ROUNDS = 3;
+
+    @Param({"50"})
+    private int ships;
+
+    private SkirmishArena arena;
+
+
+    @Setup(Level.Trial)
+    public void setArena()
+    {
+        Configurator.setRootLevel(org.apache.logging.log4j.Level.OFF);     // Adding ships logs each one
+        arena = new SkirmishArena(2 * ships + 2);
+    }
+
+
+    @Benchmark
+    public long fresh()
+    {
+        EntityStore store = new EntityStore(2 * ships + 2);
+        Fleet first = new Fleet(new Player(1));
+        Fleet second = new Fleet(new Player(2));
+        for (Fleet fleet : new Fleet[]{first, second})
+        {
+            fleet.addEntities(new Starbase(new Sector(0, 0), store));
+            for (int i = 0; i < ships; i++)
+            {
+                fleet.addEntities(new Starship(new Sector(0, 0), store));
+            }
+        }
+        return fight(first, second);
+    }
+
+
+    @Benchmark
+    public long pooled()
+    {
+        arena.reset();
+        Fleet first = arena.fleet(1);
+        Fleet second = arena.fleet(2);
+        for (Fleet fleet : new Fleet[]{first, second})
+        {
+            fleet.addEntities(arena.starbase(new Sector(0, 0)));
+            for (int i = 0; i < ships; i++)
+            {
+                fleet.addEntities(arena.starship(new Sector(0, 0)));
+            }
+        }
+        return fight(first, second);
+    }
+
+
+    /**
+     * Has each fleet attack the other's starships for a few rounds, then scores the result
+     */
+    private static long fight(Fleet first, Fleet second)
+    {
+        for (int round = 0; round < ROUNDS; round++)
+        {
+            first.attackWithAllBatched(second.getStarships());
+            second.attackWithAllBatched(first.getStarships());
+        }
+        return first.getStats().getLiveStarships() - second.getStats().getLiveStarships();
+    }
+}
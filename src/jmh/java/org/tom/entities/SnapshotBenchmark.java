@@ -0,0 +1,103 @@
+package org.tom.entities;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures checkpointing and restoring a world of <code>entities</code> entities against building the same world
+ * from scratch with the public constructors and <code>Fleet.addEntities</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class SnapshotBenchmark
+{
+    private static final int SHIPS_PER_BASE = 100;
+
+    @Param({"1000000"})
+    private int entities;
+
+    private List<Fleet> world;
+    private Path file;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        world = buildWorld();
+        file = Files.createTempFile("world", ".snap");
+        Snapshot.write(file, world);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException
+    {
+        Files.deleteIfExists(file);
+    }
+
+
+    /**
+     * Builds two fleets of damaged starships, a tenth of them docked to starbases
+     */
+    private List<Fleet> buildWorld()
+    {
+        EntityStore store = new EntityStore(entities);
+        List<Fleet> fleets = new ArrayList<>();
+        for (int p = 1; p <= 2; p++)
+        {
+            Fleet fleet = new Fleet(new Player(p));
+            fleets.add(fleet);
+
+            Starship[] ships = new Starship[entities / 2 - entities / 2 / SHIPS_PER_BASE];
+            Starbase[] bases = new Starbase[entities / 2 / SHIPS_PER_BASE];
+            for (int i = 0; i < ships.length; i++)
+            {
+                ships[i] = new Starship(new Sector(i % 100, i / 100 % 100), store);
+            }
+            for (int i = 0; i < bases.length; i++)
+            {
+                bases[i] = new Starbase(new Sector(i % 100, 0), store);
+            }
+            fleet.addEntities(ships);
+            fleet.addEntities(bases);
+
+            for (int i = 0; i < ships.length; i++)
+            {
+                ships[i].setHealth(10 + i % 90);
+                if (i % 10 == 0) ships[i].dockToStarbase(bases[i / 10 % bases.length]);
+            }
+        }
+        return fleets;
+    }
+
+
+    @Benchmark
+    public long write() throws IOException
+    {
+        return Snapshot.write(file, world);
+    }
+
+
+    @Benchmark
+    public List<Fleet> read() throws IOException
+    {
+        return Snapshot.read(file);
+    }
+
+
+    @Benchmark
+    public List<Fleet> rebuild()
+    {
+        return buildWorld();
+    }
+}
@@ -0,0 +1,55 @@
+package org.tom.entities;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-hit cost of reading a starbase's defence strength with the cached docked support against
+ * recalculating it from the docked list on every hit, as <code>getDefenceStrength</code> did before the cache
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StarbaseDefenceBenchmark
+{
+    @Param({"0", "10", "1000"})
+    private int dockedShips;
+
+    private Starbase starbase;
+
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        Sector sector = new Sector(0, 0);
+        EntityStore store = new EntityStore(dockedShips + 1);
+        Fleet fleet = new Fleet(new Player(1));
+
+        starbase = new Starbase(sector, store);
+        fleet.addEntities(starbase);
+        for (int i = 0; i < dockedShips; i++)
+        {
+            Starship ship = new Starship(sector, store);
+            fleet.addEntities(ship);
+            ship.dockToStarbase(starbase);
+        }
+    }
+
+
+    @Benchmark
+    public double cachedPerHit()
+    {
+        return starbase.getDefenceStrength();
+    }
+
+
+    @Benchmark
+    public double uncachedPerHit()
+    {
+        return starbase.store.defence[starbase.slot] + starbase.calculateDockedSupport();
+    }
+}
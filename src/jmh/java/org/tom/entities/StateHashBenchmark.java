@@ -0,0 +1,83 @@
+package org.tom.entities;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-turn cost of the world state hash in a world of <code>entities</code> entities when
+ * <code>changes</code> starships move each turn: hashing incrementally against hashing the whole world
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class StateHashBenchmark
+{
+    @Param({"1000000"})
+    private int entities;
+
+    @Param({"100", "10000"})
+    private int changes;
+
+    private List<Fleet> fleets;
+    private List<Starship> ships;
+    private StateHash stateHash;
+    private int turn;
+
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        EntityStore store = new EntityStore(entities);
+        fleets = new ArrayList<>();
+        ships = new ArrayList<>(entities);
+        for (int p = 1; p <= 2; p++)
+        {
+            Fleet fleet = new Fleet(new Player(p));
+            List<Starship> fleetShips = new ArrayList<>(entities / 2);
+            for (int i = 0; i < entities / 2; i++)
+            {
+                fleetShips.add(new Starship(new Sector(i % 100, i / 100 % 100), store));
+            }
+            fleet.addAll(fleetShips);
+            ships.addAll(fleetShips);
+            fleets.add(fleet);
+        }
+        stateHash = StateHash.track(store, fleets);
+    }
+
+
+    /**
+     * Moves the next <code>changes</code> starships, as a turn would
+     */
+    private void playTurn()
+    {
+        turn++;
+        int from = (int) ((long) turn * changes % entities);
+        for (int i = 0; i < changes; i++)
+        {
+            ships.get((from + i) % entities).setSector(new Sector(turn & 63, i & 63));
+        }
+    }
+
+
+    @Benchmark
+    public long incremental()
+    {
+        playTurn();
+        return stateHash.hash();
+    }
+
+
+    @Benchmark
+    public long fromScratch()
+    {
+        playTurn();
+        return StateHash.of(fleets);
+    }
+}
@@ -0,0 +1,84 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures publishing a turn's <code>WorldView</code> from a world of <code>entities</code> starships when a
+ * fraction of them have been damaged and moved, against copying the state of every entity into a fresh array.
+ * The changes are made before each invocation, as publishing clears them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class WorldPublishBenchmark
+{
+    @Param({"1000000"})
+    private int entities;
+
+    @Param({"0.001", "0.01", "0.1", "1"})
+    private double changedFraction;
+
+    private Starship[] ships;
+    private WorldPublisher publisher;
+    private SplittableRandom random;
+
+
+    @Setup(Level.Trial)
+    public void setWorld()
+    {
+        Configurator.setRootLevel(org.apache.logging.log4j.Level.OFF);     // Adding a million ships logs each one
+
+        EntityStore store = new EntityStore(entities);
+        Fleet fleet = new Fleet(new Player(1));
+        ships = new Starship[entities];
+        for (int i = 0; i < entities; i++)
+        {
+            ships[i] = new Starship(new Sector(i % 100, i / 100 % 100), store);
+        }
+        fleet.addEntities(ships);
+
+        publisher = WorldPublisher.track(store, List.of(fleet));
+        random = new SplittableRandom(42);
+    }
+
+
+    @Setup(Level.Invocation)
+    public void changeShips()
+    {
+        int changed = (int) (entities * changedFraction);
+        int start = random.nextInt(entities);
+        for (int i = 0; i < changed; i++)
+        {
+            Starship ship = ships[(int) ((start + (long) i * 7919) % entities)];      // Spread over the store
+            ship.setHealth(random.nextInt(1, 100));
+            ship.setSector(new Sector(random.nextInt(100), random.nextInt(100)));
+        }
+    }
+
+
+    @Benchmark
+    public WorldView publish()
+    {
+        return publisher.publish();
+    }
+
+
+    @Benchmark
+    public EntityState[] fullCopy()
+    {
+        EntityState[] states = new EntityState[ships.length];
+        for (int i = 0; i < ships.length; i++)
+        {
+            states[i] = EntityState.of(ships[i]);
+        }
+        return states;
+    }
+}
@@ -0,0 +1,94 @@
+package org.tom.game;
+
+import org.openjdk.jmh.annotations.*;
+import org.tom.entities.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the cost of journalling every event of a turn against running the same turn without a journal.
+ * The world is rebuilt before each invocation, while one journal keeps growing over the trial, rolling over to
+ * new segments as a long game would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class JournalOverheadBenchmark
+{
+    @Param({"false", "true"})
+    private boolean journalled;
+
+    @Param({"100000"})
+    private int shipsPerFleet;
+
+    private TurnSimulator simulator;
+    private EventJournal journal;
+    private Path directory;
+
+
+    @Setup(Level.Trial)
+    public void openJournal() throws IOException
+    {
+        if (!journalled) return;
+
+        directory = Files.createTempDirectory("journal");
+        journal = new EventJournal(directory, 1 << 20);
+    }
+
+
+    @Setup(Level.Invocation)
+    public void setWorld()
+    {
+        SplittableRandom random = new SplittableRandom(42);
+        EntityStore store = new EntityStore(2 * shipsPerFleet);
+        store.setJournal(journal);
+
+        List<Fleet> fleets = new ArrayList<>();
+        for (int p = 1; p <= 2; p++)
+        {
+            Fleet fleet = new Fleet(new Player(p));
+            Starship[] ships = new Starship[shipsPerFleet];
+            for (int i = 0; i < shipsPerFleet; i++)
+            {
+                ships[i] = new Starship(new Sector(random.nextInt(100), random.nextInt(100)), store);
+            }
+            fleet.addEntities(ships);
+            fleets.add(fleet);
+        }
+        simulator = new TurnSimulator(fleets);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void deleteJournal() throws IOException
+    {
+        if (!journalled) return;
+
+        journal.close();
+        try (Stream<Path> files = Files.walk(directory))
+        {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList())
+            {
+                Files.delete(p);
+            }
+        }
+    }
+
+
+    @Benchmark
+    public TurnResult turn()
+    {
+        return simulator.stepSequential();
+    }
+}
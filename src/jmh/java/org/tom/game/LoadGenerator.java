@@ -0,0 +1,230 @@
+package org.tom.game;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.tom.entities.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Drives a <code>GameServer</code> with many simulated players and reports command throughput and round-trip
+ * latency percentiles. Each client runs on its own virtual thread, connects, waits for every other client to
+ * connect, then sends its commands one at a time, timing each from sending the line to reading the reply.
+ * <p>
+ * Run with <code>gradle loadtest -Pload.args="clients commands players transport thinkMillis"</code>, e.g.
+ * <code>-Pload.args="2000 200 50 unix 100"</code>. The transport is <code>tcp</code> for the loopback address or
+ * <code>unix</code> for a Unix-domain socket. Each client pauses for thinkMillis on average between commands;
+ * with no pause the clients saturate the server, and latency is mostly time spent queued behind other clients.
+ * </p>
+ */
+public class LoadGenerator
+{
+    private static final int SHIPS_PER_FLEET = 100;
+    private static final int SECTORS = 4;       // Ships move over a SECTORS x SECTORS map, so battles happen
+
+
+    public static void main(String[] args) throws Exception
+    {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int commands = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int players = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        boolean unix = args.length > 3 && args[3].equals("unix");
+        long thinkMillis = args.length > 4 ? Long.parseLong(args[4]) : 0;
+
+        Configurator.setRootLevel(Level.WARN);      // Combat logging would measure the console, not the server
+
+        SocketAddress address = unix
+                ? UnixDomainSocketAddress.of(Files.createTempDirectory("game").resolve("game.sock"))
+                : new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        try (GameServer server = new GameServer(buildWorld(players), address, 4096, 1024).start())
+        {
+            run(server, clients, commands, players, thinkMillis);
+        } finally
+        {
+            if (address instanceof UnixDomainSocketAddress u) Files.deleteIfExists(u.getPath().getParent());
+        }
+    }
+
+
+    /**
+     * Builds one fleet per player with a starbase and <code>SHIPS_PER_FLEET</code> starships spread over the map
+     */
+    private static List<Fleet> buildWorld(int players)
+    {
+        SplittableRandom random = new SplittableRandom(42);
+        EntityStore store = new EntityStore(players * (SHIPS_PER_FLEET + 1));
+        List<Fleet> fleets = new ArrayList<>();
+        for (int p = 1; p <= players; p++)
+        {
+            Fleet fleet = new Fleet(new Player(p));
+            fleet.addEntities(new Starbase(new Sector(random.nextInt(SECTORS), random.nextInt(SECTORS)), store));
+            for (int i = 0; i < SHIPS_PER_FLEET; i++)
+            {
+                fleet.addEntities(new Starship(new Sector(random.nextInt(SECTORS), random.nextInt(SECTORS)), store));
+            }
+            fleets.add(fleet);
+        }
+        return fleets;
+    }
+
+
+    /**
+     * Runs every client to completion and prints the results
+     */
+    private static void run(GameServer server, int clients, int commands, int players, long thinkMillis) throws Exception
+    {
+        CountDownLatch connected = new CountDownLatch(clients);
+        List<Future<long[]>> results = new ArrayList<>();
+        long start;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor())
+        {
+            for (int c = 0; c < clients; c++)
+            {
+                int player = c % players + 1;
+                long seed = c;
+                results.add(executor.submit(() -> client(server.getAddress(), player, players, commands, thinkMillis, seed, connected)));
+            }
+            connected.await();
+            start = System.nanoTime();
+        }       // Waits for every client to finish
+        long elapsed = System.nanoTime() - start;
+
+        long[] latencies = new long[clients * commands];
+        int n = 0;
+        for (Future<long[]> result : results)
+        {
+            long[] client = result.get();
+            System.arraycopy(client, 0, latencies, n, client.length);
+            n += client.length;
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf("%d clients x %d commands over %s, %d ms think time%n", clients, commands,
+                server.getAddress(), thinkMillis);
+        System.out.printf("throughput %.0f commands/s in %d turns (%.1f commands per turn)%n",
+                latencies.length / (elapsed / 1e9), server.getTurn(), (double) server.getCommands() / server.getTurn());
+        System.out.printf("latency us: p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+                percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), latencies[latencies.length - 1] / 1e3);
+    }
+
+
+    /**
+     * Gets a percentile of sorted nanosecond latencies in microseconds
+     */
+    private static double percentile(long[] sorted, double p)
+    {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))] / 1e3;
+    }
+
+
+    /**
+     * One simulated player: connects, waits for the other clients, then sends random commands and times each reply
+     *
+     * @return the round-trip time of each command in nanoseconds
+     */
+    private static long[] client(SocketAddress address, int player, int players, int commands, long thinkMillis,
+                                 long seed, CountDownLatch connected)
+    {
+        SplittableRandom random = new SplittableRandom(seed);
+        long[] latencies = new long[commands];
+        boolean counted = false;
+        try (SocketChannel channel = connect(address);
+             BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.US_ASCII));
+             Writer out = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.US_ASCII))
+        {
+            out.write("PLAYER " + player + "\n");
+            out.flush();
+            String welcome = in.readLine();
+            if (welcome == null || !welcome.startsWith("WELCOME")) throw new IOException("Refused: " + welcome);
+
+            connected.countDown();
+            counted = true;
+            connected.await();
+            for (int i = 0; i < commands; i++)
+            {
+                String command = randomCommand(random, player, players);
+                long sent = System.nanoTime();
+                out.write(command);
+                out.flush();
+                String reply = in.readLine();
+                latencies[i] = System.nanoTime() - sent;
+                if (reply == null) throw new IOException("Server closed the connection");
+                if (thinkMillis > 0) Thread.sleep(random.nextLong(thinkMillis * 2));   // Averages thinkMillis
+            }
+            return latencies;
+        } catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return latencies;
+        } finally
+        {
+            if (!counted) connected.countDown();       // A failed client must not hold up the others
+        }
+    }
+
+
+    /**
+     * Connects to the server, retrying while its accept backlog is full. A full Unix-domain socket backlog fails
+     * at once rather than making the client wait.
+     */
+    private static SocketChannel connect(SocketAddress address) throws IOException, InterruptedException
+    {
+        for (int attempt = 1; ; attempt++)
+        {
+            try
+            {
+                return SocketChannel.open(address);
+            } catch (SocketException e)
+            {
+                if (attempt == 100) throw e;
+                Thread.sleep(attempt);
+            }
+        }
+    }
+
+
+    /**
+     * Picks a command, mostly moves and attacks on other players
+     */
+    private static String randomCommand(SplittableRandom random, int player, int players)
+    {
+        int ship = random.nextInt(SHIPS_PER_FLEET);
+        int roll = random.nextInt(20);
+        if (roll < 10) return "MOVE " + ship + " " + random.nextInt(SECTORS) + " " + random.nextInt(SECTORS) + "\n";
+        if (roll < 16 && players > 1)
+        {
+            int enemy = (player + random.nextInt(players - 1)) % players + 1;     // Any player but this one
+            return "ATTACK " + ship + " " + enemy + " " + random.nextInt(SHIPS_PER_FLEET) + "\n";
+        }
+        if (roll < 18) return "DOCK " + ship + " 0\n";
+        if (roll < 19) return "UNDOCK " + ship + " 0\n";
+        return "REPAIR " + ship + "\n";
+    }
+}
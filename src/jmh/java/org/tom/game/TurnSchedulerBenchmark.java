@@ -0,0 +1,65 @@
+package org.tom.game;
+
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.*;
+import org.tom.entities.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a scheduler tick carrying out <code>orders</code> orders, half moves and half attacks between two
+ * fleets spread over a small map, with no time budget. The tick time per order gives the number of orders a
+ * server can take per tick at a target tick rate. The world is rebuilt before each invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TurnSchedulerBenchmark
+{
+    @Param({"1000", "100000"})
+    private int orders;
+
+    private TurnScheduler scheduler;
+
+
+    @Setup(Level.Trial)
+    public void quietLogs()
+    {
+        Configurator.setRootLevel(org.apache.logging.log4j.Level.OFF);     // Logging costs are measured by CombatHotPathBenchmark
+    }
+
+
+    @Setup(Level.Invocation)
+    public void setWorld()
+    {
+        SplittableRandom random = new SplittableRandom(42);
+        EntityStore store = new EntityStore(orders);
+        Fleet[] fleets = {new Fleet(new Player(1)), new Fleet(new Player(2))};
+        for (int i = 0; i < orders; i++)
+        {
+            fleets[i % 2].addEntities(new Starship(new Sector(random.nextInt(4), random.nextInt(4)), store));
+        }
+
+        scheduler = new TurnScheduler(Duration.ofDays(1));
+        for (int i = 0; i < orders / 2; i++)
+        {
+            List<Starship> own = fleets[i % 2].getStarships();
+            List<Starship> enemy = fleets[1 - i % 2].getStarships();
+            scheduler.queueMove(own.get(i / 2), new Sector(random.nextInt(4), random.nextInt(4)));
+            scheduler.queueAttack(own.get(i / 2), enemy.get(random.nextInt(enemy.size())));
+        }
+    }
+
+
+    @Benchmark
+    public int tick()
+    {
+        return scheduler.tick();
+    }
+}
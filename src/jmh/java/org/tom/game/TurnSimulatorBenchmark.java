@@ -0,0 +1,81 @@
+package org.tom.game;
+
+import org.openjdk.jmh.annotations.*;
+import org.tom.entities.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how turn throughput scales with the number of fork-join threads on a map with many contested
+ * sectors. The world is rebuilt before each invocation, as a turn destroys ships.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TurnSimulatorBenchmark
+{
+    @Param({"1", "2", "4", "8"})
+    private int threads;
+
+    @Param({"200000"})
+    private int shipsPerFleet;
+
+    @Param({"100"})
+    private int gridSize;       // gridSize x gridSize sectors, nearly all contested
+
+    private ForkJoinPool pool;
+    private TurnSimulator simulator;
+
+
+    @Setup(Level.Trial)
+    public void setPool()
+    {
+        pool = new ForkJoinPool(threads);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void closePool()
+    {
+        pool.shutdown();
+    }
+
+
+    /**
+     * Builds two fleets spread randomly over the map
+     */
+    @Setup(Level.Invocation)
+    public void setWorld()
+    {
+        SplittableRandom random = new SplittableRandom(42);
+        EntityStore store = new EntityStore(2 * shipsPerFleet);
+        List<Fleet> fleets = new ArrayList<>();
+
+        for (int p = 1; p <= 2; p++)
+        {
+            Fleet fleet = new Fleet(new Player(p));
+            Starship[] ships = new Starship[shipsPerFleet];
+            for (int i = 0; i < shipsPerFleet; i++)
+            {
+                ships[i] = new Starship(new Sector(random.nextInt(gridSize), random.nextInt(gridSize)), store);
+            }
+            fleet.addEntities(ships);
+            fleets.add(fleet);
+        }
+        simulator = new TurnSimulator(fleets, pool);
+    }
+
+
+    @Benchmark
+    public TurnResult parallelTurn()
+    {
+        return simulator.step();
+    }
+}
@@ -0,0 +1,104 @@
+package org.tom.entities;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size histogram of durations in nanoseconds that any number of threads can record into without locking.
+ * Uses the buckets of <code>HistogramBuckets</code>, as <code>LatencyHistogram</code> does. Recording is one
+ * atomic increment of the bucket plus two striped adds, and never allocates.
+ * <p>
+ * Reads are not atomic with respect to concurrent recording, so a percentile taken while threads record may miss
+ * the latest few values.
+ * </p>
+ */
+final class AtomicHistogram
+{
+    private final AtomicLongArray counts = new AtomicLongArray(HistogramBuckets.COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+
+    /**
+     * Records one duration
+     *
+     * @param nanos the duration in nanoseconds; negative values are counted as 0
+     */
+    void record(long nanos)
+    {
+        long value = Math.max(0, nanos);
+        counts.getAndIncrement(HistogramBuckets.indexOf(value));
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+
+    /**
+     * Gets the value below which a given fraction of the recorded durations fall
+     *
+     * @param fraction the percentile as a fraction, e.g. 0.99 for the 99th percentile
+     * @return the duration in nanoseconds, or 0 if nothing has been recorded
+     */
+    long percentile(double fraction)
+    {
+        return HistogramBuckets.percentile(fraction, count.sum(), max.get(), counts::get);
+    }
+
+
+    /**
+     * Gets the number of durations recorded
+     */
+    long getCount()
+    {
+        return count.sum();
+    }
+
+
+    /**
+     * Gets the mean of the recorded durations in nanoseconds, or 0 if nothing has been recorded
+     */
+    double getMean()
+    {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
+
+    /**
+     * Gets the longest recorded duration in nanoseconds
+     */
+    long getMax()
+    {
+        return max.get();
+    }
+
+
+    /**
+     * Clears every recorded duration. Values recorded during the reset may be partly kept.
+     */
+    void reset()
+    {
+        for (int i = 0; i < HistogramBuckets.COUNT; i++)
+        {
+            counts.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+
+    /**
+     * Summarises the histogram in microseconds
+     *
+     * @return the count, mean and main percentiles
+     */
+    @Override
+    public String toString()
+    {
+        return HistogramBuckets.summarise(getCount(), getMean(), getMax(), counts::get);
+    }
+}
@@ -0,0 +1,214 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jspecify.annotations.NonNull;
+
+import java.util.List;
+import java.util.Objects;
+
+import static org.apache.logging.log4j.util.Unbox.box;
+
+/**
+ * Resolves a whole fleet's attacks on a target in one pass. Produces exactly the same health, crew and
+ * destroyed state as calling <code>Starship.attack</code> for each ship in turn, but reads the attackers'
+ * state straight from the <code>EntityStore</code>, keeps the target's health and crew in locals between hits,
+ * and writes the result back once, so there are no virtual calls or log events per hit.
+ */
+final class BatchCombat
+{
+    private static final Logger logger = LogManager.getLogger();
+
+
+    /**
+     * Not instantiable; all methods are static
+     */
+    private BatchCombat()
+    {}
+
+
+    /**
+     * Resolves the attacks of every starship in <code>attackers</code> on each target in order. Equivalent to
+     * calling <code>resolve</code> once per target.
+     *
+     * @param attackers the attacking starships, in attack order
+     * @param targets   the <code>Entity</code> objects to attack
+     * @return a <code>BattleReport</code> totalled over all targets
+     */
+    static BattleReport resolve(@NonNull List<Starship> attackers, @NonNull List<? extends Entity> targets)
+    {
+        BattleReport total = BattleReport.EMPTY;
+        for (Entity target : targets)
+        {
+            total = total.plus(resolve(attackers, target));
+        }
+        return total;
+    }
+
+
+    /**
+     * Resolves the attacks of every starship in <code>attackers</code> on a single target, following the same
+     * rules as <code>Starship.attack</code>: destroyed ships are skipped, docked ships repair instead if they are
+     * repairing, and only ships in the target's sector and not in its fleet deal damage.
+     *
+     * @param attackers the attacking starships, in attack order
+     * @param target    the <code>Entity</code> to attack
+     * @return a <code>BattleReport</code> summarising the damage dealt
+     */
+    static BattleReport resolve(@NonNull List<Starship> attackers, @NonNull Entity target)
+    {
+        BattleReport report;
+        if (target instanceof Starship ship)
+        {
+            report = resolveAgainstStarship(attackers, ship);
+        } else if (target instanceof Starbase base)
+        {
+            report = resolveAgainstStarbase(attackers, base);
+        } else
+        {
+            report = resolveSequentially(attackers, target);
+        }
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("{} attackers hit {} {} times for {} damage", box(attackers.size()), target,
+                    box(report.attacks()), box(report.damage()));
+        }
+        if (!target.store.quiet) Metrics.count(Metrics.Operation.ATTACK, Metrics.Outcome.APPLIED, report.attacks());
+        return report;
+    }
+
+
+    /**
+     * Applies the attacks to a <code>Starship</code>, whose defence depends on its own health and crew
+     */
+    private static BattleReport resolveAgainstStarship(List<Starship> attackers, Starship target)
+    {
+        double health = target.getHealth();
+        int crew = target.getCrew();
+        boolean destroyed = target.isDestroyed();
+        boolean wasDestroyed = destroyed;
+        int attacks = 0;
+        double damage = 0;
+        int crewLost = 0;
+
+        for (Starship attacker : attackers)
+        {
+            // Eligibility is checked even once the target is destroyed, as docked ships still repair
+            if (!canAttack(attacker, target) || destroyed) continue;
+
+            // The same arithmetic as Entity.takeDamage and Starship.takeDamage, in the same order
+            double prior = health;
+            double applied = Entity.appliedDamageFor(attackStrengthOf(attacker), Starship.defenceFor(health, crew), health);
+            health = Math.max(0.0, Math.min(health - applied, ((Entity) target).maxHealth));
+
+            int lost = Starship.crewLostFor(Math.max(0, prior - health), crew);
+            crew = Math.max(1, crew - lost);
+
+            attacks++;
+            damage += prior - health;
+            crewLost += lost;
+            destroyed = health == 0;
+        }
+
+        // Write the final state back once
+        if (attacks > 0)
+        {
+            target.setHealth(health);
+            target.setCrew(crew);
+        }
+        return new BattleReport(attacks, damage, crewLost, destroyed && !wasDestroyed ? 1 : 0);
+    }
+
+
+    /**
+     * Applies the attacks to a <code>Starbase</code>. The docked support is calculated once, as the ships docked
+     * to the target can only change if one of its own fleet repairs during the batch.
+     */
+    private static BattleReport resolveAgainstStarbase(List<Starship> attackers, Starbase target)
+    {
+        double health = target.getHealth();
+        double support = target.getDockedSupport();
+        boolean destroyed = target.isDestroyed();
+        boolean wasDestroyed = destroyed;
+        int attacks = 0;
+        double damage = 0;
+
+        for (Starship attacker : attackers)
+        {
+            // A repairing ship from the target's own fleet may be docked to it
+            boolean ownRepair = attacker.isRepairing() && Objects.equals(attacker.getFleet(), target.getFleet());
+            if (!canAttack(attacker, target))
+            {
+                if (ownRepair) support = target.getDockedSupport();
+                continue;
+            }
+            if (destroyed) continue;
+
+            double prior = health;
+            double defence = Starbase.hullDefenceFor(health) + support;
+            double applied = Entity.appliedDamageFor(attackStrengthOf(attacker), defence, health);
+            health = Math.max(0.0, Math.min(health - applied, ((Entity) target).maxHealth));
+
+            attacks++;
+            damage += prior - health;
+            destroyed = health == 0;
+        }
+
+        if (attacks > 0) target.setHealth(health);
+        return new BattleReport(attacks, damage, 0, destroyed && !wasDestroyed ? 1 : 0);
+    }
+
+
+    /**
+     * Falls back to <code>takeDamage</code> for entity types the batch path does not know about
+     */
+    private static BattleReport resolveSequentially(List<Starship> attackers, Entity target)
+    {
+        boolean wasDestroyed = target.isDestroyed();
+        int attacks = 0;
+        double damage = 0;
+
+        for (Starship attacker : attackers)
+        {
+            if (!canAttack(attacker, target) || target.isDestroyed()) continue;
+
+            double prior = target.getHealth();
+            target.takeDamage(attackStrengthOf(attacker));
+            attacks++;
+            damage += prior - target.getHealth();
+        }
+        return new BattleReport(attacks, damage, 0, target.isDestroyed() && !wasDestroyed ? 1 : 0);
+    }
+
+
+    /**
+     * Applies the checks from <code>Starship.attack</code> using the flag and position columns directly.
+     * Docked ships that are repairing carry out their repair, as they would in <code>attack</code>.
+     *
+     * @return true if the attacker would deal damage to the target
+     */
+    private static boolean canAttack(Starship attacker, Entity target)
+    {
+        byte flags = attacker.store.flags[attacker.slot];
+        if ((flags & EntityStore.DESTROYED) != 0) return false;
+
+        if ((flags & EntityStore.DOCKED) != 0)
+        {
+            if ((flags & EntityStore.REPAIRING) != 0) attacker.repair();
+            return false;
+        }
+
+        return attacker.inSameSectorAs(target)
+                && !Objects.equals(target.getFleet(), attacker.store.fleet[attacker.slot]);
+    }
+
+
+    /**
+     * Reads the attack strength of a starship from its health column
+     */
+    private static double attackStrengthOf(Starship attacker)
+    {
+        return Starship.attackFor(attacker.store.health[attacker.slot]);
+    }
+}
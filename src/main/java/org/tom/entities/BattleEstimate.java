@@ -0,0 +1,34 @@
+package org.tom.entities;
+
+/**
+ * The estimated outcome of a battle, from <code>BattleEstimator</code>. Intervals are 95% confidence intervals:
+ * a Wilson score interval for the win probability and a normal interval for the mean losses.
+ * Defined as a record as this is purely a data-carrier class.
+ *
+ * @param simulations         the number of battles simulated
+ * @param winProbability      the fraction of battles the attacking fleet won
+ * @param winLow              the lower bound of the win probability
+ * @param winHigh             the upper bound of the win probability
+ * @param expectedLosses      the mean number of attacking starships destroyed
+ * @param lossesMargin        the half-width of the interval around <code>expectedLosses</code>
+ * @param expectedEnemyLosses the mean number of defending starships destroyed
+ * @param enemyLossesMargin   the half-width of the interval around <code>expectedEnemyLosses</code>
+ * @param converged           true if the win probability interval narrowed to the requested width
+ */
+public record BattleEstimate(int simulations, double winProbability, double winLow, double winHigh,
+                             double expectedLosses, double lossesMargin, double expectedEnemyLosses,
+                             double enemyLossesMargin, boolean converged)
+{
+    /**
+     * Summarises the estimate for logging
+     *
+     * @return the win probability and losses with their intervals
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("win %.3f [%.3f, %.3f], losses %.2f ± %.2f, enemy losses %.2f ± %.2f over %d battles%s",
+                winProbability, winLow, winHigh, expectedLosses, lossesMargin, expectedEnemyLosses,
+                enemyLossesMargin, simulations, converged ? "" : " (not converged)");
+    }
+}
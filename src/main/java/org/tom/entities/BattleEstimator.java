@@ -0,0 +1,437 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jspecify.annotations.NonNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Estimates the outcome of a battle between two fleets in a sector by simulating it many times with the attacks
+ * in a random order. The state of both fleets' live entities in the sector is copied when the estimator is
+ * created, so the real entities are never touched and the game can carry on while estimates run.
+ * <p>
+ * In each round of a simulated battle every starship acts once, in a freshly shuffled order: undocked ships
+ * attack a random live enemy entity in the sector, and docked ships repair if they are repairing. The battle ends
+ * when one side has nothing left in the sector, when a round passes without an attack, or after
+ * <code>MAX_ROUNDS</code> rounds. The attacking fleet wins if the defenders have nothing left and it does.
+ * </p>
+ * <p>
+ * Battles are simulated on a fork-join pool in chunks of <code>CHUNK</code>. Each chunk has its own
+ * <code>SkirmishArena</code> and its own <code>SplittableRandom</code>, split from the seed in chunk order, so
+ * nothing mutable is shared between threads and a fixed number of simulations gives the same estimate for the
+ * same seed on any number of threads.
+ * </p>
+ */
+public final class BattleEstimator
+{
+    private static final Logger logger = LogManager.getLogger();
+    static final int CHUNK = 64;                    // Battles simulated per task
+    static final int MAX_ROUNDS = 100;              // Rounds after which a battle counts as a draw
+    static final int MIN_SIMULATIONS = 256;         // Battles before an early stop may trust the interval
+    private static final double Z = 1.96;           // 95% confidence
+
+    private final Side attackers;
+    private final Side defenders;
+    private final Sector sector;
+    private final ForkJoinPool pool;
+
+
+    /**
+     * Creates an estimator that runs on the common fork-join pool
+     *
+     * @param attackers the attacking <code>Fleet</code>
+     * @param defenders the defending <code>Fleet</code>
+     * @param sector    the <code>Sector</code> the battle is fought in
+     */
+    public BattleEstimator(@NonNull Fleet attackers, @NonNull Fleet defenders, @NonNull Sector sector)
+    {
+        this(attackers, defenders, sector, ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * Creates an estimator that runs on the given fork-join pool, copying the state of both fleets' live entities
+     * in the sector
+     *
+     * @param attackers the attacking <code>Fleet</code>
+     * @param defenders the defending <code>Fleet</code>
+     * @param sector    the <code>Sector</code> the battle is fought in
+     * @param pool      the <code>ForkJoinPool</code> to simulate on
+     */
+    public BattleEstimator(@NonNull Fleet attackers, @NonNull Fleet defenders, @NonNull Sector sector,
+                           @NonNull ForkJoinPool pool)
+    {
+        if (attackers == defenders) throw new IllegalArgumentException("A fleet cannot fight itself: " + attackers);
+
+        this.attackers = new Side(attackers, sector);
+        this.defenders = new Side(defenders, sector);
+        this.sector = sector;
+        this.pool = pool;
+    }
+
+
+    /**
+     * Simulates a fixed number of battles
+     *
+     * @param simulations the number of battles to simulate
+     * @param seed        the seed for the random attack orders
+     * @return the estimated outcome; <code>converged</code> is always true
+     */
+    public BattleEstimate estimate(int simulations, long seed)
+    {
+        if (simulations < 1) throw new IllegalArgumentException("simulations must be positive: " + simulations);
+
+        Tally tally = simulate(simulations, new SplittableRandom(seed), 0, false);
+        BattleEstimate estimate = tally.toEstimate(true);
+        logger.debug("Estimated battle in {}: {}", sector, estimate);
+        return estimate;
+    }
+
+
+    /**
+     * Simulates battles in batches until the win probability is known to within <code>tolerance</code>, the
+     * budget is spent or <code>maxSimulations</code> battles have been simulated, whichever comes first. The
+     * budget is checked between battles, so the call overruns it by about one battle per thread.
+     *
+     * @param tolerance      the largest acceptable half-width of the win probability interval, e.g. 0.02
+     * @param budget         the time the estimate may take
+     * @param maxSimulations the most battles to simulate
+     * @param seed           the seed for the random attack orders
+     * @return the estimated outcome, with <code>converged</code> false if it stopped before reaching the tolerance
+     */
+    public BattleEstimate estimateUntil(double tolerance, @NonNull Duration budget, int maxSimulations, long seed)
+    {
+        if (maxSimulations < 1) throw new IllegalArgumentException("maxSimulations must be positive: " + maxSimulations);
+
+        long deadline = System.nanoTime() + budget.toNanos();
+        int batch = Math.max(MIN_SIMULATIONS, pool.getParallelism() * CHUNK);
+        SplittableRandom random = new SplittableRandom(seed);
+        Tally total = new Tally();
+        boolean converged = false;
+
+        while (total.battles < maxSimulations)
+        {
+            total = total.plus(simulate(Math.min(batch, maxSimulations - total.battles), random, deadline, true));
+            if (total.battles >= MIN_SIMULATIONS && total.winMargin() <= tolerance)
+            {
+                converged = true;
+                break;
+            }
+            if (System.nanoTime() - deadline > 0) break;
+        }
+
+        BattleEstimate estimate = total.toEstimate(converged);
+        logger.debug("Estimated battle in {}: {}", sector, estimate);
+        return estimate;
+    }
+
+
+    /**
+     * Simulates up to <code>battles</code> battles in parallel, one chunk per split of <code>random</code>
+     */
+    private Tally simulate(int battles, SplittableRandom random, long deadline, boolean timed)
+    {
+        int chunks = (battles + CHUNK - 1) / CHUNK;
+        SplittableRandom[] randoms = new SplittableRandom[chunks];
+        for (int c = 0; c < chunks; c++)
+        {
+            randoms[c] = random.split();      // Split in chunk order so the result does not depend on scheduling
+        }
+        return pool.invoke(new ChunkTask(randoms, battles, 0, chunks, deadline, timed));
+    }
+
+
+    /**
+     * The live entities of one fleet in the sector, copied when the estimator is created
+     */
+    private static final class Side
+    {
+        private final double[] baseHealth;
+        private final byte[] baseFlags;
+        private final double[] shipHealth;
+        private final int[] shipCrew;
+        private final byte[] shipFlags;
+        private final int[] dockedTo;           // The index of each ship's starbase in baseHealth, or -1
+
+        Side(Fleet fleet, Sector sector)
+        {
+            List<Starbase> bases = new ArrayList<>();
+            for (Starbase base : fleet.getStarbases())
+            {
+                if (!base.isDestroyed() && base.inSector(sector.x(), sector.y())) bases.add(base);
+            }
+            List<Starship> ships = new ArrayList<>();
+            for (Starship ship : fleet.getStarships())
+            {
+                if (!ship.isDestroyed() && ship.inSector(sector.x(), sector.y())) ships.add(ship);
+            }
+
+            baseHealth = new double[bases.size()];
+            baseFlags = new byte[bases.size()];
+            for (int i = 0; i < baseHealth.length; i++)
+            {
+                Starbase base = bases.get(i);
+                baseHealth[i] = base.getHealth();
+                baseFlags[i] = base.store.flags[base.slot];
+            }
+
+            shipHealth = new double[ships.size()];
+            shipCrew = new int[ships.size()];
+            shipFlags = new byte[ships.size()];
+            dockedTo = new int[ships.size()];
+            for (int i = 0; i < shipHealth.length; i++)
+            {
+                Starship ship = ships.get(i);
+                shipHealth[i] = ship.getHealth();
+                shipCrew[i] = ship.getCrew();
+                shipFlags[i] = ship.store.flags[ship.slot];
+                dockedTo[i] = bases.indexOf(ship.getDockedBase());
+            }
+        }
+
+        int size()
+        {
+            return baseHealth.length + shipHealth.length;
+        }
+    }
+
+
+    /**
+     * Running totals over simulated battles
+     */
+    private static final class Tally
+    {
+        private int battles;
+        private int wins;
+        private long losses;
+        private long lossesSquared;
+        private long enemyLosses;
+        private long enemyLossesSquared;
+
+        void add(boolean won, int lost, int enemyLost)
+        {
+            battles++;
+            if (won) wins++;
+            losses += lost;
+            lossesSquared += (long) lost * lost;
+            enemyLosses += enemyLost;
+            enemyLossesSquared += (long) enemyLost * enemyLost;
+        }
+
+        Tally plus(Tally other)
+        {
+            Tally sum = new Tally();
+            sum.battles = battles + other.battles;
+            sum.wins = wins + other.wins;
+            sum.losses = losses + other.losses;
+            sum.lossesSquared = lossesSquared + other.lossesSquared;
+            sum.enemyLosses = enemyLosses + other.enemyLosses;
+            sum.enemyLossesSquared = enemyLossesSquared + other.enemyLossesSquared;
+            return sum;
+        }
+
+        /**
+         * Gets the half-width of the Wilson score interval for the win probability
+         */
+        double winMargin()
+        {
+            double n = battles;
+            double p = wins / n;
+            return Z * Math.sqrt(p * (1 - p) / n + Z * Z / (4 * n * n)) / (1 + Z * Z / n);
+        }
+
+        /**
+         * Gets the half-width of the normal interval for a mean, from a sum and a sum of squares
+         */
+        private double meanMargin(long sum, long squares)
+        {
+            if (battles < 2) return Double.POSITIVE_INFINITY;
+            double n = battles;
+            double variance = Math.max(0, (squares - sum * (double) sum / n) / (n - 1));
+            return Z * Math.sqrt(variance / n);
+        }
+
+        BattleEstimate toEstimate(boolean converged)
+        {
+            double n = battles;
+            double p = wins / n;
+            double centre = (p + Z * Z / (2 * n)) / (1 + Z * Z / n);
+            double margin = winMargin();
+            // The bounds always contain p; the max and min only guard against rounding at p = 0 or 1
+            return new BattleEstimate(battles, p, Math.min(p, centre - margin), Math.max(p, centre + margin),
+                    losses / n, meanMargin(losses, lossesSquared), enemyLosses / n,
+                    meanMargin(enemyLosses, enemyLossesSquared), converged);
+        }
+    }
+
+
+    /**
+     * Simulates a range of chunks, splitting it in two until it is a single chunk
+     */
+    @SuppressWarnings("serial")     // Fork-join tasks are never serialized
+    private final class ChunkTask extends RecursiveTask<Tally>
+    {
+        private final SplittableRandom[] randoms;
+        private final int battles;
+        private final int from;
+        private final int to;
+        private final long deadline;
+        private final boolean timed;
+
+        ChunkTask(SplittableRandom[] randoms, int battles, int from, int to, long deadline, boolean timed)
+        {
+            this.randoms = randoms;
+            this.battles = battles;
+            this.from = from;
+            this.to = to;
+            this.deadline = deadline;
+            this.timed = timed;
+        }
+
+        @Override
+        protected Tally compute()
+        {
+            if (to - from == 1)
+            {
+                int count = Math.min(CHUNK, battles - from * CHUNK);
+                return new Battle().simulate(count, randoms[from], deadline, timed);
+            }
+
+            int mid = (from + to) >>> 1;
+            ChunkTask left = new ChunkTask(randoms, battles, from, mid, deadline, timed);
+            left.fork();
+            Tally right = new ChunkTask(randoms, battles, mid, to, deadline, timed).compute();
+            return left.join().plus(right);
+        }
+    }
+
+
+    /**
+     * One chunk's simulation state: an arena holding copies of both sides, and scratch arrays reused by every
+     * battle in the chunk
+     */
+    private final class Battle
+    {
+        private final SkirmishArena arena = new SkirmishArena(attackers.size() + defenders.size());
+        private final List<Starbase> bases = new ArrayList<>();
+        private final List<Starship> ships = new ArrayList<>();
+        private final Entity[][] targets = {new Entity[attackers.size()], new Entity[defenders.size()]};
+        private final int[] targetCount = new int[2];
+        private final Starship[] order = new Starship[attackers.shipHealth.length + defenders.shipHealth.length];
+        private Fleet attacking;
+        private Fleet defending;
+
+        /**
+         * Simulates up to <code>count</code> battles, at least one, stopping early if timed and past the deadline
+         */
+        Tally simulate(int count, SplittableRandom random, long deadline, boolean timed)
+        {
+            Tally tally = new Tally();
+            for (int i = 0; i < count; i++)
+            {
+                if (i > 0 && timed && System.nanoTime() - deadline > 0) break;
+
+                setUp();
+                fight(random);
+                boolean won = targetCount[1] == 0 && targetCount[0] > 0;
+                tally.add(won, attackers.shipHealth.length - (int) attacking.getStats().getLiveStarships(),
+                        defenders.shipHealth.length - (int) defending.getStats().getLiveStarships());
+            }
+            return tally;
+        }
+
+        /**
+         * Copies both sides into fresh arena entities
+         */
+        private void setUp()
+        {
+            arena.reset();
+            attacking = arena.fleet(1);
+            defending = arena.fleet(2);
+            int orderSize = copy(attackers, attacking, 0, 0);
+            copy(defenders, defending, 1, orderSize);
+        }
+
+        /**
+         * Copies one side into the arena, filling its target list and its part of the attack order
+         *
+         * @return the attack order size after this side's ships
+         */
+        private int copy(Side side, Fleet fleet, int index, int orderSize)
+        {
+            bases.clear();
+            ships.clear();
+            int count = 0;
+            for (int i = 0; i < side.baseHealth.length; i++)
+            {
+                Starbase base = arena.starbase(sector);
+                base.restoreState(side.baseHealth[i], 0, side.baseFlags[i]);
+                bases.add(base);
+                targets[index][count++] = base;
+            }
+            for (int i = 0; i < side.shipHealth.length; i++)
+            {
+                Starship ship = arena.starship(sector);
+                ship.restoreState(side.shipHealth[i], side.shipCrew[i], side.shipFlags[i]);
+                if (side.dockedTo[i] >= 0) bases.get(side.dockedTo[i]).restoreDocked(ship);
+                ships.add(ship);
+                targets[index][count++] = ship;
+                order[orderSize++] = ship;
+            }
+            fleet.restoreEntities(bases, ships);
+            targetCount[index] = count;
+            return orderSize;
+        }
+
+        /**
+         * Fights rounds in a random order until the battle ends
+         */
+        private void fight(SplittableRandom random)
+        {
+            for (int round = 0; round < MAX_ROUNDS; round++)
+            {
+                shuffle(random);
+                boolean attacked = false;
+                for (Starship ship : order)
+                {
+                    if (ship.isDestroyed()) continue;
+                    if (ship.getDocked())
+                    {
+                        if (ship.isRepairing()) ship.repair();
+                        continue;
+                    }
+
+                    int enemy = ship.getFleet() == attacking ? 1 : 0;
+                    if (targetCount[enemy] == 0) return;
+
+                    int t = random.nextInt(targetCount[enemy]);
+                    Entity target = targets[enemy][t];
+                    target.takeHit(ship.getAttackStrength(), ship);
+                    attacked = true;
+                    if (target.isDestroyed()) targets[enemy][t] = targets[enemy][--targetCount[enemy]];
+                }
+                if (!attacked || targetCount[0] == 0 || targetCount[1] == 0) return;
+            }
+        }
+
+        /**
+         * Shuffles the attack order in place
+         */
+        private void shuffle(SplittableRandom random)
+        {
+            for (int i = order.length - 1; i > 0; i--)
+            {
+                int j = random.nextInt(i + 1);
+                Starship swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.tom.entities;
+
+/**
+ * A compact summary of a batch of attacks resolved by <code>Fleet.attackWithAllBatched</code>.
+ * Defined as a record as this is purely a data-carrier class.
+ *
+ * @param attacks          the number of attacks that applied damage
+ * @param damage           the total damage applied to the targets
+ * @param crewLost         the total crew lost by starship targets
+ * @param targetsDestroyed the number of targets destroyed by this batch
+ */
+public record BattleReport(int attacks, double damage, int crewLost, int targetsDestroyed)
+{
+    /**
+     * A report for a batch where nothing happened
+     */
+    public static final BattleReport EMPTY = new BattleReport(0, 0, 0, 0);
+
+
+    /**
+     * Combines this report with another, e.g. to total the attacks on several targets
+     *
+     * @param other the report to add
+     * @return a new <code>BattleReport</code> with the summed values
+     */
+    public BattleReport plus(BattleReport other)
+    {
+        return new BattleReport(attacks + other.attacks, damage + other.damage,
+                crewLost + other.crewLost, targetsDestroyed + other.targetsDestroyed);
+    }
+}
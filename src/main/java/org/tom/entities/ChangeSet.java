@@ -0,0 +1,96 @@
+package org.tom.entities;
+
+import java.util.Arrays;
+
+/**
+ * The entities of a store that changed since the set was last cleared, each with a mask of the
+ * <code>StateDelta</code> bits of the fields that changed, in the order they first changed. Marking takes
+ * constant time. Shared by the trackers that turn a turn's changes into something else, such as
+ * <code>StateDelta</code> and <code>WorldPublisher</code>.
+ * <p>
+ * Not thread-safe; the trackers lock around it in concurrent mode.
+ * </p>
+ */
+final class ChangeSet
+{
+    private byte[] masks;               // By store slot, 0 if the entity is unchanged
+    private Entity[] changed;           // The changed entities, in the order they first changed
+    private int count;
+
+
+    /**
+     * Creates an empty set
+     *
+     * @param capacity the number of slots and changes to make room for before growing
+     */
+    ChangeSet(int capacity)
+    {
+        masks = new byte[Math.max(16, capacity)];
+        changed = new Entity[Math.max(16, capacity)];
+    }
+
+
+    /**
+     * Records that some fields of an entity changed
+     *
+     * @param entity the changed <code>Entity</code>
+     * @param bits   the <code>StateDelta</code> bits of the fields that changed
+     */
+    void mark(Entity entity, int bits)
+    {
+        int slot = entity.slot;
+        if (slot >= masks.length) masks = Arrays.copyOf(masks, Math.max(slot + 1, masks.length * 2));
+
+        if (masks[slot] == 0)
+        {
+            if (count == changed.length) changed = Arrays.copyOf(changed, count * 2);
+            changed[count++] = entity;
+        }
+        masks[slot] |= (byte) bits;
+    }
+
+
+    /**
+     * Gets the number of changed entities
+     */
+    int size()
+    {
+        return count;
+    }
+
+
+    /**
+     * Gets a changed entity
+     *
+     * @param i the position in the order the entities first changed
+     */
+    Entity get(int i)
+    {
+        return changed[i];
+    }
+
+
+    /**
+     * Gets the changed fields of a changed entity
+     *
+     * @param i the position in the order the entities first changed
+     */
+    int mask(int i)
+    {
+        return masks[changed[i].slot];
+    }
+
+
+    /**
+     * Empties the set
+     */
+    void clear()
+    {
+        for (int i = 0; i < count; i++)
+        {
+            masks[changed[i].slot] = 0;
+            changed[i] = null;
+        }
+        count = 0;
+    }
+}
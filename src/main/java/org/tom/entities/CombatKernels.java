@@ -0,0 +1,164 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Applies the starship combat formulas to whole batches of ships held in primitive arrays, for callers that
+ * resolve thousands of ships per turn. Each kernel gives exactly the same result for each element as the
+ * per-ship method it is named after.
+ * <p>
+ * When the JVM is started with <code>--add-modules jdk.incubator.vector</code>, the kernels run on SIMD lanes
+ * through <code>VectorKernels</code>; otherwise, or with <code>-Dorg.tom.vector=false</code>, they fall back to
+ * plain loops over the scalar formulas. The vector path is never loaded unless it is used, so the game runs
+ * without the incubator module.
+ * </p>
+ */
+public final class CombatKernels
+{
+    private static final Logger logger = LogManager.getLogger();
+
+    /**
+     * True if the kernels run on the Vector API
+     */
+    public static final boolean VECTORIZED = vectorAvailable();
+
+
+    /**
+     * Not instantiable; all methods are static
+     */
+    private CombatKernels()
+    {}
+
+
+    /**
+     * Checks whether the Vector API module is present and not turned off
+     */
+    private static boolean vectorAvailable()
+    {
+        if (!Boolean.parseBoolean(System.getProperty("org.tom.vector", "true"))) return false;
+
+        boolean present = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+        logger.debug("Combat kernels are {}", present ? "vectorized" : "scalar");
+        return present;
+    }
+
+
+    /**
+     * Calculates the attack strength of each ship, as <code>Starship.getAttackStrength</code>
+     *
+     * @param health the health of each ship
+     * @param out    receives the attack strength of each ship
+     * @param n      the number of ships
+     */
+    public static void attack(double[] health, double[] out, int n)
+    {
+        if (VECTORIZED)
+        {
+            VectorKernels.attack(health, out, n);
+        } else
+        {
+            scalarAttack(health, out, 0, n);
+        }
+    }
+
+
+    /**
+     * Calculates the defence strength of each ship, as <code>Starship.getDefenceStrength</code>
+     *
+     * @param health the health of each ship
+     * @param crew   the crew of each ship
+     * @param out    receives the defence strength of each ship
+     * @param n      the number of ships
+     */
+    public static void defence(double[] health, int[] crew, double[] out, int n)
+    {
+        if (VECTORIZED)
+        {
+            VectorKernels.defence(health, crew, out, n);
+        } else
+        {
+            scalarDefence(health, crew, out, 0, n);
+        }
+    }
+
+
+    /**
+     * Calculates the damage each ship takes from a hit, as <code>Entity.takeDamage</code> applies it: the damage
+     * less the defence, at least 5, and no more than the remaining health
+     *
+     * @param damage  the incoming damage for each ship
+     * @param defence the defence strength of each ship
+     * @param health  the health of each ship
+     * @param out     receives the applied damage for each ship
+     * @param n       the number of ships
+     */
+    public static void appliedDamage(double[] damage, double[] defence, double[] health, double[] out, int n)
+    {
+        if (VECTORIZED)
+        {
+            VectorKernels.appliedDamage(damage, defence, health, out, n);
+        } else
+        {
+            scalarAppliedDamage(damage, defence, health, out, 0, n);
+        }
+    }
+
+
+    /**
+     * Calculates the crew each ship loses to a hit, as <code>Starship.calculateCrewLost</code>
+     *
+     * @param damage the applied damage for each ship
+     * @param crew   the crew of each ship
+     * @param out    receives the crew lost by each ship
+     * @param n      the number of ships
+     */
+    public static void crewLost(double[] damage, int[] crew, int[] out, int n)
+    {
+        if (VECTORIZED)
+        {
+            VectorKernels.crewLost(damage, crew, out, n);
+        } else
+        {
+            scalarCrewLost(damage, crew, out, 0, n);
+        }
+    }
+
+
+    // The scalar kernels also finish off the elements left over after the vector loops
+
+    static void scalarAttack(double[] health, double[] out, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            out[i] = Starship.attackFor(health[i]);
+        }
+    }
+
+
+    static void scalarDefence(double[] health, int[] crew, double[] out, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            out[i] = Starship.defenceFor(health[i], crew[i]);
+        }
+    }
+
+
+    static void scalarAppliedDamage(double[] damage, double[] defence, double[] health, double[] out, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            out[i] = Entity.appliedDamageFor(damage[i], defence[i], health[i]);
+        }
+    }
+
+
+    static void scalarCrewLost(double[] damage, int[] crew, int[] out, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            out[i] = Starship.crewLostFor(damage[i], crew[i]);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jspecify.annotations.NonNull;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Decides which per-entity combat events are logged individually. By default every attack, move, dock, undock
+ * and destruction is logged at info level as it happens. With many ships that floods the log, so the mode can be
+ * switched to log only every n-th event of each kind, or none of them, with a count of each kind logged once per
+ * turn by <code>endTurn</code> instead.
+ * <p>
+ * Events are only counted while info logging is enabled, so this costs nothing when logging is off. Counting is
+ * thread-safe, so events may be recorded from the fork-join turn simulator.
+ * </p>
+ */
+public final class CombatLog
+{
+    private static final Logger logger = LogManager.getLogger();
+
+    /**
+     * The kinds of event that are counted
+     */
+    public enum Event
+    {
+        ATTACK, MOVE, DOCK, UNDOCK, DESTROYED
+    }
+
+    /**
+     * How events are logged
+     */
+    public enum Mode
+    {
+        EACH,           // Log every event as it happens
+        SAMPLED,        // Log every n-th event of each kind, and a summary at the end of the turn
+        AGGREGATED      // Log only a summary at the end of the turn
+    }
+
+    private static final Event[] EVENTS = Event.values();
+    private static final AtomicLongArray counts = new AtomicLongArray(EVENTS.length);    // Since the last endTurn
+    private static volatile Mode mode = Mode.EACH;
+    private static volatile int sampleRate = 1;
+
+
+    private CombatLog()
+    {}
+
+
+    /**
+     * Sets how combat events are logged
+     *
+     * @param newMode       the new <code>Mode</code>
+     * @param newSampleRate log one event in this many of each kind in <code>SAMPLED</code> mode
+     */
+    public static void setMode(@NonNull Mode newMode, int newSampleRate)
+    {
+        if (newSampleRate < 1) throw new IllegalArgumentException("sampleRate must be positive: " + newSampleRate);
+
+        sampleRate = newSampleRate;
+        mode = newMode;
+        reset();
+    }
+
+
+    /**
+     * Gets how combat events are logged
+     *
+     * @return the current <code>Mode</code>
+     */
+    public static Mode getMode()
+    {
+        return mode;
+    }
+
+
+    /**
+     * Records an event and decides whether it should be logged on its own. Callers check that info logging is
+     * enabled first, so that nothing is counted while logging is off.
+     *
+     * @param event the kind of event
+     * @return true if the caller should log the event
+     */
+    static boolean shouldLog(@NonNull Event event)
+    {
+        Mode current = mode;
+        if (current == Mode.EACH) return true;
+
+        long n = counts.incrementAndGet(event.ordinal());
+        return current == Mode.SAMPLED && (n - 1) % sampleRate == 0;     // The first of every sampleRate
+    }
+
+
+    /**
+     * Gets how many events of a kind have been recorded since the last <code>endTurn</code>. Always 0 in
+     * <code>EACH</code> mode, as events are not counted.
+     *
+     * @param event the kind of event
+     * @return the number of events recorded
+     */
+    public static long count(@NonNull Event event)
+    {
+        return counts.get(event.ordinal());
+    }
+
+
+    /**
+     * Logs the number of events of each kind recorded during the turn and starts counting again. Does nothing in
+     * <code>EACH</code> mode, as every event has already been logged.
+     */
+    public static void endTurn()
+    {
+        if (mode == Mode.EACH || !logger.isInfoEnabled()) return;
+
+        logger.info("Turn events: {} attacks, {} moves, {} docks, {} undocks, {} destroyed",
+                counts.getAndSet(Event.ATTACK.ordinal(), 0), counts.getAndSet(Event.MOVE.ordinal(), 0),
+                counts.getAndSet(Event.DOCK.ordinal(), 0), counts.getAndSet(Event.UNDOCK.ordinal(), 0),
+                counts.getAndSet(Event.DESTROYED.ordinal(), 0));
+    }
+
+
+    /**
+     * Clears the event counts
+     */
+    private static void reset()
+    {
+        for (int i = 0; i < EVENTS.length; i++)
+        {
+            counts.set(i, 0);
+        }
+    }
+}
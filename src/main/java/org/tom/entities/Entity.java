@@ -2,11 +2,16 @@ package org.tom.entities;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.jspecify.annotations.NonNull;
 
+import java.lang.invoke.VarHandle;
 import java.util.concurrent.atomic.AtomicLong;
 
+import static org.apache.logging.log4j.util.Unbox.box;
+
 /**
  * The parent class for the game entities. Defines properties common to all entities.
+ * The mutable state of each entity is held in an <code>EntityStore</code> slot; this class is a view over it.
  */
 public abstract class Entity
 {
@@ -14,18 +19,18 @@ public abstract class Entity
     private static final AtomicLong NEXT_ID = new AtomicLong(1); // Used for entity IDs
     protected final double maxHealth;
     protected final double maxDefenceStrength;
-    private Fleet fleet;      // The fleet this entity is in
     private final long id;
 
-    protected double health;
-    protected double defenceStrength;
-    protected Sector sector;
-    protected boolean destroyed;     // If this entity has been destroyed
+    // Health, defence, flags, position and fleet live in the store at this slot
+    protected final EntityStore store;
+    protected final int slot;
+    int sectorSlot = -1;            // Position in its SectorIndex bucket, or -1 if not indexed
+    int mapSlot = -1;               // Position in its SectorMap chunk, or -1 if not on a map
+    private String label;           // Returned by toString, built on first use after the fleet changes
 
 
     /**
-     * Sets the base values for an Entity. Health and DefenseStrength are initially set to maximum.
-     * Gets the next value from NEXT_ID and sets it to this Entity's ID.
+     * Sets the base values for an Entity in the shared <code>EntityStore</code>.
      *
      * @param maxHealth          the maximum total health
      * @param maxDefenceStrength the maximum resistance to damage
@@ -33,15 +38,114 @@ public abstract class Entity
      */
     public Entity(double maxHealth, double maxDefenceStrength, Sector sector)
     {
-        this.id = NEXT_ID.getAndIncrement();    // Get the id from the AtomicLong and increment for uniqueness
+        this(maxHealth, maxDefenceStrength, sector, EntityStore.shared());
+    }
+
+
+    /**
+     * Sets the base values for an Entity. Allocates a slot in <code>store</code> for its state, with health and
+     * defence strength initially set to maximum. Gets the next value from NEXT_ID and sets it to this Entity's ID.
+     *
+     * @param maxHealth          the maximum total health
+     * @param maxDefenceStrength the maximum resistance to damage
+     * @param sector             the starting position of the entity
+     * @param store              the <code>EntityStore</code> holding this entity's state
+     */
+    @SuppressWarnings("this-escape")    // The shared store's cleaner only keeps a phantom reference to the entity
+    public Entity(double maxHealth, double maxDefenceStrength, Sector sector, EntityStore store)
+    {
+        // Get the id from the AtomicLong and increment for uniqueness
+        this(maxHealth, maxDefenceStrength, sector.x(), sector.y(), store, NEXT_ID.getAndIncrement());
+    }
+
+
+    /**
+     * Sets the base values for an Entity with a given ID. Used to restore entities from a snapshot, where the
+     * ID was handed out by an earlier run.
+     *
+     * @param maxHealth          the maximum total health
+     * @param maxDefenceStrength the maximum resistance to damage
+     * @param x                  the starting x coordinate
+     * @param y                  the starting y coordinate
+     * @param store              the <code>EntityStore</code> holding this entity's state
+     * @param id                 the unique ID of this entity
+     */
+    Entity(double maxHealth, double maxDefenceStrength, int x, int y, EntityStore store, long id)
+    {
+        this.id = id;
         this.maxHealth = maxHealth;
         this.maxDefenceStrength = maxDefenceStrength;
-        this.sector = sector;
-        this.fleet = null;      // No fleet alignment by default
+        this.store = store;
+        // Health and defence start at maximum; the fleet column starts null: no fleet alignment by default
+        this.slot = store.allocate(x, y, maxHealth, maxDefenceStrength);
+        store.freeOnCollect(this, slot);
+    }
+
+
+    /**
+     * Gets the ID that will be given to the next entity created
+     *
+     * @return the next value of the ID counter
+     */
+    static long peekNextId()
+    {
+        return NEXT_ID.get();
+    }
+
+
+    /**
+     * Hands out a block of consecutive IDs at once, for loaders that create many entities
+     *
+     * @param count the number of IDs to reserve
+     * @return the first ID of the block
+     */
+    static long reserveIds(long count)
+    {
+        return NEXT_ID.getAndAdd(count);
+    }
+
 
-        // Set values to maximum initially
-        health = maxHealth;
-        defenceStrength = maxDefenceStrength;
+    /**
+     * Moves the ID counter forward to at least <code>nextId</code>, so that new entities cannot reuse the IDs of
+     * restored ones. Never moves the counter back.
+     *
+     * @param nextId the lowest ID that may be handed out next
+     */
+    static void advanceNextId(long nextId)
+    {
+        NEXT_ID.accumulateAndGet(nextId, Math::max);
+    }
+
+
+    /**
+     * Returns this entity to the state of a new one at the given position, with no fleet, keeping its ID and
+     * slot. Used by <code>SkirmishArena</code> to reuse entities; subclasses reset their own state as well.
+     *
+     * @param x the new x coordinate
+     * @param y the new y coordinate
+     */
+    void reset(int x, int y)
+    {
+        store.health[slot] = maxHealth;
+        store.defence[slot] = maxDefenceStrength;
+        store.flags[slot] = 0;
+        store.sectorX[slot] = x;
+        store.sectorY[slot] = y;
+        store.fleet[slot] = null;
+        sectorSlot = -1;
+        mapSlot = -1;
+        label = null;
+    }
+
+
+    /**
+     * Gets the unique ID of this entity
+     *
+     * @return the ID
+     */
+    long getId()
+    {
+        return id;
     }
 
 
@@ -61,7 +165,7 @@ public abstract class Entity
      */
     public double getHealth()
     {
-        return health;
+        return store.health[slot];
     }
 
 
@@ -72,7 +176,7 @@ public abstract class Entity
      */
     public Fleet getFleet()
     {
-        return fleet;
+        return store.fleet[slot];
     }
 
 
@@ -83,7 +187,45 @@ public abstract class Entity
      */
     public Sector getSector()
     {
-        return sector;
+        return new Sector(store.sectorX[slot], store.sectorY[slot]);
+    }
+
+
+    /**
+     * Checks whether this entity is in a sector without creating a <code>Sector</code> object, for loops that
+     * would otherwise call <code>getSector</code> on every entity
+     *
+     * @param x the x coordinate of the sector
+     * @param y the y coordinate of the sector
+     * @return true if this entity is at those coordinates
+     */
+    boolean inSector(int x, int y)
+    {
+        return store.sectorX[slot] == x && store.sectorY[slot] == y;
+    }
+
+
+    /**
+     * Checks whether this entity is in the same sector as another without creating <code>Sector</code> objects
+     *
+     * @param other the other <code>Entity</code>
+     * @return true if both entities share coordinates
+     */
+    boolean inSameSectorAs(@NonNull Entity other)
+    {
+        return store.sectorX[slot] == other.store.sectorX[other.slot]
+                && store.sectorY[slot] == other.store.sectorY[other.slot];
+    }
+
+
+    /**
+     * Gets the <code>EntityStore</code> holding this entity's state
+     *
+     * @return the backing store
+     */
+    public EntityStore getStore()
+    {
+        return store;
     }
 
 
@@ -94,7 +236,7 @@ public abstract class Entity
      */
     public boolean isDestroyed()
     {
-        return destroyed;
+        return store.hasFlag(slot, EntityStore.DESTROYED);
     }
 
 
@@ -107,13 +249,251 @@ public abstract class Entity
      */
     public void setHealth(double newHealth)
     {
-        this.health = Math.max(0.0, Math.min(newHealth, maxHealth));
+        double health = writeHealth(newHealth);
+
+        EventJournal journal = store.journal;
+        if (journal != null) journal.health(this, health);
+    }
+
+
+    /**
+     * Helper method for <code>setHealth</code> that updates the store without journalling the change, for
+     * callers that journal the event that caused it instead
+     *
+     * @return the health written, after clamping
+     */
+    private double writeHealth(double newHealth)
+    {
+        double health = Math.max(0.0, Math.min(newHealth, maxHealth));
+        double old;
+        if (store.concurrent)
+        {
+            old = store.getAndSetHealth(slot, health);
+        } else
+        {
+            old = store.health[slot];
+            store.health[slot] = health;
+        }
+        refreshDefence();
+        changed(StateDelta.HEALTH_CHANGED);
+        FleetStats stats = fleetStats();
+        if (stats != null) stats.healthChanged(this, health - old);
+
+        if (health == 0) markDestroyed();
+        return health;
+    }
+
+
+    /**
+     * Replaces the health of this <code>Entity</code> with <code>newHealth</code> if it is still
+     * <code>expected</code>. In concurrent mode this is a compare-and-set, so a change made by another thread in
+     * the meantime is never overwritten; otherwise it always succeeds.
+     *
+     * @param expected  the health the new value was calculated from
+     * @param newHealth the new health, already within 0 and the maximum
+     * @return true if the health was replaced
+     */
+    boolean replaceHealth(double expected, double newHealth)
+    {
+        if (!store.concurrent)
+        {
+            writeHealth(newHealth);
+            return true;
+        }
+
+        if (!store.compareAndSetHealth(slot, expected, newHealth)) return false;
+        refreshDefence();
+        changed(StateDelta.HEALTH_CHANGED);
+        FleetStats stats = fleetStats();
+        if (stats != null) stats.healthChanged(this, newHealth - expected);
+        if (newHealth == 0) markDestroyed();
+        return true;
+    }
+
+
+    /**
+     * Sets the destroyed flag of this <code>Entity</code>, logging the destruction only the first time
+     */
+    private void markDestroyed()
+    {
+        if (store.setFlagOnce(slot, EntityStore.DESTROYED))
+        {
+            defenceChanged();
+            changed(StateDelta.DESTROYED_CHANGED);
+            FleetStats stats = fleetStats();
+            if (stats != null) stats.destroyed(this);
+            EventJournal journal = store.journal;
+            if (journal != null) journal.destroyed(this);
+            if (!store.quiet) recordDestroyed();
+            if (logsEvent(CombatLog.Event.DESTROYED))
+            {
+                logger.info("{} has been destroyed", this);
+            }
+        }
+    }
+
+
+    /**
+     * Commits an <code>EntityDestroyedEvent</code> for this entity, if the event is enabled in a JFR recording
+     */
+    private void recordDestroyed()
+    {
+        EntityDestroyedEvent event = new EntityDestroyedEvent();
+        if (!event.shouldCommit()) return;
+
+        Fleet fleet = store.fleet[slot];
+        event.entityId = id;
+        event.starship = this instanceof Starship;
+        event.fleet = fleet == null ? 0 : fleet.getPlayer().playerNo();
+        event.x = store.sectorX[slot];
+        event.y = store.sectorY[slot];
+        event.commit();
+    }
+
+
+    /**
+     * Gets whether a combat event of this entity should be logged: info logging is on, the entity is not part of
+     * a quiet simulation store, and <code>CombatLog</code> picks the event
+     *
+     * @param event the kind of event
+     * @return true if the event should be logged now
+     */
+    boolean logsEvent(CombatLog.Event event)
+    {
+        return !store.quiet && logger.isInfoEnabled() && CombatLog.shouldLog(event);
+    }
+
+
+    /**
+     * Counts an operation of this entity in <code>Metrics</code>, unless the entity is part of a quiet simulation
+     * store
+     *
+     * @param operation the kind of operation
+     * @param outcome   how it ended
+     * @param start     the result of <code>Metrics.start</code> when the operation began
+     */
+    void recordMetric(Metrics.Operation operation, Metrics.Outcome outcome, long start)
+    {
+        if (!store.quiet) Metrics.record(operation, outcome, start);
+    }
+
+
+    /**
+     * Sets or clears a flag of this entity, marking it changed for delta export if the flag was different
+     *
+     * @param flag  one of the <code>EntityStore</code> flag bits
+     * @param value true to set the flag, false to clear it
+     */
+    void setFlag(byte flag, boolean value)
+    {
+        if (store.hasFlag(slot, flag) == value) return;
+
+        store.setFlag(slot, flag, value);
+        changed(flag << 3);     // The flag's StateDelta bit
+        FleetStats stats = fleetStats();
+        if (stats != null && flag == EntityStore.DOCKED) stats.dockedChanged(value);
+    }
+
+
+    /**
+     * Marks fields of this entity as changed, if its store is tracking changes for delta export, published views or
+     * its state hash
+     *
+     * @param bits the <code>StateDelta</code> bits of the fields that changed
+     */
+    void changed(int bits)
+    {
+        StateDelta delta = store.delta;
+        if (delta != null) delta.mark(this, bits);
+        WorldPublisher publisher = store.publisher;
+        if (publisher != null) publisher.mark(this, bits);
+        StateHash stateHash = store.stateHash;
+        if (stateHash != null) stateHash.mark(this, bits);
+    }
+
+
+    /**
+     * Gets the running totals of the fleet this entity belongs to
+     *
+     * @return the fleet's <code>FleetStats</code>, or null if this entity has no fleet
+     */
+    FleetStats fleetStats()
+    {
+        Fleet fleet = store.fleet[slot];
+        return fleet == null ? null : fleet.getStats();
+    }
+
+
+    /**
+     * Called after the defence strength of this entity changes or it is destroyed. Does nothing by default;
+     * docked starships override it to tell their starbase.
+     */
+    void defenceChanged()
+    {}
+
+
+    /**
+     * Calculates the defence strength that comes from this entity itself at the given health, without any
+     * support from other entities. Declared <code>abstract</code> as entities have different methods for
+     * calculating defence strength
+     *
+     * @param health the health to calculate the defence for
+     * @return a <code>double</code> representing the intrinsic defence strength
+     */
+    protected abstract double intrinsicDefenceAt(double health);
+
+
+    /**
+     * Calculates the full defence strength of this entity at the given health. Used to apply damage atomically
+     * against a health value read once. Starbases override this to add their docked support.
+     *
+     * @param health the health to calculate the defence for
+     * @return a <code>double</code> representing the defence strength
+     */
+    double defenceStrengthAt(double health)
+    {
+        return intrinsicDefenceAt(health);
+    }
+
+
+    /**
+     * Writes saved state straight into this entity's slot and recalculates its defence strength, without
+     * journalling or tracking the change. Used to restore a snapshot and to set up estimator battles.
+     *
+     * @param health the health
+     * @param crew   the crew, 0 for a starbase
+     * @param flags  the <code>EntityStore</code> flag bits
+     */
+    void restoreState(double health, int crew, byte flags)
+    {
+        store.health[slot] = health;
+        store.crew[slot] = crew;
+        store.flags[slot] = flags;
+        refreshDefence();
+    }
+
 
-        if (this.health == 0)
+    /**
+     * Recalculates the defence strength held in the store after the state it depends on has changed.
+     * In concurrent mode the value is written again until it matches the state it was calculated from, so the
+     * column cannot be left holding a value calculated by a thread that lost a race.
+     */
+    void refreshDefence()
+    {
+        if (!store.concurrent)
         {
-            this.destroyed = true;
-            logger.info("{} has been destroyed", this);
+            store.defence[slot] = intrinsicDefenceAt(store.health[slot]);
+        } else
+        {
+            double defence;
+            do
+            {
+                defence = intrinsicDefenceAt(store.getHealthVolatile(slot));
+                store.setDefenceVolatile(slot, defence);
+                VarHandle.fullFence();
+            } while (defence != intrinsicDefenceAt(store.getHealthVolatile(slot)));
         }
+        defenceChanged();
     }
 
 
@@ -124,7 +504,8 @@ public abstract class Entity
      */
     public void setFleet(Fleet fleet)
     {
-        this.fleet = fleet;
+        store.fleet[slot] = fleet;
+        label = null;       // Rebuilt by the next toString
     }
 
 
@@ -136,30 +517,116 @@ public abstract class Entity
      */
     public void takeDamage(double damage)
     {
-        if (destroyed)
+        takeHit(damage, null);
+    }
+
+
+    /**
+     * Applies incoming damage as described in <code>takeDamage</code>, and journals the hit as a single event if
+     * it did any damage. Starships override this to remove crew as well.
+     *
+     * @param damage   the incoming damage, as a <code>double</code>
+     * @param attacker the <code>Starship</code> that caused the damage, or null if there was none
+     */
+    void takeHit(double damage, Starship attacker)
+    {
+        double appliedDamage = applyDamage(damage);
+
+        EventJournal journal = store.journal;
+        if (journal != null && appliedDamage != 0) journal.damage(this, attacker, appliedDamage, getHealth(), 0, 0);
+    }
+
+
+    /**
+     * Applies incoming damage as described in <code>takeDamage</code>. In concurrent mode the health is updated
+     * with a compare-and-set loop, recalculating the damage if another thread changed it first.
+     *
+     * @param damage the incoming damage, as a <code>double</code>
+     * @return the drop in health caused by this hit, 0 if this entity was already destroyed
+     */
+    double applyDamage(double damage)
+    {
+        if (isDestroyed())
         {
             logger.info("{} has been destroyed. Taking 0 damage", this);
-            return;
+            return 0;
         }
 
         // Incoming damage is damage-defenceStrength, or 5, whichever is higher
         // If damage - defence strength < 5, the damage applied is 5.
         // If the damage is higher than the remaining health, health is set to 0.
-        double appliedDamage = Math.min(Math.max(5, damage - getDefenceStrength()), this.health);
+        if (!store.concurrent)
+        {
+            double health = store.health[slot];
+            double appliedDamage = appliedDamageFor(damage, getDefenceStrength(), health);
 
-        this.setHealth(health - appliedDamage);
-        logger.debug("{} taking {} damage. Remaining health: {}", this, appliedDamage, getHealth());
+            writeHealth(health - appliedDamage);
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("{} taking {} damage. Remaining health: {}", this, box(appliedDamage), box(getHealth()));
+            }
+            return Math.max(0, health - store.health[slot]);
+        }
+
+        while (true)
+        {
+            double health = store.getHealthVolatile(slot);
+            if (health == 0) return 0;      // Destroyed by another thread
+
+            double appliedDamage = appliedDamageFor(damage, defenceStrengthAt(health), health);
+            double newHealth = Math.max(0.0, Math.min(health - appliedDamage, maxHealth));
+            if (replaceHealth(health, newHealth))
+            {
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("{} taking {} damage. Remaining health: {}", this, box(appliedDamage), box(newHealth));
+                }
+                return health - newHealth;
+            }
+        }
     }
 
 
     /**
-     * Overrides <code>toString</code> in <code>Object</code>. Outputs the class name
-     * and unique ID for logging
+     * Calculates the damage an entity takes from an attack: <code>damage - defence</code>, at least 5,
+     * and no more than the remaining health
+     *
+     * @param damage  the incoming damage
+     * @param defence the defence strength of the entity
+     * @param health  the remaining health of the entity
+     * @return the damage to subtract from health
+     */
+    static double appliedDamageFor(double damage, double defence, double health)
+    {
+        return Math.min(Math.max(5, damage - defence), health);
+    }
+
+
+    /**
+     * Overrides <code>toString</code> in <code>Object</code>. Outputs the fleet, class name
+     * and unique ID for logging. The string is built once after the fleet changes rather than on every call,
+     * so logging an entity does not allocate.
      *
      * @return a <code>String</code> output of this object
      */
     @Override
     public String toString()
+    {
+        // Racing threads may both build the label, but they build equal strings
+        String current = label;
+        if (current == null)
+        {
+            current = buildLabel();
+            label = current;
+        }
+        return current;
+    }
+
+
+    /**
+     * Helper method for <code>toString</code> that builds the label from the current fleet
+     */
+    private String buildLabel()
     {
         // Gets the class name (e.g. Starship), then appends "#id" where id is the unique id
         return "{" + getFleet() + "} " + getClass().getSimpleName() + "#" + id;
@@ -0,0 +1,37 @@
+package org.tom.entities;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event committed when an entity is destroyed. Disabled by default, and costs nothing unless a recording
+ * enables it.
+ */
+@Name("org.tom.EntityDestroyed")
+@Label("Entity Destroyed")
+@Category({"Project Spaceship", "Combat"})
+@Enabled(false)
+@StackTrace(false)
+final class EntityDestroyedEvent extends Event
+{
+    @Label("Entity Id")
+    long entityId;
+
+    @Label("Starship")
+    boolean starship;
+
+    @Label("Fleet")
+    @Description("The player number of the entity's fleet, or 0 if it had none")
+    int fleet;
+
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+}
@@ -0,0 +1,48 @@
+package org.tom.entities;
+
+/**
+ * The state of one entity at the end of a turn, as seen through a <code>WorldView</code>.
+ * Defined as a record as this is purely a data-carrier class.
+ *
+ * @param id        the entity ID
+ * @param starship  true for a starship, false for a starbase
+ * @param player    the player number of the entity's fleet
+ * @param health    the entity's health
+ * @param crew      the starship's crew, or 0 for a starbase
+ * @param x         the x coordinate of the entity's sector
+ * @param y         the y coordinate of the entity's sector
+ * @param docked    true if the starship is docked to a starbase
+ * @param repairing true if the starship is being repaired
+ * @param destroyed true if the entity has been destroyed
+ */
+public record EntityState(long id, boolean starship, int player, double health, int crew, int x, int y,
+                          boolean docked, boolean repairing, boolean destroyed)
+{
+    /**
+     * Reads an entity's current state from its store
+     *
+     * @param entity the <code>Entity</code>, which must belong to a fleet
+     * @return the entity's state
+     */
+    static EntityState of(Entity entity)
+    {
+        EntityStore store = entity.store;
+        int slot = entity.slot;
+        byte flags = store.flags[slot];
+        return new EntityState(entity.getId(), entity instanceof Starship, store.fleet[slot].getPlayer().playerNo(),
+                store.health[slot], store.crew[slot], store.sectorX[slot], store.sectorY[slot],
+                (flags & EntityStore.DOCKED) != 0, (flags & EntityStore.REPAIRING) != 0,
+                (flags & EntityStore.DESTROYED) != 0);
+    }
+
+
+    /**
+     * Gets the sector the entity was in
+     *
+     * @return the entity's <code>Sector</code>
+     */
+    public Sector sector()
+    {
+        return new Sector(x, y);
+    }
+}
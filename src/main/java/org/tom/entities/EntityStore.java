@@ -0,0 +1,509 @@
+package org.tom.entities;
+
+import org.jspecify.annotations.NonNull;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.Cleaner;
+import java.util.Arrays;
+
+/**
+ * Struct-of-arrays backing store for entity state. Each <code>Entity</code> is allocated a slot, and its health,
+ * defence, crew, flags, position and fleet live in parallel columns at that index rather than in fields of the
+ * entity object. <code>Entity</code>, <code>Starship</code> and <code>Starbase</code> are thin views that read and
+ * write their slot, so sweeping every entity's health or defence is a sequential scan over one primitive array.
+ * <p>
+ * Slots are handed out in creation order and are never reused, so a world's store should be dropped along with
+ * the world. The shared store used by entities created without a store lives for the whole process, so it frees
+ * the slot of each of its entities once the entity is garbage collected, and hands freed slots out again before
+ * growing. Columns grow by doubling, which replaces the arrays, so stores that are updated from several threads
+ * should be created with enough capacity up front.
+ * </p>
+ * <p>
+ * A store created in concurrent mode makes entity health and crew updates atomic: damage is applied with a
+ * compare-and-set loop on the health column, so hits from different threads are never lost, and the destroyed
+ * flag is set exactly once. Stores in the default mode use plain array accesses and are not thread-safe.
+ * </p>
+ */
+public final class EntityStore
+{
+    // Bits of the flags column
+    static final byte DOCKED = 1;
+    static final byte REPAIRING = 1 << 1;
+    static final byte DESTROYED = 1 << 2;
+
+    // Atomic access to single array elements, used in concurrent mode
+    private static final VarHandle DOUBLES = MethodHandles.arrayElementVarHandle(double[].class);
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle BYTES = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final EntityStore SHARED = new EntityStore(DEFAULT_CAPACITY, false, true);
+    private static final Cleaner CLEANER = Cleaner.create();      // Frees the slots of collected shared entities
+
+    // The columns, indexed by slot. Package-private so entities and batch code can read them directly
+    double[] health;
+    double[] defence;       // Defence from the entity itself; starbases add docked support on top
+    int[] crew;
+    byte[] flags;
+    int[] sectorX;
+    int[] sectorY;
+    Fleet[] fleet;
+
+    final boolean concurrent;   // If entity updates must be safe across threads
+    volatile EventJournal journal;      // Records changes to entities in this store, if set
+    volatile StateDelta delta;          // Collects the entities changed since the last delta export, if set
+    volatile WorldPublisher publisher;  // Collects the entities changed since the last published view, if set
+    volatile StateHash stateHash;       // Collects the entities changed since the world was last hashed, if set
+    boolean quiet;              // If combat events of these entities are not logged, e.g. in simulations
+    private final boolean reclaim;      // If slots are freed when their entities are collected
+    private int[] freeSlots = new int[0];
+    private int freeCount;
+    private int size;           // Number of slots allocated
+
+
+    /**
+     * Creates an empty store with room for <code>initialCapacity</code> entities before the columns grow
+     *
+     * @param initialCapacity the expected number of entities
+     */
+    public EntityStore(int initialCapacity)
+    {
+        this(initialCapacity, false);
+    }
+
+
+    /**
+     * Creates an empty store with room for <code>initialCapacity</code> entities before the columns grow
+     *
+     * @param initialCapacity the expected number of entities
+     * @param concurrent      true to make health, crew and flag updates atomic across threads
+     */
+    public EntityStore(int initialCapacity, boolean concurrent)
+    {
+        this(initialCapacity, concurrent, false);
+    }
+
+
+    private EntityStore(int initialCapacity, boolean concurrent, boolean reclaim)
+    {
+        this.concurrent = concurrent;
+        this.reclaim = reclaim;
+        if (initialCapacity < 1) throw new IllegalArgumentException("initialCapacity must be positive: " + initialCapacity);
+
+        health = new double[initialCapacity];
+        defence = new double[initialCapacity];
+        crew = new int[initialCapacity];
+        flags = new byte[initialCapacity];
+        sectorX = new int[initialCapacity];
+        sectorY = new int[initialCapacity];
+        fleet = new Fleet[initialCapacity];
+    }
+
+
+    /**
+     * Gets the store used by entities constructed without an explicit store
+     *
+     * @return the shared <code>EntityStore</code>
+     */
+    public static EntityStore shared()
+    {
+        return SHARED;
+    }
+
+
+    /**
+     * Allocates the next free slot and initialises its health, defence and position. Other columns start at zero.
+     * The slot is filled in under the same lock that grows the columns, so the values cannot be lost to a
+     * concurrent <code>grow</code>.
+     *
+     * @param x       the starting x coordinate of the entity
+     * @param y       the starting y coordinate of the entity
+     * @param health  the starting health of the entity
+     * @param defence the starting defence strength of the entity
+     * @return the index of the new slot
+     */
+    synchronized int allocate(int x, int y, double health, double defence)
+    {
+        int slot;
+        if (freeCount > 0)
+        {
+            slot = freeSlots[--freeCount];
+            flags[slot] = 0;
+        } else
+        {
+            if (size == this.health.length) grow();
+            slot = size++;
+        }
+        this.health[slot] = health;
+        this.defence[slot] = defence;
+        sectorX[slot] = x;
+        sectorY[slot] = y;
+        return slot;
+    }
+
+
+    /**
+     * Frees an entity's slot once the entity is garbage collected, if this is the shared store. Other stores keep
+     * their slots until the store itself is dropped.
+     *
+     * @param entity the entity holding the slot
+     * @param slot   the entity's slot
+     */
+    void freeOnCollect(Entity entity, int slot)
+    {
+        if (reclaim) CLEANER.register(entity, new Release(this, slot));
+    }
+
+
+    /**
+     * Clears a slot and adds it to the free list. The slot is marked destroyed until it is reused, so sweeps over
+     * the columns skip it.
+     */
+    private synchronized void release(int slot)
+    {
+        health[slot] = 0;
+        defence[slot] = 0;
+        crew[slot] = 0;
+        flags[slot] = DESTROYED;
+        sectorX[slot] = 0;
+        sectorY[slot] = 0;
+        fleet[slot] = null;
+
+        if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, Math.max(16, freeCount * 2));
+        freeSlots[freeCount++] = slot;
+    }
+
+
+    /**
+     * The cleaning action for a shared entity. Holds the store and slot rather than the entity, so it does not
+     * keep the entity reachable.
+     */
+    private record Release(EntityStore store, int slot) implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            store.release(slot);
+        }
+    }
+
+
+    /**
+     * Doubles the length of every column
+     */
+    private void grow()
+    {
+        int capacity = health.length * 2;
+        health = Arrays.copyOf(health, capacity);
+        defence = Arrays.copyOf(defence, capacity);
+        crew = Arrays.copyOf(crew, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        sectorX = Arrays.copyOf(sectorX, capacity);
+        sectorY = Arrays.copyOf(sectorY, capacity);
+        fleet = Arrays.copyOf(fleet, capacity);
+    }
+
+
+    /**
+     * Gets the number of slots allocated in this store. Freed slots of the shared store are counted until the
+     * store hands them out again.
+     *
+     * @return the number of slots in use or free for reuse
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * Sums the health of every entity in this store with a single pass over the health column
+     *
+     * @return the total health, including destroyed entities at 0
+     */
+    public double totalHealth()
+    {
+        int n = size();
+        double[] column = health;
+        double total = 0;
+        for (int i = 0; i < n; i++)
+        {
+            total += column[i];
+        }
+        return total;
+    }
+
+
+    /**
+     * Sums the intrinsic defence of every entity in this store. Starbase docking support is not included.
+     *
+     * @return the total defence strength
+     */
+    public double totalDefence()
+    {
+        int n = size();
+        double[] column = defence;
+        double total = 0;
+        for (int i = 0; i < n; i++)
+        {
+            total += column[i];
+        }
+        return total;
+    }
+
+
+    /**
+     * Counts the entities that have not been destroyed with a single pass over the flags column
+     *
+     * @return the number of live entities
+     */
+    public int liveCount()
+    {
+        int n = size();
+        byte[] column = flags;
+        int live = 0;
+        for (int i = 0; i < n; i++)
+        {
+            if ((column[i] & DESTROYED) == 0) live++;
+        }
+        return live;
+    }
+
+
+    /**
+     * Copies the health column into <code>destination</code>
+     *
+     * @param destination an array at least <code>size()</code> long
+     * @return the number of values copied
+     */
+    public int copyHealth(double @NonNull [] destination)
+    {
+        int n = size();
+        System.arraycopy(health, 0, destination, 0, n);
+        return n;
+    }
+
+
+    /**
+     * Sets the journal that records every change to entities in this store from now on
+     *
+     * @param journal the <code>EventJournal</code> to append to, or null to stop journalling
+     */
+    public void setJournal(EventJournal journal)
+    {
+        this.journal = journal;
+    }
+
+
+    /**
+     * Gets the journal recording changes to entities in this store
+     *
+     * @return the <code>EventJournal</code>, or null if changes are not journalled
+     */
+    public EventJournal getJournal()
+    {
+        return journal;
+    }
+
+
+    /**
+     * Gets the tracker collecting changed entities for delta export
+     *
+     * @return the <code>StateDelta</code> set by <code>StateDelta.track</code>, or null if changes are not tracked
+     */
+    public StateDelta getDelta()
+    {
+        return delta;
+    }
+
+
+    /**
+     * Stops tracking changed entities for delta export
+     */
+    public void stopTracking()
+    {
+        delta = null;
+    }
+
+
+    /**
+     * Gets the publisher of immutable views of this store's fleet entities
+     *
+     * @return the <code>WorldPublisher</code> set by <code>WorldPublisher.track</code>, or null if no views are
+     * published
+     */
+    public WorldPublisher getPublisher()
+    {
+        return publisher;
+    }
+
+
+    /**
+     * Stops collecting changed entities for published views. The last view stays valid.
+     */
+    public void stopPublishing()
+    {
+        publisher = null;
+    }
+
+
+    /**
+     * Gets the hash kept of the state of this store's fleet entities
+     *
+     * @return the <code>StateHash</code> set by <code>StateHash.track</code>, or null if the state is not hashed
+     */
+    public StateHash getStateHash()
+    {
+        return stateHash;
+    }
+
+
+    /**
+     * Stops keeping a hash of the state of this store's fleet entities
+     */
+    public void stopHashing()
+    {
+        stateHash = null;
+    }
+
+
+    /**
+     * Gets whether entity updates in this store are atomic across threads
+     *
+     * @return true if this store is in concurrent mode
+     */
+    public boolean isConcurrent()
+    {
+        return concurrent;
+    }
+
+
+    /**
+     * Checks whether a flag bit is set for a slot
+     */
+    boolean hasFlag(int slot, byte flag)
+    {
+        return (flags[slot] & flag) != 0;
+    }
+
+
+    /**
+     * Sets or clears a flag bit for a slot. In concurrent mode the other bits of the slot are updated
+     * atomically with it.
+     */
+    void setFlag(int slot, byte flag, boolean value)
+    {
+        if (concurrent)
+        {
+            byte current;
+            byte updated;
+            do
+            {
+                current = (byte) BYTES.getVolatile(flags, slot);
+                updated = value ? (byte) (current | flag) : (byte) (current & ~flag);
+            } while (!BYTES.compareAndSet(flags, slot, current, updated));
+        } else if (value)
+        {
+            flags[slot] |= flag;
+        } else
+        {
+            flags[slot] &= (byte) ~flag;
+        }
+    }
+
+
+    /**
+     * Sets a flag bit for a slot if it is not already set
+     *
+     * @return true if this call set the flag, false if it was already set
+     */
+    boolean setFlagOnce(int slot, byte flag)
+    {
+        if (!concurrent)
+        {
+            if ((flags[slot] & flag) != 0) return false;
+            flags[slot] |= flag;
+            return true;
+        }
+
+        byte current;
+        do
+        {
+            current = (byte) BYTES.getVolatile(flags, slot);
+            if ((current & flag) != 0) return false;     // Another thread got there first
+        } while (!BYTES.compareAndSet(flags, slot, current, (byte) (current | flag)));
+        return true;
+    }
+
+
+    /**
+     * Reads the health of a slot with volatile semantics
+     */
+    double getHealthVolatile(int slot)
+    {
+        return (double) DOUBLES.getVolatile(health, slot);
+    }
+
+
+    /**
+     * Writes the health of a slot with volatile semantics
+     *
+     * @return the health it replaced
+     */
+    double getAndSetHealth(int slot, double value)
+    {
+        return (double) DOUBLES.getAndSet(health, slot, value);
+    }
+
+
+    /**
+     * Atomically replaces the health of a slot if it still holds <code>expected</code>
+     *
+     * @return true if the health was replaced
+     */
+    boolean compareAndSetHealth(int slot, double expected, double value)
+    {
+        return DOUBLES.compareAndSet(health, slot, expected, value);
+    }
+
+
+    /**
+     * Writes the defence of a slot with volatile semantics
+     */
+    void setDefenceVolatile(int slot, double value)
+    {
+        DOUBLES.setVolatile(defence, slot, value);
+    }
+
+
+    /**
+     * Reads the crew of a slot with volatile semantics
+     */
+    int getCrewVolatile(int slot)
+    {
+        return (int) INTS.getVolatile(crew, slot);
+    }
+
+
+    /**
+     * Writes the crew of a slot with volatile semantics
+     *
+     * @return the crew it replaced
+     */
+    int getAndSetCrew(int slot, int value)
+    {
+        return (int) INTS.getAndSet(crew, slot, value);
+    }
+
+
+    /**
+     * Atomically replaces the crew of a slot if it still holds <code>expected</code>
+     *
+     * @return true if the crew was replaced
+     */
+    boolean compareAndSetCrew(int slot, int expected, int value)
+    {
+        return INTS.compareAndSet(crew, slot, expected, value);
+    }
+}
@@ -0,0 +1,438 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jspecify.annotations.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only binary journal of the state changes made to entities. Set it on an <code>EntityStore</code> with
+ * <code>setJournal</code>, and every entity in that store records what happens to it: joining a fleet, hits with
+ * their attacker, damage and crew lost, docking, undocking, repairs, moves, destruction and leaving a fleet. <code>JournalReplayer</code> rebuilds
+ * the fleets from the journal.
+ * <p>
+ * Each event is a fixed-size record of <code>RECORD_BYTES</code> bytes. Records are written straight into a
+ * memory-mapped segment file, so appending is a few stores into memory and the operating system writes the
+ * pages out in large batches. When a segment is full the journal rolls over to a new file named
+ * <code>journal-NNNNNN.seg</code> in the journal directory. The next segment is created and its pages touched on a
+ * background thread while the current one fills, so the simulation never waits on page faults or file creation
+ * at a rollover.
+ * </p>
+ * <p>
+ * Each thread buffers its events and writes them to the segment in batches, reserving the slots for a whole batch
+ * at once, so events may be appended from several threads without contending on every event. Events of one
+ * entity keep their order as long as each entity is only changed by one thread at a time, and <code>drain</code>
+ * is called whenever an entity passes from one thread to another, such as before and after a parallel turn.
+ * <code>TurnSimulator</code> does this itself.
+ * </p>
+ * <p>
+ * Each record is laid out as:
+ * <pre>
+ *     0  type     byte     the <code>Type</code> ordinal plus one, 0 marks the end of the journal
+ *     1  aux      byte     a small value depending on the type
+ *     4  i1       int
+ *     8  subject  long     the ID of the entity the event happened to
+ *     16 object   long     the ID of the other entity involved, if any
+ *     24 v1       double
+ *     32 v2       double
+ *     40 i2       int
+ *     44 i3       int
+ * </pre>
+ * </p>
+ */
+public final class EventJournal implements Closeable
+{
+    private static final Logger logger = LogManager.getLogger();
+
+    /**
+     * The kinds of event recorded. The meaning of each field is given per type.
+     */
+    public enum Type
+    {
+        ADDED,          // aux: 1 starship/0 starbase, +2 if the fleet is concurrent; i1 player, i2 x, i3 y, v1 health, v2 crew
+        DAMAGE,         // object: attacker or 0, v1: damage applied, v2: health after, i1: crew lost, i2: crew after
+        HEALTH,         // v1: health set directly
+        CREW,           // i1: crew set directly
+        DOCK,           // object: starbase
+        UNDOCK,         // object: starbase
+        REPAIR,         // v1: health after, aux: 1 if still repairing
+        MOVE,           // i1: x, i2: y
+        DESTROYED,
+        REMOVED         // Left its fleet, removed or purged once destroyed
+    }
+
+    public static final int RECORD_BYTES = 48;
+    static final int HEADER_BYTES = 24;             // Magic, version, segment number, record size, capacity
+    static final int MAGIC = 0x53534A4E;            // "SSJN"
+    static final int VERSION = 1;
+    private static final Type[] TYPES = Type.values();
+    private static final int PAGE_BYTES = 4096;
+    private static final int RECORD_LONGS = RECORD_BYTES / Long.BYTES;
+    private static final int BATCH_RECORDS = 256;      // Events each thread buffers before writing them out
+
+    private final Path directory;
+    private final int recordsPerSegment;    // A power of two, so a record's segment is found with a shift
+    private final int segmentShift;
+    private final AtomicLong nextRecord = new AtomicLong();
+    private final List<CompletableFuture<MappedByteBuffer>> segments = new ArrayList<>();   // By segment number, null once flushed and full
+    private int unflushed;                  // The first segment that may hold records not yet forced to disk
+    private volatile Segment current = new Segment(-1, null);              // The latest segment in use
+    private final ExecutorService preparer = Executors.newSingleThreadExecutor(
+            r -> Thread.ofPlatform().daemon().name("journal-preparer").unstarted(r));
+    private final List<Batch> batches = new ArrayList<>();                 // Every thread's batch, for drain
+    private final ThreadLocal<Batch> batch = ThreadLocal.withInitial(this::newBatch);
+
+    /**
+     * A mapped segment with its number, read together by appending threads
+     */
+    private record Segment(int index, MappedByteBuffer buffer)
+    {}
+
+    /**
+     * The events one thread has appended but not yet written to a segment, laid out as in the segment file
+     * except for the type bytes, which are written after the rest of each record
+     */
+    private static final class Batch
+    {
+        final long[] records = new long[BATCH_RECORDS * RECORD_LONGS];
+        final byte[] types = new byte[BATCH_RECORDS];
+        int count;
+    }
+
+
+    /**
+     * Opens a new journal in an empty directory, creating it if needed
+     *
+     * @param directory         the directory to write segment files to
+     * @param recordsPerSegment the number of events each segment file holds, rounded up to a power of two
+     * @throws IOException if the directory cannot be created or already holds a journal
+     */
+    public EventJournal(@NonNull Path directory, int recordsPerSegment) throws IOException
+    {
+        if (recordsPerSegment < 1) throw new IllegalArgumentException("recordsPerSegment must be positive: " + recordsPerSegment);
+        long rounded = Long.highestOneBit(recordsPerSegment * 2L - 1);
+        if (rounded * RECORD_BYTES + HEADER_BYTES > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Segments of " + recordsPerSegment + " records are too large to map");
+        }
+
+        this.directory = directory;
+        this.recordsPerSegment = (int) rounded;
+        this.segmentShift = Integer.numberOfTrailingZeros(this.recordsPerSegment);
+        Files.createDirectories(directory);
+        if (Files.exists(segmentPath(directory, 0))) throw new IOException("Journal already exists in " + directory);
+
+        segmentFor(0);
+    }
+
+
+    /**
+     * Gets the path of a segment file in a journal directory
+     */
+    static Path segmentPath(Path directory, int segment)
+    {
+        return directory.resolve(String.format("journal-%06d.seg", segment));
+    }
+
+
+    /**
+     * Gets the mapped buffer of a segment, waiting for it to be prepared if needed, and starts preparing the
+     * segment after it
+     */
+    private MappedByteBuffer segmentFor(int segment)
+    {
+        Segment latest = current;
+        if (segment == latest.index()) return latest.buffer();
+
+        // Rollover, or a thread that reserved its record just before another rolled over
+        CompletableFuture<MappedByteBuffer> future;
+        synchronized (segments)
+        {
+            future = prepare(segment);
+            prepare(segment + 1);
+        }
+
+        MappedByteBuffer buffer = future.join();
+        synchronized (segments)
+        {
+            if (segment > current.index()) current = new Segment(segment, buffer);
+        }
+        return buffer;
+    }
+
+
+    /**
+     * Starts preparing every segment up to and including <code>segment</code> on the background thread.
+     * Called with the lock on <code>segments</code> held.
+     */
+    private CompletableFuture<MappedByteBuffer> prepare(int segment)
+    {
+        while (segments.size() <= segment)
+        {
+            int next = segments.size();
+            segments.add(CompletableFuture.supplyAsync(() -> mapSegment(next), preparer));
+        }
+        CompletableFuture<MappedByteBuffer> future = segments.get(segment);
+        if (future == null) throw new IllegalStateException("Journal segment " + segment + " was already flushed");
+        return future;
+    }
+
+
+    /**
+     * Creates a segment file at its full size, maps it and touches every page, so that appends to it never fault.
+     * Then writes its header.
+     */
+    private MappedByteBuffer mapSegment(int segment)
+    {
+        long size = HEADER_BYTES + (long) recordsPerSegment * RECORD_BYTES;
+        try (FileChannel channel = FileChannel.open(segmentPath(directory, segment), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < size; i += PAGE_BYTES)
+            {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, segment)
+                    .putInt(16, RECORD_BYTES).putInt(20, recordsPerSegment);
+            logger.debug("Prepared journal segment {}", segment);
+            return buffer;
+        } catch (IOException e)
+        {
+            throw new IllegalStateException("Cannot create journal segment " + segment + " in " + directory, e);
+        }
+    }
+
+
+    /**
+     * Creates the batch for a thread's first event and registers it, so <code>drain</code> can write it out
+     */
+    private Batch newBatch()
+    {
+        Batch created = new Batch();
+        synchronized (batches)
+        {
+            batches.add(created);
+        }
+        return created;
+    }
+
+
+    /**
+     * Appends one record to the calling thread's batch, writing the batch out once it is full. The fields are
+     * packed into longs in the byte order of the segment file, so writing out is one bulk copy.
+     */
+    private void append(Type type, int aux, int i1, long subject, long object, double v1, double v2, int i2, int i3)
+    {
+        Batch current = batch.get();
+        int n = current.count;
+        long[] records = current.records;
+        int at = n * RECORD_LONGS;
+        records[at] = (aux & 0xFF) << 8 | (long) i1 << 32;
+        records[at + 1] = subject;
+        records[at + 2] = object;
+        records[at + 3] = Double.doubleToRawLongBits(v1);
+        records[at + 4] = Double.doubleToRawLongBits(v2);
+        records[at + 5] = i2 & 0xFFFFFFFFL | (long) i3 << 32;
+        current.types[n] = (byte) (type.ordinal() + 1);
+        current.count = n + 1;
+        if (n + 1 == BATCH_RECORDS) write(current);
+    }
+
+
+    /**
+     * Writes out a batch. The slots for the whole batch are reserved first, so concurrent writes never overlap,
+     * and the batch is split where it crosses into the next segment.
+     */
+    private void write(Batch batch)
+    {
+        int count = batch.count;
+        if (count == 0) return;
+
+        long first = nextRecord.getAndAdd(count);
+        for (int done = 0; done < count; )
+        {
+            long record = first + done;
+            MappedByteBuffer buffer = segmentFor((int) (record >>> segmentShift));
+            int index = (int) (record & (recordsPerSegment - 1));
+            int n = Math.min(count - done, recordsPerSegment - index);
+            int at = HEADER_BYTES + index * RECORD_BYTES;
+            buffer.asLongBuffer().put(at / Long.BYTES, batch.records, done * RECORD_LONGS, n * RECORD_LONGS);
+
+            // The types go in last, as a zero type marks the end of the journal when it is read back
+            for (int i = 0; i < n; i++)
+            {
+                buffer.put(at + i * RECORD_BYTES, batch.types[done + i]);
+            }
+            done += n;
+        }
+        batch.count = 0;
+    }
+
+
+    /**
+     * Writes out the events every thread has buffered, so they take their place in the journal ahead of any
+     * appended later. Call when no thread is appending, whenever entities pass from one thread to another.
+     */
+    public void drain()
+    {
+        synchronized (batches)
+        {
+            for (Batch b : batches)
+            {
+                write(b);
+            }
+        }
+    }
+
+
+    /**
+     * Decodes the type byte of a record
+     *
+     * @return the <code>Type</code>, or null for the end of the journal
+     */
+    static Type typeOf(byte code)
+    {
+        return code == 0 ? null : TYPES[code - 1];
+    }
+
+
+    void added(Entity entity, Fleet fleet)
+    {
+        int aux = (entity instanceof Starship ? 1 : 0) | (fleet.isConcurrent() ? 2 : 0);
+        EntityStore store = entity.store;
+        int slot = entity.slot;
+        append(Type.ADDED, aux, fleet.getPlayer().playerNo(), entity.getId(), 0, store.health[slot], store.crew[slot],
+                store.sectorX[slot], store.sectorY[slot]);
+    }
+
+    void damage(Entity entity, Starship attacker, double applied, double health, int crewLost, int crew)
+    {
+        append(Type.DAMAGE, 0, crewLost, entity.getId(), attacker == null ? 0 : attacker.getId(), applied, health, crew, 0);
+    }
+
+    void health(Entity entity, double health)
+    {
+        append(Type.HEALTH, 0, 0, entity.getId(), 0, health, 0, 0, 0);
+    }
+
+    void crew(Starship ship, int crew)
+    {
+        append(Type.CREW, 0, crew, ship.getId(), 0, 0, 0, 0, 0);
+    }
+
+    void dock(Starship ship, Starbase base)
+    {
+        append(Type.DOCK, 0, 0, ship.getId(), base.getId(), 0, 0, 0, 0);
+    }
+
+    void undock(Starship ship, Starbase base)
+    {
+        append(Type.UNDOCK, 0, 0, ship.getId(), base.getId(), 0, 0, 0, 0);
+    }
+
+    void repair(Starship ship, double health, boolean repairing)
+    {
+        append(Type.REPAIR, repairing ? 1 : 0, 0, ship.getId(), 0, health, 0, 0, 0);
+    }
+
+    void move(Starship ship, int x, int y)
+    {
+        append(Type.MOVE, 0, x, ship.getId(), 0, 0, 0, y, 0);
+    }
+
+    void destroyed(Entity entity)
+    {
+        append(Type.DESTROYED, 0, 0, entity.getId(), 0, 0, 0, 0, 0);
+    }
+
+    void removed(Entity entity)
+    {
+        append(Type.REMOVED, 0, 0, entity.getId(), 0, 0, 0, 0, 0);
+    }
+
+
+    /**
+     * Gets the number of events written to the journal so far. Events still buffered by their threads are
+     * counted once drained.
+     *
+     * @return the event count
+     */
+    public long size()
+    {
+        return nextRecord.get();
+    }
+
+
+    /**
+     * Gets the directory the segment files are written to
+     *
+     * @return the journal directory
+     */
+    public Path getDirectory()
+    {
+        return directory;
+    }
+
+
+    /**
+     * Drains the buffered events and forces the segments written since the last flush out to disk. Call between
+     * turns for a durable checkpoint. Segments that are full once forced are never written again, so the journal
+     * drops its mappings of them.
+     */
+    public void flush()
+    {
+        drain();
+        synchronized (segments)
+        {
+            long written = nextRecord.get();
+            int last = written == 0 ? 0 : (int) ((written - 1) >>> segmentShift);
+            for (int i = unflushed; i <= last; i++)
+            {
+                prepare(i).join().force();
+                if (i < last) segments.set(i, null);
+            }
+            unflushed = last;
+        }
+    }
+
+
+    /**
+     * Counts the segments the journal still holds a mapping of, flushed or not
+     */
+    int mappedSegments()
+    {
+        synchronized (segments)
+        {
+            return (int) segments.stream().filter(Objects::nonNull).count();
+        }
+    }
+
+
+    /**
+     * Flushes the journal. Appending after closing is not allowed.
+     */
+    @Override
+    public void close()
+    {
+        flush();
+        preparer.shutdown();
+        logger.info("Closed journal of {} events in {}", size(), directory);
+    }
+}
@@ -5,8 +5,16 @@ import org.apache.logging.log4j.Logger;
 import org.jspecify.annotations.NonNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.apache.logging.log4j.util.Unbox.box;
 
 /**
  * The Fleet object serves to associate player ownership with a group of Entities
@@ -16,8 +24,16 @@ import java.util.Optional;
 public class Fleet
 {
     private final Player player;
+    private final String name;              // Returned by toString, built once as the player never changes
     private final List<Starbase> starbases;
     private final List<Starship> starships;
+    private final boolean concurrent;       // If the entity lists are copy-on-write
+    private final FleetStats stats = new FleetStats();
+    private final Graveyard graveyard = new Graveyard();
+    private double purgeThreshold;          // Fraction of destroyed entities at which purgeIfNeeded purges
+    private SectorIndex sectorIndex;        // Kept up to date as entities join and move, if set
+    private SectorMap sectorMap;            // Kept up to date as entities join and move, if set
+    private int mapIndex = -1;              // Position of this fleet in the per-fleet counts of sectorMap
     protected final static Logger logger = LogManager.getLogger();
 
 
@@ -29,7 +45,7 @@ public class Fleet
     @Override
     public String toString()
     {
-        return "Fleet#" + player.playerNo();
+        return name;
     }
 
 
@@ -39,27 +55,62 @@ public class Fleet
      * @param player the Player who owns this Fleet
      */
     public Fleet(Player player)
+    {
+        this(player, false);
+    }
+
+
+    /**
+     * Sets the base values for a Fleet and initializes the entity lists. A concurrent fleet uses copy-on-write
+     * lists, so entities can be added from one thread while others iterate over the fleet.
+     *
+     * @param player     the Player who owns this Fleet
+     * @param concurrent true if entities may be added while other threads use the fleet
+     */
+    public Fleet(Player player, boolean concurrent)
     {
         this.player = player;
+        this.concurrent = concurrent;
+        this.name = "Fleet#" + player.playerNo();
 
         // Initialize the lists
-        starbases = new ArrayList<>();
-        starships = new ArrayList<>();
+        starbases = concurrent ? new CopyOnWriteArrayList<>() : new ArrayList<>();
+        starships = concurrent ? new CopyOnWriteArrayList<>() : new ArrayList<>();
     }
 
 
     /**
      * Moves all the <code>Starship</code> entities in the <code>starships</code> list to the given sector.
-     * Docked starships are not moved
+     * Docked starships are not moved. Commits a <code>FleetMoveEvent</code> if it is enabled in a JFR recording.
      */
     public void moveAllEntities(Sector newSector)
     {
-        logger.debug("Moving {} starships from {} to sector {}", starships.size(), this, newSector);
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Moving {} starships from {} to sector {}", box(starships.size()), this, newSector);
+        }
 
+        FleetMoveEvent event = new FleetMoveEvent();
+        event.begin();
         for (Starship starship : starships)
         {
             starship.setSector(newSector);
         }
+
+        if (event.shouldCommit())
+        {
+            int arrived = 0;
+            for (Starship starship : starships)
+            {
+                if (starship.inSector(newSector.x(), newSector.y())) arrived++;
+            }
+            event.fleet = player.playerNo();
+            event.starships = starships.size();
+            event.arrived = arrived;
+            event.x = newSector.x();
+            event.y = newSector.y();
+            event.commit();
+        }
     }
 
 
@@ -79,32 +130,479 @@ public class Fleet
     }
 
 
+    /**
+     * Commands all <code>Starship</code> entities to attack a target <code>Entity</code>, resolving every attack in
+     * a single pass. The outcome is identical to <code>attackWithAll</code>, but nothing is logged per ship.
+     *
+     * @param target the <code>Entity</code> to attack
+     * @return a <code>BattleReport</code> summarising the damage dealt
+     */
+    public BattleReport attackWithAllBatched(@NonNull Entity target)
+    {
+        return BatchCombat.resolve(starships, target);
+    }
+
+
+    /**
+     * Commands all <code>Starship</code> entities to attack each target in turn, resolving every attack in a
+     * single pass per target. The outcome is identical to calling <code>attackWithAll</code> for each target.
+     *
+     * @param targets the <code>Entity</code> objects to attack, in order
+     * @return a <code>BattleReport</code> totalled over all targets
+     */
+    public BattleReport attackWithAllBatched(@NonNull List<? extends Entity> targets)
+    {
+        return BatchCombat.resolve(starships, targets);
+    }
+
+
     /**
      * Adds entities to this fleet. Separates the list of entities into <code>Starbase</code> and <code>Starship</code>
      * objects and adds them to the corresponding lists
      *
      * @param entities a varargs list of <code>Entity</code> objects taking any number of objects
+     * @throws IllegalArgumentException if an entity already belongs to a fleet or is given more than once, or this
+     *                                  fleet is on a <code>SectorMap</code> and an entity lies off it; no entity is
+     *                                  added
      */
     public void addEntities(Entity @NonNull ... entities)
     {
+        checkCanJoin(Arrays.asList(entities));
+
+        if (!concurrent)
+        {
+            addEach(entities, starships, starbases);
+            return;
+        }
+
+        // Copy-on-write lists copy on every add, so collect the entities and publish them with one copy each
+        List<Starship> newStarships = new ArrayList<>();
+        List<Starbase> newStarbases = new ArrayList<>();
+        addEach(entities, newStarships, newStarbases);
+        starships.addAll(newStarships);
+        starbases.addAll(newStarbases);
+    }
+
+
+    /**
+     * Helper method that rejects a batch of entities if any cannot join this fleet. An entity in another fleet must
+     * be removed from it first, so that fleet's lists and totals no longer count it, and an entity may appear only
+     * once in a batch, as it would otherwise be joined twice.
+     */
+    private void checkCanJoin(Collection<? extends Entity> entities)
+    {
+        int count = entities.size();
+        Set<Entity> seen = count > 1 ? Collections.newSetFromMap(new IdentityHashMap<>(count)) : null;
         for (Entity e : entities)
         {
-            /*
-            Add starship entities to the starship list and starbases to the starbase list
-            First check the class type, then safely cast to the corresponding type.
-            Sets the Fleet variable of the entity to this.
-             */
-            e.setFleet(this);
+            Fleet current = e.getFleet();
+            if (current != null) throw new IllegalArgumentException(e + " already belongs to " + current);
+            if (sectorMap != null && !sectorMap.contains(e.store.sectorX[e.slot], e.store.sectorY[e.slot]))
+            {
+                throw new IllegalArgumentException(e + " is off the map");
+            }
+            if (seen != null && !seen.add(e)) throw new IllegalArgumentException(e + " is added more than once");
+        }
+    }
+
+
+    /**
+     * Helper method for <code>addEntities</code> that sorts the entities into the given lists
+     */
+    private void addEach(Entity[] entities, List<Starship> starships, List<Starbase> starbases)
+    {
+        for (Entity e : entities)
+        {
+            join(e, starships, starbases);
+            logger.info("Adding {} to fleet {}", e, this);
+        }
+    }
+
+
+    /**
+     * Adds many entities to this fleet at once, sizing the entity lists for them first and logging one summary
+     * rather than a line per entity
+     *
+     * @param entities the <code>Entity</code> objects to add
+     * @throws IllegalArgumentException if an entity already belongs to a fleet or is given more than once, or this
+     *                                  fleet is on a <code>SectorMap</code> and an entity lies off it; no entity is
+     *                                  added
+     */
+    public void addAll(@NonNull Collection<? extends Entity> entities)
+    {
+        checkCanJoin(entities);
+        int ships = 0;
+        for (Entity e : entities)
+        {
+            if (e instanceof Starship) ships++;
+        }
 
-            if (e instanceof Starship)
+        if (!concurrent)
+        {
+            ensureCapacity(starbases.size() + entities.size() - ships, starships.size() + ships);
+            for (Entity e : entities)
             {
-                starships.add((Starship) e);    // Add to the starship l
-            } else if (e instanceof Starbase)
+                join(e, starships, starbases);
+            }
+        } else
+        {
+            List<Starship> newStarships = new ArrayList<>(ships);
+            List<Starbase> newStarbases = new ArrayList<>(entities.size() - ships);
+            for (Entity e : entities)
             {
-                starbases.add((Starbase) e);    // Add to the starbase list
+                join(e, newStarships, newStarbases);
             }
-            logger.info("Adding {} to fleet {}", e, this);
+            starships.addAll(newStarships);
+            starbases.addAll(newStarbases);
+        }
+        logger.info("Added {} starships and {} starbases to {}", box(ships), box(entities.size() - ships), this);
+    }
+
+
+    /**
+     * Sizes the entity lists to hold at least the given numbers of entities without growing, ahead of adding
+     * many entities. Has no effect on a concurrent fleet, whose lists are copied on every change.
+     *
+     * @param starbases the number of starbases to make room for, including those already in the fleet
+     * @param starships the number of starships to make room for, including those already in the fleet
+     */
+    public void ensureCapacity(int starbases, int starships)
+    {
+        if (this.starbases instanceof ArrayList<Starbase> bases) bases.ensureCapacity(starbases);
+        if (this.starships instanceof ArrayList<Starship> ships) ships.ensureCapacity(starships);
+    }
+
+
+    /**
+     * Adds one entity to this fleet without logging it. Used by loaders that create entities in bulk and log a
+     * summary instead.
+     *
+     * @param e the <code>Entity</code> to add
+     */
+    void addQuietly(@NonNull Entity e)
+    {
+        join(e, starships, starbases);
+    }
+
+
+    /**
+     * Helper method that makes an entity part of this fleet, adding it to the given list for its type and keeping
+     * the sector index, map, totals, journal and delta up to date
+     */
+    private void join(Entity e, List<Starship> starships, List<Starbase> starbases)
+    {
+        /*
+        Add starship entities to the starship list and starbases to the starbase list
+        First check the class type, then safely cast to the corresponding type.
+        Sets the Fleet variable of the entity to this.
+         */
+        e.setFleet(this);
+
+        if (e instanceof Starship)
+        {
+            starships.add((Starship) e);    // Add to the starship l
+        } else if (e instanceof Starbase)
+        {
+            starbases.add((Starbase) e);    // Add to the starbase list
         }
+        if (sectorIndex != null) sectorIndex.add(e);
+        if (sectorMap != null) sectorMap.add(e);
+        stats.added(e);
+
+        EventJournal journal = e.store.journal;
+        if (journal != null) journal.added(e, this);
+        e.changed(StateDelta.ALL);      // New to clients, so every field is sent
+    }
+
+
+    /**
+     * Adds restored entities to this fleet in their saved order, without logging each one, then recounts the
+     * fleet's totals, as restoring writes entity state directly. Used when restoring a snapshot or journal.
+     *
+     * @param bases the starbases, in fleet order
+     * @param ships the starships, in fleet order
+     */
+    void restoreEntities(@NonNull List<Starbase> bases, @NonNull List<Starship> ships)
+    {
+        for (Starbase b : bases)
+        {
+            b.setFleet(this);
+        }
+        for (Starship s : ships)
+        {
+            s.setFleet(this);
+        }
+        starbases.addAll(bases);
+        starships.addAll(ships);
+        stats.recount(starbases, starships);
+    }
+
+
+    /**
+     * Removes entities from this fleet. Starships are undocked first, as are the starships docked to a removed
+     * starbase; destroyed entities go to the graveyard. Entities not in this fleet are ignored. The lists are
+     * compacted in one pass, so this takes time proportional to the size of the fleet plus the number of entities
+     * removed. Call between turns.
+     *
+     * @param entities the <code>Entity</code> objects to remove
+     * @return the number of entities removed
+     */
+    public int removeAll(@NonNull Collection<? extends Entity> entities)
+    {
+        int removed = 0;
+        for (Entity e : entities)
+        {
+            if (contains(e))
+            {
+                leave(e);
+                removed++;
+            }
+        }
+        compact(removed);
+        logger.info("Removed {} entities from {}", box(removed), this);
+        return removed;
+    }
+
+
+    /**
+     * Removes every destroyed entity from this fleet, so turns no longer iterate over them, and records them in
+     * the graveyard. Destroyed starships are undocked from their starbases, and the starships docked to a
+     * destroyed starbase are undocked. Takes one pass over the fleet. Call between turns.
+     *
+     * @return the number of entities purged
+     */
+    public int purgeDestroyed()
+    {
+        int purged = 0;
+        for (Starbase b : starbases)
+        {
+            if (b.isDestroyed())
+            {
+                leave(b);
+                purged++;
+            }
+        }
+        for (Starship s : starships)
+        {
+            if (s.isDestroyed())
+            {
+                leave(s);
+                purged++;
+            }
+        }
+        compact(purged);
+        if (logger.isDebugEnabled()) logger.debug("Purged {} destroyed entities from {}", box(purged), this);
+        return purged;
+    }
+
+
+    /**
+     * Purges destroyed entities if they make up at least the purge threshold of this fleet. Called by
+     * <code>TurnSimulator</code> at the end of each turn.
+     *
+     * @return the number of entities purged
+     */
+    public int purgeIfNeeded()
+    {
+        long destroyed = stats.getStarships() - stats.getLiveStarships() + stats.getStarbases()
+                - stats.getLiveStarbases();
+        if (purgeThreshold <= 0 || destroyed == 0) return 0;
+        if (destroyed < purgeThreshold * (starships.size() + starbases.size())) return 0;
+        return purgeDestroyed();
+    }
+
+
+    /**
+     * Sets the fraction of destroyed entities at which <code>purgeIfNeeded</code> purges them. Purging is off
+     * by default, so entity positions in the fleet lists stay fixed.
+     *
+     * @param fraction the fraction, from 0 (never purge) to 1 (purge once every entity is destroyed)
+     * @throws IllegalArgumentException if the fraction is outside 0 to 1
+     */
+    public void setPurgeThreshold(double fraction)
+    {
+        if (!(fraction >= 0 && fraction <= 1))
+        {
+            throw new IllegalArgumentException("Purge threshold must be between 0 and 1: " + fraction);
+        }
+        purgeThreshold = fraction;
+    }
+
+
+    /**
+     * Helper method that takes an entity out of this fleet, except for its place in the lists, which
+     * <code>compact</code> then drops. Leaves the entity without a fleet.
+     */
+    private void leave(Entity e)
+    {
+        if (e instanceof Starship s)
+        {
+            s.release();
+        } else if (e instanceof Starbase b)
+        {
+            b.releaseDocked();
+        }
+        if (sectorIndex != null) sectorIndex.remove(e);
+        if (sectorMap != null) sectorMap.remove(e);
+        stats.removed(e);
+        if (e.isDestroyed()) graveyard.bury(e);
+
+        EventJournal journal = e.store.journal;
+        if (journal != null) journal.removed(e);
+        e.setFleet(null);
+        e.changed(StateDelta.JOINED);       // Sent to clients as joining no fleet
+    }
+
+
+    /**
+     * Helper method that drops the entities that left the fleet from the lists in one pass per list, keeping the
+     * order of the rest
+     */
+    private void compact(int left)
+    {
+        if (left == 0) return;
+        starbases.removeIf(b -> b.getFleet() == null);
+        starships.removeIf(s -> s.getFleet() == null);
+    }
+
+
+    /**
+     * Removes every entity from this fleet and zeroes its totals, keeping the capacity of its lists for the next
+     * entities. The entities themselves are not changed. Used by <code>SkirmishArena</code> to reuse fleets.
+     */
+    void clear()
+    {
+        starbases.clear();
+        starships.clear();
+        stats.clear();
+        graveyard.clear();
+        sectorIndex = null;
+        sectorMap = null;
+        mapIndex = -1;
+    }
+
+
+    /**
+     * Gets whether this fleet uses copy-on-write lists
+     *
+     * @return true if this fleet was created as concurrent
+     */
+    boolean isConcurrent()
+    {
+        return concurrent;
+    }
+
+
+    /**
+     * Sets the <code>SectorIndex</code> that tracks the entities of this fleet. Called by
+     * <code>SectorIndex.track</code>
+     *
+     * @param sectorIndex the index to keep up to date
+     */
+    void setSectorIndex(SectorIndex sectorIndex)
+    {
+        this.sectorIndex = sectorIndex;
+    }
+
+
+    /**
+     * Gets the <code>SectorIndex</code> tracking this fleet
+     *
+     * @return the index, or null if this fleet is not tracked
+     */
+    SectorIndex getSectorIndex()
+    {
+        return sectorIndex;
+    }
+
+
+    /**
+     * Sets the <code>SectorMap</code> that tracks the entities of this fleet. Called by
+     * <code>SectorMap.track</code>
+     *
+     * @param sectorMap the map to keep up to date
+     * @param mapIndex  the position of this fleet in the map's per-fleet counts
+     */
+    void setSectorMap(SectorMap sectorMap, int mapIndex)
+    {
+        this.sectorMap = sectorMap;
+        this.mapIndex = mapIndex;
+    }
+
+
+    /**
+     * Gets the <code>SectorMap</code> tracking this fleet
+     *
+     * @return the map, or null if this fleet is not on a map
+     */
+    SectorMap getSectorMap()
+    {
+        return sectorMap;
+    }
+
+
+    /**
+     * Gets the position of this fleet in the per-fleet counts of its <code>SectorMap</code>
+     *
+     * @return the index, or -1 if this fleet is not on a map
+     */
+    int getMapIndex()
+    {
+        return mapIndex;
+    }
+
+
+    /**
+     * Gets the running totals of this fleet, such as its attack strength and live starbase count. The totals are
+     * kept up to date as entities change, so queries do not iterate over the fleet.
+     *
+     * @return the fleet's <code>FleetStats</code>
+     */
+    public FleetStats getStats()
+    {
+        return stats;
+    }
+
+
+    /**
+     * Gets the destroyed entities purged from this fleet, for statistics over the whole game
+     *
+     * @return the fleet's <code>Graveyard</code>
+     */
+    public Graveyard getGraveyard()
+    {
+        return graveyard;
+    }
+
+
+    /**
+     * Gets the <code>Player</code> who owns this fleet
+     *
+     * @return the owning <code>Player</code>
+     */
+    public Player getPlayer()
+    {
+        return player;
+    }
+
+
+    /**
+     * Exposes an unmodifiable version of the <code>starships</code> list
+     * @return a list of <code>Starship</code> objects
+     */
+    public List<Starship> getStarships()
+    {
+        return Collections.unmodifiableList(starships);
+    }
+
+
+    /**
+     * Exposes an unmodifiable version of the <code>starbases</code> list
+     * @return a list of <code>Starbase</code> objects
+     */
+    public List<Starbase> getStarbases()
+    {
+        return Collections.unmodifiableList(starbases);
     }
 
 
@@ -133,6 +631,19 @@ public class Fleet
     }
 
 
+    /**
+     * Gets whether an entity belongs to this fleet. An entity belongs to the fleet it was last added to, which it
+     * records itself, so this takes constant time.
+     *
+     * @param entity the <code>Entity</code> to check
+     * @return true if the entity is part of this fleet, false if it is not or is null
+     */
+    public boolean contains(Entity entity)
+    {
+        return entity != null && entity.getFleet() == this;
+    }
+
+
     /**
      * Docks the specified <code>Starship</code> objects to a <code>Starbase</code>
      *
@@ -143,7 +654,7 @@ public class Fleet
     {
         for (Starship s : starships)
         {
-            if (!this.starships.contains(s) || !starbases.contains(starbase))
+            if (!contains(s) || !contains(starbase))
             {
                 logger.info("Cannot dock: ship {} or base {} not in {}", s, starbase, this);
                 continue;
@@ -0,0 +1,38 @@
+package org.tom.entities;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event spanning <code>Fleet.moveAllEntities</code>, which moves every starship of a fleet at once. Disabled
+ * by default, and costs nothing unless a recording enables it.
+ */
+@Name("org.tom.FleetMove")
+@Label("Fleet Move")
+@Category({"Project Spaceship", "Movement"})
+@Enabled(false)
+@StackTrace(false)
+final class FleetMoveEvent extends Event
+{
+    @Label("Fleet")
+    @Description("The player number of the fleet")
+    int fleet;
+
+    @Label("Starships")
+    int starships;
+
+    @Label("Arrived")
+    @Description("Starships in the destination sector after the move; docked and destroyed ones stay behind")
+    int arrived;
+
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+}
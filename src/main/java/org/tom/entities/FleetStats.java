@@ -0,0 +1,286 @@
+package org.tom.entities;
+
+import java.util.List;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Totals over the entities of a <code>Fleet</code>, kept up to date as its entities join, take damage, repair,
+ * lose crew, dock and are destroyed, so each query takes constant time however large the fleet. Entities report
+ * their own changes from the methods that write their state, in the same place they mark themselves for
+ * <code>StateDelta</code>.
+ * <p>
+ * The totals are held in adders, so entities of a concurrent store may update them from any thread. A total read
+ * while other threads are changing the fleet may not include their latest changes. Health totals are sums of
+ * many small changes, so they can differ from a fresh sum over the fleet by rounding in the last few bits.
+ * </p>
+ */
+public final class FleetStats
+{
+    private final LongAdder starships = new LongAdder();
+    private final LongAdder starbases = new LongAdder();
+    private final LongAdder liveStarships = new LongAdder();
+    private final LongAdder liveStarbases = new LongAdder();
+    private final LongAdder dockedStarships = new LongAdder();
+    private final LongAdder crew = new LongAdder();
+    private final DoubleAdder starshipHealth = new DoubleAdder();
+    private final DoubleAdder starbaseHealth = new DoubleAdder();
+
+
+    /**
+     * Adds an entity that joined the fleet, with its current state
+     */
+    void added(Entity entity)
+    {
+        boolean live = !entity.isDestroyed();
+        if (entity instanceof Starship ship)
+        {
+            starships.increment();
+            if (live) liveStarships.increment();
+            if (ship.getDocked()) dockedStarships.increment();
+            crew.add(ship.getCrew());
+            starshipHealth.add(ship.getHealth());
+        } else
+        {
+            starbases.increment();
+            if (live) liveStarbases.increment();
+            starbaseHealth.add(entity.getHealth());
+        }
+    }
+
+
+    /**
+     * Subtracts an entity that left the fleet, with its current state. Undock a starship before it leaves.
+     */
+    void removed(Entity entity)
+    {
+        boolean live = !entity.isDestroyed();
+        if (entity instanceof Starship ship)
+        {
+            starships.decrement();
+            if (live) liveStarships.decrement();
+            if (ship.getDocked()) dockedStarships.decrement();
+            crew.add(-ship.getCrew());
+            starshipHealth.add(-ship.getHealth());
+        } else
+        {
+            starbases.decrement();
+            if (live) liveStarbases.decrement();
+            starbaseHealth.add(-entity.getHealth());
+        }
+    }
+
+
+    /**
+     * Recalculates every total from the entities of the fleet, after their state was restored directly
+     */
+    void recount(List<Starbase> bases, List<Starship> ships)
+    {
+        clear();
+        for (Starbase base : bases)
+        {
+            added(base);
+        }
+        for (Starship ship : ships)
+        {
+            added(ship);
+        }
+    }
+
+
+    /**
+     * Sets every total to zero, as for a fleet with no entities
+     */
+    void clear()
+    {
+        starships.reset();
+        starbases.reset();
+        liveStarships.reset();
+        liveStarbases.reset();
+        dockedStarships.reset();
+        crew.reset();
+        starshipHealth.reset();
+        starbaseHealth.reset();
+    }
+
+
+    /**
+     * Records a change in the health of an entity of the fleet
+     */
+    void healthChanged(Entity entity, double change)
+    {
+        if (change == 0) return;
+        if (entity instanceof Starship)
+        {
+            starshipHealth.add(change);
+        } else
+        {
+            starbaseHealth.add(change);
+        }
+    }
+
+
+    /**
+     * Records a change in the crew of a starship of the fleet
+     */
+    void crewChanged(int change)
+    {
+        if (change != 0) crew.add(change);
+    }
+
+
+    /**
+     * Records that an entity of the fleet was destroyed. Called once per entity.
+     */
+    void destroyed(Entity entity)
+    {
+        if (entity instanceof Starship)
+        {
+            liveStarships.decrement();
+        } else
+        {
+            liveStarbases.decrement();
+        }
+    }
+
+
+    /**
+     * Records that a starship of the fleet docked or undocked
+     */
+    void dockedChanged(boolean docked)
+    {
+        if (docked)
+        {
+            dockedStarships.increment();
+        } else
+        {
+            dockedStarships.decrement();
+        }
+    }
+
+
+    /**
+     * Gets the summed attack strength of every starship in the fleet, docked or not. As attack strength is
+     * proportional to health, this is the attack strength of the summed starship health.
+     *
+     * @return the total attack strength
+     */
+    public double getTotalAttackStrength()
+    {
+        return Starship.attackFor(Math.max(0, starshipHealth.sum()));
+    }
+
+
+    /**
+     * Gets the summed health of every starship in the fleet
+     *
+     * @return the total starship health
+     */
+    public double getTotalStarshipHealth()
+    {
+        return Math.max(0, starshipHealth.sum());
+    }
+
+
+    /**
+     * Gets the summed health of every starbase in the fleet
+     *
+     * @return the total starbase health
+     */
+    public double getTotalStarbaseHealth()
+    {
+        return Math.max(0, starbaseHealth.sum());
+    }
+
+
+    /**
+     * Gets the summed crew of every starship in the fleet, destroyed ones included
+     *
+     * @return the total crew
+     */
+    public long getTotalCrew()
+    {
+        return crew.sum();
+    }
+
+
+    /**
+     * Gets the number of starships in the fleet
+     *
+     * @return the starship count
+     */
+    public long getStarships()
+    {
+        return starships.sum();
+    }
+
+
+    /**
+     * Gets the number of starbases in the fleet
+     *
+     * @return the starbase count
+     */
+    public long getStarbases()
+    {
+        return starbases.sum();
+    }
+
+
+    /**
+     * Gets the number of starships in the fleet that have not been destroyed
+     *
+     * @return the live starship count
+     */
+    public long getLiveStarships()
+    {
+        return liveStarships.sum();
+    }
+
+
+    /**
+     * Gets the number of starbases in the fleet that have not been destroyed
+     *
+     * @return the live starbase count
+     */
+    public long getLiveStarbases()
+    {
+        return liveStarbases.sum();
+    }
+
+
+    /**
+     * Gets the number of starships in the fleet that are docked
+     *
+     * @return the docked starship count
+     */
+    public long getDockedStarships()
+    {
+        return dockedStarships.sum();
+    }
+
+
+    /**
+     * Gets whether every starbase of the fleet has been destroyed, the usual condition for its player losing.
+     * A fleet without starbases counts as having lost them all.
+     *
+     * @return true if no starbase is left
+     */
+    public boolean allStarbasesDestroyed()
+    {
+        return liveStarbases.sum() == 0;
+    }
+
+
+    /**
+     * Summarises the totals for logging
+     *
+     * @return the counts, health, crew and attack strength
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("ships=%d/%d live, %d docked, bases=%d/%d live, crew=%d, attack=%.1f, health=%.1f/%.1f",
+                getLiveStarships(), getStarships(), getDockedStarships(), getLiveStarbases(), getStarbases(),
+                getTotalCrew(), getTotalAttackStrength(), getTotalStarshipHealth(), getTotalStarbaseHealth());
+    }
+}
@@ -0,0 +1,125 @@
+package org.tom.entities;
+
+import java.util.Arrays;
+import java.util.stream.LongStream;
+
+/**
+ * The destroyed entities a <code>Fleet</code> has purged from its lists, kept as counts and IDs only, so a long
+ * game's casualties stay available for statistics without the fleet iterating over them every turn. Each purged
+ * entity costs eight bytes here rather than a whole entity.
+ * <p>
+ * A fleet's <code>FleetStats</code> count the entities still in its lists; add the graveyard's counts to get
+ * every entity the fleet has had. Changed only by the fleet, between turns.
+ * </p>
+ */
+public final class Graveyard
+{
+    private long[] ids = new long[16];
+    private int size;
+    private long starships;
+    private long starbases;
+    private long crew;
+
+
+    Graveyard()
+    {}
+
+
+    /**
+     * Records a destroyed entity that left the fleet
+     */
+    void bury(Entity entity)
+    {
+        if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+        ids[size++] = entity.getId();
+
+        if (entity instanceof Starship ship)
+        {
+            starships++;
+            crew += ship.getCrew();
+        } else
+        {
+            starbases++;
+        }
+    }
+
+
+    /**
+     * Forgets every purged entity, as for a new fleet
+     */
+    void clear()
+    {
+        ids = new long[16];
+        size = 0;
+        starships = 0;
+        starbases = 0;
+        crew = 0;
+    }
+
+
+    /**
+     * Gets the number of purged entities
+     *
+     * @return the entity count
+     */
+    public int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * Gets the number of purged starships
+     *
+     * @return the starship count
+     */
+    public long getStarships()
+    {
+        return starships;
+    }
+
+
+    /**
+     * Gets the number of purged starbases
+     *
+     * @return the starbase count
+     */
+    public long getStarbases()
+    {
+        return starbases;
+    }
+
+
+    /**
+     * Gets the crew the purged starships had left when they were destroyed
+     *
+     * @return the total crew
+     */
+    public long getCrew()
+    {
+        return crew;
+    }
+
+
+    /**
+     * Gets the IDs of the purged entities
+     *
+     * @return a stream of the IDs, in the order the entities were purged
+     */
+    public LongStream ids()
+    {
+        return Arrays.stream(ids, 0, size);
+    }
+
+
+    /**
+     * Summarises the graveyard for logging
+     *
+     * @return the counts and crew
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("graveyard: ships=%d, bases=%d, crew=%d", starships, starbases, crew);
+    }
+}
@@ -0,0 +1,99 @@
+package org.tom.entities;
+
+import java.util.function.IntToLongFunction;
+
+/**
+ * The bucket layout of the duration histograms, <code>LatencyHistogram</code> and the timings kept by
+ * <code>Metrics</code>. Values below 64 ns are counted exactly; above that each power of two is split into 32
+ * buckets, so a reported percentile is within about 3% of the true value. Each histogram keeps its counts in its
+ * own way and reads them back through these methods.
+ */
+public final class HistogramBuckets
+{
+    private static final int SUB_BITS = 5;                  // 32 buckets per power of two
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int EXACT = SUB_BUCKETS * 2;       // Values below this get a bucket each
+
+    /**
+     * The number of buckets, enough for any non-negative <code>long</code>
+     */
+    public static final int COUNT = EXACT + (63 - SUB_BITS - 1) * SUB_BUCKETS;
+
+
+    private HistogramBuckets()
+    {}
+
+
+    /**
+     * Gets the bucket a value is counted in
+     *
+     * @param value a non-negative value
+     * @return the bucket index, below <code>COUNT</code>
+     */
+    public static int indexOf(long value)
+    {
+        if (value < EXACT) return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        return EXACT + (exponent - SUB_BITS - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+
+    /**
+     * Gets the middle of the range of values counted in a bucket
+     *
+     * @param index the bucket index
+     * @return the value reported for the bucket
+     */
+    public static long valueOf(int index)
+    {
+        if (index < EXACT) return index;
+
+        int exponent = (index - EXACT) / SUB_BUCKETS + SUB_BITS + 1;
+        long mantissa = (index - EXACT) % SUB_BUCKETS + SUB_BUCKETS;
+        int shift = exponent - SUB_BITS;
+        return (mantissa << shift) + (1L << shift) / 2;
+    }
+
+
+    /**
+     * Gets the value below which a given fraction of the recorded values fall
+     *
+     * @param fraction the percentile as a fraction, e.g. 0.99 for the 99th percentile
+     * @param count    the number of values recorded
+     * @param max      the largest value recorded, which no percentile is reported above
+     * @param counts   the count of each bucket, by index
+     * @return the value, or 0 if nothing has been recorded
+     */
+    public static long percentile(double fraction, long count, long max, IntToLongFunction counts)
+    {
+        if (count == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < COUNT; i++)
+        {
+            seen += counts.applyAsLong(i);
+            if (seen >= rank) return Math.min(valueOf(i), max);
+        }
+        return max;
+    }
+
+
+    /**
+     * Summarises a histogram of durations in microseconds
+     *
+     * @param count  the number of durations recorded
+     * @param mean   the mean duration in nanoseconds
+     * @param max    the longest duration in nanoseconds
+     * @param counts the count of each bucket, by index
+     * @return the count, mean and main percentiles
+     */
+    public static String summarise(long count, double mean, long max, IntToLongFunction counts)
+    {
+        return String.format("n=%d mean=%.1fus p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus", count, mean / 1e3,
+                percentile(0.5, count, max, counts) / 1e3, percentile(0.99, count, max, counts) / 1e3,
+                percentile(0.999, count, max, counts) / 1e3, max / 1e3);
+    }
+}
@@ -0,0 +1,394 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jspecify.annotations.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rebuilds fleets by applying the events of an <code>EventJournal</code> in order, and checks the result against
+ * a <code>Snapshot</code>. Events carry the state they leave behind, such as the health after a hit, so replaying
+ * writes that state directly rather than running the combat rules again.
+ * <p>
+ * Replaying into an empty world only recreates entities that joined a fleet after the journal was set on their
+ * store. To replay a journal that was started part-way through a game, pass the fleets restored from a snapshot
+ * taken when the journal started.
+ * </p>
+ */
+public final class JournalReplayer
+{
+    private static final Logger logger = LogManager.getLogger();
+    private static final int MAX_DIFFERENCES = 100;     // Stop comparing once this many differences are found
+
+    private final EntityStore store;
+    private final Map<Long, Entity> entities = new HashMap<>();
+    private final Map<Integer, Fleet> fleets = new LinkedHashMap<>();      // By player number, in order of appearance
+    private final Map<Fleet, List<Starbase>> newBases = new HashMap<>();
+    private final Map<Fleet, List<Starship>> newShips = new HashMap<>();
+    private final Map<Fleet, List<Entity>> removed = new HashMap<>();      // Taken out of the fleets by settle
+    private final Set<Long> leaving = new HashSet<>();                      // IDs of the entities in removed
+    private long events;
+    private long skipped;
+    private long maxId;
+
+
+    private JournalReplayer(EntityStore store, List<Fleet> start)
+    {
+        this.store = store;
+        for (Fleet fleet : start)
+        {
+            fleets.put(fleet.getPlayer().playerNo(), fleet);
+            fleet.getStarbases().forEach(this::index);
+            fleet.getStarships().forEach(this::index);
+        }
+    }
+
+
+    /**
+     * Helper method for the constructor that makes an existing entity known by its ID
+     */
+    private void index(Entity entity)
+    {
+        entities.put(entity.getId(), entity);
+        maxId = Math.max(maxId, entity.getId());
+    }
+
+
+    /**
+     * Replays a journal into an empty world, creating entities in a new <code>EntityStore</code>
+     *
+     * @param directory the journal directory
+     * @return the rebuilt fleets, in the order they first appear in the journal
+     * @throws IOException if the journal cannot be read
+     */
+    public static List<Fleet> replay(@NonNull Path directory) throws IOException
+    {
+        return replay(directory, List.of(), new EntityStore(1024));
+    }
+
+
+    /**
+     * Replays a journal on top of existing fleets, such as those restored from a snapshot. Entities the journal
+     * adds are created in <code>store</code>.
+     *
+     * @param directory the journal directory
+     * @param start     the fleets at the point the journal started
+     * @param store     the <code>EntityStore</code> for entities created by the replay
+     * @return the starting fleets followed by any new ones, in the order they first appear
+     * @throws IOException if the journal cannot be read
+     */
+    public static List<Fleet> replay(@NonNull Path directory, @NonNull List<Fleet> start, @NonNull EntityStore store)
+            throws IOException
+    {
+        JournalReplayer replayer = new JournalReplayer(store, start);
+        for (int segment = 0; Files.exists(EventJournal.segmentPath(directory, segment)); segment++)
+        {
+            if (!replayer.replaySegment(EventJournal.segmentPath(directory, segment))) break;
+        }
+        return replayer.finish();
+    }
+
+
+    /**
+     * Applies every record in one segment file
+     *
+     * @return false if the journal ended part-way through this segment
+     */
+    private boolean replaySegment(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.size() < EventJournal.HEADER_BYTES || buffer.getInt(0) != EventJournal.MAGIC
+                    || buffer.getInt(4) != EventJournal.VERSION || buffer.getInt(16) != EventJournal.RECORD_BYTES)
+            {
+                throw new IOException("Not a journal segment: " + path);
+            }
+
+            int capacity = buffer.getInt(20);
+            for (int i = 0; i < capacity; i++)
+            {
+                int at = EventJournal.HEADER_BYTES + i * EventJournal.RECORD_BYTES;
+                EventJournal.Type type = EventJournal.typeOf(buffer.get(at));
+                if (type == null) return false;
+
+                apply(type, buffer, at);
+                events++;
+            }
+            return true;
+        }
+    }
+
+
+    /**
+     * Applies one event to the world
+     */
+    private void apply(EventJournal.Type type, MappedByteBuffer buffer, int at)
+    {
+        long subjectId = buffer.getLong(at + 8);
+        if (type == EventJournal.Type.ADDED)
+        {
+            add(subjectId, buffer.get(at + 1), buffer.getInt(at + 4), buffer.getDouble(at + 24),
+                    (int) buffer.getDouble(at + 32), buffer.getInt(at + 40), buffer.getInt(at + 44));
+            return;
+        }
+
+        Entity subject = entities.get(subjectId);
+        if (subject == null)
+        {
+            skipped++;
+            return;
+        }
+        if (leaving.contains(subjectId)) settle(subject.getFleet());
+
+        switch (type)
+        {
+            case DAMAGE ->
+            {
+                if (subject instanceof Starship) subject.store.crew[subject.slot] = buffer.getInt(at + 40);
+                writeHealth(subject, buffer.getDouble(at + 32));
+            }
+            case HEALTH -> writeHealth(subject, buffer.getDouble(at + 24));
+            case CREW -> writeCrew(subject, buffer.getInt(at + 4));
+            case REPAIR ->
+            {
+                writeHealth(subject, buffer.getDouble(at + 24));
+                subject.store.setFlag(subject.slot, EntityStore.REPAIRING, buffer.get(at + 1) != 0);
+            }
+            case DOCK, UNDOCK ->
+            {
+                if (!(subject instanceof Starship ship) || !(entities.get(buffer.getLong(at + 16)) instanceof Starbase base))
+                {
+                    skipped++;
+                    return;
+                }
+                if (type == EventJournal.Type.DOCK)
+                {
+                    base.restoreDocked(ship);
+                    ship.store.setFlag(ship.slot, EntityStore.DOCKED, true);
+                } else
+                {
+                    base.removeDocked(ship);
+                    ship.store.setFlag(ship.slot, EntityStore.DOCKED, false);
+                    ship.store.setFlag(ship.slot, EntityStore.REPAIRING, false);
+                }
+            }
+            case MOVE ->
+            {
+                subject.store.sectorX[subject.slot] = buffer.getInt(at + 4);
+                subject.store.sectorY[subject.slot] = buffer.getInt(at + 40);
+            }
+            case DESTROYED ->
+            {
+                subject.store.setFlag(subject.slot, EntityStore.DESTROYED, true);
+                subject.defenceChanged();
+            }
+            case REMOVED ->
+            {
+                Fleet fleet = subject.getFleet();
+                if (fleet == null)
+                {
+                    skipped++;
+                    return;
+                }
+                removed.computeIfAbsent(fleet, f -> new ArrayList<>()).add(subject);
+                leaving.add(subjectId);
+            }
+            default -> skipped++;
+        }
+    }
+
+
+    /**
+     * Creates an entity that joined a fleet, along with the fleet if it has not been seen yet. An entity that is
+     * already known joins the fleet if it has left its own, as when it was moved from one fleet to another.
+     */
+    private void add(long id, byte aux, int player, double health, int crew, int x, int y)
+    {
+        Entity entity = entities.get(id);
+        if (entity != null && leaving.contains(id)) settle(entity.getFleet());
+        if (entity != null && (entity.getFleet() != null || entity instanceof Starship != ((aux & 1) != 0)))
+        {
+            skipped++;      // Already part of a fleet
+            return;
+        }
+
+        Fleet fleet = fleets.computeIfAbsent(player, p -> new Fleet(new Player(p), (aux & 2) != 0));
+        if (entity == null)
+        {
+            entity = (aux & 1) != 0 ? new Starship(x, y, store, id) : new Starbase(x, y, store, id);
+            index(entity);
+        } else
+        {
+            entity.store.sectorX[entity.slot] = x;
+            entity.store.sectorY[entity.slot] = y;
+        }
+
+        if (entity instanceof Starship ship)
+        {
+            newShips.computeIfAbsent(fleet, f -> new ArrayList<>()).add(ship);
+            ship.store.crew[ship.slot] = crew;
+        } else
+        {
+            newBases.computeIfAbsent(fleet, f -> new ArrayList<>()).add((Starbase) entity);
+        }
+
+        entity.setFleet(fleet);     // Joined to the fleet's lists in one go by settle
+        writeHealth(entity, health);
+        if (health == 0) entity.store.setFlag(entity.slot, EntityStore.DESTROYED, true);
+    }
+
+
+    /**
+     * Adds the new entities to a fleet, recounts its totals and takes out those that left, so the fleet matches the
+     * journal up to the current event. Removal is held back until another event needs it, as each removal compacts
+     * the lists.
+     */
+    private void settle(Fleet fleet)
+    {
+        List<Starbase> bases = newBases.remove(fleet);
+        List<Starship> ships = newShips.remove(fleet);
+        fleet.restoreEntities(bases == null ? List.of() : bases, ships == null ? List.of() : ships);
+
+        List<Entity> left = removed.remove(fleet);
+        if (left == null) return;
+        fleet.removeAll(left);
+        for (Entity e : left)
+        {
+            leaving.remove(e.getId());
+        }
+    }
+
+
+    /**
+     * Adds the new entities to their fleets, takes out those that left, and moves the ID counter past every
+     * replayed ID. Removal keeps the order of the rest, so it gives the same lists as removing as the events
+     * happened.
+     */
+    private List<Fleet> finish()
+    {
+        for (Fleet fleet : fleets.values())
+        {
+            settle(fleet);
+        }
+        Entity.advanceNextId(maxId + 1);
+
+        if (skipped > 0) logger.warn("Skipped {} journal events for unknown or existing entities", skipped);
+        logger.info("Replayed {} journal events into {} entities", events, entities.size());
+        return new ArrayList<>(fleets.values());
+    }
+
+
+    /**
+     * Writes a replayed health and recalculates the defence that depends on it
+     */
+    private static void writeHealth(Entity entity, double health)
+    {
+        entity.store.health[entity.slot] = health;
+        entity.refreshDefence();
+    }
+
+
+    /**
+     * Writes a replayed crew and recalculates the defence that depends on it
+     */
+    private static void writeCrew(Entity entity, int crew)
+    {
+        entity.store.crew[entity.slot] = crew;
+        entity.refreshDefence();
+    }
+
+
+    /**
+     * Compares fleets entity by entity against a snapshot: IDs, positions, health, crew, flags, defence strength
+     * and the order of docked ships. Fleets are matched by player number.
+     *
+     * @param fleets   the fleets to check, such as the result of <code>replay</code>
+     * @param snapshot the snapshot file to compare with
+     * @return a description of each difference found, empty if the fleets match
+     * @throws IOException if the snapshot cannot be read
+     */
+    public static List<String> verify(@NonNull List<Fleet> fleets, @NonNull Path snapshot) throws IOException
+    {
+        List<Fleet> expected = Snapshot.read(snapshot, null, false);      // Only compared, so no IDs are taken
+        List<String> differences = new ArrayList<>();
+
+        Map<Integer, Fleet> byPlayer = new HashMap<>();
+        for (Fleet fleet : fleets)
+        {
+            byPlayer.put(fleet.getPlayer().playerNo(), fleet);
+        }
+        if (byPlayer.size() != expected.size())
+        {
+            differences.add("Expected " + expected.size() + " fleets but found " + byPlayer.size());
+        }
+
+        for (Fleet want : expected)
+        {
+            Fleet have = byPlayer.get(want.getPlayer().playerNo());
+            if (have == null)
+            {
+                differences.add("Missing " + want);
+                continue;
+            }
+            compareEntities(want.getStarbases(), have.getStarbases(), differences);
+            compareEntities(want.getStarships(), have.getStarships(), differences);
+            if (differences.size() >= MAX_DIFFERENCES) break;
+        }
+        return differences;
+    }
+
+
+    /**
+     * Helper method for <code>verify</code> that compares two lists of entities in order
+     */
+    private static void compareEntities(List<? extends Entity> want, List<? extends Entity> have, List<String> differences)
+    {
+        if (want.size() != have.size())
+        {
+            differences.add("Expected " + want.size() + " entities but found " + have.size() + " in " +
+                    (want.isEmpty() ? have.getFirst().getFleet() : want.getFirst().getFleet()));
+            return;
+        }
+
+        for (int i = 0; i < want.size() && differences.size() < MAX_DIFFERENCES; i++)
+        {
+            Entity w = want.get(i);
+            Entity h = have.get(i);
+            if (w.getId() != h.getId())
+            {
+                differences.add("Expected " + w + " but found " + h);
+                continue;
+            }
+
+            if (!w.getSector().equals(h.getSector())) differences.add(w + " is in " + h.getSector() + ", expected " + w.getSector());
+            if (Double.compare(w.getHealth(), h.getHealth()) != 0) differences.add(w + " has health " + h.getHealth() + ", expected " + w.getHealth());
+            if (w.store.crew[w.slot] != h.store.crew[h.slot]) differences.add(w + " has crew " + h.store.crew[h.slot] + ", expected " + w.store.crew[w.slot]);
+            if (w.store.flags[w.slot] != h.store.flags[h.slot]) differences.add(w + " has flags " + h.store.flags[h.slot] + ", expected " + w.store.flags[w.slot]);
+            if (Double.compare(w.getDefenceStrength(), h.getDefenceStrength()) != 0)
+            {
+                differences.add(w + " has defence " + h.getDefenceStrength() + ", expected " + w.getDefenceStrength());
+            }
+            if (w instanceof Starbase wb && h instanceof Starbase hb
+                    && !wb.getDockedStarships().toString().equals(hb.getDockedStarships().toString()))
+            {
+                differences.add(w + " has docked ships " + hb.getDockedStarships() + ", expected " + wb.getDockedStarships());
+            }
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jspecify.annotations.NonNull;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the attacks, docks, undocks and moves attempted by entities, by the outcome of each: applied, or the
+ * reason it was rejected. Counters are striped <code>LongAdder</code>s, so recording from the fork-join turn
+ * simulator does not contend, and costs a few nanoseconds. With timing turned on, the duration of each operation
+ * is also recorded in a histogram per operation; that adds two clock reads, so it is off by default.
+ * <p>
+ * Entities of quiet stores, such as those of <code>SkirmishArena</code> simulations, are not counted. The counts
+ * can be read directly, through JMX once <code>registerMBean</code> is called, or as text logged periodically
+ * by <code>reportEvery</code>.
+ * </p>
+ */
+public final class Metrics
+{
+    private static final Logger logger = LogManager.getLogger();
+    public static final String OBJECT_NAME = "org.tom:type=Metrics";
+
+    /**
+     * The operations that are counted
+     */
+    public enum Operation
+    {
+        ATTACK, DOCK, UNDOCK, MOVE
+    }
+
+    /**
+     * The outcome of an operation: applied, or why it was rejected
+     */
+    public enum Outcome
+    {
+        APPLIED,
+        DESTROYED,          // The acting entity is destroyed
+        DOCKED,             // The starship is docked, so cannot attack or move
+        REPAIRING,          // The starship is docked and repairing, so repaired instead
+        WRONG_SECTOR,       // The target is in another sector
+        SAME_FLEET,         // The target is in the attacker's fleet
+        OTHER_FLEET,        // The starship and starbase are in different fleets
+        BASE_DESTROYED,     // The starbase is destroyed
+        SHIP_DESTROYED,     // The starship to dock or undock is destroyed
+        ALREADY_DOCKED,     // The starship is already docked
+        NOT_DOCKED,         // The starship is not docked to the starbase
+        OFF_MAP             // The move would leave the sector map
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final Outcome[] OUTCOMES = Outcome.values();
+    private static final LongAdder[] counters = new LongAdder[OPERATIONS.length * OUTCOMES.length];
+    private static final AtomicHistogram[] latencies = new AtomicHistogram[OPERATIONS.length];
+    private static volatile boolean timing;
+
+    static
+    {
+        for (int i = 0; i < counters.length; i++)
+        {
+            counters[i] = new LongAdder();
+        }
+        for (int i = 0; i < latencies.length; i++)
+        {
+            latencies[i] = new AtomicHistogram();
+        }
+    }
+
+
+    private Metrics()
+    {}
+
+
+    /**
+     * Turns the recording of operation durations on or off
+     *
+     * @param on true to record a duration for every counted operation
+     */
+    public static void setTiming(boolean on)
+    {
+        timing = on;
+    }
+
+
+    /**
+     * Gets whether operation durations are recorded
+     *
+     * @return true if timing is on
+     */
+    public static boolean isTiming()
+    {
+        return timing;
+    }
+
+
+    /**
+     * Starts timing an operation. Pass the result to <code>record</code> when the operation ends.
+     *
+     * @return the current time in nanoseconds, or 0 if timing is off
+     */
+    static long start()
+    {
+        return timing ? System.nanoTime() : 0;
+    }
+
+
+    /**
+     * Counts one operation and, if it was timed, records its duration
+     *
+     * @param operation the kind of operation
+     * @param outcome   how it ended
+     * @param start     the result of <code>start</code> when the operation began
+     */
+    static void record(Operation operation, Outcome outcome, long start)
+    {
+        counters[operation.ordinal() * OUTCOMES.length + outcome.ordinal()].increment();
+        if (start != 0) latencies[operation.ordinal()].record(System.nanoTime() - start);
+    }
+
+
+    /**
+     * Counts several operations with the same outcome at once, e.g. the attacks of a batch. Nothing is timed.
+     *
+     * @param operation the kind of operation
+     * @param outcome   how they ended
+     * @param n         the number of operations
+     */
+    static void count(Operation operation, Outcome outcome, long n)
+    {
+        if (n != 0) counters[operation.ordinal() * OUTCOMES.length + outcome.ordinal()].add(n);
+    }
+
+
+    /**
+     * Gets how many operations of a kind ended with an outcome since the last <code>reset</code>
+     *
+     * @param operation the kind of operation
+     * @param outcome   the outcome
+     * @return the count
+     */
+    public static long count(@NonNull Operation operation, @NonNull Outcome outcome)
+    {
+        return counters[operation.ordinal() * OUTCOMES.length + outcome.ordinal()].sum();
+    }
+
+
+    /**
+     * Gets how many operations of a kind were attempted since the last <code>reset</code>, whatever the outcome
+     *
+     * @param operation the kind of operation
+     * @return the count
+     */
+    public static long attempts(@NonNull Operation operation)
+    {
+        long total = 0;
+        for (Outcome outcome : OUTCOMES)
+        {
+            total += count(operation, outcome);
+        }
+        return total;
+    }
+
+
+    /**
+     * Sums every count, for telling whether anything has been recorded between two reads
+     */
+    private static long total()
+    {
+        long total = 0;
+        for (LongAdder counter : counters)
+        {
+            total += counter.sum();
+        }
+        return total;
+    }
+
+
+    /**
+     * Gets a percentile of the recorded durations of an operation
+     *
+     * @param operation the kind of operation
+     * @param fraction  the percentile as a fraction, e.g. 0.99 for the 99th percentile
+     * @return the duration in nanoseconds, or 0 if none has been recorded
+     */
+    public static long percentile(@NonNull Operation operation, double fraction)
+    {
+        return latencies[operation.ordinal()].percentile(fraction);
+    }
+
+
+    /**
+     * Gets every non-zero count, keyed by operation and outcome
+     *
+     * @return a new map from names such as <code>ATTACK.WRONG_SECTOR</code> to counts, in enum order
+     */
+    public static Map<String, Long> counts()
+    {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Operation operation : OPERATIONS)
+        {
+            for (Outcome outcome : OUTCOMES)
+            {
+                long n = count(operation, outcome);
+                if (n != 0) counts.put(operation + "." + outcome, n);
+            }
+        }
+        return counts;
+    }
+
+
+    /**
+     * Gets a summary of the recorded durations of each operation that has any
+     *
+     * @return a new map from operation names to summaries in microseconds
+     */
+    public static Map<String, String> latencies()
+    {
+        Map<String, String> summaries = new LinkedHashMap<>();
+        for (Operation operation : OPERATIONS)
+        {
+            AtomicHistogram histogram = latencies[operation.ordinal()];
+            if (histogram.getCount() != 0) summaries.put(operation.toString(), histogram.toString());
+        }
+        return summaries;
+    }
+
+
+    /**
+     * Writes every non-zero count and latency summary as text, one per line
+     *
+     * @return the text, empty if nothing has been recorded
+     */
+    public static String dump()
+    {
+        StringBuilder text = new StringBuilder();
+        counts().forEach((name, n) -> text.append(name).append(' ').append(n).append('\n'));
+        latencies().forEach((name, summary) -> text.append(name).append(" latency ").append(summary).append('\n'));
+        return text.toString();
+    }
+
+
+    /**
+     * Zeroes every count and histogram. Operations recorded during the reset may be partly kept.
+     */
+    public static void reset()
+    {
+        for (LongAdder counter : counters)
+        {
+            counter.reset();
+        }
+        for (AtomicHistogram histogram : latencies)
+        {
+            histogram.reset();
+        }
+    }
+
+
+    /**
+     * Registers the metrics with the platform MBean server under <code>OBJECT_NAME</code>, if not already there
+     */
+    public static synchronized void registerMBean()
+    {
+        try
+        {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            var server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) server.registerMBean(new Bean(), name);
+        } catch (JMException e)
+        {
+            throw new IllegalStateException("Cannot register " + OBJECT_NAME, e);
+        }
+    }
+
+
+    /**
+     * Logs <code>dump</code> at info level at a fixed interval on a background daemon thread. The counts are
+     * cumulative, so an interval is skipped if the total of every count is the same as at the last dump, meaning
+     * nothing was recorded in it.
+     *
+     * @param interval the time between dumps
+     * @return a <code>Closeable</code> that stops the dumps
+     */
+    public static Closeable reportEvery(@NonNull Duration interval)
+    {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread thread = new Thread(r, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long[] lastTotal = {0};         // Only touched by the reporter thread
+        executor.scheduleAtFixedRate(() ->
+        {
+            long total = total();
+            if (total == lastTotal[0]) return;
+
+            lastTotal[0] = total;
+            String text = dump();
+            if (!text.isEmpty()) logger.info("Metrics:\n{}", text);
+        }, interval.toNanos(), interval.toNanos(), TimeUnit.NANOSECONDS);
+        return executor::shutdownNow;
+    }
+
+
+    /**
+     * The JMX view of the metrics
+     */
+    public interface MetricsMXBean
+    {
+        Map<String, Long> getCounts();
+
+        Map<String, String> getLatencies();
+
+        boolean isTiming();
+
+        void setTiming(boolean on);
+
+        String dump();
+
+        void reset();
+    }
+
+
+    /**
+     * Exposes the static metrics through <code>MetricsMXBean</code>
+     */
+    private static final class Bean implements MetricsMXBean
+    {
+        @Override
+        public Map<String, Long> getCounts()
+        {
+            return counts();
+        }
+
+        @Override
+        public Map<String, String> getLatencies()
+        {
+            return latencies();
+        }
+
+        @Override
+        public boolean isTiming()
+        {
+            return Metrics.isTiming();
+        }
+
+        @Override
+        public void setTiming(boolean on)
+        {
+            Metrics.setTiming(on);
+        }
+
+        @Override
+        public String dump()
+        {
+            return Metrics.dump();
+        }
+
+        @Override
+        public void reset()
+        {
+            Metrics.reset();
+        }
+    }
+}
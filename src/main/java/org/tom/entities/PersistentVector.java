@@ -0,0 +1,201 @@
+package org.tom.entities;
+
+/**
+ * An immutable list that shares structure with the lists it was derived from, for world snapshots. Elements live
+ * in the leaves of a trie with 32 children per node, so a list of a million elements is four levels deep, and
+ * changing an element copies only the four nodes on its path rather than the whole list.
+ * <p>
+ * Changes are made through a <code>Transient</code>, which copies a node the first time it touches it and then
+ * edits its copy in place, so a batch of changes to the same part of the list copies each node once. Once
+ * <code>persistent</code> is called the transient is spent, and its nodes are never written again, so the
+ * resulting list can be handed to other threads through a volatile field or other safe publication.
+ * </p>
+ *
+ * @param <T> the element type
+ */
+final class PersistentVector<T>
+{
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(0, 0, new Node(null, new Object[WIDTH]));
+
+    private final int size;
+    private final int shift;            // Bits of the index below the root's children; 0 when the root is a leaf
+    private final Node root;
+
+
+    /**
+     * A trie node, holding elements if it is a leaf or child nodes if not
+     *
+     * @param edit  the token of the transient that created the node, which may edit it in place
+     * @param array the elements or children
+     */
+    private record Node(Object edit, Object[] array)
+    {}
+
+
+    private PersistentVector(int size, int shift, Node root)
+    {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+    }
+
+
+    /**
+     * Gets the empty list
+     */
+    @SuppressWarnings("unchecked")
+    static <T> PersistentVector<T> empty()
+    {
+        return (PersistentVector<T>) EMPTY;
+    }
+
+
+    /**
+     * Gets an element
+     *
+     * @param index the element index
+     * @throws IndexOutOfBoundsException if the index is not less than <code>size()</code>
+     */
+    @SuppressWarnings("unchecked")
+    T get(int index)
+    {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS)
+        {
+            node = (Node) node.array[(index >>> level) & MASK];
+        }
+        return (T) node.array[index & MASK];
+    }
+
+
+    /**
+     * Gets the number of elements
+     */
+    int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * Starts a batch of changes to a copy of this list. This list is not changed.
+     */
+    Transient<T> asTransient()
+    {
+        return new Transient<>(this);
+    }
+
+
+    /**
+     * A list being changed by one thread. Nodes shared with the list it came from are copied before they are
+     * written, and nodes it created are written in place.
+     *
+     * @param <T> the element type
+     */
+    static final class Transient<T>
+    {
+        private Object edit = new Object();     // Marks the nodes this transient owns; null once spent
+        private int size;
+        private int shift;
+        private Node root;
+
+        private Transient(PersistentVector<T> vector)
+        {
+            size = vector.size;
+            shift = vector.shift;
+            root = vector.root;
+        }
+
+        /**
+         * Gets the number of elements
+         */
+        int size()
+        {
+            return size;
+        }
+
+        /**
+         * Replaces an element
+         *
+         * @param index the element index
+         * @param value the new element
+         * @throws IndexOutOfBoundsException if the index is not less than <code>size()</code>
+         */
+        void set(int index, T value)
+        {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+            leafFor(index).array[index & MASK] = value;
+        }
+
+        /**
+         * Adds an element to the end, adding a level above the root when the trie is full
+         *
+         * @param value the new element
+         */
+        void append(T value)
+        {
+            if (size == 1 << (shift + BITS))
+            {
+                Node grown = new Node(owner(), new Object[WIDTH]);
+                grown.array[0] = root;
+                root = grown;
+                shift += BITS;
+            }
+            int index = size++;
+            leafFor(index).array[index & MASK] = value;
+        }
+
+        /**
+         * Ends the batch of changes
+         *
+         * @return the changed list, which shares every node this transient did not touch with the original
+         */
+        PersistentVector<T> persistent()
+        {
+            owner();
+            edit = null;
+            return new PersistentVector<>(size, shift, root);
+        }
+
+        /**
+         * Gets the leaf holding an index, copying or creating the nodes on its path that this transient does not
+         * yet own
+         */
+        private Node leafFor(int index)
+        {
+            root = editable(root);
+            Node node = root;
+            for (int level = shift; level > 0; level -= BITS)
+            {
+                int i = (index >>> level) & MASK;
+                Node child = (Node) node.array[i];
+                child = child == null ? new Node(edit, new Object[WIDTH]) : editable(child);
+                node.array[i] = child;
+                node = child;
+            }
+            return node;
+        }
+
+        /**
+         * Gets a node this transient may write: the node itself if it owns it, otherwise a copy
+         */
+        private Node editable(Node node)
+        {
+            return node.edit == owner() ? node : new Node(edit, node.array.clone());
+        }
+
+        /**
+         * Gets the edit token, checking that the transient has not been spent
+         */
+        private Object owner()
+        {
+            if (edit == null) throw new IllegalStateException("Transient used after persistent()");
+            return edit;
+        }
+    }
+}
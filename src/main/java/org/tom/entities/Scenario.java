@@ -0,0 +1,542 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jspecify.annotations.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the starting fleets of a game from a scenario file, so large worlds need not be built by hand. A scenario
+ * lists fleets, and for each fleet runs of starbases and starships that share a sector, optionally docked to one
+ * of the fleet's starbases. It can be written as text or in an equivalent binary form, which is smaller and
+ * faster to read; <code>load</code> tells them apart by the first four bytes.
+ * <p>
+ * The text form has one directive per line. Blank lines and anything after a <code>#</code> are ignored.
+ * </p>
+ * <pre>
+ * entities 4                  # Optional, first: the number of entities, to size a new store
+ * fleet 1                     # Starts the fleet of player 1
+ * starbase 0 0                # A starbase in sector 0,0
+ * starship 0 0 2 dock 0       # Two starships in sector 0,0, docked to the fleet's first starbase
+ * fleet 2
+ * starship 5 5
+ * </pre>
+ * <p>
+ * The file is streamed through a fixed-size buffer, and each run creates its entities straight into the store
+ * and fleet, with no per-entity logging and no lists of lines or entities in between, so memory use beyond the
+ * entities themselves does not depend on the size of the scenario. Values in the binary form are little-endian.
+ * </p>
+ */
+public final class Scenario
+{
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final int MAGIC = 0x5353434E;    // "SSCN"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8;                 // Magic, version, entity count
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int MAX_PRESIZE = 1 << 20;                    // Entities a header can size the store for
+
+    // Binary record kinds and the sizes of their fields
+    private static final byte FLEET = 1;
+    private static final byte STARBASES = 2;
+    private static final byte STARSHIPS = 3;
+    private static final int FLEET_BYTES = 4;                          // Player
+    private static final int STARBASES_BYTES = 4 + 4 + 4;              // x, y, count
+    private static final int STARSHIPS_BYTES = 4 + 4 + 4 + 4;          // x, y, count, docked base or -1
+
+
+    private Scenario()
+    {}
+
+
+    /**
+     * Loads a scenario into a new <code>EntityStore</code>, sized by the entity count of the scenario if it gives
+     * one. The count is not trusted beyond a million entities; past that the store grows as entities are loaded.
+     *
+     * @param path the scenario file, text or binary
+     * @return the fleets, in the order the scenario lists them
+     * @throws IOException if the file cannot be read or is not a valid scenario
+     */
+    public static List<Fleet> load(@NonNull Path path) throws IOException
+    {
+        return load(path, null);
+    }
+
+
+    /**
+     * Loads a scenario. Entities get new IDs, handed out in the order the scenario lists them.
+     *
+     * @param path  the scenario file, text or binary
+     * @param store the <code>EntityStore</code> to create entities in, or null for a new store
+     * @return the fleets, in the order the scenario lists them
+     * @throws IOException if the file cannot be read or is not a valid scenario
+     */
+    public static List<Fleet> load(@NonNull Path path, EntityStore store) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+            Loader loader = new Loader(channel, buffer, path);
+
+            if (loader.ensure(4) && buffer.getInt(buffer.position()) == MAGIC)
+            {
+                loader.readBinary(store);
+            } else
+            {
+                loader.readText(store);
+            }
+
+            logger.info("Loaded {} entities in {} fleets from {}", loader.entities, loader.fleets.size(), path);
+            return loader.fleets;
+        }
+    }
+
+
+    /**
+     * Starts writing a scenario in the binary form. The file is replaced if it exists.
+     *
+     * @param path the file to write
+     * @return a <code>Writer</code>, which must be closed to finish the file
+     * @throws IOException if the file cannot be opened
+     */
+    public static Writer write(@NonNull Path path) throws IOException
+    {
+        return new Writer(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+
+    /**
+     * Reads one scenario file, creating its fleets and entities as it goes
+     */
+    private static final class Loader
+    {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final Path path;
+        private final List<Fleet> fleets = new ArrayList<>();
+        private final StringBuilder word = new StringBuilder();
+        private EntityStore store;
+        private Fleet fleet;                // The fleet runs are added to
+        private long entities;
+        private long newlines;              // Read so far in the text form
+        private long line;                  // Of the directive being read, for error messages
+        private int pushedBack = -1;        // A byte read ahead by the text reader, or -1
+
+        Loader(FileChannel channel, ByteBuffer buffer, Path path)
+        {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.path = path;
+        }
+
+        /**
+         * Reads the binary form: a header, then a fleet record before the runs of each fleet
+         */
+        void readBinary(EntityStore given) throws IOException
+        {
+            if (!ensure(HEADER_BYTES)) throw new IOException("Truncated scenario header: " + path);
+            buffer.getInt();
+            int version = buffer.getInt();
+            if (version != VERSION) throw new IOException("Unsupported scenario version " + version + ": " + path);
+            long count = buffer.getLong();
+            store = given != null ? given : new EntityStore(Math.clamp(count, 1, MAX_PRESIZE));
+
+            while (ensure(1))
+            {
+                byte kind = buffer.get();
+                switch (kind)
+                {
+                    case FLEET ->
+                    {
+                        need(FLEET_BYTES);
+                        startFleet(buffer.getInt());
+                    }
+                    case STARBASES ->
+                    {
+                        need(STARBASES_BYTES);
+                        addStarbases(buffer.getInt(), buffer.getInt(), buffer.getInt());
+                    }
+                    case STARSHIPS ->
+                    {
+                        need(STARSHIPS_BYTES);
+                        addStarships(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+                    }
+                    default -> throw error("Unknown record kind " + kind);
+                }
+            }
+        }
+
+        /**
+         * Reads the text form one directive at a time
+         */
+        void readText(EntityStore given) throws IOException
+        {
+            store = given;
+            while (nextLine())
+            {
+                readWord();
+                if (is("fleet"))
+                {
+                    startFleet(readInt());
+                } else if (is("starbase"))
+                {
+                    int x = readInt();
+                    int y = readInt();
+                    addStarbases(x, y, hasMore() ? readInt() : 1);
+                } else if (is("starship"))
+                {
+                    int x = readInt();
+                    int y = readInt();
+                    int count = 1;
+                    int dock = -1;
+                    if (hasMore() && !peekWord()) count = readInt();
+                    if (hasMore())
+                    {
+                        readWord();
+                        if (!is("dock")) throw error("Expected dock but found " + word);
+                        dock = readInt();
+                    }
+                    addStarships(x, y, count, dock);
+                } else if (is("entities"))
+                {
+                    if (entities > 0 || !fleets.isEmpty()) throw error("entities must come before any fleet");
+                    int count = readInt();
+                    if (store == null) store = new EntityStore(Math.clamp(count, 1, MAX_PRESIZE));
+                } else
+                {
+                    throw error("Unknown directive " + word);
+                }
+                if (hasMore()) throw error("Unexpected text after " + word);
+            }
+        }
+
+        private void startFleet(int player)
+        {
+            fleet = new Fleet(new Player(player));
+            fleets.add(fleet);
+        }
+
+        private void addStarbases(int x, int y, int count) throws IOException
+        {
+            checkRun(count);
+            long id = Entity.reserveIds(count);
+            for (int i = 0; i < count; i++)
+            {
+                fleet.addQuietly(new Starbase(x, y, store, id + i));
+            }
+            entities += count;
+        }
+
+        private void addStarships(int x, int y, int count, int dock) throws IOException
+        {
+            checkRun(count);
+            Starbase base = null;
+            if (dock >= 0)
+            {
+                base = fleet.getStarbaseAt(dock).orElseThrow(() -> error(fleet + " has no starbase " + dock));
+            } else if (dock != -1)
+            {
+                throw error("Invalid starbase " + dock);
+            }
+
+            long id = Entity.reserveIds(count);
+            EventJournal journal = store.journal;
+            for (int i = 0; i < count; i++)
+            {
+                Starship ship = new Starship(x, y, store, id + i);
+                fleet.addQuietly(ship);
+                if (base != null)
+                {
+                    base.restoreDocked(ship);
+                    ship.setFlag(EntityStore.DOCKED, true);
+                    if (journal != null) journal.dock(ship, base);
+                }
+            }
+            entities += count;
+        }
+
+        /**
+         * Checks a run can be added: it belongs to a fleet and has a sensible count. Creates the store for text
+         * scenarios without an <code>entities</code> line.
+         */
+        private void checkRun(int count) throws IOException
+        {
+            if (fleet == null) throw error("Entities must follow a fleet");
+            if (count < 0) throw error("Negative count " + count);
+            if (store == null) store = new EntityStore(1024);
+        }
+
+        /**
+         * Makes at least <code>bytes</code> bytes available in the buffer, reading more of the file if needed
+         *
+         * @return false if the file ends first
+         */
+        boolean ensure(int bytes) throws IOException
+        {
+            if (buffer.remaining() >= bytes) return true;
+
+            buffer.compact();
+            while (buffer.position() < bytes)
+            {
+                if (channel.read(buffer) < 0) break;
+            }
+            buffer.flip();
+            return buffer.remaining() >= bytes;
+        }
+
+        private void need(int bytes) throws IOException
+        {
+            if (!ensure(bytes)) throw error("Truncated record");
+        }
+
+        /**
+         * Reads the next byte of the text form
+         *
+         * @return the byte, or -1 at the end of the file
+         */
+        private int read() throws IOException
+        {
+            if (pushedBack >= 0)
+            {
+                int b = pushedBack;
+                pushedBack = -1;
+                return b;
+            }
+            if (!ensure(1)) return -1;
+            int b = buffer.get() & 0xFF;
+            if (b == '\n') newlines++;
+            return b;
+        }
+
+        /**
+         * Moves to the first word of the next line with a directive, skipping blank and comment lines
+         *
+         * @return false at the end of the file
+         */
+        private boolean nextLine() throws IOException
+        {
+            while (true)
+            {
+                int b = skipSpaces();
+                if (b == -1) return false;
+                if (b != '\n' && b != '#')
+                {
+                    pushedBack = b;
+                    line = newlines + 1;
+                    return true;
+                }
+                skipLine(b);
+            }
+        }
+
+        /**
+         * Skips spaces and tabs, and carriage returns before a line feed
+         *
+         * @return the first other byte, which has been consumed, or -1 at the end of the file
+         */
+        private int skipSpaces() throws IOException
+        {
+            int b;
+            do
+            {
+                b = read();
+            } while (b == ' ' || b == '\t' || b == '\r');
+            return b;
+        }
+
+        /**
+         * Consumes the rest of a line, given its next byte
+         *
+         * @return the line feed that ends it, or -1 at the end of the file
+         */
+        private int skipLine(int b) throws IOException
+        {
+            while (b != '\n' && b != -1) b = read();
+            return b;
+        }
+
+        /**
+         * Gets whether the current line has another word. A comment ends the line; the line feed is left for
+         * <code>nextLine</code>.
+         */
+        private boolean hasMore() throws IOException
+        {
+            int b = skipSpaces();
+            if (b == '#') b = skipLine(b);
+            pushedBack = b;
+            return b != '\n' && b != -1;
+        }
+
+        /**
+         * Gets whether the next word on the line starts with a letter rather than a number. Call after
+         * <code>hasMore</code>.
+         */
+        private boolean peekWord()
+        {
+            return Character.isLetter(pushedBack);
+        }
+
+        /**
+         * Reads the next word of the line into <code>word</code>
+         */
+        private void readWord() throws IOException
+        {
+            word.setLength(0);
+            int b = skipSpaces();
+            while (b != -1 && b != ' ' && b != '\t' && b != '\r' && b != '\n' && b != '#')
+            {
+                word.append((char) b);
+                b = read();
+            }
+            pushedBack = b;
+        }
+
+        private boolean is(String keyword)
+        {
+            return word.length() == keyword.length() && word.indexOf(keyword) == 0;
+        }
+
+        /**
+         * Reads the next word of the line as a decimal integer, without making a string of it
+         */
+        private int readInt() throws IOException
+        {
+            int b = skipSpaces();
+            boolean negative = b == '-';
+            if (negative) b = read();
+            if (b < '0' || b > '9') throw error("Expected a number");
+
+            long value = 0;
+            while (b >= '0' && b <= '9')
+            {
+                value = value * 10 + (b - '0');
+                if (value > (long) Integer.MAX_VALUE + 1) throw error("Number too large");
+                b = read();
+            }
+            pushedBack = b;
+
+            value = negative ? -value : value;
+            if (value > Integer.MAX_VALUE) throw error("Number too large");
+            return (int) value;
+        }
+
+        private IOException error(String message)
+        {
+            String where = line > 0 ? path + " line " + line : path.toString();
+            return new IOException(where + ": " + message);
+        }
+    }
+
+
+    /**
+     * Writes a scenario in the binary form, one run at a time, through a fixed-size buffer. The entity count in
+     * the header is filled in on <code>close</code>.
+     */
+    public static final class Writer implements Closeable
+    {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private long entities;
+        private boolean inFleet;
+
+        private Writer(FileChannel channel) throws IOException
+        {
+            this.channel = channel;
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(0);
+        }
+
+        /**
+         * Starts a fleet; the runs written after it belong to it
+         *
+         * @param player the number of the player who owns the fleet
+         * @return this writer
+         */
+        public Writer fleet(int player) throws IOException
+        {
+            room(1 + FLEET_BYTES).put(FLEET).putInt(player);
+            inFleet = true;
+            return this;
+        }
+
+        /**
+         * Adds a run of starbases to the current fleet
+         *
+         * @param x     the x coordinate of their sector
+         * @param y     the y coordinate of their sector
+         * @param count the number of starbases
+         * @return this writer
+         */
+        public Writer starbases(int x, int y, int count) throws IOException
+        {
+            checkRun(count);
+            room(1 + STARBASES_BYTES).put(STARBASES).putInt(x).putInt(y).putInt(count);
+            entities += count;
+            return this;
+        }
+
+        /**
+         * Adds a run of starships to the current fleet
+         *
+         * @param x      the x coordinate of their sector
+         * @param y      the y coordinate of their sector
+         * @param count  the number of starships
+         * @param dockTo the index of the fleet's starbase to dock them to, or -1 to leave them undocked
+         * @return this writer
+         */
+        public Writer starships(int x, int y, int count, int dockTo) throws IOException
+        {
+            checkRun(count);
+            room(1 + STARSHIPS_BYTES).put(STARSHIPS).putInt(x).putInt(y).putInt(count).putInt(dockTo);
+            entities += count;
+            return this;
+        }
+
+        private void checkRun(int count)
+        {
+            if (!inFleet) throw new IllegalStateException("Entities must follow a fleet");
+            if (count < 0) throw new IllegalArgumentException("Negative count " + count);
+        }
+
+        /**
+         * Makes room in the buffer for a record, writing out what it holds if needed
+         */
+        private ByteBuffer room(int bytes) throws IOException
+        {
+            if (buffer.remaining() < bytes) flush();
+            return buffer;
+        }
+
+        private void flush() throws IOException
+        {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        /**
+         * Writes out the last records and the entity count, and closes the file
+         */
+        @Override
+        public void close() throws IOException
+        {
+            try (channel)
+            {
+                flush();
+                ByteBuffer count = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(0, entities);
+                channel.write(count, 8);
+            }
+        }
+    }
+}
@@ -1,8 +1,22 @@
 package org.tom.entities;
 
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+
 /**
  * Defines a location on the map grid with an x and y coordinate.
  * Defined as a record as this is purely a data-carrier class.
+ * Implements <code>StringBuilderFormattable</code> so log messages can include a sector without creating a string.
  */
-public record Sector(int x, int y) {}
-
+public record Sector(int x, int y) implements StringBuilderFormattable
+{
+    /**
+     * Writes the same text as <code>toString</code> into the log message buffer
+     *
+     * @param buffer the buffer to append to
+     */
+    @Override
+    public void formatTo(StringBuilder buffer)
+    {
+        buffer.append("Sector[x=").append(x).append(", y=").append(y).append(']');
+    }
+}
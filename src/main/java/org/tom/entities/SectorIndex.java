@@ -0,0 +1,284 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jspecify.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A spatial index of <code>Entity</code> objects keyed by their <code>Sector</code>. Fleets registered with
+ * <code>track</code> keep the index up to date: entities are added when they join the fleet, and moved between
+ * buckets whenever <code>Starship.setSector</code> changes their position. This turns "what shares this sector"
+ * into a single hash lookup instead of a scan over every fleet.
+ * <p>
+ * Destroyed entities are skipped by the queries rather than removed eagerly, so the index is never written to
+ * during combat. <code>purgeDestroyed</code> drops them in one pass.
+ * </p>
+ */
+public class SectorIndex
+{
+    private static final Logger logger = LogManager.getLogger();
+    private final Map<Sector, Bucket> buckets;      // Only occupied sectors have a bucket
+
+
+    /**
+     * Creates an empty index
+     */
+    public SectorIndex()
+    {
+        buckets = new HashMap<>();
+    }
+
+
+    /**
+     * Registers a <code>Fleet</code> with this index. All entities already in the fleet are indexed, and any
+     * added or moved later are kept up to date automatically.
+     *
+     * @param fleet the <code>Fleet</code> to track
+     */
+    public void track(@NonNull Fleet fleet)
+    {
+        fleet.setSectorIndex(this);
+
+        for (Starbase starbase : fleet.getStarbases())
+        {
+            add(starbase);
+        }
+        for (Starship starship : fleet.getStarships())
+        {
+            add(starship);
+        }
+        logger.debug("{} is now tracked by the sector index", fleet);
+    }
+
+
+    /**
+     * Adds an <code>Entity</code> to the bucket for its current sector. Entities already indexed are ignored.
+     *
+     * @param entity the <code>Entity</code> to add
+     */
+    void add(@NonNull Entity entity)
+    {
+        if (entity.sectorSlot >= 0) return;     // Already indexed
+        buckets.computeIfAbsent(entity.getSector(), s -> new Bucket()).add(entity);
+    }
+
+
+    /**
+     * Moves an indexed <code>Entity</code> from one sector bucket to another. Both updates are O(1).
+     *
+     * @param entity the <code>Entity</code> that moved
+     * @param from   the sector it was in
+     * @param to     the sector it is now in
+     */
+    void move(@NonNull Entity entity, @NonNull Sector from, @NonNull Sector to)
+    {
+        if (entity.sectorSlot < 0 || from.equals(to)) return;
+
+        remove(entity, from);
+        buckets.computeIfAbsent(to, s -> new Bucket()).add(entity);
+    }
+
+
+    /**
+     * Removes an indexed <code>Entity</code>, as it is leaving its fleet. Entities not indexed are ignored.
+     *
+     * @param entity the <code>Entity</code> to remove
+     */
+    void remove(@NonNull Entity entity)
+    {
+        if (entity.sectorSlot >= 0) remove(entity, entity.getSector());
+    }
+
+
+    /**
+     * Removes an <code>Entity</code> from the bucket for the given sector, dropping the bucket if it empties
+     */
+    private void remove(Entity entity, Sector sector)
+    {
+        Bucket bucket = buckets.get(sector);
+        if (bucket == null) return;
+
+        bucket.remove(entity);
+        if (bucket.size == 0) buckets.remove(sector);
+    }
+
+
+    /**
+     * Gets every indexed entity in a sector, including destroyed ones
+     *
+     * @param sector the <code>Sector</code> to look up
+     * @return an unmodifiable <code>List</code> of the entities in the sector
+     */
+    public List<Entity> entitiesIn(@NonNull Sector sector)
+    {
+        Bucket bucket = buckets.get(sector);
+        if (bucket == null) return Collections.emptyList();
+        return Collections.unmodifiableList(bucket.toList());
+    }
+
+
+    /**
+     * Gets the live entities in a sector that do not belong to the given fleet
+     *
+     * @param sector the <code>Sector</code> to look up
+     * @param fleet  the <code>Fleet</code> asking; its own entities are excluded
+     * @return a new <code>List</code> of hostile, non-destroyed entities
+     */
+    public List<Entity> hostilesIn(@NonNull Sector sector, Fleet fleet)
+    {
+        List<Entity> hostiles = new ArrayList<>();
+        Bucket bucket = buckets.get(sector);
+        if (bucket == null) return hostiles;
+
+        for (int i = 0; i < bucket.size; i++)
+        {
+            Entity e = bucket.entities[i];
+            if (!e.isDestroyed() && !Objects.equals(e.getFleet(), fleet)) hostiles.add(e);
+        }
+        return hostiles;
+    }
+
+
+    /**
+     * Gets the live entities whose sector lies within a Euclidean distance of <code>radius</code> sectors from
+     * <code>centre</code>. Probes each coordinate in the bounding square when that is cheaper than walking the
+     * occupied sectors, and walks the occupied sectors otherwise.
+     *
+     * @param centre the <code>Sector</code> at the centre of the search
+     * @param radius the search radius in sectors, must not be negative
+     * @return a new <code>List</code> of non-destroyed entities in range
+     */
+    public List<Entity> entitiesWithin(@NonNull Sector centre, int radius)
+    {
+        if (radius < 0) throw new IllegalArgumentException("radius must not be negative: " + radius);
+
+        List<Entity> found = new ArrayList<>();
+        long radiusSquared = (long) radius * radius;
+        long side = 2L * radius + 1;
+
+        if (side * side <= buckets.size())
+        {
+            // Small radius: look up each sector in the bounding square
+            for (int x = centre.x() - radius; x <= centre.x() + radius; x++)
+            {
+                for (int y = centre.y() - radius; y <= centre.y() + radius; y++)
+                {
+                    if (distanceSquared(centre, x, y) > radiusSquared) continue;
+                    Bucket bucket = buckets.get(new Sector(x, y));
+                    if (bucket != null) bucket.addLiveTo(found);
+                }
+            }
+        } else
+        {
+            // Large radius: fewer occupied sectors than coordinates to probe
+            for (Map.Entry<Sector, Bucket> entry : buckets.entrySet())
+            {
+                Sector s = entry.getKey();
+                if (distanceSquared(centre, s.x(), s.y()) <= radiusSquared) entry.getValue().addLiveTo(found);
+            }
+        }
+        return found;
+    }
+
+
+    /**
+     * Gets the number of sectors that currently hold at least one indexed entity
+     *
+     * @return the occupied sector count
+     */
+    public int occupiedSectorCount()
+    {
+        return buckets.size();
+    }
+
+
+    /**
+     * Removes every destroyed entity from the index
+     *
+     * @return the number of entities removed
+     */
+    public int purgeDestroyed()
+    {
+        int removed = 0;
+        var iterator = buckets.values().iterator();
+        while (iterator.hasNext())
+        {
+            Bucket bucket = iterator.next();
+            for (int i = bucket.size - 1; i >= 0; i--)
+            {
+                Entity e = bucket.entities[i];
+                if (e.isDestroyed())
+                {
+                    bucket.remove(e);
+                    removed++;
+                }
+            }
+            if (bucket.size == 0) iterator.remove();
+        }
+        logger.debug("Purged {} destroyed entities from the sector index", removed);
+        return removed;
+    }
+
+
+    /**
+     * Helper method to get the squared distance between a sector and a coordinate, widened to avoid overflow
+     */
+    private static long distanceSquared(Sector centre, int x, int y)
+    {
+        long dx = (long) x - centre.x();
+        long dy = (long) y - centre.y();
+        return dx * dx + dy * dy;
+    }
+
+
+    /**
+     * The entities in one sector. Each entity stores its position in <code>entities</code> in
+     * <code>Entity.sectorSlot</code>, so removal swaps the last element into the gap in O(1).
+     */
+    private static final class Bucket
+    {
+        private Entity[] entities = new Entity[4];
+        private int size;
+
+        void add(Entity e)
+        {
+            if (size == entities.length) entities = Arrays.copyOf(entities, size * 2);
+            entities[size] = e;
+            e.sectorSlot = size++;
+        }
+
+        void remove(Entity e)
+        {
+            int slot = e.sectorSlot;
+            if (slot < 0 || slot >= size || entities[slot] != e) return;
+
+            // Swap the last entity into the freed slot
+            Entity last = entities[--size];
+            entities[slot] = last;
+            last.sectorSlot = slot;
+            entities[size] = null;
+            e.sectorSlot = -1;
+        }
+
+        void addLiveTo(List<Entity> out)
+        {
+            for (int i = 0; i < size; i++)
+            {
+                if (!entities[i].isDestroyed()) out.add(entities[i]);
+            }
+        }
+
+        List<Entity> toList()
+        {
+            return Arrays.asList(Arrays.copyOf(entities, size));
+        }
+    }
+}
@@ -0,0 +1,611 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jspecify.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.apache.logging.log4j.util.Unbox.box;
+
+/**
+ * A bounded map of the game grid, divided into square chunks of <code>CHUNK</code> sectors a side. Each chunk
+ * holds the entities inside it and a count of them per fleet, so range queries only visit the chunks that
+ * overlap the range, and the nearest-hostile search skips every chunk holding nothing but the searcher's own
+ * fleet without looking at its entities. On a 10,000 x 10,000 map there are about 25,000 chunks, few enough to
+ * keep in one array.
+ * <p>
+ * Fleets registered with <code>track</code> keep the map up to date as their entities join and move, as with
+ * <code>SectorIndex</code>. A move within a chunk changes nothing; a move between chunks is two O(1) updates.
+ * Starships cannot move off the map. Fleets can be given a route of waypoints, and <code>advance</code> moves
+ * their starships a number of sectors along it each turn.
+ * </p>
+ * <p>
+ * Destroyed entities are skipped by the queries rather than removed eagerly, so the map is never written to
+ * during combat, and are still counted until <code>purgeDestroyed</code> drops them. Not thread-safe.
+ * </p>
+ */
+public class SectorMap
+{
+    public static final int CHUNK = 64;             // Sectors along each side of a chunk
+    private static final int SHIFT = Integer.numberOfTrailingZeros(CHUNK);
+    private static final Logger logger = LogManager.getLogger();
+
+    private final int width;
+    private final int height;
+    private final int chunksX;
+    private final int chunksY;
+    private final Chunk[] chunks;                   // By chunk row then column, null until first occupied
+    private final List<Fleet> fleets = new ArrayList<>();           // By Fleet.mapIndex
+    private final Map<Fleet, Route> routes = new LinkedHashMap<>(); // In the order the routes were set
+    private int entities;
+
+
+    /**
+     * Creates an empty map covering sectors from (0, 0) up to but not including (width, height)
+     *
+     * @param width  the number of sectors along the x axis
+     * @param height the number of sectors along the y axis
+     */
+    public SectorMap(int width, int height)
+    {
+        if (width <= 0 || height <= 0)
+        {
+            throw new IllegalArgumentException("Map size must be positive: " + width + " x " + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.chunksX = (width + CHUNK - 1) >> SHIFT;
+        this.chunksY = (height + CHUNK - 1) >> SHIFT;
+        this.chunks = new Chunk[chunksX * chunksY];
+    }
+
+
+    /**
+     * Registers a <code>Fleet</code> with this map. All entities already in the fleet are added, and any added
+     * or moved later are kept up to date automatically.
+     *
+     * @param fleet the <code>Fleet</code> to track
+     * @throws IllegalArgumentException if an entity of the fleet lies off the map
+     */
+    public void track(@NonNull Fleet fleet)
+    {
+        checkOnMap(fleet.getStarbases());
+        checkOnMap(fleet.getStarships());
+
+        if (fleet.getSectorMap() != this)
+        {
+            fleet.setSectorMap(this, fleets.size());
+            fleets.add(fleet);
+        }
+        for (Starbase starbase : fleet.getStarbases())
+        {
+            add(starbase);
+        }
+        for (Starship starship : fleet.getStarships())
+        {
+            add(starship);
+        }
+        logger.debug("{} is now tracked by the sector map", fleet);
+    }
+
+
+    /**
+     * Helper method for <code>track</code> that checks every entity is on the map before any is added
+     */
+    private void checkOnMap(List<? extends Entity> entities)
+    {
+        for (Entity e : entities)
+        {
+            if (!contains(e.store.sectorX[e.slot], e.store.sectorY[e.slot]))
+            {
+                throw new IllegalArgumentException(e + " is off the map");
+            }
+        }
+    }
+
+
+    /**
+     * Gets whether a sector lies on this map
+     *
+     * @param sector the <code>Sector</code> to check
+     * @return true if both coordinates are within the map
+     */
+    public boolean contains(@NonNull Sector sector)
+    {
+        return contains(sector.x(), sector.y());
+    }
+
+
+    /**
+     * Gets whether the coordinates of a sector lie on this map, without needing a <code>Sector</code> object
+     */
+    boolean contains(int x, int y)
+    {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+
+    /**
+     * Adds an <code>Entity</code> of a tracked fleet to the chunk for its current sector. Entities already on the
+     * map are ignored.
+     *
+     * @param entity the <code>Entity</code> to add, which must be on the map
+     */
+    void add(@NonNull Entity entity)
+    {
+        if (entity.mapSlot >= 0) return;        // Already on the map
+        chunkFor(entity.store.sectorX[entity.slot], entity.store.sectorY[entity.slot], true).add(entity);
+        entities++;
+    }
+
+
+    /**
+     * Removes an <code>Entity</code> from the map, as it is leaving its fleet. Entities not on the map are
+     * ignored.
+     *
+     * @param entity the <code>Entity</code> to remove, still in its fleet
+     */
+    void remove(@NonNull Entity entity)
+    {
+        if (entity.mapSlot < 0) return;
+        chunkFor(entity.store.sectorX[entity.slot], entity.store.sectorY[entity.slot], false).remove(entity);
+        entities--;
+    }
+
+
+    /**
+     * Moves an <code>Entity</code> on the map from one sector to another. Only a move between chunks changes the
+     * map.
+     *
+     * @param entity the <code>Entity</code> that moved
+     * @param fromX  the x coordinate of the sector it was in
+     * @param fromY  the y coordinate of the sector it was in
+     * @param to     the sector it is now in, which must be on the map
+     */
+    void move(@NonNull Entity entity, int fromX, int fromY, @NonNull Sector to)
+    {
+        if (entity.mapSlot < 0) return;
+
+        Chunk source = chunkFor(fromX, fromY, false);
+        Chunk target = chunkFor(to.x(), to.y(), true);
+        if (source == target) return;
+
+        source.remove(entity);
+        target.add(entity);
+    }
+
+
+    /**
+     * Gets the number of entities on the map in a sector, including destroyed ones not yet purged
+     *
+     * @param sector the <code>Sector</code> to count
+     * @return the number of entities in the sector, 0 if it is off the map
+     */
+    public int occupancy(@NonNull Sector sector)
+    {
+        return occupancy(sector, null);
+    }
+
+
+    /**
+     * Gets the number of entities of a fleet on the map in a sector, including destroyed ones not yet purged
+     *
+     * @param sector the <code>Sector</code> to count
+     * @param fleet  the <code>Fleet</code> whose entities are counted, or null to count every fleet
+     * @return the number of the fleet's entities in the sector, 0 if it is off the map
+     */
+    public int occupancy(@NonNull Sector sector, Fleet fleet)
+    {
+        if (!contains(sector)) return 0;
+        Chunk chunk = chunkFor(sector.x(), sector.y(), false);
+        if (chunk == null || (fleet != null && chunk.count(fleet) == 0)) return 0;
+
+        int count = 0;
+        for (int i = 0; i < chunk.size; i++)
+        {
+            Entity e = chunk.entities[i];
+            if (e.inSector(sector.x(), sector.y()) && (fleet == null || e.getFleet() == fleet)) count++;
+        }
+        return count;
+    }
+
+
+    /**
+     * Gets the number of entities of a fleet on the map, including destroyed ones not yet purged
+     *
+     * @param fleet the <code>Fleet</code> to count
+     * @return the number of the fleet's entities on the map, 0 if the fleet is not tracked
+     */
+    public int occupancy(@NonNull Fleet fleet)
+    {
+        if (fleet.getSectorMap() != this) return 0;
+
+        int count = 0;
+        for (Chunk chunk : chunks)
+        {
+            if (chunk != null) count += chunk.count(fleet);
+        }
+        return count;
+    }
+
+
+    /**
+     * Gets the live entities whose sector lies within a Euclidean distance of <code>radius</code> sectors from
+     * <code>centre</code>, as <code>SectorIndex.entitiesWithin</code> does. Only the chunks overlapping the
+     * bounding square are visited, and chunks wholly inside the circle are added without checking each entity.
+     *
+     * @param centre the <code>Sector</code> at the centre of the search
+     * @param radius the search radius in sectors, must not be negative
+     * @return a new <code>List</code> of non-destroyed entities in range
+     */
+    public List<Entity> entitiesWithin(@NonNull Sector centre, int radius)
+    {
+        return within(centre, radius, null);
+    }
+
+
+    /**
+     * Gets the live entities of every fleet but one within a Euclidean distance of <code>radius</code> sectors
+     * from <code>centre</code>. Chunks holding only the given fleet's entities are skipped.
+     *
+     * @param centre the <code>Sector</code> at the centre of the search
+     * @param radius the search radius in sectors, must not be negative
+     * @param fleet  the <code>Fleet</code> asking; its own entities are excluded
+     * @return a new <code>List</code> of hostile, non-destroyed entities in range
+     */
+    public List<Entity> hostilesWithin(@NonNull Sector centre, int radius, @NonNull Fleet fleet)
+    {
+        return within(centre, radius, fleet);
+    }
+
+
+    /**
+     * Helper method for the range queries, excluding the entities of <code>own</code> if it is not null
+     */
+    private List<Entity> within(Sector centre, int radius, Fleet own)
+    {
+        if (radius < 0) throw new IllegalArgumentException("radius must not be negative: " + radius);
+
+        List<Entity> found = new ArrayList<>();
+        long radiusSquared = (long) radius * radius;
+        int fromX = chunkX(centre.x() - radius), toX = chunkX(centre.x() + radius);
+        int fromY = chunkY(centre.y() - radius), toY = chunkY(centre.y() + radius);
+
+        for (int cy = fromY; cy <= toY; cy++)
+        {
+            for (int cx = fromX; cx <= toX; cx++)
+            {
+                Chunk chunk = chunks[cy * chunksX + cx];
+                if (chunk == null || (own != null && chunk.size == chunk.count(own))) continue;
+
+                // Every sector of the chunk is in range if its farthest corner is
+                long dx = Math.max(Math.abs((long) (cx << SHIFT) - centre.x()),
+                        Math.abs((long) (cx << SHIFT) + CHUNK - 1 - centre.x()));
+                long dy = Math.max(Math.abs((long) (cy << SHIFT) - centre.y()),
+                        Math.abs((long) (cy << SHIFT) + CHUNK - 1 - centre.y()));
+                boolean inside = dx * dx + dy * dy <= radiusSquared;
+
+                for (int i = 0; i < chunk.size; i++)
+                {
+                    Entity e = chunk.entities[i];
+                    if (e.isDestroyed() || (own != null && e.getFleet() == own)) continue;
+                    if (inside || distanceSquared(centre, e) <= radiusSquared) found.add(e);
+                }
+            }
+        }
+        return found;
+    }
+
+
+    /**
+     * Finds the live entity of another fleet nearest to a sector. Searches outwards one ring of chunks at a time,
+     * skipping chunks with no hostile entities by their counts, and stops once no unsearched chunk can be closer
+     * than the best entity found. Ties go to the entity found first.
+     *
+     * @param from  the <code>Sector</code> to search from
+     * @param fleet the <code>Fleet</code> asking; its own entities are excluded
+     * @return an <code>Optional</code> with the nearest hostile entity, or empty if there is none on the map
+     */
+    public Optional<Entity> nearestHostile(@NonNull Sector from, @NonNull Fleet fleet)
+    {
+        int originX = chunkX(from.x());
+        int originY = chunkY(from.y());
+        int maxRing = Math.max(Math.max(originX, chunksX - 1 - originX), Math.max(originY, chunksY - 1 - originY));
+
+        Entity best = null;
+        long bestDistance = Long.MAX_VALUE;
+        for (int ring = 0; ring <= maxRing; ring++)
+        {
+            // Every sector in this ring is at least this far away along one axis
+            long nearest = Math.max(0L, (long) (ring - 1) * CHUNK + 1);
+            if (nearest * nearest > bestDistance) break;
+
+            for (int cy = originY - ring; cy <= originY + ring; cy++)
+            {
+                if (cy < 0 || cy >= chunksY) continue;
+                // Whole rows at the top and bottom of the ring, only the two ends in between
+                int step = (cy == originY - ring || cy == originY + ring) ? 1 : Math.max(1, 2 * ring);
+                for (int cx = originX - ring; cx <= originX + ring; cx += step)
+                {
+                    if (cx < 0 || cx >= chunksX) continue;
+                    Chunk chunk = chunks[cy * chunksX + cx];
+                    if (chunk == null || chunk.size == chunk.count(fleet)) continue;
+
+                    for (int i = 0; i < chunk.size; i++)
+                    {
+                        Entity e = chunk.entities[i];
+                        if (e.isDestroyed() || e.getFleet() == fleet) continue;
+
+                        long distance = distanceSquared(from, e);
+                        if (distance < bestDistance)
+                        {
+                            best = e;
+                            bestDistance = distance;
+                        }
+                    }
+                }
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+
+    /**
+     * Sets the route of a tracked fleet, replacing any earlier route. Each call to <code>advance</code> moves the
+     * fleet's starships towards the first waypoint, and on to the next once all of them that can move are there.
+     *
+     * @param fleet     the <code>Fleet</code> to move, which must be tracked by this map
+     * @param waypoints the sectors to visit in order, all on the map
+     * @throws IllegalArgumentException if the fleet is not tracked or a waypoint is off the map
+     */
+    public void setRoute(@NonNull Fleet fleet, @NonNull List<Sector> waypoints)
+    {
+        if (fleet.getSectorMap() != this) throw new IllegalArgumentException(fleet + " is not on this map");
+        for (Sector waypoint : waypoints)
+        {
+            if (!contains(waypoint)) throw new IllegalArgumentException(waypoint + " is off the map");
+        }
+
+        if (waypoints.isEmpty())
+        {
+            routes.remove(fleet);
+            return;
+        }
+        routes.put(fleet, new Route(List.copyOf(waypoints)));
+    }
+
+
+    /**
+     * Gets the waypoints a fleet has still to reach
+     *
+     * @param fleet the <code>Fleet</code> to look up
+     * @return an unmodifiable list, empty if the fleet has no route or has finished it
+     */
+    public List<Sector> getRoute(@NonNull Fleet fleet)
+    {
+        Route route = routes.get(fleet);
+        return route == null ? List.of() : route.waypoints.subList(route.next, route.waypoints.size());
+    }
+
+
+    /**
+     * Moves the starships of every fleet with a route up to <code>speed</code> sectors towards its current
+     * waypoint, taking diagonal steps until level with it, and drops each route once its fleet reaches the last
+     * waypoint. Docked and destroyed starships stay where they are. The map's counts are updated by each move.
+     *
+     * @param speed the number of sectors a starship may move in a turn, diagonal steps counting as one
+     * @return the number of starships moved
+     */
+    public int advance(int speed)
+    {
+        if (speed < 0) throw new IllegalArgumentException("speed must not be negative: " + speed);
+
+        int moved = 0;
+        var iterator = routes.entrySet().iterator();
+        while (iterator.hasNext())
+        {
+            Map.Entry<Fleet, Route> entry = iterator.next();
+            Route route = entry.getValue();
+            Sector waypoint = route.waypoints.get(route.next);
+
+            boolean arrived = true;
+            for (Starship ship : entry.getKey().getStarships())
+            {
+                if (ship.isDestroyed() || ship.getDocked()) continue;
+
+                int x = ship.store.sectorX[ship.slot];
+                int y = ship.store.sectorY[ship.slot];
+                if (x == waypoint.x() && y == waypoint.y()) continue;
+
+                int nextX = x + Math.clamp((long) waypoint.x() - x, -speed, speed);
+                int nextY = y + Math.clamp((long) waypoint.y() - y, -speed, speed);
+                ship.setSector(new Sector(nextX, nextY));
+                moved++;
+                if (nextX != waypoint.x() || nextY != waypoint.y()) arrived = false;
+            }
+
+            if (arrived && ++route.next == route.waypoints.size()) iterator.remove();
+        }
+
+        if (logger.isDebugEnabled()) logger.debug("Advanced {} starships along their routes", box(moved));
+        return moved;
+    }
+
+
+    /**
+     * Removes every destroyed entity from the map
+     *
+     * @return the number of entities removed
+     */
+    public int purgeDestroyed()
+    {
+        int removed = 0;
+        for (Chunk chunk : chunks)
+        {
+            if (chunk == null) continue;
+            for (int i = chunk.size - 1; i >= 0; i--)
+            {
+                Entity e = chunk.entities[i];
+                if (e.isDestroyed())
+                {
+                    chunk.remove(e);
+                    removed++;
+                }
+            }
+        }
+        entities -= removed;
+        logger.debug("Purged {} destroyed entities from the sector map", box(removed));
+        return removed;
+    }
+
+
+    /**
+     * Gets the number of entities on the map, including destroyed ones not yet purged
+     *
+     * @return the entity count
+     */
+    public int size()
+    {
+        return entities;
+    }
+
+
+    /**
+     * Gets the number of sectors along the x axis
+     *
+     * @return the map width
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+
+    /**
+     * Gets the number of sectors along the y axis
+     *
+     * @return the map height
+     */
+    public int getHeight()
+    {
+        return height;
+    }
+
+
+    /**
+     * Gets the chunk holding a coordinate on the map
+     *
+     * @param create true to create the chunk if it does not exist yet
+     * @return the chunk, or null if it does not exist and <code>create</code> is false
+     */
+    private Chunk chunkFor(int x, int y, boolean create)
+    {
+        int index = (y >> SHIFT) * chunksX + (x >> SHIFT);
+        Chunk chunk = chunks[index];
+        if (chunk == null && create)
+        {
+            chunk = new Chunk(fleets.size());
+            chunks[index] = chunk;
+        }
+        return chunk;
+    }
+
+
+    /**
+     * Helper method to get the chunk column of an x coordinate, clamped to the map
+     */
+    private int chunkX(int x)
+    {
+        return Math.clamp(x >> SHIFT, 0, chunksX - 1);
+    }
+
+
+    /**
+     * Helper method to get the chunk row of a y coordinate, clamped to the map
+     */
+    private int chunkY(int y)
+    {
+        return Math.clamp(y >> SHIFT, 0, chunksY - 1);
+    }
+
+
+    /**
+     * Helper method to get the squared distance between a sector and an entity, widened to avoid overflow
+     */
+    private static long distanceSquared(Sector centre, Entity e)
+    {
+        long dx = (long) e.store.sectorX[e.slot] - centre.x();
+        long dy = (long) e.store.sectorY[e.slot] - centre.y();
+        return dx * dx + dy * dy;
+    }
+
+
+    /**
+     * The entities in one chunk, and how many of them belong to each tracked fleet. Each entity stores its
+     * position in <code>entities</code> in <code>Entity.mapSlot</code>, so removal swaps the last element into
+     * the gap in O(1).
+     */
+    private static final class Chunk
+    {
+        private Entity[] entities = new Entity[4];
+        private int size;
+        private int[] fleetCounts;                  // By Fleet.mapIndex
+
+        Chunk(int fleets)
+        {
+            fleetCounts = new int[Math.max(2, fleets)];
+        }
+
+        int count(Fleet fleet)
+        {
+            int index = fleet.getMapIndex();
+            return index >= 0 && index < fleetCounts.length ? fleetCounts[index] : 0;
+        }
+
+        void add(Entity e)
+        {
+            if (size == entities.length) entities = Arrays.copyOf(entities, size * 2);
+            entities[size] = e;
+            e.mapSlot = size++;
+
+            int index = e.getFleet().getMapIndex();
+            if (index >= fleetCounts.length) fleetCounts = Arrays.copyOf(fleetCounts, index + 1);
+            fleetCounts[index]++;
+        }
+
+        void remove(Entity e)
+        {
+            int slot = e.mapSlot;
+            if (slot < 0 || slot >= size || entities[slot] != e) return;
+
+            // Swap the last entity into the freed slot
+            Entity last = entities[--size];
+            entities[slot] = last;
+            last.mapSlot = slot;
+            entities[size] = null;
+            e.mapSlot = -1;
+            fleetCounts[e.getFleet().getMapIndex()]--;
+        }
+    }
+
+
+    /**
+     * The waypoints of a fleet's route and the index of the one it is heading for
+     */
+    private static final class Route
+    {
+        private final List<Sector> waypoints;
+        private int next;
+
+        Route(List<Sector> waypoints)
+        {
+            this.waypoints = waypoints;
+        }
+    }
+}
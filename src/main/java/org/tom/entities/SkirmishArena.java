@@ -0,0 +1,151 @@
+package org.tom.entities;
+
+import org.jspecify.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pool of entities and fleets for short-lived simulations, such as the skirmishes run to rate a match. Rather
+ * than building fresh objects for each simulation and leaving the old ones to the garbage collector, a simulation
+ * takes its entities and fleets from the arena, and <code>reset</code> hands them all back for the next one.
+ * Entities are reset to the state of a new entity as they are taken, and fleets keep the capacity of their lists.
+ * <p>
+ * Every entity of an arena lives in the arena's own <code>EntityStore</code>, and keeps its slot and ID for the
+ * life of the arena. IDs start at 1 in each arena and are only unique within it, so the global ID counter no
+ * longer climbs with every simulation. Arena entities should not be journalled, snapshotted or mixed with
+ * entities from outside the arena. Their combat events are not logged.
+ * </p>
+ * <p>
+ * An arena is not thread-safe; give each simulating thread its own.
+ * </p>
+ */
+public final class SkirmishArena
+{
+    private final EntityStore store;
+    private final List<Starship> starships = new ArrayList<>();
+    private final List<Starbase> starbases = new ArrayList<>();
+    private final Map<Integer, Fleet> fleets = new HashMap<>();
+    private int starshipsInUse;             // Starships handed out since the last reset, from the front of the pool
+    private int starbasesInUse;
+    private long nextId = 1;
+
+
+    /**
+     * Creates an empty arena
+     *
+     * @param initialCapacity the number of entities to make room for in the store before it needs to grow
+     */
+    public SkirmishArena(int initialCapacity)
+    {
+        store = new EntityStore(initialCapacity);
+        store.quiet = true;
+    }
+
+
+    /**
+     * Takes a starship from the pool, or creates one if every pooled starship is in use
+     *
+     * @param position the starting position of the starship
+     * @return a starship in the state of a new one, not in any fleet
+     */
+    public Starship starship(@NonNull Sector position)
+    {
+        if (starshipsInUse < starships.size())
+        {
+            Starship ship = starships.get(starshipsInUse++);
+            ship.reset(position.x(), position.y());
+            return ship;
+        }
+
+        Starship ship = new Starship(position.x(), position.y(), store, nextId++);
+        starships.add(ship);
+        starshipsInUse++;
+        return ship;
+    }
+
+
+    /**
+     * Takes a starbase from the pool, or creates one if every pooled starbase is in use
+     *
+     * @param position the starting position of the starbase
+     * @return a starbase in the state of a new one, not in any fleet
+     */
+    public Starbase starbase(@NonNull Sector position)
+    {
+        if (starbasesInUse < starbases.size())
+        {
+            Starbase base = starbases.get(starbasesInUse++);
+            base.reset(position.x(), position.y());
+            return base;
+        }
+
+        Starbase base = new Starbase(position.x(), position.y(), store, nextId++);
+        starbases.add(base);
+        starbasesInUse++;
+        return base;
+    }
+
+
+    /**
+     * Gets the fleet of a player for the current simulation, creating it the first time the player is seen.
+     * The fleet is empty after each <code>reset</code>.
+     *
+     * @param playerNo the player number
+     * @return the player's <code>Fleet</code>
+     */
+    public Fleet fleet(int playerNo)
+    {
+        return fleets.computeIfAbsent(playerNo, p -> new Fleet(new Player(p)));
+    }
+
+
+    /**
+     * Hands every entity and fleet back to the arena for the next simulation. Entities and fleets taken before
+     * the reset must not be used afterwards, as they will be handed out again.
+     */
+    public void reset()
+    {
+        for (Fleet fleet : fleets.values())
+        {
+            fleet.clear();
+        }
+        starshipsInUse = 0;
+        starbasesInUse = 0;
+    }
+
+
+    /**
+     * Gets the <code>EntityStore</code> holding the state of every entity in this arena
+     *
+     * @return the arena's store
+     */
+    public EntityStore getStore()
+    {
+        return store;
+    }
+
+
+    /**
+     * Gets the number of entities the arena has created, in use or not
+     *
+     * @return the pooled entity count
+     */
+    public int getPooled()
+    {
+        return starships.size() + starbases.size();
+    }
+
+
+    /**
+     * Gets the number of entities handed out since the last reset
+     *
+     * @return the entity count in use
+     */
+    public int getInUse()
+    {
+        return starshipsInUse + starbasesInUse;
+    }
+}
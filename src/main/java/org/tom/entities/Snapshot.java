@@ -0,0 +1,273 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jspecify.annotations.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the state of a game to a compact binary file and rebuilds it again. A snapshot holds every entity of the
+ * given fleets with its ID, health, crew, position and docked/repairing/destroyed flags, the order of each
+ * starbase's docked ships, and the entity ID counter, so entities created after a restore never reuse an ID.
+ * <p>
+ * The file is written and read through a memory-mapped <code>FileChannel</code>. It is laid out as a header, a
+ * table of fleets, one fixed-size record per entity in fleet order (starbases, then starships), and finally the
+ * docked ships of each starbase as indices into the entity records. Values are little-endian.
+ * </p>
+ * <p>
+ * Snapshots should be taken between turns, while no other thread is changing the fleets. Entities that are not
+ * in one of the fleets are not saved, and sector indexes are not saved, so they must be tracked again after a
+ * restore.
+ * </p>
+ */
+public final class Snapshot
+{
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final int MAGIC = 0x53534E50;    // "SSNP"
+    private static final int VERSION = 1;
+
+    // Sizes in bytes of each part of the file
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4;          // Magic, version, next ID, fleets, entities
+    private static final int FLEET_BYTES = 4 + 1 + 4 + 4;              // Player, concurrent, starbases, starships
+    private static final int ENTITY_BYTES = 8 + 8 + 4 + 4 + 4 + 1;     // ID, health, crew, x, y, flags
+
+
+    private Snapshot()
+    {}
+
+
+    /**
+     * Writes a snapshot of the fleets, and every entity in them, to a file. The file is replaced if it exists.
+     *
+     * @param path   the file to write
+     * @param fleets the fleets to save, in order
+     * @return the size of the snapshot in bytes
+     * @throws IOException if the file cannot be written
+     */
+    public static long write(@NonNull Path path, @NonNull List<Fleet> fleets) throws IOException
+    {
+        // Take each list once, as concurrent fleets and starbases return copies
+        List<List<Starbase>> bases = new ArrayList<>(fleets.size());
+        List<List<Starship>> ships = new ArrayList<>(fleets.size());
+        List<List<Starship>> docked = new ArrayList<>();
+        int entityCount = 0;
+        long dockBytes = 0;
+
+        for (Fleet fleet : fleets)
+        {
+            List<Starbase> fleetBases = fleet.getStarbases();
+            List<Starship> fleetShips = fleet.getStarships();
+            bases.add(fleetBases);
+            ships.add(fleetShips);
+            entityCount += fleetBases.size() + fleetShips.size();
+
+            for (Starbase base : fleetBases)
+            {
+                List<Starship> dockedShips = base.getDockedStarships();
+                docked.add(dockedShips);
+                dockBytes += 4 + 4L * dockedShips.size();
+            }
+        }
+
+        long size = HEADER_BYTES + (long) FLEET_BYTES * fleets.size() + (long) ENTITY_BYTES * entityCount + dockBytes;
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("Snapshot too large to map: " + size + " bytes");
+
+        // Record index of each entity, by store and slot, so dock links can be written as indices
+        Map<EntityStore, int[]> indices = new IdentityHashMap<>();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(Entity.peekNextId()).putInt(fleets.size()).putInt(entityCount);
+            for (int f = 0; f < fleets.size(); f++)
+            {
+                Fleet fleet = fleets.get(f);
+                buffer.putInt(fleet.getPlayer().playerNo())
+                        .put((byte) (fleet.isConcurrent() ? 1 : 0))
+                        .putInt(bases.get(f).size())
+                        .putInt(ships.get(f).size());
+            }
+
+            int index = 0;
+            for (int f = 0; f < fleets.size(); f++)
+            {
+                for (Starbase base : bases.get(f))
+                {
+                    putEntity(buffer, base, indices, index++);
+                }
+                for (Starship ship : ships.get(f))
+                {
+                    putEntity(buffer, ship, indices, index++);
+                }
+            }
+
+            for (List<Starship> dockedShips : docked)
+            {
+                buffer.putInt(dockedShips.size());
+                for (Starship ship : dockedShips)
+                {
+                    buffer.putInt(indices.get(ship.store)[ship.slot]);
+                }
+            }
+
+            buffer.force();     // A checkpoint is only useful once it is on disk
+        }
+
+        logger.info("Wrote snapshot of {} entities in {} fleets to {}", entityCount, fleets.size(), path);
+        return size;
+    }
+
+
+    /**
+     * Helper method for <code>write</code> that writes one entity record and notes its index
+     */
+    private static void putEntity(MappedByteBuffer buffer, Entity entity, Map<EntityStore, int[]> indices, int index)
+    {
+        EntityStore store = entity.store;
+        int[] storeIndices = indices.get(store);
+        if (storeIndices == null)
+        {
+            storeIndices = new int[store.size()];
+            indices.put(store, storeIndices);
+        }
+        storeIndices[entity.slot] = index;
+
+        int slot = entity.slot;
+        buffer.putLong(entity.getId())
+                .putDouble(store.health[slot])
+                .putInt(store.crew[slot])
+                .putInt(store.sectorX[slot])
+                .putInt(store.sectorY[slot])
+                .put(store.flags[slot]);
+    }
+
+
+    /**
+     * Restores the fleets saved in a snapshot into a new <code>EntityStore</code> sized to fit them
+     *
+     * @param path the snapshot file
+     * @return the restored fleets, in their saved order
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static List<Fleet> read(@NonNull Path path) throws IOException
+    {
+        return read(path, null);
+    }
+
+
+    /**
+     * Restores the fleets saved in a snapshot. Entities get back their saved IDs, and the ID counter is moved
+     * past the saved one.
+     *
+     * @param path  the snapshot file
+     * @param store the <code>EntityStore</code> to restore entities into, or null for a new store sized to fit them
+     * @return the restored fleets, in their saved order
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static List<Fleet> read(@NonNull Path path, EntityStore store) throws IOException
+    {
+        return read(path, store, true);
+    }
+
+
+    /**
+     * Restores the fleets saved in a snapshot, moving the ID counter past the saved one only if asked. Fleets
+     * read just to compare against, as <code>JournalReplayer.verify</code> does, leave the counter alone.
+     *
+     * @param path       the snapshot file
+     * @param store      the <code>EntityStore</code> to restore entities into, or null for a new store
+     * @param advanceIds true to move the ID counter past the saved one
+     * @return the restored fleets, in their saved order
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    static List<Fleet> read(Path path, EntityStore store, boolean advanceIds) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            if (channel.size() < HEADER_BYTES) throw new IOException("Not a snapshot file: " + path);
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt() != MAGIC) throw new IOException("Not a snapshot file: " + path);
+            int version = buffer.getInt();
+            if (version != VERSION) throw new IOException("Unsupported snapshot version " + version + ": " + path);
+
+            long nextId = buffer.getLong();
+            int fleetCount = buffer.getInt();
+            int entityCount = buffer.getInt();
+            if (store == null) store = new EntityStore(Math.max(1, entityCount));
+
+            // Read the fleet table, then the entity records of each fleet in turn
+            List<Fleet> fleets = new ArrayList<>(fleetCount);
+            int[] baseCounts = new int[fleetCount];
+            int[] shipCounts = new int[fleetCount];
+            for (int f = 0; f < fleetCount; f++)
+            {
+                fleets.add(new Fleet(new Player(buffer.getInt()), buffer.get() != 0));
+                baseCounts[f] = buffer.getInt();
+                shipCounts[f] = buffer.getInt();
+            }
+
+            Entity[] entities = new Entity[entityCount];
+            List<Starbase> allBases = new ArrayList<>();
+            int index = 0;
+            for (int f = 0; f < fleetCount; f++)
+            {
+                Starbase[] fleetBases = new Starbase[baseCounts[f]];
+                for (int i = 0; i < fleetBases.length; i++)
+                {
+                    long id = buffer.getLong();
+                    double health = buffer.getDouble();
+                    int crew = buffer.getInt();
+                    fleetBases[i] = new Starbase(buffer.getInt(), buffer.getInt(), store, id);
+                    fleetBases[i].restoreState(health, crew, buffer.get());
+                    entities[index++] = fleetBases[i];
+                }
+
+                Starship[] fleetShips = new Starship[shipCounts[f]];
+                for (int i = 0; i < fleetShips.length; i++)
+                {
+                    long id = buffer.getLong();
+                    double health = buffer.getDouble();
+                    int crew = buffer.getInt();
+                    fleetShips[i] = new Starship(buffer.getInt(), buffer.getInt(), store, id);
+                    fleetShips[i].restoreState(health, crew, buffer.get());
+                    entities[index++] = fleetShips[i];
+                }
+
+                allBases.addAll(Arrays.asList(fleetBases));
+                fleets.get(f).restoreEntities(Arrays.asList(fleetBases), Arrays.asList(fleetShips));
+            }
+
+            // Rebuild each docked list in its saved order, which the docked support sums over
+            for (Starbase base : allBases)
+            {
+                int dockedCount = buffer.getInt();
+                for (int i = 0; i < dockedCount; i++)
+                {
+                    base.restoreDocked((Starship) entities[buffer.getInt()]);
+                }
+            }
+
+            if (advanceIds) Entity.advanceNextId(nextId);
+            logger.info("Restored {} entities in {} fleets from {}", entityCount, fleetCount, path);
+            return fleets;
+        }
+    }
+}
@@ -2,11 +2,15 @@ package org.tom.entities;
 
 import org.jspecify.annotations.NonNull;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
+import static org.apache.logging.log4j.util.Unbox.box;
+
 /**
  * The Starbase Entity. Inherits base values <code>maxHealth</code>, <code>maxDefenceStrength</code>, <code>position</code> from
  * Entity.<br>
@@ -15,30 +19,97 @@ import java.util.Objects;
  *       <code>maxHealth</code>, set to 500.
  *       <code>maxDefenceStrength</code>, set to 20.
  *   </pre>
- * Starbases hold a <code>List</code> of their docked Starships
+ * Starbases hold a <code>List</code> of their docked Starships, and cache the defence support they provide.
+ * Each docked ship records its base and its index in the list, so docking, undocking and membership checks take
+ * constant time. Undocking moves the last docked ship into the gap, so the list is not kept in docking order.
  */
 public class Starbase extends Entity
 {
     private static final double maxDefenceStrength = 20;
     private static final double maxHealth = 500;
+    private static final VarHandle SUPPORT_VERSION;
     private final List<Starship> dockedStarships;
 
+    /*
+    The docked support is cached and recalculated only after a docked ship changes. supportVersion is bumped
+    whenever the docked ships change; the cache is valid while its version matches. The value and the version it
+    was calculated from are published together as one immutable record, so a reader never pairs one thread's
+    value with another's version. A recalculation that races with a change stores the version it started from,
+    so it is never mistaken for up to date.
+     */
+    private volatile int supportVersion;
+    private volatile CachedSupport cachedSupport = new CachedSupport(-1, 0);
+
+    private record CachedSupport(int version, double support)
+    {}
+
+    static
+    {
+        try
+        {
+            SUPPORT_VERSION = MethodHandles.lookup().findVarHandle(Starbase.class, "supportVersion", int.class);
+        } catch (ReflectiveOperationException e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+
+    /**
+     * Sets the base values for a Starbase in the shared <code>EntityStore</code>
+     *
+     * @param position the starting position of the entity
+     */
+    public Starbase(Sector position)
+    {
+        this(position, EntityStore.shared());
+    }
+
 
     /**
      * Sets the base values for a Starbase. Passes the static final maximum values to the parent constructor
      * and initializes <code>dockedStarships</code>.
      *
      * @param position the starting position of the entity
+     * @param store    the <code>EntityStore</code> holding this base's state
      */
-    public Starbase(Sector position)
+    public Starbase(Sector position, EntityStore store)
     {
-        super(maxHealth, maxDefenceStrength, position);
+        super(maxHealth, maxDefenceStrength, position, store);
 
         // Initialise dockedStarships as empty for new bases
         dockedStarships = new ArrayList<>();
     }
 
 
+    /**
+     * Sets the base values for a Starbase with a given ID, used when restoring a snapshot
+     *
+     * @param x     the starting x coordinate
+     * @param y     the starting y coordinate
+     * @param store the <code>EntityStore</code> holding this base's state
+     * @param id    the unique ID of this base
+     */
+    Starbase(int x, int y, EntityStore store, long id)
+    {
+        super(maxHealth, maxDefenceStrength, x, y, store, id);
+
+        dockedStarships = new ArrayList<>();
+    }
+
+
+    /**
+     * Resets this base as described in <code>Entity.reset</code>, with no docked ships
+     */
+    @Override
+    void reset(int x, int y)
+    {
+        super.reset(x, y);
+        dockedStarships.clear();
+        invalidateDockedSupport();
+    }
+
+
     /**
      * Calculates the current defence strength of this <code>Starbase</code>. Calculates the base strength of this
      * <code>Starbase</code>. If there are any <code>Starship</code> objects docked to this, add to the total the
@@ -48,6 +119,67 @@ public class Starbase extends Entity
      */
     @Override
     public double getDefenceStrength()
+    {
+        // Calculate final defence strength from the hull defence held in the store plus the docked support
+        double defenceStrength = store.defence[slot] + getDockedSupport();
+        if (logger.isDebugEnabled()) logger.debug("Defence strength of {} is {}", this, box(defenceStrength));
+        return defenceStrength;
+    }
+
+
+    /**
+     * Calculates the defence added by docked starships: the sum of their defence strengths, multiplied by the
+     * ratio of docked ships to maximum strength
+     *
+     * @return a <code>double</code> representing the docked support, 0 if no ships are docked
+     */
+    double getDockedSupport()
+    {
+        int version = supportVersion;
+        CachedSupport cached = cachedSupport;
+        if (cached.version() == version) return cached.support();
+
+        double support;
+        if (!store.concurrent)
+        {
+            support = calculateDockedSupport();
+        } else
+        {
+            // Docking from other threads must not change the list while it is summed
+            synchronized (dockedStarships)
+            {
+                support = calculateDockedSupport();
+            }
+        }
+
+        cachedSupport = new CachedSupport(version, support);
+        return support;
+    }
+
+
+    /**
+     * Marks the cached docked support as out of date. Called when a ship docks or undocks, and by docked ships
+     * when their defence changes or they are destroyed.
+     */
+    void invalidateDockedSupport()
+    {
+        if (store.concurrent)
+        {
+            SUPPORT_VERSION.getAndAdd(this, 1);
+        } else
+        {
+            supportVersion++;
+        }
+    }
+
+
+    /**
+     * Calculates the docked support from the docked list, without the cache. Used by
+     * <code>getDockedSupport</code>.
+     *
+     * @return a <code>double</code> representing the docked support, 0 if no ships are docked
+     */
+    double calculateDockedSupport()
     {
         double dockedTotal = 0;
         int dockedCount = 0;
@@ -58,11 +190,45 @@ public class Starbase extends Entity
             dockedTotal = getDockedShipsStrength(dockedStarships);            // Get total defence strength
             dockedCount = dockedStarships.size();
         }
+        return dockedTotal * ((double) dockedCount / maxDefenceStrength);
+    }
 
-        // Calculate final defence strength
-        double defenceStrength = (maxDefenceStrength * (health / maxHealth)) + (dockedTotal * ((double) dockedCount / maxDefenceStrength));
-        logger.debug("Defence strength of {} is {}", this, defenceStrength);
-        return defenceStrength;
+
+    /**
+     * Calculates the hull defence strength of this <code>Starbase</code> at the given health. Support from
+     * docked starships is added by <code>getDefenceStrength</code>.
+     *
+     * @param health the health to calculate the defence for
+     * @return a <code>double</code> representing the hull defence strength
+     */
+    @Override
+    protected double intrinsicDefenceAt(double health)
+    {
+        return hullDefenceFor(health);
+    }
+
+
+    /**
+     * Calculates the full defence strength of this <code>Starbase</code> at the given health, including the
+     * docked support
+     */
+    @Override
+    double defenceStrengthAt(double health)
+    {
+        return hullDefenceFor(health) + getDockedSupport();
+    }
+
+
+    /**
+     * Calculates the hull defence strength of a <code>Starbase</code>, which scales with the ratio of its
+     * current to maximum health
+     *
+     * @param health the current health
+     * @return a <code>double</code> representing the hull defence strength
+     */
+    static double hullDefenceFor(double health)
+    {
+        return maxDefenceStrength * (health / maxHealth);
     }
 
 
@@ -85,45 +251,60 @@ public class Starbase extends Entity
 
     /**
      * Adds an incoming starship to this <code>Starbase</code> object's list of docked starships.
-     * Checks if the starbase is already in the list of docked ships or is docked to any other bases.
+     * Checks if the starship is already docked to this or any other base.
      *
      * @param starship a <code>Starship</code> object
      * @return true if docking succeeded, false otherwise
      */
     public boolean dockStarship(@NonNull Starship starship)
+    {
+        long start = Metrics.start();
+        Metrics.Outcome outcome = dock(starship);
+        recordMetric(Metrics.Operation.DOCK, outcome, start);
+        return outcome == Metrics.Outcome.APPLIED;
+    }
+
+
+    /**
+     * Helper method for <code>dockStarship</code>
+     *
+     * @return the outcome of docking, for <code>Metrics</code>
+     */
+    private Metrics.Outcome dock(Starship starship)
     {
         // Check if this starbase is destroyed
-        if (destroyed)
+        if (isDestroyed())
         {
             logger.debug("{} has been destroyed. Cannot dock starships", this);
-            return false;
+            return Metrics.Outcome.BASE_DESTROYED;
         }
 
         // If the starship is part of the same fleet
         if (!Objects.equals(starship.getFleet(), this.getFleet()))
         {
             logger.debug("Cannot dock {} to {}; not in same fleet", starship, this);
-            return false;
+            return Metrics.Outcome.OTHER_FLEET;
         }
 
         // If the starship is not destroyed
         if (starship.isDestroyed())
         {
             logger.debug("{} is destroyed, cannot dock to {}", starship, this);
-            return false;
+            return Metrics.Outcome.SHIP_DESTROYED;
         }
 
         // If the starship is not docked to this (or any other) starbase
-        if (!starship.getDocked() && !(this.dockedStarships.contains(starship)))
+        if (!starship.getDocked() && addDocked(starship))
         {
-            // Add it to the list
-            this.dockedStarships.add(starship);
-            logger.info("Docked {} to {}", starship, this);
-            return true;
+            if (logsEvent(CombatLog.Event.DOCK))
+            {
+                logger.info("Docked {} to {}", starship, this);
+            }
+            return Metrics.Outcome.APPLIED;
         } else
         {
             logger.debug("Cannot dock {} to {}", starship, this);
-            return false;
+            return Metrics.Outcome.ALREADY_DOCKED;
         }
     }
 
@@ -136,41 +317,158 @@ public class Starbase extends Entity
      * @return true if undocking succeeded, false otherwise
      */
     public boolean undockStarship(@NonNull Starship starship)
+    {
+        long start = Metrics.start();
+        Metrics.Outcome outcome = undock(starship);
+        recordMetric(Metrics.Operation.UNDOCK, outcome, start);
+        return outcome == Metrics.Outcome.APPLIED;
+    }
+
+
+    /**
+     * Helper method for <code>undockStarship</code>
+     *
+     * @return the outcome of undocking, for <code>Metrics</code>
+     */
+    private Metrics.Outcome undock(Starship starship)
     {
         // Check if this starbase is destroyed
-        if (destroyed)
+        if (isDestroyed())
         {
             logger.debug("{} has been destroyed. Cannot undock starships", this);
-            return false;
+            return Metrics.Outcome.BASE_DESTROYED;
         }
 
         // Check both objects are in the same fleet
         if (!Objects.equals(starship.getFleet(), this.getFleet()))
         {
             logger.debug("Cannot undock {} from {}; not in same fleet", starship, this);
-            return false;
+            return Metrics.Outcome.OTHER_FLEET;
         }
 
         // If in the list, remove it
-        if (starship.getDocked() && this.dockedStarships.remove(starship))
+        if (starship.getDocked() && removeDocked(starship))
         {
-            logger.info("Undocked {} from {}", starship, this);
-            return true;
+            if (logsEvent(CombatLog.Event.UNDOCK))
+            {
+                logger.info("Undocked {} from {}", starship, this);
+            }
+            return Metrics.Outcome.APPLIED;
         } else
         {
             // If not, log it
             logger.debug("{} is not docked to {}, cannot undock", starship, this);
-            return false;
+            return Metrics.Outcome.NOT_DOCKED;
+        }
+    }
+
+
+    /**
+     * Adds a starship to <code>dockedStarships</code> if it is not already there. The check and the add
+     * happen under the list's lock in concurrent mode.
+     *
+     * @return true if the starship was added
+     */
+    private boolean addDocked(Starship starship)
+    {
+        if (!store.concurrent) return addDockedUnlocked(starship);
+
+        synchronized (dockedStarships)
+        {
+            return addDockedUnlocked(starship);
         }
-}
+    }
 
 
     /**
-     * Exposes a package-private unmodifiable version of the <code>dockedStarships</code> list
+     * Helper method for <code>addDocked</code>
+     */
+    private boolean addDockedUnlocked(Starship starship)
+    {
+        if (starship.getDockedBase() == this) return false;
+
+        starship.setDockedBase(this, dockedStarships.size());
+        dockedStarships.add(starship);
+        invalidateDockedSupport();
+        return true;
+    }
+
+
+    /**
+     * Appends a starship to <code>dockedStarships</code> without any checks or logging. Used when restoring a
+     * snapshot, where the docked list is rebuilt in its saved order and the ship's flags are already set.
+     */
+    void restoreDocked(@NonNull Starship starship)
+    {
+        starship.setDockedBase(this, dockedStarships.size());
+        dockedStarships.add(starship);
+        invalidateDockedSupport();
+    }
+
+
+    /**
+     * Removes a starship from <code>dockedStarships</code>, under the list's lock in concurrent mode
+     *
+     * @return true if the starship was removed
+     */
+    boolean removeDocked(Starship starship)
+    {
+        if (!store.concurrent) return removeDockedUnlocked(starship);
+
+        synchronized (dockedStarships)
+        {
+            return removeDockedUnlocked(starship);
+        }
+    }
+
+
+    /**
+     * Helper method for <code>removeDocked</code>
+     */
+    private boolean removeDockedUnlocked(Starship starship)
+    {
+        if (starship.getDockedBase() != this) return false;
+
+        // Fill the gap with the last docked ship rather than shifting every ship after it
+        int index = starship.getDockedIndex();
+        Starship last = dockedStarships.removeLast();
+        if (last != starship)
+        {
+            dockedStarships.set(index, last);
+            last.setDockedBase(this, index);
+        }
+
+        starship.setDockedBase(null, -1);
+        invalidateDockedSupport();
+        return true;
+    }
+
+
+    /**
+     * Undocks every docked starship, as this starbase is leaving its fleet. Ships are taken from the end of the
+     * list, so no ship is moved within it.
+     */
+    void releaseDocked()
+    {
+        while (!dockedStarships.isEmpty())
+        {
+            dockedStarships.getLast().release();
+        }
+    }
+
+
+    /**
+     * Exposes an unmodifiable version of the <code>dockedStarships</code> list. In concurrent mode this is a
+     * snapshot, so it can be iterated while other threads dock and undock.
      * @return a list of <code>Starship</code> objects
      */
-    List<Starship> getDockedStarships()
+    public List<Starship> getDockedStarships()
     {
-        return Collections.unmodifiableList(dockedStarships);
+        if (!store.concurrent) return Collections.unmodifiableList(dockedStarships);
+
+        synchronized (dockedStarships)
+        {
+            return List.copyOf(dockedStarships);
+        }
     }
 }
\ No newline at end of file
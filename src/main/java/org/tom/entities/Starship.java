@@ -4,6 +4,8 @@ import org.jspecify.annotations.NonNull;
 
 import java.util.Objects;
 
+import static org.apache.logging.log4j.util.Unbox.box;
+
 /**
  * The Starship Entity inherits base values <code>maxHealth</code>, <code>maxDefenceStrength</code>, <code>position</code> from
  * Entity. <br>Starships have the following pre-set values:
@@ -17,46 +19,187 @@ import java.util.Objects;
  */
 public class Starship extends Entity
 {
-    // All Starship entities share the same base values
-    private static final double maxAttackStrength = 30;
-    private static final double maxDefenceStrength = 10;
-    private static final double maxHealth = 100;
-    private static final int maxCrew = 10;
+    // All Starship entities share the same base values. Package-private for the batch kernels in CombatKernels
+    static final double maxAttackStrength = 30;
+    static final double maxDefenceStrength = 10;
+    static final double maxHealth = 100;
+    static final int maxCrew = 10;
 
-    private boolean docked;
-    private boolean repairing;
-    private int crew;
+    private volatile Starbase dockedBase;      // The starbase this ship is in the docked list of, if any
+    private int dockedIndex = -1;               // This ship's position in that list, kept by Starbase
 
 
     /**
-     * Sets the base values for a Starship. Passes the static final maximum values to the parent constructor and sets
-     * <code>attackStrength</code>, <code>crew</code> to their maximums
+     * Sets the base values for a Starship in the shared <code>EntityStore</code>
      *
      * @param position the starting position of the entity
      */
     public Starship(Sector position)
     {
-        super(maxHealth, maxDefenceStrength, position);
+        this(position, EntityStore.shared());
+    }
+
+
+    /**
+     * Sets the base values for a Starship. Passes the static final maximum values to the parent constructor and sets
+     * <code>crew</code> to its maximum. Docked and repairing flags start cleared in the store.
+     *
+     * @param position the starting position of the entity
+     * @param store    the <code>EntityStore</code> holding this ship's state
+     */
+    public Starship(Sector position, EntityStore store)
+    {
+        super(maxHealth, maxDefenceStrength, position, store);
+
+        store.crew[slot] = maxCrew;     // Maximum crew for new ships
+    }
 
-        crew = maxCrew;         // Maximum crew for new ships
-        docked = false;         // Undocked by default
-        repairing = false;      // Not repairing by default
+
+    /**
+     * Sets the base values for a Starship with a given ID, used when restoring a snapshot
+     *
+     * @param x     the starting x coordinate
+     * @param y     the starting y coordinate
+     * @param store the <code>EntityStore</code> holding this ship's state
+     * @param id    the unique ID of this ship
+     */
+    Starship(int x, int y, EntityStore store, long id)
+    {
+        super(maxHealth, maxDefenceStrength, x, y, store, id);
+
+        store.crew[slot] = maxCrew;
+    }
+
+
+    /**
+     * Resets this ship as described in <code>Entity.reset</code>, with full crew and undocked
+     */
+    @Override
+    void reset(int x, int y)
+    {
+        super.reset(x, y);
+        store.crew[slot] = maxCrew;
+        dockedBase = null;
+        dockedIndex = -1;
     }
 
 
     /**
-     * Calculates the current defence strength of this <code>Starship</code>
-     * based on its current, and maximum crew and health
+     * Gets the current defence strength of this <code>Starship</code>, kept up to date in the store
+     * whenever its health or crew change
      *
      * @return a <code>double</code> representing the current defence strength
      */
     @Override
     public double getDefenceStrength()
+    {
+        return store.defence[slot];
+    }
+
+
+    /**
+     * Calculates the defence strength of this <code>Starship</code> at the given health, from its current
+     * and maximum crew and health
+     *
+     * @param health the health to calculate the defence for
+     * @return a <code>double</code> representing the defence strength
+     */
+    @Override
+    protected double intrinsicDefenceAt(double health)
+    {
+        return defenceFor(health, store.concurrent ? store.getCrewVolatile(slot) : store.crew[slot]);
+    }
+
+
+    /**
+     * Tells the starbase this ship is docked to that its defence support needs recalculating
+     */
+    @Override
+    void defenceChanged()
+    {
+        Starbase base = dockedBase;
+        if (base != null) base.invalidateDockedSupport();
+    }
+
+
+    /**
+     * Records the starbase whose docked list holds this ship, and where in the list it is. Called by
+     * <code>Starbase</code> when the ship is added to, moved within or removed from its list.
+     *
+     * @param starbase the starbase, or null when undocked
+     * @param index    the index of this ship in the docked list, or -1 when undocked
+     */
+    void setDockedBase(Starbase starbase, int index)
+    {
+        this.dockedBase = starbase;
+        this.dockedIndex = index;
+    }
+
+
+    /**
+     * Gets the starbase whose docked list holds this ship
+     *
+     * @return the starbase, or null if not docked
+     */
+    Starbase getDockedBase()
+    {
+        return dockedBase;
+    }
+
+
+    /**
+     * Gets the index of this ship in its starbase's docked list
+     *
+     * @return the index, or -1 if not docked
+     */
+    int getDockedIndex()
+    {
+        return dockedIndex;
+    }
+
+
+    /**
+     * Undocks this ship from its starbase without the checks of <code>undockFromStarbase</code>, as the ship or
+     * the starbase is leaving its fleet. Destroyed ships and ships of destroyed starbases are undocked too.
+     */
+    void release()
+    {
+        Starbase base = dockedBase;
+        if (base == null || !base.removeDocked(this)) return;
+
+        setFlag(EntityStore.DOCKED, false);
+        setFlag(EntityStore.REPAIRING, false);
+        EventJournal journal = store.journal;
+        if (journal != null) journal.undock(this, base);
+    }
+
+
+    /**
+     * Calculates the defence strength of a <code>Starship</code> based on its current, and maximum crew and health
+     *
+     * @param health the current health
+     * @param crew   the current crew
+     * @return a <code>double</code> representing the defence strength
+     */
+    static double defenceFor(double health, int crew)
     {
         return maxDefenceStrength * ((health + crew) / (maxHealth + maxCrew));
     }
 
 
+    /**
+     * Calculates the attack strength of a <code>Starship</code> based on its maximum attack strength and the
+     * ratio between its current and maximum health
+     *
+     * @param health the current health
+     * @return a <code>double</code> representing the attack strength
+     */
+    static double attackFor(double health)
+    {
+        return maxAttackStrength * (health / maxHealth);
+    }
+
+
     /**
      * Calculates the current attack strength of this <code>Starship</code>
      * based on its maximum attack strength and the ratio between its current and
@@ -66,7 +209,7 @@ public class Starship extends Entity
      */
     public double getAttackStrength()
     {
-        return maxAttackStrength * (health / maxHealth);
+        return attackFor(store.health[slot]);
     }
 
 
@@ -80,9 +223,37 @@ public class Starship extends Entity
      * @param newCrew the new number of crew
      */
     void setCrew(int newCrew)
+    {
+        int crew = writeCrew(newCrew);
+
+        EventJournal journal = store.journal;
+        if (journal != null) journal.crew(this, crew);
+    }
+
+
+    /**
+     * Helper method for <code>setCrew</code> that updates the store without journalling the change
+     *
+     * @return the crew written, at least 1
+     */
+    private int writeCrew(int newCrew)
     {
         // If newCrew < 1, set crew to 1 instead
-        this.crew = Math.max(1, newCrew);
+        int crew = Math.max(1, newCrew);
+        int old;
+        if (store.concurrent)
+        {
+            old = store.getAndSetCrew(slot, crew);
+        } else
+        {
+            old = store.crew[slot];
+            store.crew[slot] = crew;
+        }
+        refreshDefence();
+        changed(StateDelta.CREW_CHANGED);
+        FleetStats stats = fleetStats();
+        if (stats != null) stats.crewChanged(crew - old);
+        return crew;
     }
 
 
@@ -94,35 +265,75 @@ public class Starship extends Entity
      *
      * @param newSector the new <code>Sector</code> object
      */
-    void setSector(@NonNull Sector newSector)
+    public void setSector(@NonNull Sector newSector)
+    {
+        long start = Metrics.start();
+        Metrics.Outcome outcome = moveTo(newSector);
+        recordMetric(Metrics.Operation.MOVE, outcome, start);
+    }
+
+
+    /**
+     * Helper method for <code>setSector</code>
+     *
+     * @return the outcome of the move, for <code>Metrics</code>
+     */
+    private Metrics.Outcome moveTo(Sector newSector)
     {
         // Only allow movement if not destroyed
-        if (this.destroyed)
+        if (isDestroyed())
         {
             logger.debug("{} has been destroyed and cannot move", this);
-            return;
+            return Metrics.Outcome.DESTROYED;
         }
 
         // Only allow movement if undocked
-        if (this.docked)
+        if (getDocked())
         {
             // Check if repairing
-            if (this.repairing)
+            if (isRepairing())
             {
                 // Skip the move and repair instead
                 repair();
                 logger.debug("{} is repairing. Skipping move.", this);
-            } else
-            {
-                logger.debug("{} is docked and cannot move", this);
+                return Metrics.Outcome.REPAIRING;
             }
 
-            return;
+            logger.debug("{} is docked and cannot move", this);
+            return Metrics.Outcome.DOCKED;
+        }
+
+        // Only allow movement within the map, if the fleet is on one
+        Fleet fleet = getFleet();
+        if (fleet != null && fleet.getSectorMap() != null && !fleet.getSectorMap().contains(newSector))
+        {
+            logger.debug("{} cannot move off the map to {}", this, newSector);
+            return Metrics.Outcome.OFF_MAP;
         }
 
         // Make the move if all checks succeeded
-        logger.info("Moving {} from sector: {} to: {}", this, getSector(), newSector);
-        this.sector = newSector;
+        if (logsEvent(CombatLog.Event.MOVE))
+        {
+            logger.info("Moving {} from sector: {} to: {}", this, getSector(), newSector);
+        }
+        int fromX = store.sectorX[slot];
+        int fromY = store.sectorY[slot];
+        boolean moved = !inSector(newSector.x(), newSector.y());
+        SectorIndex index = fleet != null ? fleet.getSectorIndex() : null;
+        Sector previous = index != null && moved ? getSector() : null;     // Only the index needs the old sector
+        store.sectorX[slot] = newSector.x();
+        store.sectorY[slot] = newSector.y();
+        changed(StateDelta.SECTOR_CHANGED);
+        EventJournal journal = store.journal;
+        if (journal != null && moved) journal.move(this, newSector.x(), newSector.y());
+
+        // Keep the sector index and map in step with the move
+        if (previous != null) index.move(this, previous, newSector);
+        if (fleet != null && fleet.getSectorMap() != null)
+        {
+            fleet.getSectorMap().move(this, fromX, fromY, newSector);
+        }
+        return Metrics.Outcome.APPLIED;
     }
 
 
@@ -133,7 +344,18 @@ public class Starship extends Entity
      */
     public boolean getDocked()
     {
-        return this.docked;
+        return store.hasFlag(slot, EntityStore.DOCKED);
+    }
+
+
+    /**
+     * Gets the <code>repairing</code> flag from this <code>Starship</code>
+     *
+     * @return true if the ship is docked and repairing, false otherwise
+     */
+    public boolean isRepairing()
+    {
+        return store.hasFlag(slot, EntityStore.REPAIRING);
     }
 
 
@@ -144,7 +366,7 @@ public class Starship extends Entity
      */
     int getCrew()
     {
-        return crew;
+        return store.crew[slot];
     }
 
 
@@ -155,15 +377,38 @@ public class Starship extends Entity
      */
     public void dockToStarbase(@NonNull Starbase starbase)
     {
-        if (this.destroyed)
+        if (isDestroyed())
         {
             logger.debug("{} has been destroyed and cannot dock", this);
+            recordMetric(Metrics.Operation.DOCK, Metrics.Outcome.SHIP_DESTROYED, 0);
+            return;
+        }
+
+        if (!store.concurrent)
+        {
+            dockTo(starbase);
             return;
         }
 
+        // Stops two threads docking this ship to different starbases at once
+        synchronized (this)
+        {
+            dockTo(starbase);
+        }
+    }
+
+
+    /**
+     * Helper method for <code>dockToStarbase</code>
+     */
+    private void dockTo(Starbase starbase)
+    {
         if (starbase.dockStarship(this))
         {
-            this.docked = true;
+            setFlag(EntityStore.DOCKED, true);
+
+            EventJournal journal = store.journal;
+            if (journal != null) journal.dock(this, starbase);
         }
     }
 
@@ -175,19 +420,41 @@ public class Starship extends Entity
      */
     public void undockFromStarbase(@NonNull Starbase starbase)
     {
-        if (this.destroyed)
+        if (isDestroyed())
         {
             logger.debug("{} has been destroyed and cannot undock", this);
+            recordMetric(Metrics.Operation.UNDOCK, Metrics.Outcome.SHIP_DESTROYED, 0);
             return;
         }
 
+        if (!store.concurrent)
+        {
+            undockFrom(starbase);
+            return;
+        }
+
+        synchronized (this)
+        {
+            undockFrom(starbase);
+        }
+    }
+
+
+    /**
+     * Helper method for <code>undockFromStarbase</code>
+     */
+    private void undockFrom(Starbase starbase)
+    {
         if (starbase.undockStarship(this))
         {
             // Undock the ship
-            this.docked = false;
+            setFlag(EntityStore.DOCKED, false);
 
             // Stop repairing
-            this.repairing = false;
+            setFlag(EntityStore.REPAIRING, false);
+
+            EventJournal journal = store.journal;
+            if (journal != null) journal.undock(this, starbase);
         }
     }
 
@@ -195,14 +462,14 @@ public class Starship extends Entity
     public void repair()
     {
         // Check if destroyed
-        if (destroyed)
+        if (isDestroyed())
         {
             logger.debug("{} has been destroyed and cannot repair", this);
             return;
         }
 
         // Check if docked
-        if (!docked)
+        if (!getDocked())
         {
             logger.debug("Cannot repair, {} is undocked", this);
             return;
@@ -210,28 +477,50 @@ public class Starship extends Entity
 
 
         // Repair if all checks succeeded
-        repairing = true;
+        setFlag(EntityStore.REPAIRING, true);
 
-        // Below 25%
-        if (health < maxHealth * 0.25)
+        // Retry if another thread damaged the ship between reading and repairing its health
+        double health;
+        double repaired;
+        do
         {
-            this.setHealth(maxHealth * 0.25);
-            logger.debug("Set health of {} to 25%", this);
-        } else if (health >= maxHealth * 0.25 && health < maxHealth * 0.5)  // Between 25% and 50%
+            health = getHealth();
+            repaired = repairedHealthFor(health);
+        } while (!replaceHealth(health, repaired));
+
+        if (logger.isDebugEnabled())
         {
-            this.setHealth(maxHealth * 0.5);
-            logger.debug("Set health of {} to 50%", this);
-        } else if (health >= maxHealth * 0.5 && health < maxHealth * 0.75)    // Between 50% and 75%
+            logger.debug("Set health of {} to {}%", this, box(Math.round(repaired / maxHealth * 100)));
+        }
+
+        // Fully repaired, stop repairing
+        if (repaired == maxHealth) setFlag(EntityStore.REPAIRING, false);
+
+        EventJournal journal = store.journal;
+        if (journal != null) journal.repair(this, repaired, repaired != maxHealth);
+    }
+
+
+    /**
+     * Helper method to get the health a repair tick brings a <code>Starship</code> up to: the next
+     * quarter of its maximum health, or full health from 75% upwards
+     *
+     * @param health the current health
+     * @return the repaired health
+     */
+    private static double repairedHealthFor(double health)
+    {
+        if (health < maxHealth * 0.25)  // Below 25%
         {
-            this.setHealth(maxHealth * 0.75);
-            logger.debug("Set health of {} to 75%", this);
-        } else
+            return maxHealth * 0.25;
+        } else if (health < maxHealth * 0.5)    // Between 25% and 50%
+        {
+            return maxHealth * 0.5;
+        } else if (health < maxHealth * 0.75)   // Between 50% and 75%
         {
-            // Above 75%, just repair fully & stop repairing
-            this.setHealth(maxHealth);
-            logger.debug("Set health of {} to 100%", this);
-            repairing = false;
+            return maxHealth * 0.75;
         }
+        return maxHealth;       // Above 75%, just repair fully
     }
 
 
@@ -243,70 +532,112 @@ public class Starship extends Entity
      * @param target the <code>Entity</code> to attack
      */
     public void attack(@NonNull Entity target)
+    {
+        long start = Metrics.start();
+        Metrics.Outcome outcome = attackOnce(target);
+        recordMetric(Metrics.Operation.ATTACK, outcome, start);
+    }
+
+
+    /**
+     * Helper method for <code>attack</code>
+     *
+     * @return the outcome of the attack, for <code>Metrics</code>
+     */
+    private Metrics.Outcome attackOnce(Entity target)
     {
         // Check if destroyed
-        if (destroyed)
+        if (isDestroyed())
         {
             logger.debug("{} has been destroyed and cannot attack", this);
-            return;
+            return Metrics.Outcome.DESTROYED;
         }
 
         // Check if undocked
-        if (this.docked)
+        if (getDocked())
         {
             // Check if repairing
-            if (this.repairing)
+            if (isRepairing())
             {
                 // If so, skip the move and repair instead
                 repair();
                 logger.debug("{} is repairing. Skipping attack move.", this);
-            } else
-            {
-                logger.debug("{} is docked and cannot attack", this);
+                return Metrics.Outcome.REPAIRING;
             }
 
-            return;
+            logger.debug("{} is docked and cannot attack", this);
+            return Metrics.Outcome.DOCKED;
         }
 
         // Check if both entities are in the same sector
-        if (!target.getSector().equals(this.sector))
+        if (!inSameSectorAs(target))
         {
             logger.debug("{} cannot attack entity: {} - they are not in the same sector", this, target);
-            return;
+            return Metrics.Outcome.WRONG_SECTOR;
         }
 
         // Check if the target is in the same fleet
         if (!Objects.equals(target.getFleet(), this.getFleet()))
         {
-            logger.info("{} attacking entity: {}", this, target);
-            target.takeDamage(getAttackStrength());
-        } else
-        {
-            logger.debug("{} cannot attack {}, they are in the same fleet", this, target);
+            if (logsEvent(CombatLog.Event.ATTACK))
+            {
+                logger.info("{} attacking entity: {}", this, target);
+            }
+
+            target.takeHit(getAttackStrength(), this);
+            return Metrics.Outcome.APPLIED;
         }
+
+        logger.debug("{} cannot attack {}, they are in the same fleet", this, target);
+        return Metrics.Outcome.SAME_FLEET;
     }
 
 
     /**
-     * Overrides the <code>takeDamage</code> method from <code>Entity</code>.
-     * Executes the base method and then removes crew
+     * Overrides the <code>takeHit</code> method from <code>Entity</code>, which <code>takeDamage</code> calls.
+     * Applies the damage as the base method does and then removes crew
      *
-     * @param damage the incoming damage, as a <code>double</code>
+     * @param damage   the incoming damage, as a <code>double</code>
+     * @param attacker the <code>Starship</code> that caused the damage, or null if there was none
      */
     @Override
-    public void takeDamage(double damage)
+    void takeHit(double damage, Starship attacker)
     {
-        // Get current health before modifying
-        double priorHealth = this.health;
-        super.takeDamage(damage);
-
-        // Use the priorHealth calculate the drop in health
-        double appliedDamage = Math.max(0, priorHealth - this.health);
+        // Apply the damage and get the resulting drop in health
+        double appliedDamage = applyDamage(damage);
 
         // Remove crew based on applied damage, not total damage
-        int crewLost = calculateCrewLost(appliedDamage);
-        setCrew(crew - crewLost);
-        logger.debug("{} lost {} crew, remaining crew: {}", this, crewLost, crew);
+        int crewLost;
+        int remaining;
+        if (store.concurrent)
+        {
+            // Recalculate against the latest crew if another thread changed it first
+            int crew;
+            do
+            {
+                crew = store.getCrewVolatile(slot);
+                crewLost = crewLostFor(appliedDamage, crew);
+                remaining = Math.max(1, crew - crewLost);
+            } while (!store.compareAndSetCrew(slot, crew, remaining));
+            refreshDefence();
+            changed(StateDelta.CREW_CHANGED);
+            FleetStats stats = fleetStats();
+            if (stats != null) stats.crewChanged(remaining - crew);
+        } else
+        {
+            crewLost = calculateCrewLost(appliedDamage);
+            remaining = writeCrew(store.crew[slot] - crewLost);
+        }
+
+        EventJournal journal = store.journal;
+        if (journal != null && appliedDamage != 0)
+        {
+            journal.damage(this, attacker, appliedDamage, getHealth(), crewLost, remaining);
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("{} lost {} crew, remaining crew: {}", this, box(crewLost), box(getCrew()));
+        }
     }
 
 
@@ -318,6 +649,20 @@ public class Starship extends Entity
      * @return the amount of crew lost, as an <code>int</code>
      */
     int calculateCrewLost(double damage)
+    {
+        return crewLostFor(damage, store.crew[slot]);
+    }
+
+
+    /**
+     * Calculates the crew lost by a <code>Starship</code> with <code>crew</code> aboard when it takes
+     * <code>damage</code>
+     *
+     * @param damage the applied damage, as a <code>double</code>
+     * @param crew   the current crew
+     * @return the amount of crew lost, as an <code>int</code>
+     */
+    static int crewLostFor(double damage, int crew)
     {
         return Math.round((float) (damage / maxHealth) * crew);
     }
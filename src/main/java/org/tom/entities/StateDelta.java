@@ -0,0 +1,245 @@
+package org.tom.entities;
+
+import org.jspecify.annotations.NonNull;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracks which entities of an <code>EntityStore</code> changed since the last export, and which of their fields,
+ * so a turn's changes can be sent to clients as a compact binary delta. Start tracking with <code>track</code>;
+ * entities then mark themselves as their health, crew, sector or flags change, and when they join a fleet.
+ * <code>write</code> encodes the changed entities and clears the set, so the cost of a turn's delta depends on how
+ * much happened in the turn rather than on the size of the world.
+ * <p>
+ * A delta holds the number of changed entities, then for each a record of its ID, a mask of the fields that
+ * changed and the current value of just those fields. Everything is little-endian:
+ * <pre>
+ *     int   count
+ *     long  id
+ *     byte  mask          the *_CHANGED bits below
+ *     int   player        if JOINED
+ *     byte  kind          if JOINED: 1 starship, 0 starbase
+ *     double health       if HEALTH_CHANGED
+ *     int   crew          if CREW_CHANGED
+ *     int   x, int y      if SECTOR_CHANGED
+ *     byte  flags         if any of DOCKED_CHANGED, REPAIRING_CHANGED or DESTROYED_CHANGED
+ * </pre>
+ * Writing a delta must not overlap with changes to the entities, so export between turns.
+ * </p>
+ */
+public final class StateDelta
+{
+    public static final int HEALTH_CHANGED = 1;
+    public static final int CREW_CHANGED = 1 << 1;
+    public static final int SECTOR_CHANGED = 1 << 2;
+    public static final int DOCKED_CHANGED = EntityStore.DOCKED << 3;        // Flag bits shifted past the others
+    public static final int REPAIRING_CHANGED = EntityStore.REPAIRING << 3;
+    public static final int DESTROYED_CHANGED = EntityStore.DESTROYED << 3;
+    public static final int JOINED = 1 << 6;
+    static final int ALL = (1 << 7) - 1;
+    private static final int FLAGS_CHANGED = DOCKED_CHANGED | REPAIRING_CHANGED | DESTROYED_CHANGED;
+
+    private final EntityStore store;
+    private final ChangeSet changes;
+
+
+    /**
+     * A decoded delta record, as a client would read it. Fields that did not change are 0.
+     *
+     * @param id      the entity ID
+     * @param mask    the changed fields
+     * @param player  the player number of the fleet the entity joined
+     * @param kind    1 for a starship, 0 for a starbase, if the entity joined
+     * @param health  the new health
+     * @param crew    the new crew
+     * @param x       the new x coordinate
+     * @param y       the new y coordinate
+     * @param flags   the new docked, repairing and destroyed flags
+     */
+    public record Change(long id, int mask, int player, int kind, double health, int crew, int x, int y, byte flags)
+    {
+        /**
+         * Gets whether a field is included in this record
+         *
+         * @param bit one of the <code>*_CHANGED</code> bits or <code>JOINED</code>
+         * @return true if the field changed
+         */
+        public boolean has(int bit)
+        {
+            return (mask & bit) != 0;
+        }
+    }
+
+
+    private StateDelta(EntityStore store)
+    {
+        this.store = store;
+        this.changes = new ChangeSet(store.size());
+    }
+
+
+    /**
+     * Starts tracking changes to the entities of a store, replacing any earlier tracker
+     *
+     * @param store the <code>EntityStore</code> to track
+     * @return the tracker
+     */
+    public static StateDelta track(@NonNull EntityStore store)
+    {
+        StateDelta delta = new StateDelta(store);
+        store.delta = delta;
+        return delta;
+    }
+
+
+    /**
+     * Records that some fields of an entity changed. Called by entities; synchronized in concurrent mode.
+     */
+    void mark(Entity entity, int bits)
+    {
+        if (!store.concurrent)
+        {
+            changes.mark(entity, bits);
+            return;
+        }
+
+        synchronized (this)
+        {
+            changes.mark(entity, bits);
+        }
+    }
+
+
+    /**
+     * Gets the number of entities changed since the last export
+     *
+     * @return the changed entity count
+     */
+    public synchronized int size()
+    {
+        return changes.size();
+    }
+
+
+    /**
+     * Calculates how many bytes <code>write</code> needs for the current changes
+     *
+     * @return the encoded size in bytes
+     */
+    public synchronized int encodedSize()
+    {
+        int bytes = Integer.BYTES;
+        for (int i = 0; i < changes.size(); i++)
+        {
+            bytes += recordSize(changes.mask(i));
+        }
+        return bytes;
+    }
+
+
+    /**
+     * Gets the encoded size of one record
+     */
+    private static int recordSize(int mask)
+    {
+        int bytes = Long.BYTES + 1;
+        if ((mask & JOINED) != 0) bytes += Integer.BYTES + 1;
+        if ((mask & HEALTH_CHANGED) != 0) bytes += Double.BYTES;
+        if ((mask & CREW_CHANGED) != 0) bytes += Integer.BYTES;
+        if ((mask & SECTOR_CHANGED) != 0) bytes += 2 * Integer.BYTES;
+        if ((mask & FLAGS_CHANGED) != 0) bytes += 1;
+        return bytes;
+    }
+
+
+    /**
+     * Encodes the changes since the last export into <code>out</code> at its position, then clears them. Nothing
+     * is written or cleared if the changes do not fit.
+     *
+     * @param out the buffer to write to; its byte order is set to little-endian
+     * @return the number of bytes written
+     * @throws BufferOverflowException if <code>out</code> has fewer than <code>encodedSize()</code> bytes remaining
+     */
+    public synchronized int write(@NonNull ByteBuffer out)
+    {
+        int size = encodedSize();
+        if (out.remaining() < size) throw new BufferOverflowException();
+
+        out.order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(changes.size());
+        for (int i = 0; i < changes.size(); i++)
+        {
+            Entity entity = changes.get(i);
+            int slot = entity.slot;
+            int mask = changes.mask(i);
+
+            out.putLong(entity.getId()).put((byte) mask);
+            if ((mask & JOINED) != 0)
+            {
+                Fleet fleet = store.fleet[slot];
+                out.putInt(fleet == null ? 0 : fleet.getPlayer().playerNo()).put((byte) (entity instanceof Starship ? 1 : 0));
+            }
+            if ((mask & HEALTH_CHANGED) != 0) out.putDouble(store.health[slot]);
+            if ((mask & CREW_CHANGED) != 0) out.putInt(store.crew[slot]);
+            if ((mask & SECTOR_CHANGED) != 0) out.putInt(store.sectorX[slot]).putInt(store.sectorY[slot]);
+            if ((mask & FLAGS_CHANGED) != 0) out.put(store.flags[slot]);
+        }
+        changes.clear();
+        return size;
+    }
+
+
+    /**
+     * Encodes the changes since the last export into a new array, then clears them
+     *
+     * @return the encoded delta
+     */
+    public synchronized byte[] write()
+    {
+        byte[] bytes = new byte[encodedSize()];
+        write(ByteBuffer.wrap(bytes));
+        return bytes;
+    }
+
+
+    /**
+     * Decodes a delta written by <code>write</code>, reading from the buffer's position
+     *
+     * @param in the encoded delta
+     * @return one <code>Change</code> per changed entity, in the order they first changed
+     */
+    public static List<Change> read(@NonNull ByteBuffer in)
+    {
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        int count = in.getInt();
+        List<Change> changes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            long id = in.getLong();
+            int mask = in.get();
+            int player = 0;
+            int kind = 0;
+            if ((mask & JOINED) != 0)
+            {
+                player = in.getInt();
+                kind = in.get();
+            }
+            double health = (mask & HEALTH_CHANGED) != 0 ? in.getDouble() : 0;
+            int crew = (mask & CREW_CHANGED) != 0 ? in.getInt() : 0;
+            int x = 0;
+            int y = 0;
+            if ((mask & SECTOR_CHANGED) != 0)
+            {
+                x = in.getInt();
+                y = in.getInt();
+            }
+            byte flags = (mask & FLAGS_CHANGED) != 0 ? in.get() : 0;
+            changes.add(new Change(id, mask, player, kind, health, crew, x, y, flags));
+        }
+        return changes;
+    }
+}
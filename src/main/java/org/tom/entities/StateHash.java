@@ -0,0 +1,176 @@
+package org.tom.entities;
+
+import org.jspecify.annotations.NonNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Keeps a 64-bit hash of the state of a world's entities, for peers playing in lockstep to compare each turn and
+ * detect a desync. Each entity of the tracked fleets hashes its ID, health, crew, sector, docked and repairing
+ * flags and the player of its fleet, and the world hash is the wrapping sum of the entity hashes, so it does not
+ * depend on the order of entities or of the changes made to them.
+ * <p>
+ * Start with <code>track</code>, which hashes the whole world once. Entities then mark themselves as they change,
+ * in the same places they mark themselves for <code>StateDelta</code>, and <code>hash</code> replaces the old
+ * hash of each changed entity with its new one, so it costs time in proportion to the entities changed since the
+ * last call rather than the size of the world. <code>of</code> hashes a world from scratch, giving the same
+ * value.
+ * </p>
+ * <p>
+ * Hashing reads the entities' state, so it must not overlap with changes to them; call between turns. In
+ * concurrent mode marking is synchronized, as for <code>StateDelta</code>.
+ * </p>
+ */
+public final class StateHash
+{
+    private static final byte FLAGS = EntityStore.DOCKED | EntityStore.REPAIRING;
+
+    private final EntityStore store;
+    private final Set<Fleet> fleets;
+    private final ChangeSet changes;
+    private long[] hashes;          // The hash each entity last added to the world hash, by store slot
+    private long hash;
+
+
+    private StateHash(EntityStore store, Collection<Fleet> fleets)
+    {
+        this.store = store;
+        this.fleets = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.fleets.addAll(fleets);
+        this.changes = new ChangeSet(store.size());
+        this.hashes = new long[Math.max(16, store.size())];
+    }
+
+
+    /**
+     * Starts hashing the state of the given fleets' entities in a store, replacing any earlier hash. Entities that
+     * join one of the fleets later are hashed too, as long as they are in the same store.
+     *
+     * @param store  the <code>EntityStore</code> of the fleets' entities
+     * @param fleets the fleets whose entities make up the world
+     * @return the hash, up to date with the current state
+     */
+    public static StateHash track(@NonNull EntityStore store, @NonNull Collection<Fleet> fleets)
+    {
+        StateHash stateHash = new StateHash(store, fleets);
+        for (Fleet fleet : fleets)
+        {
+            for (Starbase base : fleet.getStarbases())
+            {
+                if (base.store == store) stateHash.changes.mark(base, StateDelta.ALL);
+            }
+            for (Starship ship : fleet.getStarships())
+            {
+                if (ship.store == store) stateHash.changes.mark(ship, StateDelta.ALL);
+            }
+        }
+        stateHash.update();
+        store.stateHash = stateHash;
+        return stateHash;
+    }
+
+
+    /**
+     * Hashes the state of the given fleets' entities from scratch
+     *
+     * @param fleets the fleets whose entities make up the world
+     * @return the same hash <code>track</code> keeps for the fleets
+     */
+    public static long of(@NonNull Collection<Fleet> fleets)
+    {
+        long hash = 0;
+        for (Fleet fleet : fleets)
+        {
+            int player = fleet.getPlayer().playerNo();
+            for (Starbase base : fleet.getStarbases())
+            {
+                hash += hashOf(base, player);
+            }
+            for (Starship ship : fleet.getStarships())
+            {
+                hash += hashOf(ship, player);
+            }
+        }
+        return hash;
+    }
+
+
+    /**
+     * Records that an entity changed. Called by entities; synchronized in concurrent mode.
+     */
+    void mark(Entity entity, int bits)
+    {
+        if (!store.concurrent)
+        {
+            changes.mark(entity, bits);
+            return;
+        }
+
+        synchronized (this)
+        {
+            changes.mark(entity, bits);
+        }
+    }
+
+
+    /**
+     * Gets the hash of the world's current state. Call between turns.
+     *
+     * @return the 64-bit hash
+     */
+    public synchronized long hash()
+    {
+        update();
+        return hash;
+    }
+
+
+    /**
+     * Replaces the old hash of each changed entity with its new one, and clears the changes
+     */
+    private void update()
+    {
+        for (int i = 0; i < changes.size(); i++)
+        {
+            Entity entity = changes.get(i);
+            int slot = entity.slot;
+            if (slot >= hashes.length) hashes = Arrays.copyOf(hashes, Math.max(slot + 1, hashes.length * 2));
+
+            Fleet fleet = store.fleet[slot];
+            long now = fleet != null && fleets.contains(fleet) ? hashOf(entity, fleet.getPlayer().playerNo()) : 0;
+            hash += now - hashes[slot];
+            hashes[slot] = now;
+        }
+        changes.clear();
+    }
+
+
+    /**
+     * Hashes the state of one entity. Every field goes through a full mix, so entities differing in any one field
+     * have unrelated hashes and sums of them rarely collide.
+     */
+    private static long hashOf(Entity entity, int player)
+    {
+        EntityStore store = entity.store;
+        int slot = entity.slot;
+        long h = mix(entity.getId() * 0x9E3779B97F4A7C15L + player);
+        h = mix(h ^ Double.doubleToLongBits(store.health[slot] + 0.0));     // Adding 0.0 turns -0.0 into 0.0
+        h = mix(h ^ ((long) store.crew[slot] << 8 | store.flags[slot] & FLAGS));
+        return mix(h ^ ((long) store.sectorX[slot] << 32 | store.sectorY[slot] & 0xFFFFFFFFL));
+    }
+
+
+    /**
+     * Mixes the bits of a value, as in the finaliser of <code>SplittableRandom</code>
+     */
+    private static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,99 @@
+package org.tom.entities;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The Vector API versions of the <code>CombatKernels</code>. Only loaded when the <code>jdk.incubator.vector</code>
+ * module is present. Each kernel runs the formula on whole vectors of doubles, using int and float vectors with
+ * the same number of lanes for crew, and finishes the elements left over with the scalar kernel.
+ * <p>
+ * The arithmetic is done in the same order and precision as the scalar formulas, so the results are identical:
+ * the crew loss is multiplied in float as <code>Starship.crewLostFor</code> does, and rounded half up from the
+ * fraction left after truncating, as <code>Math.round(float)</code> does for the non-negative values it sees.
+ * </p>
+ */
+final class VectorKernels
+{
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.length() * Integer.SIZE));
+    private static final VectorSpecies<Float> FLOATS =
+            VectorSpecies.of(float.class, VectorShape.forBitSize(DOUBLES.length() * Float.SIZE));
+
+
+    /**
+     * Not instantiable; all methods are static
+     */
+    private VectorKernels()
+    {}
+
+
+    static void attack(double[] health, double[] out, int n)
+    {
+        int bound = DOUBLES.loopBound(n);
+        for (int i = 0; i < bound; i += DOUBLES.length())
+        {
+            DoubleVector.fromArray(DOUBLES, health, i)
+                    .div(Starship.maxHealth)
+                    .mul(Starship.maxAttackStrength)
+                    .intoArray(out, i);
+        }
+        CombatKernels.scalarAttack(health, out, bound, n);
+    }
+
+
+    static void defence(double[] health, int[] crew, double[] out, int n)
+    {
+        int bound = DOUBLES.loopBound(n);
+        for (int i = 0; i < bound; i += DOUBLES.length())
+        {
+            DoubleVector crews = (DoubleVector) IntVector.fromArray(INTS, crew, i)
+                    .convertShape(VectorOperators.I2D, DOUBLES, 0);
+            DoubleVector.fromArray(DOUBLES, health, i)
+                    .add(crews)
+                    .div(Starship.maxHealth + Starship.maxCrew)
+                    .mul(Starship.maxDefenceStrength)
+                    .intoArray(out, i);
+        }
+        CombatKernels.scalarDefence(health, crew, out, bound, n);
+    }
+
+
+    static void appliedDamage(double[] damage, double[] defence, double[] health, double[] out, int n)
+    {
+        int bound = DOUBLES.loopBound(n);
+        for (int i = 0; i < bound; i += DOUBLES.length())
+        {
+            DoubleVector.fromArray(DOUBLES, damage, i)
+                    .sub(DoubleVector.fromArray(DOUBLES, defence, i))
+                    .max(5)
+                    .min(DoubleVector.fromArray(DOUBLES, health, i))
+                    .intoArray(out, i);
+        }
+        CombatKernels.scalarAppliedDamage(damage, defence, health, out, bound, n);
+    }
+
+
+    static void crewLost(double[] damage, int[] crew, int[] out, int n)
+    {
+        int bound = DOUBLES.loopBound(n);
+        for (int i = 0; i < bound; i += DOUBLES.length())
+        {
+            FloatVector ratio = (FloatVector) DoubleVector.fromArray(DOUBLES, damage, i)
+                    .div(Starship.maxHealth)
+                    .convertShape(VectorOperators.D2F, FLOATS, 0);
+            IntVector crews = IntVector.fromArray(INTS, crew, i);
+            FloatVector lost = ratio.mul((FloatVector) crews.convertShape(VectorOperators.I2F, FLOATS, 0));
+
+            IntVector whole = (IntVector) lost.convertShape(VectorOperators.F2I, INTS, 0);
+            FloatVector fraction = lost.sub((FloatVector) whole.convertShape(VectorOperators.I2F, FLOATS, 0));
+            whole.add(1, fraction.compare(VectorOperators.GE, 0.5f).cast(INTS)).intoArray(out, i);
+        }
+        CombatKernels.scalarCrewLost(damage, crew, out, bound, n);
+    }
+}
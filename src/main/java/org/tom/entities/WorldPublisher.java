@@ -0,0 +1,203 @@
+package org.tom.entities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jspecify.annotations.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Publishes an immutable <code>WorldView</code> of a store's fleet entities after each turn, for spectators,
+ * analytics and AI players reading on other threads. Start publishing with <code>track</code>; entities then mark
+ * themselves as they change, in the same places they mark themselves for <code>StateDelta</code>.
+ * <code>publish</code>, called by the simulation between turns, builds the next view from the previous one by
+ * replacing just the changed entities, so its cost depends on how much happened in the turn rather than on the
+ * size of the world. Readers call <code>current</code> from any thread and get the latest view without locking or
+ * holding up the simulation.
+ * <p>
+ * Publishing reads the entities' state, so it must not overlap with changes to them. In concurrent mode marking
+ * is synchronized, as for <code>StateDelta</code>.
+ * </p>
+ */
+public final class WorldPublisher
+{
+    private static final Logger logger = LogManager.getLogger();
+
+    private final EntityStore store;
+    private final ChangeSet changes;
+    private volatile WorldView current;
+
+
+    private WorldPublisher(EntityStore store)
+    {
+        this.store = store;
+        this.changes = new ChangeSet(store.size());
+    }
+
+
+    /**
+     * Starts publishing views of a store's fleet entities, replacing any earlier publisher. The first view, of
+     * version 0, holds the current state of the given fleets' entities in the store.
+     *
+     * @param store  the <code>EntityStore</code> to publish
+     * @param fleets the fleets whose entities are in the world
+     * @return the publisher
+     */
+    public static WorldPublisher track(@NonNull EntityStore store, @NonNull Collection<Fleet> fleets)
+    {
+        WorldPublisher publisher = new WorldPublisher(store);
+        for (Fleet fleet : fleets)
+        {
+            for (Starbase base : fleet.getStarbases())
+            {
+                if (base.store == store) publisher.changes.mark(base, StateDelta.ALL);
+            }
+            for (Starship ship : fleet.getStarships())
+            {
+                if (ship.store == store) publisher.changes.mark(ship, StateDelta.ALL);
+            }
+        }
+        publisher.current = publisher.next(new WorldView(-1, PersistentVector.empty(), Map.of(), 0));
+        store.publisher = publisher;
+        return publisher;
+    }
+
+
+    /**
+     * Records that some fields of an entity changed. Called by entities; synchronized in concurrent mode.
+     */
+    void mark(Entity entity, int bits)
+    {
+        if (!store.concurrent)
+        {
+            changes.mark(entity, bits);
+            return;
+        }
+
+        synchronized (this)
+        {
+            changes.mark(entity, bits);
+        }
+    }
+
+
+    /**
+     * Publishes a view of the world with every change since the last view. Call between turns.
+     *
+     * @return the new view, which <code>current</code> returns from now on
+     */
+    public synchronized WorldView publish()
+    {
+        int changed = changes.size();
+        WorldView view = next(current);
+        current = view;
+        logger.debug("Published {} with {} changed entities", view, changed);
+        return view;
+    }
+
+
+    /**
+     * Gets the latest published view. Safe to call from any thread.
+     *
+     * @return the <code>WorldView</code> of the last turn published
+     */
+    public WorldView current()
+    {
+        return current;
+    }
+
+
+    /**
+     * Builds the view after <code>previous</code> from the changed entities, and clears the changes. Entities that
+     * left their fleet drop out of the view, and entities that moved to another player's fleet move lists.
+     */
+    private WorldView next(WorldView previous)
+    {
+        PersistentVector<EntityState> before = previous.states();
+        PersistentVector.Transient<EntityState> states = before.asTransient();
+        Map<Integer, PersistentVector<Integer>> players = previous.playerSlots();
+        Map<Integer, List<Integer>> joined = new HashMap<>();
+        Map<Integer, Set<Integer>> left = new HashMap<>();
+        int entities = previous.size();
+
+        for (int i = 0; i < changes.size(); i++)
+        {
+            Entity entity = changes.get(i);
+            int slot = entity.slot;
+            Fleet fleet = store.fleet[slot];
+            EntityState was = slot < before.size() ? before.get(slot) : null;
+            int player = fleet != null ? fleet.getPlayer().playerNo() : 0;
+
+            // An entity leaves the view when it leaves its fleet, or moves when it is now in another player's
+            if (was != null && (fleet == null || was.player() != player))
+            {
+                left.computeIfAbsent(was.player(), p -> new HashSet<>()).add(slot);
+                states.set(slot, null);
+                entities--;
+                was = null;
+            }
+            if (fleet == null) continue;        // Not in the world until it joins a fleet
+
+            while (states.size() <= slot)
+            {
+                states.append(null);
+            }
+            // An entity is new to the view the first time it is seen in a fleet, whatever marked it
+            if (was == null)
+            {
+                joined.computeIfAbsent(player, p -> new ArrayList<>()).add(slot);
+                entities++;
+            }
+            states.set(slot, EntityState.of(entity));
+        }
+        changes.clear();
+
+        Map<Integer, PersistentVector<Integer>> nextPlayers = players;
+        if (!joined.isEmpty() || !left.isEmpty())
+        {
+            // Players are few, so the map itself is copied; each player's slot list is shared structure unless
+            // some of its entities left, when the list is rebuilt without them
+            Map<Integer, PersistentVector<Integer>> copy = new HashMap<>(players);
+            Set<Integer> changedPlayers = new HashSet<>(joined.keySet());
+            changedPlayers.addAll(left.keySet());
+            for (int player : changedPlayers)
+            {
+                PersistentVector<Integer> old = players.getOrDefault(player, PersistentVector.empty());
+                Set<Integer> gone = left.get(player);
+                PersistentVector.Transient<Integer> slots;
+                if (gone == null)
+                {
+                    slots = old.asTransient();
+                } else
+                {
+                    slots = PersistentVector.<Integer>empty().asTransient();
+                    for (int i = 0; i < old.size(); i++)
+                    {
+                        if (!gone.contains(old.get(i))) slots.append(old.get(i));
+                    }
+                }
+                for (int slot : joined.getOrDefault(player, List.of()))
+                {
+                    slots.append(slot);
+                }
+
+                PersistentVector<Integer> result = slots.persistent();
+                if (result.size() == 0)
+                {
+                    copy.remove(player);
+                } else
+                {
+                    copy.put(player, result);
+                }
+            }
+            nextPlayers = Map.copyOf(copy);
+        }
+        return new WorldView(previous.getVersion() + 1, states.persistent(), nextPlayers, entities);
+    }
+}
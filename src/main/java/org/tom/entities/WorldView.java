@@ -0,0 +1,135 @@
+package org.tom.entities;
+
+import org.jspecify.annotations.NonNull;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable view of every fleet entity of a store at the end of a turn, published by a
+ * <code>WorldPublisher</code>. A view never changes after it is published, so any number of threads can read it
+ * without locks while the simulation carries on, and everything read from one view belongs to the same turn.
+ * <p>
+ * A view shares every unchanged part of its structure with the view of the turn before, so holding on to old
+ * views costs only the entities that changed between them.
+ * </p>
+ */
+public final class WorldView
+{
+    private final long version;
+    private final PersistentVector<EntityState> states;                     // By store slot, null if not in a fleet
+    private final Map<Integer, PersistentVector<Integer>> players;          // Slots of each player's entities, in joining order
+    private final int entities;
+
+
+    WorldView(long version, PersistentVector<EntityState> states, Map<Integer, PersistentVector<Integer>> players,
+              int entities)
+    {
+        this.version = version;
+        this.states = states;
+        this.players = players;
+        this.entities = entities;
+    }
+
+
+    /**
+     * Gets the number of times the world had been published when this view was taken
+     *
+     * @return 0 for the view taken when publishing started, then 1 more for each <code>publish</code>
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+
+    /**
+     * Gets the number of entities in the view
+     *
+     * @return the number of fleet entities
+     */
+    public int size()
+    {
+        return entities;
+    }
+
+
+    /**
+     * Gets the state of an entity in this view
+     *
+     * @param entity an <code>Entity</code> of the published store
+     * @return the entity's state, or null if it was not in a fleet when the view was taken
+     */
+    public EntityState state(@NonNull Entity entity)
+    {
+        return entity.slot < states.size() ? states.get(entity.slot) : null;
+    }
+
+
+    /**
+     * Gets the state of every entity of a player's fleet, starbases and starships together, in the order they
+     * joined the fleet
+     *
+     * @param playerNo the player number
+     * @return an unmodifiable list, empty if the player had no fleet entities
+     */
+    public List<EntityState> fleet(int playerNo)
+    {
+        PersistentVector<Integer> slots = players.get(playerNo);
+        if (slots == null) return Collections.emptyList();
+
+        return new AbstractList<>()
+        {
+            @Override
+            public EntityState get(int index)
+            {
+                return states.get(slots.get(index));
+            }
+
+            @Override
+            public int size()
+            {
+                return slots.size();
+            }
+        };
+    }
+
+
+    /**
+     * Gets the players with entities in this view
+     *
+     * @return an unmodifiable set of player numbers
+     */
+    public Set<Integer> players()
+    {
+        return players.keySet();
+    }
+
+
+    /**
+     * Gets the entity states by store slot
+     */
+    PersistentVector<EntityState> states()
+    {
+        return states;
+    }
+
+
+    /**
+     * Gets the slots of each player's entities
+     */
+    Map<Integer, PersistentVector<Integer>> playerSlots()
+    {
+        return players;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return "WorldView " + version + " of " + entities + " entities";
+    }
+}
@@ -0,0 +1,100 @@
+package org.tom.game;
+
+import org.jspecify.annotations.NonNull;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A player's order to one of their starships, as received by the <code>GameServer</code>. Ships and starbases are
+ * addressed by their index in their fleet, so a command names a ship of the sending player and, for attacks,
+ * a player number and index in that player's fleet.
+ * <p>
+ * Commands are one line of text each:
+ * <pre>
+ *     MOVE       ship x y
+ *     ATTACK     ship player ship     attack a starship of another player
+ *     ATTACKBASE ship player base     attack a starbase of another player
+ *     DOCK       ship base
+ *     UNDOCK     ship base
+ *     REPAIR     ship
+ * </pre>
+ * </p>
+ *
+ * @param player   the number of the player who sent the command
+ * @param type     what the ship should do
+ * @param ship     the index of the ordered starship in the player's fleet
+ * @param a        the first argument: x, the target player or the base index
+ * @param b        the second argument: y or the target index
+ * @param received the <code>System.nanoTime</code> the command was read
+ * @param reply    completed by the turn loop with the reply to send back
+ */
+public record Command(int player, Type type, int ship, int a, int b, long received, CompletableFuture<String> reply)
+{
+    /**
+     * The kinds of command, with the number of arguments each takes after the ship index
+     */
+    public enum Type
+    {
+        MOVE(2), ATTACK(2), ATTACKBASE(2), DOCK(1), UNDOCK(1), REPAIR(0);
+
+        private final int arguments;
+
+        Type(int arguments)
+        {
+            this.arguments = arguments;
+        }
+    }
+
+
+    /**
+     * Parses one line of the protocol
+     *
+     * @param player the number of the player who sent the line
+     * @param line   the command text, e.g. <code>MOVE 3 10 12</code>
+     * @return the parsed <code>Command</code>, with a new reply future
+     * @throws IllegalArgumentException if the line is not a valid command
+     */
+    public static Command parse(int player, @NonNull String line)
+    {
+        String[] words = line.trim().split("\\s+");
+        Type type;
+        try
+        {
+            type = Type.valueOf(words[0].toUpperCase());
+        } catch (IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Unknown command: " + words[0]);
+        }
+        if (words.length != type.arguments + 2)
+        {
+            throw new IllegalArgumentException(type + " takes " + (type.arguments + 1) + " numbers");
+        }
+
+        try
+        {
+            int ship = Integer.parseInt(words[1]);
+            int a = type.arguments > 0 ? Integer.parseInt(words[2]) : 0;
+            int b = type.arguments > 1 ? Integer.parseInt(words[3]) : 0;
+            return new Command(player, type, ship, a, b, System.nanoTime(), new CompletableFuture<>());
+        } catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Not a number in: " + line);
+        }
+    }
+
+
+    /**
+     * Writes this command as one line of the protocol, without the line break
+     *
+     * @return the command text, which <code>parse</code> reads back as the same command
+     */
+    public String toLine()
+    {
+        return switch (type.arguments)
+        {
+            case 0 -> type + " " + ship;
+            case 1 -> type + " " + ship + " " + a;
+            default -> type + " " + ship + " " + a + " " + b;
+        };
+    }
+}
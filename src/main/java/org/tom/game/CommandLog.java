@@ -0,0 +1,89 @@
+package org.tom.game;
+
+import org.jspecify.annotations.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A text log of the commands applied in each turn of a game, with the hash of the world state after each turn,
+ * written by <code>GameServer.recordTo</code> and checked by <code>ReplayVerifier</code>. Each command is a line
+ * with the player number followed by the command as it was sent, and each turn ends with a line giving its number
+ * and the state hash in hex:
+ * <pre>
+ * 1 MOVE 0 4 4
+ * 2 ATTACK 1 1 0
+ * TURN 1 9e3779b97f4a7c15
+ * </pre>
+ * Each turn is flushed as it ends, so the log is complete up to the last turn if the server stops.
+ */
+public final class CommandLog implements Closeable
+{
+    static final String TURN = "TURN";
+
+    private final Writer out;
+
+
+    /**
+     * Creates a log writing to <code>out</code>
+     * <p>
+     * Note: is package-private (no keyword) to allow access to test methods
+     * </p>
+     *
+     * @param out the writer for the log
+     */
+    CommandLog(Writer out)
+    {
+        this.out = out;
+    }
+
+
+    /**
+     * Creates a log, replacing the file if it exists
+     *
+     * @param path the file to write
+     * @return the open log
+     * @throws IOException if the file cannot be created
+     */
+    public static CommandLog create(@NonNull Path path) throws IOException
+    {
+        return new CommandLog(Files.newBufferedWriter(path, StandardCharsets.US_ASCII));
+    }
+
+
+    /**
+     * Writes one turn: its commands in the order they were applied, then its number and state hash
+     *
+     * @param turn     the turn number
+     * @param commands the commands applied in the turn
+     * @param hash     the hash of the world state after the turn
+     * @throws IOException if the log cannot be written
+     */
+    public synchronized void turn(long turn, @NonNull List<Command> commands, long hash) throws IOException
+    {
+        for (Command command : commands)
+        {
+            out.write(Integer.toString(command.player()));
+            out.write(' ');
+            out.write(command.toLine());
+            out.write('\n');
+        }
+        out.write(TURN + " " + turn + " " + Long.toHexString(hash) + "\n");
+        out.flush();
+    }
+
+
+    /**
+     * Closes the log file
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        out.close();
+    }
+}
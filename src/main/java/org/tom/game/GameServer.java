@@ -0,0 +1,560 @@
+package org.tom.game;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jspecify.annotations.NonNull;
+import org.tom.entities.*;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.logging.log4j.util.Unbox.box;
+
+/**
+ * Accepts player commands over a local socket and applies them to the fleets in turns.
+ * <p>
+ * Each connection is served by its own virtual thread. A client first sends <code>PLAYER n</code> to take control
+ * of player n's fleet, then one <code>Command</code> per line, and gets one reply line per command:
+ * <code>OK turn</code> once the command has been applied in that turn, or <code>ERR reason</code>. A connection
+ * sends its next command after reading the reply, so each client has at most one command in flight.
+ * </p>
+ * <p>
+ * All changes to the world are made by a single turn loop thread, so the entities need no locking. The loop takes
+ * every command waiting in a bounded queue, up to <code>maxBatch</code>, and applies them in arrival order as one
+ * turn. When the queue is full, connection threads block on it, so a slow turn loop pushes back on clients
+ * through their unread sockets rather than growing memory.
+ * </p>
+ */
+public class GameServer implements Closeable
+{
+    private static final Logger logger = LogManager.getLogger();
+    private static final String CLOSED = "ERR server closed";
+    private static final String FAILED = "ERR turn loop failed";
+
+    private final Map<Integer, Fleet> fleets = new HashMap<>();
+    private final BlockingQueue<Command> queue;
+    private final int maxBatch;
+    private final ServerSocketChannel server;
+    private final SocketAddress address;            // The bound address, including the chosen port
+    private final Set<SocketChannel> open = ConcurrentHashMap.newKeySet();
+    private Thread turnLoop;                        // Set by start
+    private Thread acceptor;
+    private final AtomicInteger connections = new AtomicInteger();
+    private volatile boolean running = true;
+    private volatile WorldPublisher publisher;      // Publishes a view of the world after each turn, if set
+    private volatile CommandLog log;                // Records each turn's commands and state hash, if set
+    private volatile StateHash stateHash;           // Hashes the world for the command log
+
+    // Written only by the turn loop
+    private volatile long turn;
+    private volatile long commands;
+    private long waitNanos;
+
+
+    /**
+     * Opens a server on a local address. Players can connect once <code>start</code> is called; anything that must
+     * see every turn, such as <code>recordTo</code>, is set up before that.
+     *
+     * @param fleets        the fleets players can control, by player number
+     * @param address       an <code>InetSocketAddress</code>, such as port 0 on the loopback address, or a
+     *                      <code>UnixDomainSocketAddress</code>
+     * @param queueCapacity the number of commands that can wait for the turn loop before clients are held back
+     * @param maxBatch      the most commands applied in one turn
+     * @throws IOException if the address cannot be bound
+     */
+    public GameServer(@NonNull List<Fleet> fleets, @NonNull SocketAddress address, int queueCapacity, int maxBatch)
+            throws IOException
+    {
+        if (maxBatch < 1) throw new IllegalArgumentException("maxBatch must be positive: " + maxBatch);
+        for (Fleet fleet : fleets)
+        {
+            this.fleets.put(fleet.getPlayer().playerNo(), fleet);
+        }
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatch = maxBatch;
+
+        server = ServerSocketChannel.open(address instanceof UnixDomainSocketAddress
+                ? StandardProtocolFamily.UNIX : StandardProtocolFamily.INET);
+        server.bind(address, 1024);
+        this.address = server.getLocalAddress();
+    }
+
+
+    /**
+     * Starts the turn loop and starts accepting players
+     *
+     * @return this server
+     * @throws IllegalStateException if the server has already been started
+     */
+    public synchronized GameServer start()
+    {
+        if (turnLoop != null) throw new IllegalStateException("Game server already started");
+
+        turnLoop = Thread.ofVirtual().name("turn-loop").start(this::runTurns);    // Hand-offs from connections stay on the carrier threads
+        acceptor = Thread.ofVirtual().name("acceptor").start(this::acceptPlayers);
+        logger.info("Game server listening on {}", getAddress());
+        return this;
+    }
+
+
+    /**
+     * Opens and starts a server on an ephemeral loopback port
+     *
+     * @param fleets the fleets players can control
+     * @return the running server
+     * @throws IOException if no port can be bound
+     */
+    public static GameServer onLoopback(@NonNull List<Fleet> fleets) throws IOException
+    {
+        return new GameServer(fleets, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4096, 1024).start();
+    }
+
+
+    /**
+     * Gets the address the server is bound to, including the chosen port
+     *
+     * @return the local address
+     */
+    public SocketAddress getAddress()
+    {
+        return address;
+    }
+
+
+    /**
+     * Publishes a view of the world at the end of every turn from now on, before the turn's replies are sent
+     *
+     * @param publisher the <code>WorldPublisher</code> tracking the fleets' store, or null to stop publishing
+     */
+    public void publishTo(WorldPublisher publisher)
+    {
+        this.publisher = publisher;
+    }
+
+
+    /**
+     * Records every turn from now on to a command log: its commands in the order they were applied, and the hash
+     * of the world state after it, for <code>ReplayVerifier</code> to check a replay against. Starts hashing the
+     * fleets' store if it is not hashed already, which reads every entity. Call before <code>start</code> so that
+     * the first turn is recorded too.
+     *
+     * @param log the <code>CommandLog</code> to write to, or null to stop recording. The caller closes it once
+     *            the server is closed.
+     * @throws IllegalStateException if the fleets have no entities, so there is no store to hash
+     */
+    public void recordTo(CommandLog log)
+    {
+        if (log != null)
+        {
+            EntityStore store = storeOf(fleets.values())
+                    .orElseThrow(() -> new IllegalStateException("No entities to hash"));
+            StateHash tracked = store.getStateHash();
+            stateHash = tracked != null ? tracked : StateHash.track(store, fleets.values());
+        }
+        this.log = log;
+    }
+
+
+    /**
+     * Accepts connections until the server is closed, starting a virtual thread for each
+     */
+    private void acceptPlayers()
+    {
+        AtomicInteger ids = new AtomicInteger();
+        while (running)
+        {
+            try
+            {
+                SocketChannel channel = server.accept();
+                Thread.ofVirtual().name("player-connection-" + ids.incrementAndGet()).start(() -> serve(channel));
+            } catch (ClosedChannelException e)
+            {
+                return;
+            } catch (IOException e)
+            {
+                logger.warn("Failed to accept a connection", e);
+            }
+        }
+    }
+
+
+    /**
+     * Reads the handshake and then commands from one connection, replying to each
+     */
+    private void serve(SocketChannel channel)
+    {
+        connections.incrementAndGet();
+        open.add(channel);
+        try (channel;
+             BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.US_ASCII));
+             Writer out = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.US_ASCII))
+        {
+            int player = handshake(in.readLine());
+            if (player < 0)
+            {
+                out.write("ERR expected PLAYER n for one of " + fleets.keySet() + "\n");
+                out.flush();
+                return;
+            }
+            out.write("WELCOME " + player + "\n");
+            out.flush();
+
+            String line;
+            while ((line = in.readLine()) != null && running)
+            {
+                out.write(submit(player, line));
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException e)
+        {
+            logger.debug("Connection closed: {}", e.getMessage());
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        } finally
+        {
+            open.remove(channel);
+            connections.decrementAndGet();
+        }
+    }
+
+
+    /**
+     * Parses the handshake line
+     *
+     * @return the player number, or -1 if the line is not a valid handshake
+     */
+    private int handshake(String line)
+    {
+        if (line == null) return -1;
+
+        String[] words = line.trim().split("\\s+");
+        if (words.length != 2 || !words[0].equalsIgnoreCase("PLAYER")) return -1;
+        try
+        {
+            int player = Integer.parseInt(words[1]);
+            return fleets.containsKey(player) ? player : -1;
+        } catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+
+    /**
+     * Queues one command line for the turn loop and waits for its reply. Blocks while the queue is full.
+     */
+    private String submit(int player, String line) throws InterruptedException
+    {
+        Command command;
+        try
+        {
+            command = Command.parse(player, line);
+        } catch (IllegalArgumentException e)
+        {
+            return "ERR " + e.getMessage();
+        }
+
+        while (!queue.offer(command, 100, TimeUnit.MILLISECONDS))
+        {
+            if (!running) return CLOSED;
+        }
+
+        // Queued after the turn loop's last look at the queue, so nobody else will answer it
+        if (!running) command.reply().complete(CLOSED);
+        return command.reply().join();
+    }
+
+
+    /**
+     * The turn loop: applies batches of waiting commands until the server is closed. If the loop fails, the server
+     * stops taking commands.
+     */
+    private void runTurns()
+    {
+        List<Command> batch = new ArrayList<>(maxBatch);
+        String reason = FAILED;
+        try
+        {
+            while (running)
+            {
+                Command first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                applyTurn(batch);
+                batch.clear();
+            }
+            reason = CLOSED;
+        } catch (InterruptedException e)
+        {
+            reason = CLOSED;
+        } catch (RuntimeException e)
+        {
+            logger.error("Turn loop failed after turn {}", box(turn), e);
+        } finally
+        {
+            // Release any connection still waiting on a command, including those of a turn that failed part-way
+            running = false;
+            for (Command command : batch)
+            {
+                command.reply().complete(reason);
+            }
+            for (Command command : queue)
+            {
+                command.reply().complete(reason);
+            }
+        }
+    }
+
+
+    /**
+     * Applies one turn's commands in order and completes their replies
+     */
+    private void applyTurn(List<Command> batch)
+    {
+        TurnEvent event = new TurnEvent();
+        event.begin();
+        long now = System.nanoTime();
+        String[] replies = new String[batch.size()];
+        for (int i = 0; i < replies.length; i++)
+        {
+            Command command = batch.get(i);
+            waitNanos += now - command.received();
+            replies[i] = apply(fleets, command);
+        }
+
+        // Count the turn before replying, so clients that have their reply see it counted
+        long thisTurn = turn + 1;
+        commands += batch.size();
+        turn = thisTurn;
+        WorldPublisher publisher = this.publisher;
+        if (publisher != null) publish(publisher, thisTurn);
+        CommandLog log = this.log;
+        if (log != null) record(log, thisTurn, batch);
+        if (event.shouldCommit())
+        {
+            event.source = "server";
+            event.turn = thisTurn;
+            event.orders = batch.size();
+            event.commit();
+        }
+        String ok = "OK " + thisTurn;
+        for (int i = 0; i < replies.length; i++)
+        {
+            batch.get(i).reply().complete(replies[i] == null ? ok : "ERR " + replies[i]);
+        }
+    }
+
+
+    /**
+     * Publishes the world after a turn. A failure is logged and the turn still completes, as its commands have
+     * been applied; clients see the next view that publishes.
+     */
+    private static void publish(WorldPublisher publisher, long thisTurn)
+    {
+        try
+        {
+            publisher.publish();
+        } catch (RuntimeException e)
+        {
+            logger.warn("Failed to publish turn {}", box(thisTurn), e);
+        }
+    }
+
+
+    /**
+     * Writes a turn to the command log, stopping recording if the log cannot be written
+     */
+    private void record(CommandLog log, long thisTurn, List<Command> batch)
+    {
+        try
+        {
+            log.turn(thisTurn, batch, stateHash.hash());
+        } catch (IOException | RuntimeException e)
+        {
+            logger.warn("Stopped recording commands after turn {}", box(thisTurn), e);
+            this.log = null;
+        }
+    }
+
+
+    /**
+     * Finds the store of a world's entities, for hashing it. Shared with <code>ReplayVerifier</code>.
+     *
+     * @param fleets the fleets of the world
+     * @return the <code>EntityStore</code> of the first entity found, or empty if the fleets have no entities
+     */
+    static Optional<EntityStore> storeOf(Collection<Fleet> fleets)
+    {
+        for (Fleet fleet : fleets)
+        {
+            if (!fleet.getStarbases().isEmpty()) return Optional.of(fleet.getStarbases().getFirst().getStore());
+            if (!fleet.getStarships().isEmpty()) return Optional.of(fleet.getStarships().getFirst().getStore());
+        }
+        return Optional.empty();
+    }
+
+
+    /**
+     * Carries out one command on the given fleets. Shared with <code>ReplayVerifier</code>, so a replay applies
+     * commands exactly as the server did. A command that fails with an exception is logged and answered with an
+     * error, like one that cannot be carried out, so it never stops the turn.
+     *
+     * @param fleets  the fleets by player number
+     * @param command the command
+     * @return null if the command was carried out, or the reason it could not be
+     */
+    static String apply(Map<Integer, Fleet> fleets, Command command)
+    {
+        try
+        {
+            return carryOut(fleets, command);
+        } catch (RuntimeException e)
+        {
+            logger.warn("Failed to apply {}", command, e);
+            return "failed: " + e;
+        }
+    }
+
+
+    /**
+     * Helper method for <code>apply</code> that carries out one command
+     */
+    private static String carryOut(Map<Integer, Fleet> fleets, Command command)
+    {
+        Fleet fleet = fleets.get(command.player());
+        if (fleet == null) return "no player " + command.player();
+        Optional<Starship> ship = fleet.getStarshipAt(command.ship());
+        if (ship.isEmpty()) return "no starship " + command.ship() + " in " + fleet;
+
+        Starship s = ship.get();
+        switch (command.type())
+        {
+            case MOVE -> s.setSector(new Sector(command.a(), command.b()));
+            case ATTACK, ATTACKBASE ->
+            {
+                Fleet enemy = fleets.get(command.a());
+                if (enemy == null) return "no player " + command.a();
+
+                Optional<? extends Entity> target = command.type() == Command.Type.ATTACK
+                        ? enemy.getStarshipAt(command.b()) : enemy.getStarbaseAt(command.b());
+                if (target.isEmpty()) return "no target " + command.b() + " in " + enemy;
+                s.attack(target.get());
+            }
+            case DOCK, UNDOCK ->
+            {
+                Optional<Starbase> base = fleet.getStarbaseAt(command.a());
+                if (base.isEmpty()) return "no starbase " + command.a() + " in " + fleet;
+
+                if (command.type() == Command.Type.DOCK)
+                {
+                    s.dockToStarbase(base.get());
+                } else
+                {
+                    s.undockFromStarbase(base.get());
+                }
+            }
+            case REPAIR -> s.repair();
+        }
+        return null;
+    }
+
+
+    /**
+     * Gets the number of turns played so far
+     *
+     * @return the turn count
+     */
+    public long getTurn()
+    {
+        return turn;
+    }
+
+
+    /**
+     * Gets the number of commands applied so far
+     *
+     * @return the command count
+     */
+    public long getCommands()
+    {
+        return commands;
+    }
+
+
+    /**
+     * Gets the number of open player connections
+     *
+     * @return the connection count
+     */
+    public int getConnections()
+    {
+        return connections.get();
+    }
+
+
+    /**
+     * Stops accepting players, finishes the current turn and closes every connection. Commands still queued are
+     * answered with an error.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        running = false;
+        server.close();
+        for (SocketChannel channel : open)
+        {
+            channel.close();        // Wakes connection threads blocked reading
+        }
+        Thread[] threads;
+        synchronized (this)
+        {
+            threads = turnLoop == null ? new Thread[0] : new Thread[]{turnLoop, acceptor};
+        }
+        try
+        {
+            for (Thread thread : threads)
+            {
+                thread.join();
+            }
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if (getAddress() instanceof UnixDomainSocketAddress unix) Files.deleteIfExists(unix.getPath());
+
+        long count = commands;
+        logger.info("Game server closed after {} commands in {} turns, average queue wait {} us", count, turn,
+                count == 0 ? 0 : waitNanos / count / 1000);
+    }
+}
@@ -0,0 +1,105 @@
+package org.tom.game;
+
+import org.tom.entities.HistogramBuckets;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size histogram of durations in nanoseconds, for percentiles that are cheap to record. Uses the buckets
+ * of <code>HistogramBuckets</code>, so a reported percentile is within about 3% of the true value. Recording takes
+ * constant time and never allocates.
+ * <p>
+ * Methods are synchronized, so one thread can record while another reads.
+ * </p>
+ */
+public class LatencyHistogram
+{
+    private final long[] counts = new long[HistogramBuckets.COUNT];
+    private long count;
+    private long total;
+    private long max;
+
+
+    /**
+     * Records one duration
+     *
+     * @param nanos the duration in nanoseconds; negative values are counted as 0
+     */
+    public synchronized void record(long nanos)
+    {
+        long value = Math.max(0, nanos);
+        counts[HistogramBuckets.indexOf(value)]++;
+        count++;
+        total += value;
+        max = Math.max(max, value);
+    }
+
+
+    /**
+     * Gets the value below which a given fraction of the recorded durations fall
+     *
+     * @param fraction the percentile as a fraction, e.g. 0.99 for the 99th percentile
+     * @return the duration in nanoseconds, or 0 if nothing has been recorded
+     */
+    public synchronized long percentile(double fraction)
+    {
+        return HistogramBuckets.percentile(fraction, count, max, i -> counts[i]);
+    }
+
+
+    /**
+     * Gets the number of durations recorded
+     *
+     * @return the count
+     */
+    public synchronized long getCount()
+    {
+        return count;
+    }
+
+
+    /**
+     * Gets the mean of the recorded durations
+     *
+     * @return the mean in nanoseconds, or 0 if nothing has been recorded
+     */
+    public synchronized double getMean()
+    {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+
+    /**
+     * Gets the longest recorded duration
+     *
+     * @return the maximum in nanoseconds
+     */
+    public synchronized long getMax()
+    {
+        return max;
+    }
+
+
+    /**
+     * Clears every recorded duration, e.g. between reporting intervals
+     */
+    public synchronized void reset()
+    {
+        Arrays.fill(counts, 0);
+        count = 0;
+        total = 0;
+        max = 0;
+    }
+
+
+    /**
+     * Summarises the histogram in microseconds
+     *
+     * @return the count, mean and main percentiles
+     */
+    @Override
+    public synchronized String toString()
+    {
+        return HistogramBuckets.summarise(count, getMean(), max, i -> counts[i]);
+    }
+}
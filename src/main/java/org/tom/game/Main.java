@@ -1,17 +1,52 @@
 package org.tom.game;
 import org.tom.entities.*;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
 
 public class Main
 {
+    private static final int DEFAULT_PORT = 7777;
+    private static final int SHIPS_PER_FLEET = 10;
+    private static final Duration METRICS_INTERVAL = Duration.ofMinutes(1);
+    private static final String START_SNAPSHOT = "start.snap";     // Files of a recording directory
+    private static final String COMMAND_LOG = "commands.log";
+
 
     /**
-     * Executes the demo sequence
+     * Executes the demo sequence, or with <code>serve [port] [players] [recording]</code> runs a
+     * <code>GameServer</code> on the loopback address until the process is stopped, or with
+     * <code>verify recording</code> replays a recorded game and reports the first turn that diverges
      *
      * @param args start arguments
      */
-    public static void main(String[] args)
+    public static void main(String[] args) throws IOException, InterruptedException
     {
+        if (args.length > 0 && args[0].equals("serve"))
+        {
+            serve(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT, args.length > 2 ? Integer.parseInt(args[2]) : 2,
+                    args.length > 3 ? Path.of(args[3]) : null);
+            return;
+        }
+        if (args.length == 2 && args[0].equals("verify"))
+        {
+            Path recording = Path.of(args[1]);
+            Optional<ReplayVerifier.Divergence> divergence = ReplayVerifier.verify(
+                    Snapshot.read(recording.resolve(START_SNAPSHOT)), recording.resolve(COMMAND_LOG));
+            System.out.println(divergence.map(d -> "Diverged at " + d).orElse("Every turn matches"));
+            return;
+        }
+
         // Create players
         Player player1 = new Player(1);
         Player player2 = new Player(2);
@@ -56,13 +91,64 @@ public class Main
                     starship.repair();
                 }));
 
-        // Command fleet1 to attack fleet2's starbase until it is destroyed
+        // Command fleet1 to attack fleet2's starbase, one volley per tick, until it is destroyed
         fleet2.getStarbaseAt(0).ifPresent(starbase -> {
-            while (starbase.getHealth() > 0)
+            TurnScheduler scheduler = new TurnScheduler(Duration.ofMillis(50));
+            while (!fleet2.getStats().allStarbasesDestroyed())
             {
-                fleet1.attackWithAll(starbase);
+                scheduler.queueAttackWithAll(fleet1, starbase);
+                scheduler.tick();
             }
-            System.out.println("All of player 2's starbases are destroyed. Player 1 wins!");
+            System.out.println("All of player 2's starbases are destroyed. Player 1 wins after " + scheduler.getTicks() + " ticks!");
         });
     }
-}
\ No newline at end of file
+
+
+    /**
+     * Serves a fresh game with one fleet per player, each with a starbase and <code>SHIPS_PER_FLEET</code>
+     * starships in sector 0,0. Metrics are exposed through JMX and logged every minute. If a recording directory
+     * is given, the starting world and every turn are recorded there for <code>verify</code>.
+     */
+    private static void serve(int port, int players, Path recording) throws IOException, InterruptedException
+    {
+        List<Fleet> fleets = new ArrayList<>();
+        for (int p = 1; p <= players; p++)
+        {
+            Fleet fleet = new Fleet(new Player(p));
+            fleet.addEntities(new Starbase(new Sector(0, 0)));
+            for (int i = 0; i < SHIPS_PER_FLEET; i++)
+            {
+                fleet.addEntities(new Starship(new Sector(0, 0)));
+            }
+            fleets.add(fleet);
+        }
+
+        CommandLog log = null;
+        if (recording != null)
+        {
+            Files.createDirectories(recording);
+            Snapshot.write(recording.resolve(START_SNAPSHOT), fleets);
+            log = CommandLog.create(recording.resolve(COMMAND_LOG));
+        }
+        CommandLog openLog = log;
+
+        GameServer server = new GameServer(fleets, new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 4096, 1024);
+        if (log != null) server.recordTo(log);      // Before the turn loop starts, so every turn is logged
+        server.start();
+        Metrics.registerMBean();
+        Closeable reporter = Metrics.reportEvery(METRICS_INTERVAL);
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+        {
+            try
+            {
+                reporter.close();
+                server.close();
+                if (openLog != null) openLog.close();
+            } catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }));
+        Thread.currentThread().join();      // Serve until the process is stopped
+    }
+}
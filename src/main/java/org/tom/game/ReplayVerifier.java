@@ -0,0 +1,124 @@
+package org.tom.game;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jspecify.annotations.NonNull;
+import org.tom.entities.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.apache.logging.log4j.util.Unbox.box;
+
+/**
+ * Replays a <code>CommandLog</code> on the world it was recorded from and checks the state hash after every turn,
+ * to find where a game stopped being deterministic, or where two lockstep peers fell out of step. Commands are
+ * applied exactly as <code>GameServer</code> applies them, and the replayed world is hashed incrementally, so a
+ * long log replays at about the speed it was played.
+ */
+public final class ReplayVerifier
+{
+    private static final Logger logger = LogManager.getLogger();
+
+
+    /**
+     * The first turn whose replayed state differs from the recorded one
+     *
+     * @param turn     the turn number
+     * @param expected the state hash in the log
+     * @param actual   the state hash of the replay
+     */
+    public record Divergence(long turn, long expected, long actual)
+    {
+        @Override
+        public String toString()
+        {
+            return "turn " + turn + ": expected " + Long.toHexString(expected) + " but replayed "
+                    + Long.toHexString(actual);
+        }
+    }
+
+
+    private ReplayVerifier()
+    {}
+
+
+    /**
+     * Replays a command log on the world it started from, stopping at the first turn that diverges. The fleets are
+     * changed by the replay.
+     *
+     * @param start the fleets as they were when recording started, such as those restored from a snapshot taken
+     *              then; entity IDs must match the recorded world's
+     * @param log   the command log
+     * @return the first divergent turn, or empty if every turn matches
+     * @throws IOException if the log cannot be read or is not a valid command log
+     */
+    public static Optional<Divergence> verify(@NonNull List<Fleet> start, @NonNull Path log) throws IOException
+    {
+        Map<Integer, Fleet> fleets = new HashMap<>();
+        for (Fleet fleet : start)
+        {
+            fleets.put(fleet.getPlayer().playerNo(), fleet);
+        }
+        EntityStore store = GameServer.storeOf(start).orElseGet(() -> new EntityStore(16));
+        StateHash stateHash = StateHash.track(store, start);
+
+        List<Command> batch = new ArrayList<>();
+        long turns = 0;
+        long lineNo = 0;
+        try (BufferedReader in = Files.newBufferedReader(log, StandardCharsets.US_ASCII))
+        {
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                lineNo++;
+                if (line.isBlank()) continue;
+
+                String[] words = line.trim().split("\\s+", 2);
+                try
+                {
+                    if (words[0].equals(CommandLog.TURN))
+                    {
+                        String[] turn = words[1].split("\\s+");
+                        long number = Long.parseLong(turn[0]);
+                        long expected = Long.parseUnsignedLong(turn[1], 16);
+                        for (Command command : batch)
+                        {
+                            GameServer.apply(fleets, command);
+                        }
+                        batch.clear();
+                        turns++;
+
+                        long actual = stateHash.hash();
+                        if (actual != expected)
+                        {
+                            Divergence divergence = new Divergence(number, expected, actual);
+                            logger.warn("Replay of {} diverged at {}", log, divergence);
+                            return Optional.of(divergence);
+                        }
+                    } else
+                    {
+                        batch.add(Command.parse(Integer.parseInt(words[0]), words[1]));
+                    }
+                } catch (IllegalArgumentException | IndexOutOfBoundsException e)
+                {
+                    throw new IOException(log + " line " + lineNo + ": not a command or turn: " + line, e);
+                }
+            }
+        } finally
+        {
+            store.stopHashing();
+        }
+
+        logger.info("Replayed {} turns of {} with no divergence", box(turns), log);
+        return Optional.empty();
+    }
+}
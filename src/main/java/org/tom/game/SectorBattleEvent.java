@@ -0,0 +1,49 @@
+package org.tom.game;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event spanning the resolution of the battle in one sector by <code>TurnSimulator</code>. Sectors are
+ * resolved on the fork-join pool, so the event's thread shows which worker ran it. Disabled by default, and costs
+ * nothing unless a recording enables it.
+ */
+@Name("org.tom.SectorBattle")
+@Label("Sector Battle")
+@Category({"Project Spaceship", "Combat"})
+@Description("The attacks and repairs of one sector in a simulated turn")
+@Enabled(false)
+@StackTrace(false)
+final class SectorBattleEvent extends Event
+{
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+
+    @Label("Fleets")
+    @Description("The player numbers of the fleets with entities in the sector")
+    String fleets;
+
+    @Label("Entities")
+    int entities;
+
+    @Label("Attacks")
+    int attacks;
+
+    @Label("Repairs")
+    int repairs;
+
+    @Label("Destroyed")
+    int destroyed;
+
+    @Label("Damage")
+    @Description("The total health lost by the targets")
+    double damage;
+}
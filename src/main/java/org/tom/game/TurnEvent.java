@@ -0,0 +1,48 @@
+package org.tom.game;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event spanning one turn, from its start to its end, so recordings can tie GC and CPU spikes to the turn
+ * they happened in. Committed by <code>TurnSimulator</code>, <code>TurnScheduler</code> and <code>GameServer</code>;
+ * <code>source</code> tells them apart.
+ * <p>
+ * Like the other game events, it is disabled by default and costs nothing unless a recording enables it, e.g.
+ * <code>-XX:StartFlightRecording:+org.tom.Turn#enabled=true,+org.tom.SectorBattle#enabled=true</code>.
+ * </p>
+ */
+@Name("org.tom.Turn")
+@Label("Turn")
+@Category({"Project Spaceship", "Simulation"})
+@Description("One turn of the game, from start to end")
+@Enabled(false)
+@StackTrace(false)
+final class TurnEvent extends Event
+{
+    @Label("Source")
+    @Description("What ran the turn: simulator, scheduler or server")
+    String source;
+
+    @Label("Turn")
+    long turn;
+
+    @Label("Battle Groups")
+    int battleGroups;
+
+    @Label("Orders")
+    @Description("Attacks ordered by the simulator, orders run by the scheduler or commands applied by the server")
+    int orders;
+
+    @Label("Repairs")
+    int repairs;
+
+    @Label("Destroyed")
+    @Description("Entities destroyed during the turn")
+    int destroyed;
+}
@@ -0,0 +1,30 @@
+package org.tom.game;
+
+/**
+ * A summary of one simulated turn. Defined as a record as this is purely a data-carrier class.
+ *
+ * @param battleGroups the number of independent work units the turn was split into
+ * @param attacks      the number of attacks ordered
+ * @param repairs      the number of repair ticks carried out by docked starships
+ * @param destroyed    the number of entities destroyed during the turn
+ */
+public record TurnResult(int battleGroups, int attacks, int repairs, int destroyed)
+{
+    /**
+     * A result for a turn where nothing happened
+     */
+    public static final TurnResult EMPTY = new TurnResult(0, 0, 0, 0);
+
+
+    /**
+     * Combines this result with another, e.g. to total the results of work units
+     *
+     * @param other the result to add
+     * @return a new <code>TurnResult</code> with the summed values
+     */
+    public TurnResult plus(TurnResult other)
+    {
+        return new TurnResult(battleGroups + other.battleGroups, attacks + other.attacks,
+                repairs + other.repairs, destroyed + other.destroyed);
+    }
+}
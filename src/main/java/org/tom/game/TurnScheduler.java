@@ -0,0 +1,369 @@
+package org.tom.game;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jspecify.annotations.NonNull;
+import org.tom.entities.*;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.apache.logging.log4j.util.Unbox.box;
+
+/**
+ * Advances the world in ticks. Orders are queued from any thread and carried out by the ticking thread in three
+ * phases: movement, then combat, then repair. Within a phase, orders run in the order they were queued.
+ * <p>
+ * Each tick has a time budget. The clock is checked after every <code>CHECK_EVERY</code> orders, and once the
+ * budget is spent the remaining orders stay queued for the next tick, later phases included, so a flood of orders
+ * stretches over several ticks instead of stalling one. A tick that still runs past its budget counts as an
+ * overrun. The time taken by each phase and by each whole tick is recorded in a <code>LatencyHistogram</code>.
+ * An order that throws is logged and counted as a failure, and the tick carries on with the next order.
+ * </p>
+ */
+public class TurnScheduler implements AutoCloseable
+{
+    private static final Logger logger = LogManager.getLogger();
+    static final int CHECK_EVERY = 64;     // Orders carried out between checks of the clock
+
+    /**
+     * The phases of a tick, in the order they run
+     */
+    public enum Phase
+    {
+        MOVEMENT, COMBAT, REPAIR
+    }
+
+    private final Map<Phase, Queue<Runnable>> orders = new EnumMap<>(Phase.class);
+    private final Map<Phase, LatencyHistogram> phaseTimes = new EnumMap<>(Phase.class);
+    private final LatencyHistogram tickTimes = new LatencyHistogram();
+    private final long budgetNanos;
+    private final AtomicLong overruns = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+    private volatile long ticks;
+    private int ran;                        // Orders carried out so far in the current tick
+    private volatile boolean running;
+    private Thread ticker;
+
+
+    /**
+     * Creates a scheduler with a time budget for each tick
+     *
+     * @param budget the time a tick may spend carrying out orders
+     */
+    public TurnScheduler(@NonNull Duration budget)
+    {
+        this.budgetNanos = budget.toNanos();
+        for (Phase phase : Phase.values())
+        {
+            orders.put(phase, new ConcurrentLinkedQueue<>());
+            phaseTimes.put(phase, new LatencyHistogram());
+        }
+    }
+
+
+    /**
+     * Queues a fleet to move all its starships to a sector
+     *
+     * @param fleet  the <code>Fleet</code> to move
+     * @param sector the destination <code>Sector</code>
+     */
+    public void queueMove(@NonNull Fleet fleet, @NonNull Sector sector)
+    {
+        queue(Phase.MOVEMENT, () -> fleet.moveAllEntities(sector));
+    }
+
+
+    /**
+     * Queues a single starship to move to a sector
+     *
+     * @param starship the <code>Starship</code> to move
+     * @param sector   the destination <code>Sector</code>
+     */
+    public void queueMove(@NonNull Starship starship, @NonNull Sector sector)
+    {
+        queue(Phase.MOVEMENT, () -> starship.setSector(sector));
+    }
+
+
+    /**
+     * Queues a starship to attack a target
+     *
+     * @param attacker the attacking <code>Starship</code>
+     * @param target   the <code>Entity</code> to attack
+     */
+    public void queueAttack(@NonNull Starship attacker, @NonNull Entity target)
+    {
+        queue(Phase.COMBAT, () -> attacker.attack(target));
+    }
+
+
+    /**
+     * Queues every starship of a fleet to attack a target, each as its own order
+     *
+     * @param fleet  the attacking <code>Fleet</code>
+     * @param target the <code>Entity</code> to attack
+     */
+    public void queueAttackWithAll(@NonNull Fleet fleet, @NonNull Entity target)
+    {
+        for (Starship starship : fleet.getStarships())
+        {
+            queueAttack(starship, target);
+        }
+    }
+
+
+    /**
+     * Queues a docked starship to carry out a repair tick
+     *
+     * @param starship the <code>Starship</code> to repair
+     */
+    public void queueRepair(@NonNull Starship starship)
+    {
+        queue(Phase.REPAIR, starship::repair);
+    }
+
+
+    /**
+     * Queues an order to run in a phase
+     * <p>
+     * Note: is package-private (no keyword) to allow access to test methods
+     * </p>
+     *
+     * @param phase the phase to run the order in
+     * @param order the order
+     */
+    void queue(Phase phase, Runnable order)
+    {
+        orders.get(phase).add(order);
+    }
+
+
+    /**
+     * Runs one tick on the calling thread: each phase in turn, until the orders run out or the budget is spent.
+     * Not to be called while the scheduler is ticking on its own thread.
+     *
+     * @return the number of orders carried out
+     */
+    public int tick()
+    {
+        TurnEvent event = new TurnEvent();
+        event.begin();
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        ran = 0;
+        boolean outOfTime = false;
+
+        for (Phase phase : Phase.values())
+        {
+            long phaseStart = System.nanoTime();
+            if (!outOfTime) outOfTime = !runPhase(orders.get(phase), deadline);
+            phaseTimes.get(phase).record(System.nanoTime() - phaseStart);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        tickTimes.record(elapsed);
+        ticks++;
+        if (elapsed > budgetNanos)
+        {
+            overruns.incrementAndGet();
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Tick {} took {} us, over its budget of {} us", box(ticks), box(elapsed / 1000),
+                        box(budgetNanos / 1000));
+            }
+        }
+        if (outOfTime)
+        {
+            long left = remaining();
+            deferred.addAndGet(left);
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Tick {} deferred {} orders to the next tick", box(ticks), box(left));
+            }
+        }
+        if (event.shouldCommit())
+        {
+            event.source = "scheduler";
+            event.turn = ticks;
+            event.orders = ran;
+            event.commit();
+        }
+        return ran;
+    }
+
+
+    /**
+     * Carries out the orders of one phase until the queue is empty or the deadline passes
+     *
+     * @return true if the queue was emptied, false if the deadline passed with orders left
+     */
+    private boolean runPhase(Queue<Runnable> queue, long deadline)
+    {
+        Runnable order;
+        while ((order = queue.poll()) != null)
+        {
+            try
+            {
+                order.run();
+            } catch (RuntimeException e)
+            {
+                failures.incrementAndGet();
+                logger.warn("Order failed in tick {}", box(ticks + 1), e);
+            }
+            ran++;
+            if (ran % CHECK_EVERY == 0 && System.nanoTime() - deadline > 0 && !queue.isEmpty()) return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Starts ticking at a fixed rate on a background thread. A tick that ends late starts the next one at once,
+     * without trying to catch up on the ticks that were missed.
+     *
+     * @param period the time from the start of one tick to the start of the next
+     */
+    public synchronized void start(@NonNull Duration period)
+    {
+        if (ticker != null) throw new IllegalStateException("Already started");
+
+        long periodNanos = period.toNanos();
+        running = true;
+        ticker = Thread.ofPlatform().name("turn-scheduler").start(() ->
+        {
+            long next = System.nanoTime();
+            while (running)
+            {
+                try
+                {
+                    tick();
+                } catch (RuntimeException e)
+                {
+                    logger.error("Tick {} failed", box(ticks + 1), e);
+                }
+                next += periodNanos;
+                long wait;
+                while (running && (wait = next - System.nanoTime()) > 0)
+                {
+                    LockSupport.parkNanos(wait);
+                }
+                if (System.nanoTime() - next > periodNanos) next = System.nanoTime();    // Too far behind to catch up
+            }
+        });
+        logger.info("Ticking every {} ms with a budget of {} ms", period.toMillis(), budgetNanos / 1_000_000);
+    }
+
+
+    /**
+     * Stops the background thread, if started, after its current tick
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (ticker == null) return;
+
+        running = false;
+        LockSupport.unpark(ticker);
+        try
+        {
+            ticker.join();
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        ticker = null;
+        logger.info("Stopped after {} ticks, {} overruns, {} failed orders. Ticks: {}", box(ticks), box(overruns.get()),
+                box(failures.get()), tickTimes);
+    }
+
+
+    /**
+     * Gets the number of orders waiting in all phases
+     *
+     * @return the queued order count
+     */
+    public long remaining()
+    {
+        long left = 0;
+        for (Queue<Runnable> queue : orders.values())
+        {
+            left += queue.size();
+        }
+        return left;
+    }
+
+
+    /**
+     * Gets the time taken by a phase in each tick
+     *
+     * @param phase the phase
+     * @return the histogram of phase times
+     */
+    public LatencyHistogram getPhaseTimes(@NonNull Phase phase)
+    {
+        return phaseTimes.get(phase);
+    }
+
+
+    /**
+     * Gets the time taken by each whole tick
+     *
+     * @return the histogram of tick times
+     */
+    public LatencyHistogram getTickTimes()
+    {
+        return tickTimes;
+    }
+
+
+    /**
+     * Gets the number of ticks run so far
+     *
+     * @return the tick count
+     */
+    public long getTicks()
+    {
+        return ticks;
+    }
+
+
+    /**
+     * Gets the number of ticks that ran past their budget
+     *
+     * @return the overrun count
+     */
+    public long getOverruns()
+    {
+        return overruns.get();
+    }
+
+
+    /**
+     * Gets the number of orders that threw an exception
+     *
+     * @return the failed order count
+     */
+    public long getFailures()
+    {
+        return failures.get();
+    }
+
+
+    /**
+     * Gets the total number of orders left queued at the end of a tick because its budget was spent. An order
+     * deferred over several ticks is counted once for each.
+     *
+     * @return the deferred order count
+     */
+    public long getDeferred()
+    {
+        return deferred.get();
+    }
+}
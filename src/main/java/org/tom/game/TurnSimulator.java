@@ -0,0 +1,511 @@
+package org.tom.game;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jspecify.annotations.NonNull;
+import org.tom.entities.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Advances the game one turn at a time. In each turn, every undocked starship attacks the first live hostile
+ * entity in its sector, and every docked starship that is repairing carries out a repair tick.
+ * <p>
+ * Combat only happens within a sector, so the turn is split into battle groups that are resolved independently
+ * on a fork-join pool. Sectors are merged into one group when a starship in one is docked to a starbase in the
+ * other, since the starbase's defence depends on the health of its docked ships. Within a group, entities act
+ * in fleet order, starbases before starships, so <code>step</code> gives the same result bit-for-bit as
+ * <code>stepSequential</code> regardless of the number of threads.
+ * </p>
+ */
+public class TurnSimulator
+{
+    private static final Logger logger = LogManager.getLogger();
+    private static final int GRAIN = 2048;      // Entities below which a fork-join task stops splitting
+
+    private final List<Fleet> fleets;
+    private final ForkJoinPool pool;
+    private long turns;                         // Turns stepped, for TurnEvent
+
+
+    /**
+     * Creates a simulator that runs on the common fork-join pool
+     *
+     * @param fleets the fleets taking part, in turn order
+     */
+    public TurnSimulator(@NonNull List<Fleet> fleets)
+    {
+        this(fleets, ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * Creates a simulator that runs on the given fork-join pool
+     *
+     * @param fleets the fleets taking part, in turn order
+     * @param pool   the <code>ForkJoinPool</code> to resolve battle groups on
+     */
+    public TurnSimulator(@NonNull List<Fleet> fleets, @NonNull ForkJoinPool pool)
+    {
+        this.fleets = List.copyOf(fleets);
+        this.pool = pool;
+    }
+
+
+    /**
+     * Simulates one turn, resolving battle groups in parallel. If an entity store that is not in concurrent mode
+     * has a <code>StateDelta</code>, <code>WorldPublisher</code> or <code>StateHash</code> attached, the turn is
+     * resolved with <code>stepSequential</code> instead, since those only lock their change sets in concurrent mode.
+     *
+     * @return a <code>TurnResult</code> summarising the turn
+     */
+    public TurnResult step()
+    {
+        List<EntityStore> stores = stores();
+        if (hasUnsafeTracker(stores))
+        {
+            logger.debug("Change tracking on a non-concurrent store, resolving the turn sequentially");
+            return stepSequential();
+        }
+
+        TurnEvent event = new TurnEvent();
+        event.begin();
+        List<BattleGroup> groups = partition();
+        if (groups.isEmpty())
+        {
+            commit(event, TurnResult.EMPTY);
+            return TurnResult.EMPTY;
+        }
+
+        // Prefix sums of group sizes let each task split its range by work rather than by count
+        long[] weights = new long[groups.size() + 1];
+        for (int i = 0; i < groups.size(); i++)
+        {
+            weights[i + 1] = weights[i] + groups.get(i).size();
+        }
+
+        // Entities pass between this thread and the workers, so the journals write out what each thread buffered
+        drainJournals(stores);
+        TurnResult result = pool.invoke(new GroupTask(groups, weights, 0, groups.size()));
+        drainJournals(stores);
+        CombatLog.endTurn();
+        purgeFleets();
+        commit(event, result);
+        logger.debug("Turn resolved {} battle groups in parallel: {}", groups.size(), result);
+        return result;
+    }
+
+
+    /**
+     * Simulates one turn on the calling thread. Produces exactly the same state as <code>step</code>.
+     *
+     * @return a <code>TurnResult</code> summarising the turn
+     */
+    public TurnResult stepSequential()
+    {
+        TurnEvent event = new TurnEvent();
+        event.begin();
+        TurnResult result = TurnResult.EMPTY;
+        for (BattleGroup group : partition())
+        {
+            result = result.plus(group.resolve());
+        }
+        CombatLog.endTurn();
+        purgeFleets();
+        commit(event, result);
+        logger.debug("Turn resolved sequentially: {}", result);
+        return result;
+    }
+
+
+    /**
+     * Gets the stores of the entities taking part. Entities of a world normally share one store, so each new store
+     * is looked up only once per run.
+     */
+    private List<EntityStore> stores()
+    {
+        List<EntityStore> stores = new ArrayList<>(1);
+        EntityStore last = null;
+        for (Fleet fleet : fleets)
+        {
+            for (List<? extends Entity> entities : List.of(fleet.getStarbases(), fleet.getStarships()))
+            {
+                for (Entity entity : entities)
+                {
+                    EntityStore store = entity.getStore();
+                    if (store == last) continue;
+                    last = store;
+                    if (!stores.contains(store)) stores.add(store);
+                }
+            }
+        }
+        return stores;
+    }
+
+
+    /**
+     * Checks whether any of the stores tracks changes without locking, which fork-join workers would race on
+     */
+    private static boolean hasUnsafeTracker(List<EntityStore> stores)
+    {
+        for (EntityStore store : stores)
+        {
+            if (!store.isConcurrent()
+                    && (store.getDelta() != null || store.getPublisher() != null || store.getStateHash() != null))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Writes out the events buffered by each thread in the journals of the stores, if any
+     */
+    private static void drainJournals(List<EntityStore> stores)
+    {
+        for (EntityStore store : stores)
+        {
+            EventJournal journal = store.getJournal();
+            if (journal != null) journal.drain();
+        }
+    }
+
+
+    /**
+     * Purges the destroyed entities of each fleet that has passed its purge threshold, so later turns skip them
+     */
+    private void purgeFleets()
+    {
+        for (Fleet fleet : fleets)
+        {
+            fleet.purgeIfNeeded();
+        }
+    }
+
+
+    /**
+     * Counts the turn and commits its <code>TurnEvent</code>, if the event is enabled in a JFR recording
+     */
+    private void commit(TurnEvent event, TurnResult result)
+    {
+        turns++;
+        if (!event.shouldCommit()) return;
+
+        event.source = "simulator";
+        event.turn = turns;
+        event.battleGroups = result.battleGroups();
+        event.orders = result.attacks();
+        event.repairs = result.repairs();
+        event.destroyed = result.destroyed();
+        event.commit();
+    }
+
+
+    /**
+     * Splits the entities of every fleet into battle groups. Each sector gets an id in the order it is first
+     * seen, sectors linked by docking are joined with a union-find, and the groups are returned in the order of
+     * their first sector, so the partition is the same every time for the same world.
+     *
+     * @return the battle groups for this turn
+     */
+    private List<BattleGroup> partition()
+    {
+        Map<Sector, SectorBattle> bySector = new HashMap<>();
+        List<SectorBattle> sectors = new ArrayList<>();
+
+        for (int f = 0; f < fleets.size(); f++)
+        {
+            Fleet fleet = fleets.get(f);
+            for (Starbase starbase : fleet.getStarbases())
+            {
+                sectorOf(starbase, bySector, sectors).add(starbase, f);
+            }
+            for (Starship starship : fleet.getStarships())
+            {
+                sectorOf(starship, bySector, sectors).add(starship, f);
+            }
+        }
+
+        // Join the sector of each starbase with the sectors of its docked ships
+        int[] parent = new int[sectors.size()];
+        for (int i = 0; i < parent.length; i++)
+        {
+            parent[i] = i;
+        }
+        for (Fleet fleet : fleets)
+        {
+            for (Starbase starbase : fleet.getStarbases())
+            {
+                SectorBattle baseSector = bySector.get(starbase.getSector());
+                for (Starship docked : starbase.getDockedStarships())
+                {
+                    SectorBattle shipSector = bySector.get(docked.getSector());
+                    if (shipSector != null) union(parent, baseSector.id, shipSector.id);
+                }
+            }
+        }
+
+        // Collect the sectors of each group, in sector id order
+        BattleGroup[] byRoot = new BattleGroup[sectors.size()];
+        List<BattleGroup> groups = new ArrayList<>();
+        for (SectorBattle sector : sectors)
+        {
+            int root = find(parent, sector.id);
+            if (byRoot[root] == null)
+            {
+                byRoot[root] = new BattleGroup(fleets);
+                groups.add(byRoot[root]);
+            }
+            byRoot[root].sectors.add(sector);
+        }
+        return groups;
+    }
+
+
+    /**
+     * Gets the <code>SectorBattle</code> for an entity's sector, creating it with the next id if needed
+     */
+    private static SectorBattle sectorOf(Entity entity, Map<Sector, SectorBattle> bySector, List<SectorBattle> sectors)
+    {
+        return bySector.computeIfAbsent(entity.getSector(), s ->
+        {
+            SectorBattle battle = new SectorBattle(sectors.size());
+            sectors.add(battle);
+            return battle;
+        });
+    }
+
+
+    /**
+     * Finds the root of a union-find set, halving the path as it goes
+     */
+    private static int find(int[] parent, int i)
+    {
+        while (parent[i] != i)
+        {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+
+    /**
+     * Joins two union-find sets, keeping the smaller root so the result does not depend on call order
+     */
+    private static void union(int[] parent, int a, int b)
+    {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA < rootB)
+        {
+            parent[rootB] = rootA;
+        } else if (rootB < rootA)
+        {
+            parent[rootA] = rootB;
+        }
+    }
+
+
+    /**
+     * The entities in one sector, in fleet order with starbases before starships. <code>fleetIndex</code> holds
+     * the index of the fleet list each entity came from.
+     */
+    private static final class SectorBattle
+    {
+        private final int id;
+        private Entity[] entities = new Entity[8];
+        private int[] fleetIndex = new int[8];
+        private int size;
+
+        SectorBattle(int id)
+        {
+            this.id = id;
+        }
+
+        void add(Entity entity, int fleet)
+        {
+            if (size == entities.length)
+            {
+                entities = Arrays.copyOf(entities, size * 2);
+                fleetIndex = Arrays.copyOf(fleetIndex, size * 2);
+            }
+            entities[size] = entity;
+            fleetIndex[size++] = fleet;
+        }
+    }
+
+
+    /**
+     * A set of sectors that can be resolved without touching any entity outside it
+     */
+    private static final class BattleGroup
+    {
+        private final List<Fleet> fleets;
+        private final List<SectorBattle> sectors = new ArrayList<>(1);
+
+        BattleGroup(List<Fleet> fleets)
+        {
+            this.fleets = fleets;
+        }
+
+        int size()
+        {
+            int size = 0;
+            for (SectorBattle sector : sectors)
+            {
+                size += sector.size;
+            }
+            return size;
+        }
+
+        /**
+         * Resolves each sector of the group in order
+         */
+        TurnResult resolve()
+        {
+            int attacks = 0;
+            int repairs = 0;
+            int destroyed = 0;
+
+            for (SectorBattle sector : sectors)
+            {
+                SectorBattleEvent event = new SectorBattleEvent();
+                event.begin();
+                boolean recording = event.isEnabled();
+                int attacksBefore = attacks;
+                int repairsBefore = repairs;
+                int destroyedBefore = destroyed;
+                double damage = 0;
+
+                // Each fleet keeps a cursor to its first candidate target. Destroyed entities stay destroyed and
+                // friendly ones stay friendly, so the cursor only ever moves forward.
+                int[] cursor = new int[fleets.size()];
+
+                for (int i = 0; i < sector.size; i++)
+                {
+                    if (!(sector.entities[i] instanceof Starship starship) || starship.isDestroyed()) continue;
+
+                    if (starship.getDocked())
+                    {
+                        if (starship.isRepairing())
+                        {
+                            starship.repair();
+                            repairs++;
+                        }
+                        continue;
+                    }
+
+                    Fleet own = fleets.get(sector.fleetIndex[i]);
+                    int c = cursor[sector.fleetIndex[i]];
+                    while (c < sector.size && !isTarget(sector.entities[c], own)) c++;
+                    cursor[sector.fleetIndex[i]] = c;
+                    if (c == sector.size) continue;     // No hostiles left in this sector
+
+                    Entity target = sector.entities[c];
+                    double health = recording ? target.getHealth() : 0;
+                    starship.attack(target);
+                    attacks++;
+                    if (recording) damage += health - target.getHealth();
+                    if (target.isDestroyed()) destroyed++;
+                }
+
+                if (event.shouldCommit())
+                {
+                    commit(event, sector, attacks - attacksBefore, repairs - repairsBefore,
+                            destroyed - destroyedBefore, damage);
+                }
+            }
+            return new TurnResult(1, attacks, repairs, destroyed);
+        }
+
+        /**
+         * Fills in and commits the <code>SectorBattleEvent</code> of a sector
+         */
+        private void commit(SectorBattleEvent event, SectorBattle sector, int attacks, int repairs, int destroyed,
+                            double damage)
+        {
+            Sector position = sector.entities[0].getSector();
+            StringBuilder players = new StringBuilder();
+            boolean[] seen = new boolean[fleets.size()];
+            for (int i = 0; i < sector.size; i++)
+            {
+                int f = sector.fleetIndex[i];
+                if (seen[f]) continue;
+                seen[f] = true;
+                if (!players.isEmpty()) players.append(',');
+                players.append(fleets.get(f).getPlayer().playerNo());
+            }
+
+            event.x = position.x();
+            event.y = position.y();
+            event.fleets = players.toString();
+            event.entities = sector.size;
+            event.attacks = attacks;
+            event.repairs = repairs;
+            event.destroyed = destroyed;
+            event.damage = damage;
+            event.commit();
+        }
+
+        private static boolean isTarget(Entity candidate, Fleet own)
+        {
+            return !candidate.isDestroyed() && !Objects.equals(candidate.getFleet(), own);
+        }
+    }
+
+
+    /**
+     * Resolves a range of battle groups, splitting it in two by weight until it is small enough
+     */
+    @SuppressWarnings("serial")     // Fork-join tasks are never serialized
+    private static final class GroupTask extends RecursiveTask<TurnResult>
+    {
+        private final List<BattleGroup> groups;
+        private final long[] weights;
+        private final int from;
+        private final int to;
+
+        GroupTask(List<BattleGroup> groups, long[] weights, int from, int to)
+        {
+            this.groups = groups;
+            this.weights = weights;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected TurnResult compute()
+        {
+            if (to - from == 1 || weights[to] - weights[from] <= GRAIN)
+            {
+                TurnResult result = TurnResult.EMPTY;
+                for (int i = from; i < to; i++)
+                {
+                    result = result.plus(groups.get(i).resolve());
+                }
+                return result;
+            }
+
+            // Split where half of the range's work has been done
+            long half = (weights[from] + weights[to]) / 2;
+            int mid = Arrays.binarySearch(weights, from + 1, to, half);
+            if (mid < 0) mid = -mid - 1;
+            mid = Math.max(from + 1, Math.min(mid, to - 1));
+
+            GroupTask left = new GroupTask(groups, weights, from, mid);
+            left.fork();
+            TurnResult right = new GroupTask(groups, weights, mid, to).compute();
+            return left.join().plus(right);
+        }
+    }
+}
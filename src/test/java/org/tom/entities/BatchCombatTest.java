@@ -0,0 +1,135 @@
+package org.tom.entities;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("BatchCombat Tests")
+class BatchCombatTest
+{
+    private static final Sector battleSector = new Sector(0, 0);
+    private static final Sector otherSector = new Sector(1, 0);
+
+
+    /**
+     * Two fleets built from the same seed into their own store, so that one can be attacked sequentially and the
+     * other in a batch and their columns compared
+     */
+    private static final class World
+    {
+        final EntityStore store = new EntityStore(64);
+        final Fleet attackers = new Fleet(new Player(1));
+        final Fleet defenders = new Fleet(new Player(2));
+        final Starship targetShip;
+        final Starbase targetBase;
+
+        World(long seed, int attackerCount)
+        {
+            SplittableRandom random = new SplittableRandom(seed);
+
+            // Attackers: a mix of damaged, destroyed, out-of-sector and docked repairing ships
+            Starbase home = new Starbase(battleSector, store);
+            attackers.addEntities(home);
+            for (int i = 0; i < attackerCount; i++)
+            {
+                Starship s = new Starship(random.nextInt(5) == 0 ? otherSector : battleSector, store);
+                attackers.addEntities(s);
+                s.setHealth(random.nextDouble(1, 100));
+                switch (random.nextInt(6))
+                {
+                    case 0 -> s.takeDamage(1000);
+                    case 1 ->
+                    {
+                        s.dockToStarbase(home);
+                        s.repair();
+                    }
+                    default -> {}
+                }
+            }
+
+            // Defenders: a lone ship and a base with docked support
+            targetShip = new Starship(battleSector, store);
+            targetBase = new Starbase(battleSector, store);
+            defenders.addEntities(targetShip, targetBase);
+            for (int i = 0; i < 4; i++)
+            {
+                Starship docked = new Starship(battleSector, store);
+                defenders.addEntities(docked);
+                docked.setHealth(random.nextDouble(1, 100));
+                docked.dockToStarbase(targetBase);
+            }
+        }
+
+        void assertSameState(World other)
+        {
+            int n = store.size();
+            assertEquals(n, other.store.size());
+            assertArrayEquals(Arrays.copyOf(store.health, n), Arrays.copyOf(other.store.health, n), "Health must match bit-for-bit");
+            assertArrayEquals(Arrays.copyOf(store.defence, n), Arrays.copyOf(other.store.defence, n), "Defence must match bit-for-bit");
+            assertArrayEquals(Arrays.copyOf(store.crew, n), Arrays.copyOf(other.store.crew, n), "Crew must match");
+            assertArrayEquals(Arrays.copyOf(store.flags, n), Arrays.copyOf(other.store.flags, n), "Flags must match");
+        }
+    }
+
+
+    @Test
+    @DisplayName("Batched attacks on a starship match the sequential path")
+    void attackStarship()
+    {
+        for (long seed = 0; seed < 20; seed++)
+        {
+            World sequential = new World(seed, 30);
+            World batched = new World(seed, 30);
+
+            sequential.attackers.attackWithAll(sequential.targetShip);
+            BattleReport report = batched.attackers.attackWithAllBatched(batched.targetShip);
+
+            batched.assertSameState(sequential);
+            assertEquals(100 - batched.targetShip.getHealth(), report.damage(), 1e-9);
+            assertEquals(10 - batched.targetShip.getCrew(), report.crewLost());
+        }
+    }
+
+
+    @Test
+    @DisplayName("Batched attacks on a starbase match the sequential path, including its destruction")
+    void attackStarbase()
+    {
+        for (long seed = 0; seed < 20; seed++)
+        {
+            World sequential = new World(seed, 200);
+            World batched = new World(seed, 200);
+
+            // Repeat so the base is destroyed part-way through a batch
+            for (int round = 0; round < 3; round++)
+            {
+                sequential.attackers.attackWithAll(sequential.targetBase);
+                batched.attackers.attackWithAllBatched(batched.targetBase);
+                batched.assertSameState(sequential);
+            }
+            assertTrue(batched.targetBase.isDestroyed());
+        }
+    }
+
+
+    @Test
+    @DisplayName("Attacking a target list matches attacking each target in turn")
+    void attackTargets()
+    {
+        World sequential = new World(7, 50);
+        World batched = new World(7, 50);
+
+        sequential.attackers.attackWithAll(sequential.targetShip);
+        sequential.attackers.attackWithAll(sequential.targetBase);
+        BattleReport report = batched.attackers.attackWithAllBatched(List.of(batched.targetShip, batched.targetBase));
+
+        batched.assertSameState(sequential);
+        assertTrue(report.attacks() > 0);
+        assertEquals(1, report.targetsDestroyed(), "The lone starship should not survive 50 attackers");
+    }
+}
@@ -0,0 +1,120 @@
+package org.tom.entities;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("BattleEstimator Tests")
+class BattleEstimatorTest
+{
+    public static final double delta = 1e-9;
+
+    private final EntityStore store = new EntityStore(64);
+    private final Sector sector = new Sector(2, 3);
+
+
+    /**
+     * Builds a fleet with a starbase and some starships in the battle sector, and one starship elsewhere
+     */
+    private Fleet fleet(int player, int ships)
+    {
+        Fleet fleet = new Fleet(new Player(player));
+        fleet.addEntities(new Starbase(sector, store), new Starship(new Sector(9, 9), store));
+        for (int i = 0; i < ships; i++)
+        {
+            fleet.addEntities(new Starship(sector, store));
+        }
+        return fleet;
+    }
+
+
+    @Test
+    @DisplayName("A much larger fleet almost always wins")
+    void overwhelming()
+    {
+        Fleet big = fleet(1, 20);
+        Fleet small = fleet(2, 1);
+
+        BattleEstimate estimate = new BattleEstimator(big, small, sector).estimate(500, 1);
+        assertEquals(500, estimate.simulations());
+        assertTrue(estimate.winProbability() > 0.95, "The larger fleet should win: " + estimate);
+        assertTrue(estimate.winLow() <= estimate.winProbability() && estimate.winProbability() <= estimate.winHigh(),
+                "The interval should contain the estimate: " + estimate);
+        assertEquals(1, estimate.expectedEnemyLosses(), 0.05, "The single defending ship should almost always be lost");
+
+        BattleEstimate reverse = new BattleEstimator(small, big, sector).estimate(500, 1);
+        assertTrue(reverse.winProbability() < 0.05, "The smaller fleet should lose: " + reverse);
+    }
+
+
+    @Test
+    @DisplayName("The real fleets are not changed")
+    void copiesState()
+    {
+        Fleet first = fleet(1, 5);
+        Fleet second = fleet(2, 5);
+        Starship damaged = second.getStarships().get(1);
+        damaged.takeDamage(50);
+        damaged.dockToStarbase(second.getStarbases().getFirst());
+        double health = damaged.getHealth();
+
+        new BattleEstimator(first, second, sector).estimate(200, 3);
+
+        assertEquals(health, damaged.getHealth(), delta);
+        assertTrue(damaged.getDocked());
+        assertEquals(0, first.getStats().getDockedStarships());
+        FleetStatsTest.assertMatches(first);
+        FleetStatsTest.assertMatches(second);
+    }
+
+
+    @Test
+    @DisplayName("The same seed gives the same estimate on any number of threads")
+    void deterministic()
+    {
+        Fleet first = fleet(1, 6);
+        Fleet second = fleet(2, 5);
+
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool four = new ForkJoinPool(4);
+        try
+        {
+            BattleEstimate a = new BattleEstimator(first, second, sector, single).estimate(300, 42);
+            BattleEstimate b = new BattleEstimator(first, second, sector, four).estimate(300, 42);
+            assertEquals(a, b);
+            assertNotEquals(a, new BattleEstimator(first, second, sector, four).estimate(300, 43),
+                    "A different seed should give a different estimate");
+        } finally
+        {
+            single.shutdown();
+            four.shutdown();
+        }
+    }
+
+
+    @Test
+    @DisplayName("Early stopping ends once the interval is narrow enough, or at the budget")
+    void earlyStopping()
+    {
+        Fleet first = fleet(1, 5);
+        Fleet second = fleet(2, 5);
+        BattleEstimator estimator = new BattleEstimator(first, second, sector);
+
+        BattleEstimate converged = estimator.estimateUntil(0.05, Duration.ofSeconds(30), 1_000_000, 7);
+        assertTrue(converged.converged(), "Should converge: " + converged);
+        assertTrue(converged.simulations() < 1_000_000, "Should stop before the maximum");
+        assertTrue(converged.winHigh() - converged.winLow() <= 0.1 + delta, "The interval should be within tolerance");
+
+        BattleEstimate capped = estimator.estimateUntil(0.0001, Duration.ofSeconds(30), 300, 7);
+        assertFalse(capped.converged(), "A tiny tolerance cannot be reached in 300 battles");
+        assertEquals(300, capped.simulations());
+
+        BattleEstimate rushed = estimator.estimateUntil(0.0001, Duration.ZERO, 1_000_000, 7);
+        assertFalse(rushed.converged());
+        assertTrue(rushed.simulations() >= 1, "At least one battle per chunk is simulated");
+    }
+}
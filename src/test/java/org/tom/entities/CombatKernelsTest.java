@@ -0,0 +1,153 @@
+package org.tom.entities;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@DisplayName("CombatKernels Tests")
+class CombatKernelsTest
+{
+    public static final double delta = 1e-9;
+    private static final int SHIPS = 1003;         // Not a multiple of any vector length, so the tail loop runs
+
+    private Starship[] ships;
+    private double[] health;
+    private int[] crew;
+    private double[] damage;
+
+
+    /**
+     * Builds ships with random health and crew, including destroyed, full-health and single-crew ships, and a
+     * random incoming hit for each. Some hits are chosen so the crew loss is exactly half a crew member.
+     */
+    @BeforeEach
+    void setShips()
+    {
+        SplittableRandom random = new SplittableRandom(5);
+        EntityStore store = new EntityStore(SHIPS);
+        ships = new Starship[SHIPS];
+        health = new double[SHIPS];
+        crew = new int[SHIPS];
+        damage = new double[SHIPS];
+
+        for (int i = 0; i < SHIPS; i++)
+        {
+            Starship ship = new Starship(new Sector(0, 0), store);
+            switch (i % 5)
+            {
+                case 0 -> ship.setHealth(random.nextDouble(0, 100));
+                case 1 -> ship.setHealth(random.nextInt(101));
+                case 2 -> ship.setHealth(i % 2 == 0 ? 0 : 100);
+                default -> ship.setHealth(random.nextDouble(1, 100));
+            }
+            ship.setCrew(i % 7 == 0 ? 1 : random.nextInt(1, 11));
+            ships[i] = ship;
+            health[i] = ship.getHealth();
+            crew[i] = ship.getCrew();
+
+            // Damage of 50 / crew loses exactly half a crew member, which Math.round rounds up
+            damage[i] = i % 3 == 0 ? 50.0 / crew[i] * (1 + 2 * random.nextInt(3)) : random.nextDouble(0, 60);
+        }
+    }
+
+
+    /**
+     * Checks every kernel's output against the per-ship methods
+     */
+    private void assertMatchesShips(double[] attack, double[] defence, double[] applied, int[] lost)
+    {
+        for (int i = 0; i < SHIPS; i++)
+        {
+            Starship ship = ships[i];
+            assertEquals(ship.getAttackStrength(), attack[i], "Attack of ship " + i);
+            assertEquals(ship.getDefenceStrength(), defence[i], "Defence of ship " + i);
+            assertEquals(Entity.appliedDamageFor(damage[i], ship.getDefenceStrength(), ship.getHealth()), applied[i],
+                    "Applied damage to ship " + i);
+            assertEquals(ship.calculateCrewLost(damage[i]), lost[i], "Crew lost by ship " + i);
+        }
+    }
+
+
+    @Test
+    @DisplayName("The scalar kernels match the per-ship methods")
+    void scalar()
+    {
+        double[] attack = new double[SHIPS];
+        double[] defence = new double[SHIPS];
+        double[] applied = new double[SHIPS];
+        int[] lost = new int[SHIPS];
+
+        CombatKernels.scalarAttack(health, attack, 0, SHIPS);
+        CombatKernels.scalarDefence(health, crew, defence, 0, SHIPS);
+        CombatKernels.scalarAppliedDamage(damage, defence, health, applied, 0, SHIPS);
+        CombatKernels.scalarCrewLost(damage, crew, lost, 0, SHIPS);
+
+        assertMatchesShips(attack, defence, applied, lost);
+    }
+
+
+    @Test
+    @DisplayName("The vector kernels match the per-ship methods exactly")
+    void vector()
+    {
+        assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(), "The Vector API is not available");
+
+        double[] attack = new double[SHIPS];
+        double[] defence = new double[SHIPS];
+        double[] applied = new double[SHIPS];
+        int[] lost = new int[SHIPS];
+
+        VectorKernels.attack(health, attack, SHIPS);
+        VectorKernels.defence(health, crew, defence, SHIPS);
+        VectorKernels.appliedDamage(damage, defence, health, applied, SHIPS);
+        VectorKernels.crewLost(damage, crew, lost, SHIPS);
+
+        assertMatchesShips(attack, defence, applied, lost);
+    }
+
+
+    @Test
+    @DisplayName("Applied damage matches the health a ship actually loses")
+    void takeDamage()
+    {
+        double[] defence = new double[SHIPS];
+        double[] applied = new double[SHIPS];
+        CombatKernels.defence(health, crew, defence, SHIPS);
+        CombatKernels.appliedDamage(damage, defence, health, applied, SHIPS);
+
+        for (int i = 0; i < SHIPS; i++)
+        {
+            if (ships[i].isDestroyed()) continue;
+            ships[i].takeDamage(damage[i]);
+            assertEquals(health[i] - applied[i], ships[i].getHealth(), delta, "Health of ship " + i);
+        }
+    }
+
+
+    @Test
+    @DisplayName("Only the first n elements are written")
+    void partial()
+    {
+        double[] attack = new double[SHIPS];
+        int[] lost = new int[SHIPS];
+        Arrays.fill(attack, -1);
+        Arrays.fill(lost, -1);
+
+        CombatKernels.attack(health, attack, 3);
+        CombatKernels.crewLost(damage, crew, lost, 3);
+
+        for (int i = 0; i < 3; i++)
+        {
+            assertEquals(ships[i].getAttackStrength(), attack[i]);
+            assertEquals(ships[i].calculateCrewLost(damage[i]), lost[i]);
+        }
+        assertEquals(-1, attack[3], "Elements past n should be untouched");
+        assertEquals(-1, lost[3], "Elements past n should be untouched");
+    }
+}
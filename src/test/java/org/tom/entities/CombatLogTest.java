@@ -0,0 +1,76 @@
+package org.tom.entities;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("CombatLog Tests")
+class CombatLogTest
+{
+    private static final Sector sector = new Sector(0, 0);
+
+
+    /**
+     * Puts the default mode back so other tests log every event
+     */
+    @AfterEach
+    void resetMode()
+    {
+        CombatLog.setMode(CombatLog.Mode.EACH, 1);
+    }
+
+
+    @Test
+    @DisplayName("Aggregated mode counts events instead of logging them and resets at the end of the turn")
+    void aggregated()
+    {
+        CombatLog.setMode(CombatLog.Mode.AGGREGATED, 1);
+        Fleet fleet1 = new Fleet(new Player(1));
+        Fleet fleet2 = new Fleet(new Player(2));
+        Starship attacker = new Starship(sector);
+        Starbase target = new Starbase(sector);
+        fleet1.addEntities(attacker);
+        fleet2.addEntities(target);
+
+        attacker.attack(target);
+        attacker.attack(target);
+        assertFalse(CombatLog.shouldLog(CombatLog.Event.MOVE), "No event should be logged on its own");
+        assertEquals(2, CombatLog.count(CombatLog.Event.ATTACK));
+        assertEquals(1, CombatLog.count(CombatLog.Event.MOVE));
+
+        CombatLog.endTurn();
+        assertEquals(0, CombatLog.count(CombatLog.Event.ATTACK), "Counts should start again after each turn");
+    }
+
+
+    @Test
+    @DisplayName("Sampled mode logs the first of every n events of each kind")
+    void sampled()
+    {
+        CombatLog.setMode(CombatLog.Mode.SAMPLED, 3);
+
+        boolean[] logged = new boolean[7];
+        for (int i = 0; i < logged.length; i++)
+        {
+            logged[i] = CombatLog.shouldLog(CombatLog.Event.ATTACK);
+        }
+        assertArrayEquals(new boolean[]{true, false, false, true, false, false, true}, logged);
+        assertTrue(CombatLog.shouldLog(CombatLog.Event.DOCK), "Each kind should be sampled separately");
+        assertThrows(IllegalArgumentException.class, () -> CombatLog.setMode(CombatLog.Mode.SAMPLED, 0));
+    }
+
+
+    @Test
+    @DisplayName("Entity labels follow the fleet they belong to")
+    void label()
+    {
+        Starship ship = new Starship(sector);
+        assertTrue(ship.toString().startsWith("{null} Starship#"));
+
+        new Fleet(new Player(7)).addEntities(ship);
+        assertTrue(ship.toString().startsWith("{Fleet#7} Starship#"), "The label should be rebuilt when the fleet changes");
+        assertSame(ship.toString(), ship.toString(), "The label should not be rebuilt on every call");
+    }
+}
@@ -0,0 +1,170 @@
+package org.tom.entities;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Concurrent Entity Tests")
+class ConcurrentEntityTest
+{
+    private static final Sector sector = new Sector(0, 0);
+    private static final int THREADS = 8;
+    public static final double delta = 1e-9;
+
+
+    /**
+     * Runs <code>task</code> on every thread at once and waits for all of them
+     */
+    private static void runTogether(Runnable task) throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++)
+        {
+            futures.add(executor.submit(() ->
+            {
+                start.await();
+                task.run();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures)
+        {
+            f.get();
+        }
+        executor.shutdown();
+    }
+
+
+    @Test
+    @DisplayName("No damage is lost when many threads hit the same starbase")
+    void takeDamage() throws Exception
+    {
+        Starbase base = new Starbase(sector, new EntityStore(16, true));
+
+        // Damage below the defence strength always applies the 5-damage floor
+        runTogether(() ->
+        {
+            for (int i = 0; i < 10; i++)
+            {
+                base.takeDamage(1);
+            }
+        });
+
+        assertEquals(500 - THREADS * 10 * 5, base.getHealth(), delta, "Every hit should apply exactly 5 damage");
+        assertEquals(Starbase.hullDefenceFor(base.getHealth()), base.getDefenceStrength(), delta,
+                "Defence column should match the final health");
+    }
+
+
+    @Test
+    @DisplayName("Crew and health stay consistent under concurrent hits on a starship")
+    void starshipDamage() throws Exception
+    {
+        Starship ship = new Starship(sector, new EntityStore(16, true));
+
+        runTogether(() ->
+        {
+            for (int i = 0; i < 2; i++)
+            {
+                ship.takeDamage(1);
+            }
+        });
+
+        assertEquals(100 - THREADS * 2 * 5, ship.getHealth(), delta);
+        assertTrue(ship.getCrew() >= 1 && ship.getCrew() < 10, "Crew should have been lost but never below 1");
+        assertEquals(Starship.defenceFor(ship.getHealth(), ship.getCrew()), ship.getDefenceStrength(), delta);
+    }
+
+
+    @Test
+    @DisplayName("An entity is marked destroyed exactly once")
+    void destroyOnce() throws Exception
+    {
+        EntityStore store = new EntityStore(16, true);
+        Starbase base = new Starbase(sector, store);
+        AtomicInteger winners = new AtomicInteger();
+
+        runTogether(() ->
+        {
+            if (store.setFlagOnce(base.slot, EntityStore.DESTROYED)) winners.incrementAndGet();
+        });
+
+        assertEquals(1, winners.get(), "Only one thread should set the destroyed flag");
+        assertTrue(base.isDestroyed());
+    }
+
+
+    @Test
+    @DisplayName("Concurrent docking and fleet adds do not lose or duplicate ships")
+    void dockAndAdd() throws Exception
+    {
+        EntityStore store = new EntityStore(1024, true);
+        Fleet fleet = new Fleet(new Player(1), true);
+        Starbase base = new Starbase(sector, store);
+        fleet.addEntities(base);
+
+        List<Starship> ships = new ArrayList<>();
+        for (int i = 0; i < THREADS * 20; i++)
+        {
+            ships.add(new Starship(sector, store));
+        }
+        AtomicInteger next = new AtomicInteger();
+
+        runTogether(() ->
+        {
+            for (int i = 0; i < 20; i++)
+            {
+                Starship s = ships.get(next.getAndIncrement());
+                fleet.addEntities(s);
+                s.dockToStarbase(base);
+                base.getDefenceStrength();      // Reads the docked list while others change it
+            }
+        });
+
+        assertEquals(ships.size(), fleet.getStarships().size());
+        assertEquals(ships.size(), base.getDockedStarships().size());
+        assertTrue(ships.stream().allMatch(Starship::getDocked));
+    }
+
+
+    @Test
+    @DisplayName("Fleet totals stay exact when many threads damage and repair its ships")
+    void fleetStats() throws Exception
+    {
+        EntityStore store = new EntityStore(64, true);
+        Fleet fleet = new Fleet(new Player(1), true);
+        Starbase base = new Starbase(sector, store);
+        fleet.addEntities(base);
+        for (int i = 0; i < 16; i++)
+        {
+            Starship ship = new Starship(sector, store);
+            fleet.addEntities(ship);
+            if (i % 2 == 0) ship.dockToStarbase(base);
+        }
+
+        runTogether(() ->
+        {
+            for (int i = 0; i < 200; i++)
+            {
+                Starship ship = fleet.getStarships().get(i % 16);
+                ship.takeDamage(12);
+                ship.repair();
+                if (i % 50 == 0) base.takeDamage(40);
+            }
+        });
+
+        FleetStatsTest.assertMatches(fleet);
+    }
+}
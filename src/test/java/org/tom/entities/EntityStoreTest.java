@@ -0,0 +1,117 @@
+package org.tom.entities;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("EntityStore Tests")
+class EntityStoreTest
+{
+    private EntityStore store;
+    private static final Sector sector = new Sector(0, 0);
+    public static final double delta = 1e-9;
+
+
+    /**
+     * Creates a small store so that the tests also exercise column growth
+     */
+    @BeforeEach
+    void setStore()
+    {
+        store = new EntityStore(1);
+    }
+
+
+    @Test
+    @DisplayName("Entities are views over their slot in the store")
+    void views()
+    {
+        Starship ship = new Starship(sector, store);
+        Starbase base = new Starbase(new Sector(4, 2), store);
+
+        assertEquals(2, store.size(), "Each entity should allocate one slot");
+        assertEquals(new Sector(4, 2), base.getSector(), "Position should round-trip through the columns");
+
+        ship.setHealth(40);
+        ship.setCrew(5);
+        assertEquals(40, store.health[ship.slot], delta);
+        assertEquals(5, store.crew[ship.slot]);
+        assertEquals(ship.getDefenceStrength(), store.defence[ship.slot], delta,
+                "Defence column should be refreshed when health or crew change");
+    }
+
+
+    @Test
+    @DisplayName("Sweeps read whole columns")
+    void sweeps()
+    {
+        Starship ship = new Starship(sector, store);
+        new Starbase(sector, store);
+        ship.takeDamage(1000);
+
+        assertEquals(500, store.totalHealth(), delta, "Only the starbase has health left");
+        // The wreck keeps its last crew member: 10 * (0 + 1) / 110
+        assertEquals(20 + 10.0 / 110, store.totalDefence(), delta, "Wreck defence should come from its crew only");
+        assertEquals(1, store.liveCount());
+
+        double[] copy = new double[store.size()];
+        assertEquals(2, store.copyHealth(copy));
+        assertArrayEquals(new double[]{0, 500}, copy, delta);
+    }
+
+
+    @Test
+    @DisplayName("Flags are independent bits")
+    void flags()
+    {
+        Fleet fleet = new Fleet(new Player(1));
+        Starship ship = new Starship(sector, store);
+        Starbase base = new Starbase(sector, store);
+        fleet.addEntities(ship, base);
+
+        ship.setHealth(40);
+        ship.dockToStarbase(base);
+        ship.repair();
+        assertTrue(ship.getDocked());
+        assertTrue(ship.isRepairing());
+        assertFalse(ship.isDestroyed());
+
+        ship.repair();
+        ship.repair();
+        assertEquals(100, ship.getHealth(), delta);
+        assertFalse(ship.isRepairing(), "Repairing is cleared once fully repaired");
+        assertTrue(ship.getDocked());
+
+        ship.undockFromStarbase(base);
+        assertFalse(ship.getDocked());
+        assertFalse(ship.isRepairing());
+    }
+
+
+    @Test
+    @DisplayName("The shared store reuses the slots of collected entities")
+    void sharedReuse() throws InterruptedException
+    {
+        EntityStore shared = EntityStore.shared();
+        int before = shared.size();
+        int created = 0;
+        for (int round = 0; round < 20; round++)
+        {
+            for (int i = 0; i < 10_000; i++)
+            {
+                new Starship(sector).setHealth(5);
+                created++;
+            }
+            System.gc();
+            Thread.sleep(20);       // Gives the cleaner thread time to free the slots
+        }
+
+        assertTrue(shared.size() - before < created, "Collected entities should give their slots back");
+        Starship fresh = new Starship(sector);
+        assertEquals(100, fresh.getHealth(), delta, "A reused slot starts from a new entity's state");
+        assertFalse(fresh.isDestroyed());
+        assertNull(fresh.getFleet());
+    }
+}
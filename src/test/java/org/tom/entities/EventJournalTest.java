@@ -0,0 +1,205 @@
+package org.tom.entities;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("EventJournal Tests")
+class EventJournalTest
+{
+    @TempDir
+    Path dir;
+
+
+    /**
+     * Builds two fleets in a store that journals to <code>journal</code>
+     */
+    private static List<Fleet> buildWorld(EventJournal journal)
+    {
+        EntityStore store = new EntityStore(64);
+        store.setJournal(journal);
+        return TestWorlds.twoFleets(store, 1, 20, false);
+    }
+
+
+    /**
+     * Plays a few rounds of random moves, docks, undocks, repairs and attacks
+     */
+    private static void play(List<Fleet> fleets, long seed)
+    {
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int round = 0; round < 30; round++)
+        {
+            Fleet fleet = fleets.get(round % 2);
+            Fleet enemy = fleets.get(1 - round % 2);
+            for (Starship ship : fleet.getStarships())
+            {
+                switch (random.nextInt(6))
+                {
+                    case 0 -> ship.setSector(new Sector(random.nextInt(2), 0));
+                    case 1 -> ship.dockToStarbase(fleet.getStarbaseAt(0).orElseThrow());
+                    case 2 -> ship.undockFromStarbase(fleet.getStarbaseAt(0).orElseThrow());
+                    case 3 -> ship.repair();
+                    default ->
+                    {
+                        List<Starship> targets = enemy.getStarships();
+                        ship.attack(targets.get(random.nextInt(targets.size())));
+                        ship.attack(enemy.getStarbaseAt(0).orElseThrow());
+                    }
+                }
+            }
+        }
+    }
+
+
+    @Test
+    @DisplayName("Replaying the journal rebuilds the same world as a snapshot")
+    void replay() throws IOException
+    {
+        Path journalDir = dir.resolve("journal");
+        EventJournal journal = new EventJournal(journalDir, 64);
+        List<Fleet> world = buildWorld(journal);
+        play(world, 3);
+        journal.close();
+
+        assertTrue(journal.size() > 64, "The test should write more than one segment");
+        assertTrue(Files.exists(EventJournal.segmentPath(journalDir, 1)), "The journal should have rolled over");
+
+        Path snapshot = dir.resolve("world.snap");
+        Snapshot.write(snapshot, world);
+
+        List<Fleet> replayed = JournalReplayer.replay(journalDir);
+        assertEquals(List.of(), JournalReplayer.verify(replayed, snapshot));
+    }
+
+
+    @Test
+    @DisplayName("Flushing between turns releases full segments and keeps the journal whole")
+    void flush() throws IOException
+    {
+        Path journalDir = dir.resolve("journal");
+        EventJournal journal = new EventJournal(journalDir, 64);
+        List<Fleet> world = buildWorld(journal);
+        for (long seed = 0; seed < 3; seed++)
+        {
+            play(world, seed);
+            journal.flush();
+            assertTrue(journal.mappedSegments() <= 2, "Only the current and next segments should stay mapped");
+        }
+        journal.close();
+        assertTrue(journal.size() > 3 * 64, "The test should write several segments");
+
+        Path snapshot = dir.resolve("world.snap");
+        Snapshot.write(snapshot, world);
+        assertEquals(List.of(), JournalReplayer.verify(JournalReplayer.replay(journalDir), snapshot));
+    }
+
+
+    @Test
+    @DisplayName("A journal started part-way through replays on top of a snapshot")
+    void replayFromSnapshot() throws IOException
+    {
+        List<Fleet> world = buildWorld(null);
+        play(world, 5);
+
+        Path start = dir.resolve("start.snap");
+        Snapshot.write(start, world);
+        Path journalDir = dir.resolve("journal");
+        EventJournal journal = new EventJournal(journalDir, 1024);
+        world.getFirst().getStarships().getFirst().getStore().setJournal(journal);
+        play(world, 6);
+        journal.close();
+
+        Path end = dir.resolve("end.snap");
+        Snapshot.write(end, world);
+
+        List<Fleet> replayed = JournalReplayer.replay(journalDir, Snapshot.read(start), new EntityStore(16));
+        assertEquals(List.of(), JournalReplayer.verify(replayed, end));
+        assertFalse(JournalReplayer.verify(Snapshot.read(start), end).isEmpty(), "The journal should have changed the world");
+    }
+
+
+    @Test
+    @DisplayName("Verifying against a snapshot leaves the ID counter alone")
+    void verifyKeepsIds() throws IOException
+    {
+        List<Fleet> world = buildWorld(null);
+        Path snapshot = dir.resolve("world.snap");
+        Snapshot.write(snapshot, world);
+
+        // A snapshot saved by a run that handed out many more IDs
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE))
+        {
+            channel.write(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(0, Long.MAX_VALUE / 2), 8);
+        }
+
+        long next = Entity.peekNextId();
+        assertEquals(List.of(), JournalReplayer.verify(world, snapshot));
+        assertEquals(next, Entity.peekNextId());
+    }
+
+
+    @Test
+    @DisplayName("Entities purged from their fleets are purged by the replay too")
+    void replayPurged() throws IOException
+    {
+        Path journalDir = dir.resolve("journal");
+        EventJournal journal = new EventJournal(journalDir, 1024);
+        List<Fleet> world = buildWorld(journal);
+        play(world, 3);
+        int purged = 0;
+        for (Fleet fleet : world)
+        {
+            purged += fleet.purgeDestroyed();
+        }
+        journal.close();
+        assertTrue(purged > 0, "The test should destroy some entities");
+
+        Path snapshot = dir.resolve("world.snap");
+        Snapshot.write(snapshot, world);
+        assertEquals(List.of(), JournalReplayer.verify(JournalReplayer.replay(journalDir), snapshot));
+    }
+
+
+    @Test
+    @DisplayName("Entities moved to another fleet are moved by the replay too")
+    void replayTransfer() throws IOException
+    {
+        Path journalDir = dir.resolve("journal");
+        EventJournal journal = new EventJournal(journalDir, 1024);
+        List<Fleet> world = buildWorld(journal);
+        play(world, 4);
+        List<Starship> moving = List.copyOf(world.get(0).getStarships().subList(0, 5));
+        world.get(0).removeAll(moving);
+        world.get(1).addAll(moving);
+        play(world, 5);
+        journal.close();
+
+        Path snapshot = dir.resolve("world.snap");
+        Snapshot.write(snapshot, world);
+        List<Fleet> replayed = JournalReplayer.replay(journalDir);
+        assertEquals(List.of(), JournalReplayer.verify(replayed, snapshot));
+        assertEquals(world.get(1).getStarships().size(), replayed.get(1).getStarships().size());
+    }
+
+
+    @Test
+    @DisplayName("Opening a journal over an existing one fails")
+    void existing() throws IOException
+    {
+        new EventJournal(dir, 16).close();
+        assertThrows(IOException.class, () -> new EventJournal(dir, 16));
+    }
+}
@@ -0,0 +1,157 @@
+package org.tom.entities;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("FleetStats Tests")
+class FleetStatsTest
+{
+    public static final double delta = 1e-6;      // Summed health may differ from a fresh sum by rounding
+
+    @TempDir
+    Path dir;
+
+
+    /**
+     * Checks every total of a fleet against a sum over its entities
+     */
+    static void assertMatches(Fleet fleet)
+    {
+        FleetStats stats = fleet.getStats();
+        double attack = 0;
+        double shipHealth = 0;
+        double baseHealth = 0;
+        long crew = 0;
+        long liveShips = 0;
+        long liveBases = 0;
+        long docked = 0;
+        for (Starship ship : fleet.getStarships())
+        {
+            attack += ship.getAttackStrength();
+            shipHealth += ship.getHealth();
+            crew += ship.getCrew();
+            if (!ship.isDestroyed()) liveShips++;
+            if (ship.getDocked()) docked++;
+        }
+        for (Starbase base : fleet.getStarbases())
+        {
+            baseHealth += base.getHealth();
+            if (!base.isDestroyed()) liveBases++;
+        }
+
+        assertEquals(fleet.getStarships().size(), stats.getStarships(), "Starship count of " + fleet);
+        assertEquals(fleet.getStarbases().size(), stats.getStarbases(), "Starbase count of " + fleet);
+        assertEquals(attack, stats.getTotalAttackStrength(), delta, "Attack strength of " + fleet);
+        assertEquals(shipHealth, stats.getTotalStarshipHealth(), delta, "Starship health of " + fleet);
+        assertEquals(baseHealth, stats.getTotalStarbaseHealth(), delta, "Starbase health of " + fleet);
+        assertEquals(crew, stats.getTotalCrew(), "Crew of " + fleet);
+        assertEquals(liveShips, stats.getLiveStarships(), "Live starships of " + fleet);
+        assertEquals(liveBases, stats.getLiveStarbases(), "Live starbases of " + fleet);
+        assertEquals(docked, stats.getDockedStarships(), "Docked starships of " + fleet);
+        assertEquals(liveBases == 0, stats.allStarbasesDestroyed(), "Starbases destroyed of " + fleet);
+    }
+
+
+    /**
+     * Plays random attacks, docking, repairs and crew changes between two fleets
+     */
+    private static void playRandomTurns(List<Fleet> fleets, int turns)
+    {
+        SplittableRandom random = new SplittableRandom(11);
+        for (int turn = 0; turn < turns; turn++)
+        {
+            int side = random.nextInt(2);
+            Fleet own = fleets.get(side);
+            Fleet enemy = fleets.get(1 - side);
+            Starship ship = own.getStarships().get(random.nextInt(own.getStarships().size()));
+            Starbase base = own.getStarbases().get(random.nextInt(own.getStarbases().size()));
+
+            switch (random.nextInt(7))
+            {
+                case 0, 1 -> ship.attack(enemy.getStarships().get(random.nextInt(enemy.getStarships().size())));
+                case 2 -> ship.attack(enemy.getStarbases().get(random.nextInt(enemy.getStarbases().size())));
+                case 3 -> ship.dockToStarbase(base);
+                case 4 -> ship.repair();
+                case 5 -> ship.undockFromStarbase(base);
+                default -> ship.setCrew(random.nextInt(0, 12));
+            }
+        }
+    }
+
+
+    @Test
+    @DisplayName("New fleets count every entity at full health")
+    void added()
+    {
+        Fleet fleet = TestWorlds.twoFleets(new EntityStore(128), 2, 40, true).getFirst();
+        FleetStats stats = fleet.getStats();
+
+        assertEquals(40, stats.getLiveStarships());
+        assertEquals(2, stats.getLiveStarbases());
+        assertEquals(40 * 30, stats.getTotalAttackStrength(), delta, "Every ship attacks at full strength");
+        assertEquals(40 * 10, stats.getTotalCrew());
+        assertFalse(stats.allStarbasesDestroyed());
+        assertTrue(new Fleet(new Player(9)).getStats().allStarbasesDestroyed(), "A fleet without starbases has none left");
+    }
+
+
+    @Test
+    @DisplayName("Totals match a full count after random combat")
+    void randomCombat()
+    {
+        List<Fleet> fleets = TestWorlds.twoFleets(new EntityStore(128), 2, 40, true);
+        for (int round = 0; round < 10; round++)
+        {
+            playRandomTurns(fleets, 300);
+            fleets.forEach(FleetStatsTest::assertMatches);
+        }
+        fleets.getFirst().attackWithAllBatched(fleets.get(1).getStarbases());
+        fleets.forEach(FleetStatsTest::assertMatches);
+    }
+
+
+    @Test
+    @DisplayName("Destroying every starbase is seen at once")
+    void starbasesDestroyed()
+    {
+        List<Fleet> fleets = TestWorlds.twoFleets(new EntityStore(128), 2, 40, true);
+        Fleet enemy = fleets.get(1);
+
+        enemy.getStarbases().getFirst().setHealth(0);
+        assertEquals(1, enemy.getStats().getLiveStarbases());
+        assertFalse(enemy.getStats().allStarbasesDestroyed(), "One starbase is left");
+
+        enemy.getStarbases().get(1).setHealth(0);
+        enemy.getStarbases().get(1).setHealth(0);     // Destroying it again changes nothing
+        assertTrue(enemy.getStats().allStarbasesDestroyed());
+        assertMatches(enemy);
+    }
+
+
+    @Test
+    @DisplayName("Restored fleets recount their totals")
+    void restored() throws IOException
+    {
+        List<Fleet> fleets = TestWorlds.twoFleets(new EntityStore(128), 2, 40, true);
+        playRandomTurns(fleets, 1000);
+
+        Path file = dir.resolve("world.snap");
+        Snapshot.write(file, fleets);
+        List<Fleet> restored = Snapshot.read(file);
+
+        for (int f = 0; f < fleets.size(); f++)
+        {
+            assertMatches(restored.get(f));
+            assertEquals(fleets.get(f).getStats().getTotalAttackStrength(),
+                    restored.get(f).getStats().getTotalAttackStrength(), delta, "Restored attack strength");
+        }
+    }
+}
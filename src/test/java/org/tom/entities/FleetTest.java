@@ -0,0 +1,198 @@
+package org.tom.entities;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Fleet Tests")
+class FleetTest
+{
+    private static final Sector sector = new Sector(0, 0);
+
+
+    /**
+     * Checks the running totals of a fleet against a fresh count of its entities
+     */
+    private static void assertStatsMatch(Fleet fleet)
+    {
+        FleetStats expected = new FleetStats();
+        expected.recount(fleet.getStarbases(), fleet.getStarships());
+        assertEquals(expected.toString(), fleet.getStats().toString());
+    }
+
+
+    @Test
+    @DisplayName("Entities added in bulk join the fleet in order")
+    void addAll()
+    {
+        Fleet fleet = new Fleet(new Player(1));
+        SectorIndex index = new SectorIndex();
+        index.track(fleet);
+
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+        {
+            entities.add(i % 10 == 0 ? new Starbase(sector) : new Starship(new Sector(i, 0)));
+        }
+        fleet.ensureCapacity(10, 90);
+        fleet.addAll(entities);
+
+        assertEquals(10, fleet.getStarbases().size());
+        assertEquals(90, fleet.getStarships().size());
+        assertSame(entities.get(1), fleet.getStarshipAt(0).orElseThrow());
+        assertTrue(entities.stream().allMatch(fleet::contains));
+        assertEquals(10, index.entitiesIn(sector).size());
+        assertStatsMatch(fleet);
+
+        Fleet concurrent = new Fleet(new Player(2), true);
+        concurrent.addAll(List.of(new Starship(sector), new Starbase(sector)));
+        assertEquals(1, concurrent.getStarships().size());
+        assertEquals(1, concurrent.getStarbases().size());
+    }
+
+
+    @Test
+    @DisplayName("Purging removes destroyed entities from the fleet and the docked lists")
+    void purge()
+    {
+        Fleet fleet = new Fleet(new Player(1));
+        Starbase base = new Starbase(sector);
+        Starship[] ships = new Starship[10];
+        for (int i = 0; i < ships.length; i++)
+        {
+            ships[i] = new Starship(sector);
+        }
+        fleet.addEntities(base);
+        fleet.addAll(List.of(ships));
+        SectorIndex index = new SectorIndex();
+        index.track(fleet);
+        for (int i = 0; i < 4; i++)
+        {
+            ships[i].dockToStarbase(base);
+        }
+        ships[1].setHealth(0);
+        ships[5].setHealth(0);
+        ships[9].setHealth(0);
+
+        assertEquals(3, fleet.purgeDestroyed());
+        assertEquals(List.of(ships[0], ships[2], ships[3], ships[4], ships[6], ships[7], ships[8]),
+                fleet.getStarships(), "Survivors keep their order");
+        assertEquals(3, base.getDockedStarships().size());
+        assertFalse(base.getDockedStarships().contains(ships[1]));
+        assertEquals(8, index.entitiesIn(sector).size());
+        assertFalse(fleet.contains(ships[5]));
+        assertStatsMatch(fleet);
+        assertEquals(3, fleet.getStats().getDockedStarships());
+
+        Graveyard graveyard = fleet.getGraveyard();
+        assertEquals(3, graveyard.getStarships());
+        assertEquals(0, graveyard.getStarbases());
+        assertArrayEquals(new long[]{ships[1].getId(), ships[5].getId(), ships[9].getId()},
+                graveyard.ids().toArray());
+        assertEquals(0, fleet.purgeDestroyed(), "Nothing is left to purge");
+    }
+
+
+    @Test
+    @DisplayName("A destroyed starbase releases its docked starships when purged")
+    void purgeStarbase()
+    {
+        Fleet fleet = new Fleet(new Player(1));
+        Starbase base = new Starbase(sector);
+        Starship ship = new Starship(sector);
+        fleet.addEntities(base, ship);
+        ship.dockToStarbase(base);
+        base.setHealth(0);
+
+        assertEquals(1, fleet.purgeDestroyed());
+        assertFalse(ship.getDocked());
+        assertTrue(base.getDockedStarships().isEmpty());
+        assertEquals(1, fleet.getGraveyard().getStarbases());
+        assertStatsMatch(fleet);
+    }
+
+
+    @Test
+    @DisplayName("Live entities removed in bulk leave the fleet undocked")
+    void removeAll()
+    {
+        Fleet fleet = new Fleet(new Player(1));
+        Fleet other = new Fleet(new Player(2));
+        Starbase base = new Starbase(sector);
+        Starship docked = new Starship(sector);
+        Starship free = new Starship(sector);
+        Starship stranger = new Starship(sector);
+        fleet.addEntities(base, docked, free);
+        other.addEntities(stranger);
+        docked.dockToStarbase(base);
+
+        assertEquals(1, fleet.removeAll(List.of(docked, stranger)));
+        assertEquals(List.of(free), fleet.getStarships());
+        assertFalse(docked.getDocked());
+        assertNull(docked.getFleet());
+        assertTrue(base.getDockedStarships().isEmpty());
+        assertSame(other, stranger.getFleet());
+        assertEquals(0, fleet.getGraveyard().size(), "Only destroyed entities are buried");
+        assertStatsMatch(fleet);
+
+        other.addEntities(docked);
+        assertSame(other, docked.getFleet());
+    }
+
+
+    @Test
+    @DisplayName("Entities in a fleet cannot join another until removed")
+    void joinTwice()
+    {
+        Fleet fleet = new Fleet(new Player(1));
+        Fleet other = new Fleet(new Player(2));
+        Starship ship = new Starship(sector);
+        Starship spare = new Starship(sector);
+        fleet.addEntities(ship);
+
+        assertThrows(IllegalArgumentException.class, () -> other.addEntities(spare, ship));
+        assertThrows(IllegalArgumentException.class, () -> other.addAll(List.of(spare, ship)));
+        assertThrows(IllegalArgumentException.class, () -> fleet.addEntities(ship), "Not even to the same fleet");
+        assertThrows(IllegalArgumentException.class, () -> other.addEntities(spare, spare), "Nor twice in one batch");
+        assertThrows(IllegalArgumentException.class, () -> other.addAll(List.of(spare, spare)));
+        assertTrue(other.getStarships().isEmpty(), "No entity is added when one is rejected");
+        assertNull(spare.getFleet());
+        assertSame(fleet, ship.getFleet());
+        assertEquals(List.of(ship), fleet.getStarships());
+        assertStatsMatch(fleet);
+
+        fleet.removeAll(List.of(ship));
+        other.addEntities(ship);
+        assertSame(other, ship.getFleet());
+        assertTrue(fleet.getStarships().isEmpty());
+        assertStatsMatch(fleet);
+        assertStatsMatch(other);
+    }
+
+
+    @Test
+    @DisplayName("Fleets purge themselves once enough of them is destroyed")
+    void threshold()
+    {
+        Fleet fleet = new Fleet(new Player(1));
+        Starship[] ships = new Starship[4];
+        for (int i = 0; i < ships.length; i++)
+        {
+            ships[i] = new Starship(sector);
+        }
+        fleet.addAll(List.of(ships));
+
+        ships[0].setHealth(0);
+        assertEquals(0, fleet.purgeIfNeeded(), "Purging is off by default");
+        fleet.setPurgeThreshold(0.5);
+        assertEquals(0, fleet.purgeIfNeeded());
+        ships[1].setHealth(0);
+        assertEquals(2, fleet.purgeIfNeeded());
+        assertEquals(2, fleet.getStarships().size());
+        assertThrows(IllegalArgumentException.class, () -> fleet.setPurgeThreshold(1.5));
+    }
+}
@@ -0,0 +1,154 @@
+package org.tom.entities;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Metrics Tests")
+class MetricsTest
+{
+    private static final Sector sector = new Sector(0, 0);
+    private Fleet fleet1;
+    private Fleet fleet2;
+
+
+    @BeforeEach
+    void setFleets()
+    {
+        Metrics.reset();
+        fleet1 = new Fleet(new Player(1));
+        fleet2 = new Fleet(new Player(2));
+    }
+
+
+    @AfterEach
+    void stopTiming()
+    {
+        Metrics.setTiming(false);
+        Metrics.reset();
+    }
+
+
+    @Test
+    @DisplayName("Attacks are counted by outcome")
+    void attacks()
+    {
+        Starship attacker = new Starship(sector);
+        Starship friend = new Starship(sector);
+        Starship enemy = new Starship(sector);
+        Starship distant = new Starship(new Sector(5, 5));
+        fleet1.addEntities(attacker, friend);
+        fleet2.addEntities(enemy, distant);
+
+        attacker.attack(enemy);
+        attacker.attack(enemy);
+        attacker.attack(friend);
+        attacker.attack(distant);
+        enemy.takeDamage(1000);
+        enemy.attack(attacker);
+
+        assertEquals(2, Metrics.count(Metrics.Operation.ATTACK, Metrics.Outcome.APPLIED));
+        assertEquals(1, Metrics.count(Metrics.Operation.ATTACK, Metrics.Outcome.SAME_FLEET));
+        assertEquals(1, Metrics.count(Metrics.Operation.ATTACK, Metrics.Outcome.WRONG_SECTOR));
+        assertEquals(1, Metrics.count(Metrics.Operation.ATTACK, Metrics.Outcome.DESTROYED));
+        assertEquals(5, Metrics.attempts(Metrics.Operation.ATTACK));
+
+        fleet1.attackWithAllBatched(distant);
+        assertEquals(2, Metrics.count(Metrics.Operation.ATTACK, Metrics.Outcome.APPLIED),
+                "Batches count only the attacks applied");
+        fleet2.getStarships().get(1).setSector(sector);
+        fleet1.attackWithAllBatched(distant);
+        assertEquals(4, Metrics.count(Metrics.Operation.ATTACK, Metrics.Outcome.APPLIED));
+    }
+
+
+    @Test
+    @DisplayName("Every docking rejection has its own reason")
+    void docking()
+    {
+        Starbase base = new Starbase(sector);
+        Starbase enemyBase = new Starbase(sector);
+        Starship ship = new Starship(sector);
+        Starship other = new Starship(sector);
+        fleet1.addEntities(base, ship, other);
+        fleet2.addEntities(enemyBase);
+
+        ship.dockToStarbase(base);
+        assertFalse(base.dockStarship(ship));
+        enemyBase.dockStarship(other);
+        ship.setSector(new Sector(1, 1));
+        base.undockStarship(other);
+        other.takeDamage(1000);
+        base.dockStarship(other);
+
+        assertEquals(1, Metrics.count(Metrics.Operation.DOCK, Metrics.Outcome.APPLIED));
+        assertEquals(1, Metrics.count(Metrics.Operation.DOCK, Metrics.Outcome.ALREADY_DOCKED));
+        assertEquals(1, Metrics.count(Metrics.Operation.DOCK, Metrics.Outcome.OTHER_FLEET));
+        assertEquals(1, Metrics.count(Metrics.Operation.DOCK, Metrics.Outcome.SHIP_DESTROYED));
+        assertEquals(1, Metrics.count(Metrics.Operation.MOVE, Metrics.Outcome.DOCKED));
+        assertEquals(1, Metrics.count(Metrics.Operation.UNDOCK, Metrics.Outcome.NOT_DOCKED));
+        assertEquals(6, Metrics.counts().size(), "Only non-zero counts are listed");
+        assertTrue(Metrics.dump().contains("DOCK.OTHER_FLEET 1\n"));
+    }
+
+
+    @Test
+    @DisplayName("Durations are recorded only while timing is on")
+    void timing()
+    {
+        Starship mover = new Starship(sector);
+        fleet1.addEntities(mover);
+
+        mover.setSector(new Sector(1, 1));
+        assertTrue(Metrics.latencies().isEmpty());
+
+        Metrics.setTiming(true);
+        for (int i = 0; i < 100; i++)
+        {
+            mover.setSector(new Sector(i, i));
+        }
+        assertTrue(Metrics.latencies().containsKey("MOVE"));
+        assertTrue(Metrics.percentile(Metrics.Operation.MOVE, 0.99) > 0);
+        assertEquals(101, Metrics.count(Metrics.Operation.MOVE, Metrics.Outcome.APPLIED));
+    }
+
+
+    @Test
+    @DisplayName("Simulated entities are not counted")
+    void quiet()
+    {
+        SkirmishArena arena = new SkirmishArena(4);
+        Fleet a = arena.fleet(1);
+        Fleet b = arena.fleet(2);
+        Starship attacker = arena.starship(sector);
+        Starship target = arena.starship(sector);
+        a.addEntities(attacker);
+        b.addEntities(target);
+
+        attacker.attack(target);
+        assertEquals(0, Metrics.attempts(Metrics.Operation.ATTACK));
+    }
+
+
+    @Test
+    @DisplayName("Metrics are readable through JMX")
+    void jmx() throws Exception
+    {
+        Starship ship = new Starship(sector);
+        fleet1.addEntities(ship);
+        ship.setSector(new Sector(2, 2));
+
+        Metrics.registerMBean();
+        Metrics.registerMBean();        // A second registration is ignored
+        var server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        assertEquals(Boolean.FALSE, server.getAttribute(name, "Timing"));
+        assertTrue(((String) server.invoke(name, "dump", null, null)).contains("MOVE.APPLIED 1"));
+    }
+}
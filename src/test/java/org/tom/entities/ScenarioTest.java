@@ -0,0 +1,156 @@
+package org.tom.entities;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Scenario Tests")
+class ScenarioTest
+{
+    @TempDir
+    Path dir;
+
+
+    @Test
+    @DisplayName("A text scenario creates its fleets, entities and docks")
+    void text() throws IOException
+    {
+        Path file = dir.resolve("small.txt");
+        Files.writeString(file, """
+                # Two players
+                entities 7
+
+                fleet 1
+                starbase 0 0
+                starbase 4 4 2          # Two bases in one sector
+                starship 0 0 2 dock 0
+                starship 1 1
+                fleet 2\r
+                \tstarbase 4 4\r
+                starship 4 4 dock 0
+                """);
+
+        List<Fleet> fleets = Scenario.load(file);
+        assertEquals(2, fleets.size());
+
+        Fleet fleet1 = fleets.get(0);
+        assertEquals(1, fleet1.getPlayer().playerNo());
+        assertEquals(3, fleet1.getStarbases().size());
+        assertEquals(3, fleet1.getStarships().size());
+        Starbase base = fleet1.getStarbaseAt(0).orElseThrow();
+        assertEquals(2, base.getDockedStarships().size());
+        Starship docked = fleet1.getStarshipAt(0).orElseThrow();
+        assertTrue(docked.getDocked());
+        assertSame(fleet1, docked.getFleet());
+        assertFalse(fleet1.getStarshipAt(2).orElseThrow().getDocked());
+        assertEquals(new Sector(4, 4), fleet1.getStarbaseAt(2).orElseThrow().getSector());
+        assertEquals(2, fleet1.getStats().getDockedStarships());
+
+        Fleet fleet2 = fleets.get(1);
+        assertEquals(1, fleet2.getStarbases().size());
+        assertTrue(fleet2.getStarshipAt(0).orElseThrow().getDocked());
+        assertSame(base.getStore(), fleet2.getStarshipAt(0).orElseThrow().getStore(), "One store for the world");
+    }
+
+
+    @Test
+    @DisplayName("A binary scenario loads the same world as the equivalent text")
+    void binary() throws IOException
+    {
+        Path text = dir.resolve("world.txt");
+        Files.writeString(text, """
+                fleet 1
+                starbase 2 3
+                starship 2 3 5 dock 0
+                starship 9 9 10
+                fleet 2
+                starship 9 9 4
+                """);
+        Path binary = dir.resolve("world.scn");
+        try (Scenario.Writer writer = Scenario.write(binary))
+        {
+            writer.fleet(1).starbases(2, 3, 1).starships(2, 3, 5, 0).starships(9, 9, 10, -1);
+            writer.fleet(2).starships(9, 9, 4, -1);
+        }
+
+        List<Fleet> fromText = Scenario.load(text);
+        List<Fleet> fromBinary = Scenario.load(binary);
+        assertEquals(fromText.size(), fromBinary.size());
+        for (int f = 0; f < fromText.size(); f++)
+        {
+            Fleet expected = fromText.get(f);
+            Fleet actual = fromBinary.get(f);
+            assertEquals(expected.getPlayer().playerNo(), actual.getPlayer().playerNo());
+            assertEquals(expected.getStarbases().size(), actual.getStarbases().size());
+            assertEquals(expected.getStarships().size(), actual.getStarships().size());
+            for (int i = 0; i < expected.getStarships().size(); i++)
+            {
+                Starship a = expected.getStarships().get(i);
+                Starship b = actual.getStarships().get(i);
+                assertEquals(a.getSector(), b.getSector());
+                assertEquals(a.getDocked(), b.getDocked());
+            }
+        }
+        assertEquals(5, fromBinary.getFirst().getStarbaseAt(0).orElseThrow().getDockedStarships().size());
+    }
+
+
+    @Test
+    @DisplayName("A scenario larger than the read buffer is loaded in full")
+    void large() throws IOException
+    {
+        Path file = dir.resolve("large.txt");
+        StringBuilder text = new StringBuilder("fleet 1\n");
+        for (int i = 0; i < 20_000; i++)
+        {
+            text.append("starship ").append(i % 100).append(' ').append(i / 100).append("   # ship ").append(i)
+                    .append('\n');
+        }
+        Files.writeString(file, text);
+        assertTrue(Files.size(file) > 1 << 16);
+
+        Fleet fleet = Scenario.load(file).getFirst();
+        assertEquals(20_000, fleet.getStarships().size());
+        assertEquals(new Sector(99, 199), fleet.getStarshipAt(19_999).orElseThrow().getSector());
+    }
+
+
+    @Test
+    @DisplayName("Invalid scenarios are rejected with the line at fault")
+    void invalid() throws IOException
+    {
+        assertRejected("starship 0 0\n", "line 1: Entities must follow a fleet");
+        assertRejected("fleet 1\n\nstarship 0 0 dock 0\n", "line 3: ");
+        assertRejected("fleet 1\nstarship 0 x\n", "line 2: Expected a number");
+        assertRejected("fleet 1\nstarbase 0 0 1 2\n", "line 2: Unexpected text");
+        assertRejected("fleet 1\nbattleship 0 0\n", "line 2: Unknown directive battleship");
+        assertRejected("fleet 1\nentities 5\n", "line 2: entities must come before any fleet");
+
+        Path binary = dir.resolve("truncated.scn");
+        try (Scenario.Writer writer = Scenario.write(binary))
+        {
+            writer.fleet(1).starships(0, 0, 3, -1);
+        }
+        byte[] bytes = Files.readAllBytes(binary);
+        Files.write(binary, Arrays.copyOf(bytes, bytes.length - 2));
+        IOException e = assertThrows(IOException.class, () -> Scenario.load(binary));
+        assertTrue(e.getMessage().contains("Truncated record"), e.getMessage());
+    }
+
+
+    private void assertRejected(String text, String message) throws IOException
+    {
+        Path file = dir.resolve("invalid.txt");
+        Files.writeString(file, text);
+        IOException e = assertThrows(IOException.class, () -> Scenario.load(file));
+        assertTrue(e.getMessage().contains(message), e.getMessage());
+    }
+}
@@ -0,0 +1,116 @@
+package org.tom.entities;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SectorIndex Tests")
+class SectorIndexTest
+{
+    private SectorIndex index;
+    private Fleet fleet1;
+    private Fleet fleet2;
+    private static final Sector origin = new Sector(0, 0);
+
+
+    /**
+     * Creates two fleets tracked by a fresh index
+     */
+    @BeforeEach
+    void setIndex()
+    {
+        index = new SectorIndex();
+        fleet1 = new Fleet(new Player(1));
+        fleet2 = new Fleet(new Player(2));
+        index.track(fleet1);
+        index.track(fleet2);
+    }
+
+
+    @Test
+    @DisplayName("Hostile lookup excludes own fleet and destroyed entities")
+    void hostilesIn()
+    {
+        Starship own = new Starship(origin);
+        Starship enemy = new Starship(origin);
+        Starship deadEnemy = new Starship(origin);
+        Starbase enemyBase = new Starbase(origin);
+        fleet1.addEntities(own);
+        fleet2.addEntities(enemy, deadEnemy, enemyBase);
+
+        deadEnemy.takeDamage(1000);
+
+        List<Entity> hostiles = index.hostilesIn(origin, fleet1);
+        assertEquals(2, hostiles.size(), "Only the live enemy ship and base are hostile");
+        assertTrue(hostiles.contains(enemy));
+        assertTrue(hostiles.contains(enemyBase));
+        assertTrue(index.hostilesIn(new Sector(5, 5), fleet1).isEmpty(), "Empty sectors have no hostiles");
+    }
+
+
+    @Test
+    @DisplayName("Moving a fleet updates the index incrementally")
+    void moveAllEntities()
+    {
+        Starship s1 = new Starship(origin);
+        Starship s2 = new Starship(origin);
+        fleet1.addEntities(s1, s2);
+
+        Sector destination = new Sector(3, 4);
+        fleet1.moveAllEntities(destination);
+
+        assertTrue(index.entitiesIn(origin).isEmpty(), "Origin should be empty after the move");
+        assertEquals(2, index.entitiesIn(destination).size(), "Both ships should be in the destination");
+        assertEquals(1, index.occupiedSectorCount());
+    }
+
+
+    @Test
+    @DisplayName("Entities already in a fleet are indexed when it is tracked")
+    void track()
+    {
+        Fleet late = new Fleet(new Player(3));
+        late.addEntities(new Starship(origin), new Starbase(origin));
+
+        index.track(late);
+        assertEquals(2, index.hostilesIn(origin, fleet1).size());
+    }
+
+
+    @Test
+    @DisplayName("Radius queries use Euclidean distance in sectors")
+    void entitiesWithin()
+    {
+        Starship near = new Starship(new Sector(1, 1));
+        Starship edge = new Starship(new Sector(0, 2));
+        Starship far = new Starship(new Sector(2, 2));
+        fleet1.addEntities(near, edge, far);
+
+        List<Entity> inRange = index.entitiesWithin(origin, 2);
+        assertEquals(2, inRange.size(), "(2,2) is further than 2 sectors away");
+        assertFalse(inRange.contains(far));
+
+        // A huge radius takes the occupied-sector walk and should find everything
+        assertEquals(3, index.entitiesWithin(origin, 1_000).size());
+        assertThrows(IllegalArgumentException.class, () -> index.entitiesWithin(origin, -1));
+    }
+
+
+    @Test
+    @DisplayName("Purging drops destroyed entities and empty sectors")
+    void purgeDestroyed()
+    {
+        Starship s1 = new Starship(origin);
+        Starship s2 = new Starship(new Sector(1, 0));
+        fleet1.addEntities(s1, s2);
+        s2.takeDamage(1000);
+
+        assertEquals(1, index.purgeDestroyed());
+        assertEquals(1, index.occupiedSectorCount());
+        assertEquals(List.of(s1), index.entitiesIn(origin));
+    }
+}
@@ -0,0 +1,161 @@
+package org.tom.entities;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SectorMap Tests")
+class SectorMapTest
+{
+    private SectorMap map;
+    private Fleet fleet1;
+    private Fleet fleet2;
+
+
+    /**
+     * Creates two fleets tracked by a fresh 1000 x 1000 map
+     */
+    @BeforeEach
+    void setMap()
+    {
+        map = new SectorMap(1000, 1000);
+        fleet1 = new Fleet(new Player(1));
+        fleet2 = new Fleet(new Player(2));
+        map.track(fleet1);
+        map.track(fleet2);
+    }
+
+
+    @Test
+    @DisplayName("Occupancy is counted per sector and per fleet as entities join and move")
+    void occupancy()
+    {
+        Starship a = new Starship(new Sector(10, 10));
+        Starship b = new Starship(new Sector(10, 10));
+        Starbase base = new Starbase(new Sector(10, 10));
+        fleet1.addEntities(a, b);
+        fleet2.addEntities(base);
+
+        assertEquals(3, map.occupancy(new Sector(10, 10)));
+        assertEquals(2, map.occupancy(new Sector(10, 10), fleet1));
+        assertEquals(1, map.occupancy(new Sector(10, 10), fleet2));
+
+        a.setSector(new Sector(11, 10));                // Same chunk
+        b.setSector(new Sector(500, 500));              // Another chunk
+        assertEquals(1, map.occupancy(new Sector(10, 10)));
+        assertEquals(1, map.occupancy(new Sector(11, 10), fleet1));
+        assertEquals(1, map.occupancy(new Sector(500, 500), fleet1));
+        assertEquals(0, map.occupancy(new Sector(500, 500), fleet2));
+        assertEquals(2, map.occupancy(fleet1));
+        assertEquals(3, map.size());
+    }
+
+
+    @Test
+    @DisplayName("Starships cannot move or be added off the map")
+    void bounds()
+    {
+        Starship ship = new Starship(new Sector(0, 0));
+        fleet1.addEntities(ship);
+
+        ship.setSector(new Sector(-1, 0));
+        assertEquals(new Sector(0, 0), ship.getSector(), "The move off the map should be refused");
+        ship.setSector(new Sector(999, 999));
+        assertEquals(1, map.occupancy(new Sector(999, 999)));
+
+        Starship outside = new Starship(new Sector(1000, 5));
+        assertThrows(IllegalArgumentException.class, () -> fleet2.addEntities(outside));
+        assertNull(outside.getFleet(), "Nothing is added when an entity is off the map");
+    }
+
+
+    @Test
+    @DisplayName("Range queries match a scan of every entity")
+    void within()
+    {
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 2000; i++)
+        {
+            Fleet fleet = i % 2 == 0 ? fleet1 : fleet2;
+            fleet.addEntities(new Starship(new Sector(random.nextInt(1000), random.nextInt(1000))));
+        }
+        fleet2.getStarships().getFirst().takeDamage(1000);
+
+        for (int radius : new int[]{0, 5, 70, 300})
+        {
+            Sector centre = new Sector(random.nextInt(1000), random.nextInt(1000));
+            long expected = 0, hostile = 0;
+            for (Fleet fleet : List.of(fleet1, fleet2))
+            {
+                for (Starship s : fleet.getStarships())
+                {
+                    long dx = s.getSector().x() - centre.x(), dy = s.getSector().y() - centre.y();
+                    if (s.isDestroyed() || dx * dx + dy * dy > (long) radius * radius) continue;
+                    expected++;
+                    if (fleet == fleet2) hostile++;
+                }
+            }
+            assertEquals(expected, map.entitiesWithin(centre, radius).size(), "Entities within " + radius);
+            assertEquals(hostile, map.hostilesWithin(centre, radius, fleet1).size(), "Hostiles within " + radius);
+        }
+        assertThrows(IllegalArgumentException.class, () -> map.entitiesWithin(new Sector(0, 0), -1));
+    }
+
+
+    @Test
+    @DisplayName("The nearest hostile is found across chunks, skipping own and destroyed entities")
+    void nearestHostile()
+    {
+        Sector origin = new Sector(100, 100);
+        Starship own = new Starship(origin);
+        Starship dead = new Starship(new Sector(101, 100));
+        Starship far = new Starship(new Sector(900, 900));
+        Starship near = new Starship(new Sector(100, 230));     // Two chunks away
+        fleet1.addEntities(own);
+        fleet2.addEntities(dead, far, near);
+        dead.takeDamage(1000);
+
+        assertSame(near, map.nearestHostile(origin, fleet1).orElseThrow());
+        assertSame(own, map.nearestHostile(new Sector(999, 999), fleet2).orElseThrow());
+
+        near.takeDamage(1000);
+        far.takeDamage(1000);
+        assertTrue(map.nearestHostile(origin, fleet1).isEmpty(), "Only destroyed hostiles are left");
+        assertEquals(3, map.purgeDestroyed());
+        assertEquals(1, map.size());
+    }
+
+
+    @Test
+    @DisplayName("Fleets follow their routes a few sectors per turn")
+    void route()
+    {
+        Starship s1 = new Starship(new Sector(0, 0));
+        Starship s2 = new Starship(new Sector(0, 4));
+        fleet1.addEntities(s1, s2);
+        map.setRoute(fleet1, List.of(new Sector(6, 2), new Sector(6, 100)));
+
+        assertEquals(2, map.advance(3));
+        assertEquals(new Sector(3, 2), s1.getSector(), "Diagonal steps until level with the waypoint");
+        assertEquals(new Sector(3, 2), s2.getSector());
+        assertEquals(2, map.getRoute(fleet1).size());
+
+        map.advance(3);
+        assertEquals(new Sector(6, 2), s1.getSector());
+        assertEquals(List.of(new Sector(6, 100)), map.getRoute(fleet1), "The first waypoint has been reached");
+
+        for (int turn = 0; turn < 40; turn++)
+        {
+            map.advance(3);
+        }
+        assertEquals(new Sector(6, 100), s2.getSector());
+        assertEquals(2, map.occupancy(new Sector(6, 100), fleet1));
+        assertTrue(map.getRoute(fleet1).isEmpty(), "The route is dropped once finished");
+        assertEquals(0, map.advance(3));
+    }
+}
@@ -0,0 +1,110 @@
+package org.tom.entities;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SkirmishArena Tests")
+class SkirmishArenaTest
+{
+    public static final double delta = 1e-9;
+
+    private SkirmishArena arena;
+
+
+    @BeforeEach
+    void setArena()
+    {
+        arena = new SkirmishArena(16);
+    }
+
+
+    /**
+     * Plays a skirmish: two fleets of a starbase and three starships, one ship docked and repairing, until the
+     * second fleet's starbase is destroyed
+     */
+    private void playSkirmish()
+    {
+        Fleet attackers = arena.fleet(1);
+        Fleet defenders = arena.fleet(2);
+        Starbase base = arena.starbase(new Sector(0, 0));
+        defenders.addEntities(base);
+        attackers.addEntities(arena.starbase(new Sector(1, 1)));
+        for (int i = 0; i < 3; i++)
+        {
+            attackers.addEntities(arena.starship(new Sector(0, 0)));
+            defenders.addEntities(arena.starship(new Sector(0, 0)));
+        }
+
+        Starship docked = defenders.getStarships().getFirst();
+        docked.takeDamage(40);
+        docked.dockToStarbase(base);
+        docked.repair();
+        while (!defenders.getStats().allStarbasesDestroyed())
+        {
+            attackers.attackWithAll(base);
+        }
+    }
+
+
+    @Test
+    @DisplayName("Entities are reused after a reset, in the state of new ones")
+    void reuse()
+    {
+        playSkirmish();
+        Starbase base = arena.fleet(2).getStarbases().getFirst();
+        Starship docked = arena.fleet(2).getStarships().getFirst();
+        assertTrue(base.isDestroyed());
+        assertTrue(docked.getDocked());
+
+        arena.reset();
+        assertEquals(0, arena.getInUse());
+        assertTrue(arena.fleet(2).getStarships().isEmpty(), "Fleets should be emptied");
+        assertEquals(0, arena.fleet(2).getStats().getStarships(), "Fleet totals should be cleared");
+
+        Starbase reusedBase = arena.starbase(new Sector(4, 5));
+        assertSame(base, reusedBase, "The first pooled starbase should be handed out again");
+        assertFalse(reusedBase.isDestroyed());
+        assertEquals(500, reusedBase.getHealth(), delta);
+        assertEquals(new Sector(4, 5), reusedBase.getSector());
+        assertNull(reusedBase.getFleet());
+        assertTrue(reusedBase.getDockedStarships().isEmpty(), "Docked ships should be cleared");
+        assertEquals(20, reusedBase.getDefenceStrength(), delta, "No docked support should be cached");
+
+        arena.starbase(new Sector(0, 0));
+        arena.starship(new Sector(0, 0));     // The ships are handed out in the order they were first created
+        Starship reusedShip = arena.starship(new Sector(0, 0));
+        assertSame(docked, reusedShip);
+        assertFalse(reusedShip.getDocked());
+        assertFalse(reusedShip.isRepairing());
+        assertEquals(100, reusedShip.getHealth(), delta);
+        assertEquals(10, reusedShip.getCrew());
+
+        reusedShip.dockToStarbase(reusedBase);
+        assertEquals(1, reusedBase.getDockedStarships().size(), "A reused ship should dock again");
+    }
+
+
+    @Test
+    @DisplayName("IDs are scoped to the arena and the pool stops growing")
+    void ids()
+    {
+        long globalNext = Entity.peekNextId();
+        playSkirmish();
+        assertEquals(1, arena.fleet(2).getStarbases().getFirst().getId(), "IDs should start at 1 in each arena");
+        assertEquals(8, arena.getPooled());
+
+        for (int i = 0; i < 10; i++)
+        {
+            arena.reset();
+            playSkirmish();
+        }
+        assertEquals(8, arena.getPooled(), "Repeated skirmishes of the same size should not create entities");
+        assertEquals(8, arena.getStore().size(), "No new store slots should be allocated");
+        assertEquals(globalNext, Entity.peekNextId(), "The global ID counter should not move");
+        FleetStatsTest.assertMatches(arena.fleet(1));
+        FleetStatsTest.assertMatches(arena.fleet(2));
+    }
+}
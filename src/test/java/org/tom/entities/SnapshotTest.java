@@ -0,0 +1,105 @@
+package org.tom.entities;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Snapshot Tests")
+class SnapshotTest
+{
+    @TempDir
+    Path dir;
+
+
+    /**
+     * Builds two fleets with damaged, docked, repairing and destroyed entities in a few sectors, the second fleet
+     * concurrent
+     */
+    private static List<Fleet> buildWorld()
+    {
+        List<Fleet> fleets = TestWorlds.battle(new EntityStore(256), 7, 2, 50, 3, true);
+        for (Fleet fleet : fleets)
+        {
+            fleet.getStarshipAt(49).orElseThrow().setHealth(0);     // One wreck per fleet
+            fleet.getStarbaseAt(0).orElseThrow().takeDamage(100);
+        }
+        return fleets;
+    }
+
+
+    @Test
+    @DisplayName("A restored world matches the saved one exactly")
+    void roundTrip() throws IOException
+    {
+        List<Fleet> saved = buildWorld();
+        Path file = dir.resolve("world.snap");
+        long size = Snapshot.write(file, saved);
+        assertEquals(Files.size(file), size);
+
+        List<Fleet> restored = Snapshot.read(file);
+        assertEquals(saved.size(), restored.size());
+
+        for (int f = 0; f < saved.size(); f++)
+        {
+            Fleet a = saved.get(f);
+            Fleet b = restored.get(f);
+            assertEquals(a.toString(), b.toString());
+            assertEquals(a.isConcurrent(), b.isConcurrent());
+
+            List<Entity> expected = new ArrayList<>(a.getStarbases());
+            expected.addAll(a.getStarships());
+            List<Entity> actual = new ArrayList<>(b.getStarbases());
+            actual.addAll(b.getStarships());
+            assertEquals(expected.size(), actual.size());
+
+            for (int i = 0; i < expected.size(); i++)
+            {
+                Entity e = expected.get(i);
+                Entity r = actual.get(i);
+                assertEquals(e.toString(), r.toString(), "IDs and fleets should be restored");
+                assertEquals(e.getSector(), r.getSector());
+                assertEquals(Double.doubleToLongBits(e.getHealth()), Double.doubleToLongBits(r.getHealth()));
+                assertEquals(Double.doubleToLongBits(e.getDefenceStrength()), Double.doubleToLongBits(r.getDefenceStrength()));
+                assertEquals(e.store.flags[e.slot], r.store.flags[r.slot], "Docked, repairing and destroyed flags should be restored");
+                assertEquals(e.store.crew[e.slot], r.store.crew[r.slot]);
+            }
+
+            Starbase savedBase = a.getStarbaseAt(0).orElseThrow();
+            Starbase restoredBase = b.getStarbaseAt(0).orElseThrow();
+            assertEquals(savedBase.getDockedStarships().toString(), restoredBase.getDockedStarships().toString(),
+                    "Docked ships should be restored in order");
+        }
+    }
+
+
+    @Test
+    @DisplayName("Entities created after a restore do not reuse saved IDs")
+    void nextId() throws IOException
+    {
+        Path file = dir.resolve("ids.snap");
+        List<Fleet> saved = buildWorld();
+        Snapshot.write(file, saved);
+        long savedNext = Entity.peekNextId();
+
+        Snapshot.read(file);
+        assertTrue(new Starship(new Sector(0, 0)).getId() >= savedNext);
+    }
+
+
+    @Test
+    @DisplayName("Reading a file that is not a snapshot fails")
+    void notASnapshot() throws IOException
+    {
+        Path file = dir.resolve("junk.snap");
+        Files.write(file, new byte[64]);
+        assertThrows(IOException.class, () -> Snapshot.read(file));
+    }
+}
@@ -102,6 +102,33 @@ class StarbaseTest
     }
 
 
+    @Test
+    @DisplayName("Cached defence strength follows changes to docked ships")
+    void cachedDefenceStrength()
+    {
+        for (Starship s : starships)
+        {
+            s.dockToStarbase(starbase);
+        }
+        assertEquals(24.5, starbase.getDefenceStrength(), delta);
+
+        // Damage a docked ship: its defence drops to 10 * (50 + 10) / 110
+        starships.get(0).setHealth(50);
+        assertEquals(starbase.calculateDockedSupport() + 20, starbase.getDefenceStrength(), delta,
+                "Damage to a docked ship should invalidate the cache");
+
+        // Destroy it: it no longer counts, but still occupies a docking slot
+        starships.get(0).takeDamage(1000);
+        assertEquals(20 + 20.0 * (3.0 / 20), starbase.getDefenceStrength(), delta,
+                "A destroyed docked ship should stop adding defence");
+
+        // Undock another: two ships left in the list, one live
+        starships.get(1).undockFromStarbase(starbase);
+        assertEquals(20 + 10.0 * (2.0 / 20), starbase.getDefenceStrength(), delta,
+                "Undocking should invalidate the cache");
+    }
+
+
     @Test
     @DisplayName("Test docking in-fleet, out-fleet and destroyed ships")
     void dockStarship()
@@ -149,4 +176,26 @@ class StarbaseTest
         notDocked.setFleet(fleet);
         assertFalse(starbase.undockStarship(notDocked), "Cannot undock a ship that is not docked");
     }
-}
\ No newline at end of file
+
+
+    @Test
+    @DisplayName("Undocking from the middle keeps every other ship docked and findable")
+    void undockFromMiddle()
+    {
+        for (Starship s : starships)
+        {
+            s.dockToStarbase(starbase);
+        }
+
+        assertTrue(starbase.undockStarship(starships.get(1)), "Undocking the middle ship should succeed");
+        assertFalse(starbase.getDockedStarships().contains(starships.get(1)), "The undocked ship should be gone");
+        for (Starship s : List.of(starships.get(0), starships.get(2)))
+        {
+            assertTrue(starbase.getDockedStarships().contains(s), s + " should still be docked");
+            assertTrue(starbase.undockStarship(s), s + " should undock after the list was rearranged");
+        }
+        assertTrue(starbase.getDockedStarships().isEmpty(), "No ships should remain docked");
+        assertTrue(fleet.contains(starbase), "The starbase belongs to its fleet");
+        assertFalse(fleet.contains(new Starship(sector)), "A ship never added does not belong to the fleet");
+    }
+}
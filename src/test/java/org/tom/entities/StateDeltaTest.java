@@ -0,0 +1,131 @@
+package org.tom.entities;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("StateDelta Tests")
+class StateDeltaTest
+{
+    public static final double delta = 1e-9;
+
+    private EntityStore store;
+    private StateDelta tracker;
+    private Fleet fleet;
+    private Starbase base;
+    private Starship ship;
+    private Starship idle;
+
+
+    /**
+     * Builds a fleet of a starbase and two starships with tracking on, and exports the joins
+     */
+    @BeforeEach
+    void setWorld()
+    {
+        store = new EntityStore(8);
+        tracker = StateDelta.track(store);
+        fleet = new Fleet(new Player(3));
+        base = new Starbase(new Sector(0, 0), store);
+        ship = new Starship(new Sector(0, 0), store);
+        idle = new Starship(new Sector(0, 0), store);
+        fleet.addEntities(base, ship, idle);
+    }
+
+
+    @Test
+    @DisplayName("Entities joining a fleet are sent in full")
+    void joined()
+    {
+        List<StateDelta.Change> changes = StateDelta.read(ByteBuffer.wrap(tracker.write()));
+
+        assertEquals(3, changes.size());
+        StateDelta.Change first = changes.getFirst();
+        assertEquals(base.getId(), first.id());
+        assertTrue(first.has(StateDelta.JOINED), "A new entity should be marked as joined");
+        assertEquals(3, first.player());
+        assertEquals(0, first.kind(), "The first entity is a starbase");
+        assertEquals(500, first.health(), delta);
+        assertEquals(1, changes.get(1).kind(), "The second entity is a starship");
+        assertEquals(0, tracker.size(), "Writing clears the changes");
+    }
+
+
+    @Test
+    @DisplayName("Only changed entities and fields are sent")
+    void changedFields()
+    {
+        tracker.write();
+
+        ship.setSector(new Sector(4, 5));
+        ship.setHealth(40);
+        ship.setSector(new Sector(6, 7));
+        idle.dockToStarbase(base);
+
+        List<StateDelta.Change> changes = StateDelta.read(ByteBuffer.wrap(tracker.write()));
+        assertEquals(2, changes.size(), "The starbase's own fields did not change");
+
+        StateDelta.Change moved = changes.getFirst();
+        assertEquals(ship.getId(), moved.id());
+        assertEquals(StateDelta.SECTOR_CHANGED | StateDelta.HEALTH_CHANGED, moved.mask());
+        assertEquals(6, moved.x(), "The latest sector is sent");
+        assertEquals(7, moved.y());
+        assertEquals(40, moved.health(), delta);
+
+        StateDelta.Change docked = changes.get(1);
+        assertEquals(StateDelta.DOCKED_CHANGED, docked.mask());
+        assertEquals(EntityStore.DOCKED, docked.flags());
+
+        assertEquals(4, tracker.write().length, "An empty delta is just the count");
+    }
+
+
+    @Test
+    @DisplayName("Damage, crew loss and destruction are tracked")
+    void combat()
+    {
+        Fleet enemies = new Fleet(new Player(4));
+        Starship attacker = new Starship(new Sector(0, 0), store);
+        enemies.addEntities(attacker);
+        tracker.write();
+
+        ship.setHealth(5);
+        tracker.write();
+        attacker.attack(ship);
+
+        List<StateDelta.Change> changes = StateDelta.read(ByteBuffer.wrap(tracker.write()));
+        assertEquals(1, changes.size(), "Only the target changed");
+        StateDelta.Change hit = changes.getFirst();
+        assertTrue(hit.has(StateDelta.HEALTH_CHANGED) && hit.has(StateDelta.CREW_CHANGED) && hit.has(StateDelta.DESTROYED_CHANGED));
+        assertEquals(0, hit.health(), delta);
+        assertEquals(EntityStore.DESTROYED, hit.flags());
+    }
+
+
+    @Test
+    @DisplayName("A delta that does not fit is neither written nor cleared")
+    void overflow()
+    {
+        int size = tracker.encodedSize();
+        assertThrows(BufferOverflowException.class, () -> tracker.write(ByteBuffer.allocate(size - 1)));
+        assertEquals(3, tracker.size(), "The changes should be kept");
+        assertEquals(size, tracker.write(ByteBuffer.allocate(size)));
+    }
+
+
+    @Test
+    @DisplayName("Stores without tracking record nothing")
+    void untracked()
+    {
+        store.stopTracking();
+        ship.setHealth(10);
+        assertNull(store.getDelta());
+        assertEquals(3, tracker.size(), "Only the joins from before tracking stopped are held");
+    }
+}
@@ -0,0 +1,111 @@
+package org.tom.entities;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("StateHash Tests")
+class StateHashTest
+{
+    @TempDir
+    Path dir;
+
+
+    @Test
+    @DisplayName("The incremental hash always equals a hash of the whole world")
+    void incremental()
+    {
+        EntityStore store = new EntityStore(64);
+        List<Fleet> fleets = TestWorlds.twoFleets(store, 1, 20, false);
+        StateHash stateHash = StateHash.track(store, fleets);
+        assertEquals(StateHash.of(fleets), stateHash.hash());
+
+        SplittableRandom random = new SplittableRandom(11);
+        long previous = stateHash.hash();
+        for (int round = 0; round < 20; round++)
+        {
+            Fleet fleet = fleets.get(round % 2);
+            Fleet enemy = fleets.get(1 - round % 2);
+            Starbase base = fleet.getStarbaseAt(0).orElseThrow();
+            for (Starship ship : fleet.getStarships())
+            {
+                switch (random.nextInt(5))
+                {
+                    case 0 -> ship.setSector(new Sector(random.nextInt(2), 0));
+                    case 1 -> ship.dockToStarbase(base);
+                    case 2 -> ship.undockFromStarbase(base);
+                    case 3 -> ship.repair();
+                    default -> ship.attack(enemy.getStarships().get(random.nextInt(enemy.getStarships().size())));
+                }
+            }
+            if (round == 10) fleet.purgeDestroyed();
+
+            long hash = stateHash.hash();
+            assertEquals(StateHash.of(fleets), hash, "Round " + round);
+            assertNotEquals(previous, hash, "Every round changes something");
+            previous = hash;
+        }
+    }
+
+
+    @Test
+    @DisplayName("The hash depends on the state, not on the order of entities or changes")
+    void orderIndependent() throws IOException
+    {
+        List<Fleet> world = TestWorlds.twoFleets(new EntityStore(64), 1, 20, false);
+        Path file = dir.resolve("world.snap");
+        Snapshot.write(file, world);
+        List<Fleet> copy1 = Snapshot.read(file);
+        List<Fleet> copy2 = Snapshot.read(file);
+        StateHash hash1 = StateHash.track(copy1.getFirst().getStarships().getFirst().getStore(), copy1);
+        StateHash hash2 = StateHash.track(copy2.getFirst().getStarships().getFirst().getStore(), copy2);
+        assertEquals(StateHash.of(world), hash1.hash());
+        assertEquals(StateHash.of(List.of(world.get(1), world.get(0))), StateHash.of(world));
+
+        List<Starship> ships1 = copy1.getFirst().getStarships();
+        List<Starship> ships2 = copy2.getFirst().getStarships();
+        for (int i = 0; i < ships1.size(); i++)
+        {
+            ships1.get(i).setSector(new Sector(i, 1));
+        }
+        for (int i = ships2.size() - 1; i >= 0; i--)
+        {
+            ships2.get(i).setSector(new Sector(i, 1));
+        }
+        assertEquals(hash1.hash(), hash2.hash());
+
+        // A change and its reversal leave the hash as it was; any single field changes it
+        long before = hash1.hash();
+        Starship ship = ships1.getFirst();
+        ship.setSector(new Sector(5, 5));
+        assertNotEquals(before, hash1.hash());
+        ship.setSector(new Sector(0, 1));
+        assertEquals(before, hash1.hash());
+        ship.setCrew(ship.getCrew() - 1);
+        assertNotEquals(before, hash1.hash());
+    }
+
+
+    @Test
+    @DisplayName("Changes to a concurrent store are hashed too")
+    void concurrent()
+    {
+        EntityStore store = new EntityStore(64, true);
+        List<Fleet> fleets = TestWorlds.twoFleets(store, 1, 20, false);
+        StateHash stateHash = StateHash.track(store, fleets);
+        for (Starship ship : fleets.getFirst().getStarships())
+        {
+            fleets.get(1).attackWithAll(ship);
+        }
+        assertEquals(StateHash.of(fleets), stateHash.hash());
+        store.stopHashing();
+        assertNull(store.getStateHash());
+    }
+}
@@ -0,0 +1,84 @@
+package org.tom.entities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Builds the worlds shared by the tests of fleets, snapshots, journals, state hashing and the turn simulator
+ */
+public final class TestWorlds
+{
+    private TestWorlds()
+    {}
+
+
+    /**
+     * Builds two fleets, for players 1 and 2, each with <code>bases</code> starbases in sector 0,0 and
+     * <code>ships</code> starships split between sectors 0,0 and 1,0
+     *
+     * @param store      the <code>EntityStore</code> for the entities
+     * @param bases      the number of starbases per fleet
+     * @param ships      the number of starships per fleet
+     * @param concurrent true to make the second fleet concurrent
+     * @return the fleets, in player order
+     */
+    public static List<Fleet> twoFleets(EntityStore store, int bases, int ships, boolean concurrent)
+    {
+        List<Fleet> fleets = new ArrayList<>();
+        for (int p = 1; p <= 2; p++)
+        {
+            Fleet fleet = new Fleet(new Player(p), concurrent && p == 2);
+            fleets.add(fleet);
+            for (int i = 0; i < bases; i++)
+            {
+                fleet.addEntities(new Starbase(new Sector(0, 0), store));
+            }
+            for (int i = 0; i < ships; i++)
+            {
+                fleet.addEntities(new Starship(new Sector(i % 2, 0), store));
+            }
+        }
+        return fleets;
+    }
+
+
+    /**
+     * Builds fleets spread at random over a square map from a seed, so the same seed always gives the same world.
+     * Each fleet has a starbase and damaged starships; about a quarter of the ships are docked to their base,
+     * often from another sector, and half of those are repairing.
+     *
+     * @param store      the <code>EntityStore</code> for the entities
+     * @param seed       the seed for positions, damage and docking
+     * @param players    the number of fleets, for players 1 up
+     * @param ships      the number of starships per fleet
+     * @param size       the width and height of the map in sectors
+     * @param concurrent true to make the fleets of even-numbered players concurrent
+     * @return the fleets, in player order
+     */
+    public static List<Fleet> battle(EntityStore store, long seed, int players, int ships, int size, boolean concurrent)
+    {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Fleet> fleets = new ArrayList<>();
+        for (int p = 1; p <= players; p++)
+        {
+            Fleet fleet = new Fleet(new Player(p), concurrent && p % 2 == 0);
+            fleets.add(fleet);
+
+            Starbase base = new Starbase(new Sector(random.nextInt(size), random.nextInt(size)), store);
+            fleet.addEntities(base);
+            for (int i = 0; i < ships; i++)
+            {
+                Starship ship = new Starship(new Sector(random.nextInt(size), random.nextInt(size)), store);
+                fleet.addEntities(ship);
+                ship.takeDamage(random.nextDouble(0, 80));
+                if (random.nextInt(4) == 0)
+                {
+                    ship.dockToStarbase(base);
+                    if (random.nextBoolean()) ship.repair();
+                }
+            }
+        }
+        return fleets;
+    }
+}
@@ -0,0 +1,218 @@
+package org.tom.entities;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("WorldPublisher Tests")
+class WorldPublisherTest
+{
+    public static final double delta = 1e-9;
+
+    private EntityStore store;
+    private Fleet first;
+    private Fleet second;
+    private Starbase base;
+    private Starship ship;
+    private WorldPublisher publisher;
+
+
+    /**
+     * Builds two fleets, one with a starbase and two starships and one with a single starship, and starts
+     * publishing
+     */
+    @BeforeEach
+    void setWorld()
+    {
+        store = new EntityStore(8);
+        first = new Fleet(new Player(1));
+        second = new Fleet(new Player(2));
+        base = new Starbase(new Sector(0, 0), store);
+        ship = new Starship(new Sector(0, 0), store);
+        first.addEntities(base, ship, new Starship(new Sector(1, 1), store));
+        second.addEntities(new Starship(new Sector(2, 2), store));
+        publisher = WorldPublisher.track(store, List.of(first, second));
+    }
+
+
+    @Test
+    @DisplayName("The first view holds every fleet entity")
+    void initial()
+    {
+        WorldView view = publisher.current();
+
+        assertEquals(0, view.getVersion());
+        assertEquals(4, view.size());
+        assertEquals(List.of(1, 2), view.players().stream().sorted().toList());
+        assertEquals(3, view.fleet(1).size());
+        assertEquals(base.getId(), view.fleet(1).getFirst().id(), "Starbases come first, as they were added first");
+        assertFalse(view.fleet(1).getFirst().starship());
+        assertEquals(500, view.state(base).health(), delta);
+        assertEquals(new Sector(2, 2), view.fleet(2).getFirst().sector());
+        assertTrue(view.fleet(9).isEmpty(), "Unknown players have no entities");
+    }
+
+
+    @Test
+    @DisplayName("Published views never change")
+    void immutable()
+    {
+        WorldView before = publisher.current();
+        ship.setHealth(40);
+        ship.setSector(new Sector(4, 5));
+        ship.dockToStarbase(base);
+
+        assertSame(before, publisher.current(), "Changes are not seen until published");
+        WorldView after = publisher.publish();
+
+        assertEquals(1, after.getVersion());
+        assertSame(after, publisher.current());
+        EntityState now = after.state(ship);
+        assertEquals(40, now.health(), delta);
+        assertEquals(new Sector(4, 5), now.sector());
+        assertTrue(now.docked());
+
+        EntityState then = before.state(ship);
+        assertEquals(100, then.health(), delta, "The old view should keep the old health");
+        assertEquals(new Sector(0, 0), then.sector());
+        assertFalse(then.docked());
+        assertSame(before.state(base), after.state(base), "Unchanged entities are shared between views");
+    }
+
+
+    @Test
+    @DisplayName("Entities appear in the view once they join a fleet")
+    void joined()
+    {
+        Starship outsider = new Starship(new Sector(3, 3), store);
+        outsider.setHealth(70);
+        WorldView without = publisher.publish();
+        assertNull(without.state(outsider), "An entity outside every fleet is not in the world");
+
+        second.addEntities(outsider, new Starbase(new Sector(3, 3), store));
+        WorldView with = publisher.publish();
+
+        assertEquals(6, with.size());
+        assertEquals(3, with.fleet(2).size());
+        assertEquals(70, with.fleet(2).get(1).health(), delta);
+        assertEquals(1, without.fleet(2).size(), "The old view should keep the old fleet");
+        assertEquals(3, with.fleet(1).size());
+    }
+
+
+    @Test
+    @DisplayName("Entities removed from a fleet leave the view")
+    void removed()
+    {
+        WorldView before = publisher.current();
+        Starship other = first.getStarshipAt(1).orElseThrow();
+        assertEquals(2, first.removeAll(List.of(ship, base)));
+        WorldView after = publisher.publish();
+
+        assertEquals(2, after.size());
+        assertNull(after.state(ship));
+        assertNull(after.state(base));
+        assertEquals(1, after.fleet(1).size());
+        assertEquals(other.getId(), after.fleet(1).getFirst().id());
+        assertEquals(3, before.fleet(1).size(), "The old view should keep the removed entities");
+
+        first.removeAll(List.of(other));
+        WorldView empty = publisher.publish();
+        assertEquals(List.of(2), List.copyOf(empty.players()), "A player with no entities left is not listed");
+        assertTrue(empty.fleet(1).isEmpty());
+    }
+
+
+    @Test
+    @DisplayName("Purged entities leave the view")
+    void purged()
+    {
+        ship.setHealth(0);
+        Starship survivor = first.getStarshipAt(1).orElseThrow();
+        survivor.setHealth(30);
+        assertEquals(1, first.purgeDestroyed());
+        WorldView view = publisher.publish();
+
+        assertEquals(3, view.size());
+        assertNull(view.state(ship));
+        assertEquals(List.of(base.getId(), survivor.getId()), view.fleet(1).stream().map(EntityState::id).toList());
+        assertEquals(30, view.state(survivor).health(), delta);
+    }
+
+
+    @Test
+    @DisplayName("Persistent vectors share structure but keep every version")
+    void vector()
+    {
+        int n = 40_000;         // Past the 32, 1024 and 32768 element levels
+        PersistentVector.Transient<Integer> building = PersistentVector.<Integer>empty().asTransient();
+        for (int i = 0; i < n; i++)
+        {
+            building.append(i);
+        }
+        PersistentVector<Integer> original = building.persistent();
+        assertThrows(IllegalStateException.class, () -> building.append(0), "A spent transient cannot be used");
+
+        PersistentVector.Transient<Integer> changing = original.asTransient();
+        for (int i = 0; i < n; i += 7)
+        {
+            changing.set(i, -i);
+        }
+        changing.append(n);
+        PersistentVector<Integer> changed = changing.persistent();
+
+        assertEquals(n, original.size());
+        assertEquals(n + 1, changed.size());
+        for (int i = 0; i < n; i++)
+        {
+            assertEquals(i, original.get(i), "The original should be unchanged at " + i);
+            assertEquals(i % 7 == 0 ? -i : i, changed.get(i), "The changed vector at " + i);
+        }
+        assertEquals(n, changed.get(n));
+        assertThrows(IndexOutOfBoundsException.class, () -> original.get(n));
+    }
+
+
+    @Test
+    @DisplayName("Readers on other threads always see a whole turn")
+    void consistentReaders() throws InterruptedException
+    {
+        List<Starship> ships = first.getStarships();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        // Each turn sets every starship to the same health, so a view mixing two turns would show two values
+        Thread reader = Thread.ofPlatform().start(() ->
+        {
+            while (running.get())
+            {
+                WorldView view = publisher.current();
+                double health = view.state(ships.getFirst()).health();
+                for (Starship s : ships)
+                {
+                    if (view.state(s).health() != health) failure.set("Mixed turns in " + view);
+                }
+            }
+        });
+
+        for (int turn = 1; turn <= 20_000; turn++)
+        {
+            for (Starship s : ships)
+            {
+                s.setHealth(turn % 100 + 1);
+            }
+            publisher.publish();
+        }
+        running.set(false);
+        reader.join();
+
+        assertNull(failure.get());
+        assertEquals(20_000, publisher.current().getVersion());
+    }
+}
@@ -0,0 +1,114 @@
+package org.tom.game;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.tom.entities.*;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Flight Recorder Event Tests")
+class FlightRecorderEventsTest
+{
+    @TempDir
+    Path dir;
+
+
+    @Test
+    @DisplayName("A simulated turn records the turn, its battles, moves and destroyed entities")
+    void recorded() throws Exception
+    {
+        Sector sector = new Sector(3, 4);
+        Fleet fleet1 = new Fleet(new Player(1));
+        Fleet fleet2 = new Fleet(new Player(2));
+        fleet1.addEntities(new Starship(new Sector(0, 0)), new Starship(new Sector(0, 0)));
+        Starship victim = new Starship(sector);
+        victim.setHealth(1);
+        fleet2.addEntities(victim);
+        TurnSimulator simulator = new TurnSimulator(List.of(fleet1, fleet2));
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording())
+        {
+            for (String name : List.of("org.tom.Turn", "org.tom.SectorBattle", "org.tom.EntityDestroyed",
+                    "org.tom.FleetMove"))
+            {
+                recording.enable(name).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            fleet1.moveAllEntities(sector);
+            simulator.stepSequential();
+            recording.stop();
+
+            Path file = dir.resolve("turn.jfr");
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        }
+
+        RecordedEvent move = only(events, "org.tom.FleetMove");
+        assertEquals(1, move.getInt("fleet"));
+        assertEquals(2, move.getInt("arrived"));
+        assertEquals(4, move.getInt("y"));
+
+        RecordedEvent battle = only(events, "org.tom.SectorBattle");
+        assertEquals("1,2", battle.getString("fleets"));
+        assertEquals(3, battle.getInt("entities"));
+        assertEquals(1, battle.getInt("attacks"), "The second ship finds no live target");
+        assertEquals(1, battle.getInt("destroyed"));
+        assertEquals(1, battle.getDouble("damage"), 1e-9);
+
+        RecordedEvent destroyed = only(events, "org.tom.EntityDestroyed");
+        assertEquals(2, destroyed.getInt("fleet"));
+        assertTrue(destroyed.getBoolean("starship"));
+
+        RecordedEvent turn = only(events, "org.tom.Turn");
+        assertEquals("simulator", turn.getString("source"));
+        assertEquals(1, turn.getLong("turn"));
+        assertEquals(1, turn.getInt("destroyed"));
+        assertFalse(turn.getStartTime().isAfter(battle.getStartTime()), "The turn spans its battles");
+        assertFalse(turn.getEndTime().isBefore(battle.getEndTime()));
+    }
+
+
+    @Test
+    @DisplayName("Nothing is recorded when the events are not enabled")
+    void disabled() throws Exception
+    {
+        Fleet fleet = new Fleet(new Player(1));
+        fleet.addEntities(new Starship(new Sector(0, 0)));
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording())
+        {
+            recording.start();
+            fleet.moveAllEntities(new Sector(1, 1));
+            new TurnSimulator(List.of(fleet)).stepSequential();
+            recording.stop();
+
+            Path file = dir.resolve("empty.jfr");
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        }
+        assertTrue(events.stream().noneMatch(e -> e.getEventType().getName().startsWith("org.tom.")));
+    }
+
+
+    /**
+     * Gets the one event of a type, failing if there is not exactly one
+     */
+    private static RecordedEvent only(List<RecordedEvent> events, String name)
+    {
+        Predicate<RecordedEvent> named = e -> e.getEventType().getName().equals(name);
+        List<RecordedEvent> matching = events.stream().filter(named).toList();
+        assertEquals(1, matching.size(), "Number of " + name + " events");
+        return matching.getFirst();
+    }
+}
@@ -0,0 +1,202 @@
+package org.tom.game;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.tom.entities.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("GameServer Tests")
+class GameServerTest
+{
+    private List<Fleet> fleets;
+    private GameServer server;
+
+
+    /**
+     * A connected test client that sends one line and reads one reply at a time
+     */
+    private record Client(SocketChannel channel, BufferedReader in, Writer out) implements AutoCloseable
+    {
+        static Client connect(SocketAddress address) throws IOException
+        {
+            SocketChannel channel = SocketChannel.open(address);
+            return new Client(channel,
+                    new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.US_ASCII)),
+                    new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.US_ASCII));
+        }
+
+        String send(String line) throws IOException
+        {
+            out.write(line + "\n");
+            out.flush();
+            return in.readLine();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            channel.close();
+        }
+    }
+
+
+    /**
+     * Builds two fleets, each with a starbase and three starships in sector 0,0
+     */
+    @BeforeEach
+    void setWorld() throws IOException
+    {
+        EntityStore store = new EntityStore(16);
+        fleets = new ArrayList<>();
+        for (int p = 1; p <= 2; p++)
+        {
+            Fleet fleet = new Fleet(new Player(p));
+            fleet.addEntities(new Starbase(new Sector(0, 0), store), new Starship(new Sector(0, 0), store),
+                    new Starship(new Sector(0, 0), store), new Starship(new Sector(0, 0), store));
+            fleets.add(fleet);
+        }
+        server = GameServer.onLoopback(fleets);
+    }
+
+    @AfterEach
+    void closeServer() throws IOException
+    {
+        server.close();
+    }
+
+
+    @Test
+    @DisplayName("Commands are applied by the turn loop and acknowledged with their turn")
+    void commands() throws IOException
+    {
+        try (Client client = Client.connect(server.getAddress()))
+        {
+            assertEquals("WELCOME 1", client.send("PLAYER 1"));
+            assertEquals("OK 1", client.send("MOVE 0 5 6"));
+            assertEquals(new Sector(5, 6), fleets.getFirst().getStarships().getFirst().getSector(), "The ship should have moved");
+
+            assertTrue(client.send("ATTACK 1 2 0").startsWith("OK"), "The attack should be accepted");
+            assertTrue(fleets.get(1).getStarships().getFirst().getHealth() < 100, "The target should be damaged");
+
+            assertTrue(client.send("DOCK 2 0").startsWith("OK"), "Docking should be accepted");
+            assertTrue(fleets.getFirst().getStarships().get(2).getDocked(), "The ship should be docked");
+            assertEquals(3, server.getCommands(), "Every command should be counted");
+        }
+    }
+
+
+    @Test
+    @DisplayName("Bad handshakes and commands are answered with errors")
+    void errors() throws IOException
+    {
+        try (Client client = Client.connect(server.getAddress()))
+        {
+            assertTrue(client.send("PLAYER 9").startsWith("ERR"), "Player 9 has no fleet");
+        }
+        try (Client client = Client.connect(server.getAddress()))
+        {
+            client.send("PLAYER 2");
+            assertTrue(client.send("FLY 0").startsWith("ERR"), "Unknown command");
+            assertTrue(client.send("MOVE 0 1").startsWith("ERR"), "Missing argument");
+            assertTrue(client.send("MOVE 7 1 1").startsWith("ERR"), "No such ship");
+            assertTrue(client.send("ATTACKBASE 0 5 0").startsWith("ERR"), "No such player");
+            assertEquals(new Sector(0, 0), fleets.get(1).getStarships().getFirst().getSector(), "Nothing should have moved");
+        }
+    }
+
+
+    @Test
+    @DisplayName("Exceptions in a turn are answered with errors and the turn loop carries on")
+    void failures() throws IOException
+    {
+        Command broken = new Command(1, null, 0, 0, 0, System.nanoTime(), new CompletableFuture<>());
+        assertTrue(GameServer.apply(Map.of(1, fleets.getFirst()), broken).startsWith("failed"));
+
+        server.recordTo(new CommandLog(new Writer()
+        {
+            @Override
+            public void write(char[] buffer, int offset, int length)
+            {
+                throw new UncheckedIOException(new IOException("disk gone"));
+            }
+
+            @Override
+            public void flush()
+            {}
+
+            @Override
+            public void close()
+            {}
+        }));
+        try (Client client = Client.connect(server.getAddress()))
+        {
+            client.send("PLAYER 1");
+            assertEquals("OK 1", client.send("MOVE 0 1 1"), "A failed recording should not fail the turn");
+            assertEquals("OK 2", client.send("MOVE 0 2 2"), "The turn loop should still be running");
+        }
+    }
+
+
+    @Test
+    @DisplayName("Many concurrent clients over a Unix-domain socket are all served")
+    void manyClients(@TempDir Path dir) throws Exception
+    {
+        server.close();
+        server = new GameServer(fleets, UnixDomainSocketAddress.of(dir.resolve("game.sock")), 8, 4).start();
+
+        int clients = 200;
+        int commands = 20;
+        List<Future<Integer>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor())
+        {
+            for (int c = 0; c < clients; c++)
+            {
+                int player = c % 2 + 1;
+                results.add(executor.submit(() ->
+                {
+                    int ok = 0;
+                    try (Client client = Client.connect(server.getAddress()))
+                    {
+                        client.send("PLAYER " + player);
+                        for (int i = 0; i < commands; i++)
+                        {
+                            if (client.send("MOVE " + i % 3 + " " + i + " 0").startsWith("OK")) ok++;
+                        }
+                    }
+                    return ok;
+                }));
+            }
+        }
+
+        for (Future<Integer> result : results)
+        {
+            assertEquals(commands, result.get(), "Every command should be acknowledged");
+        }
+        assertEquals(clients * commands, server.getCommands());
+        assertTrue(server.getTurn() >= clients * commands / 4, "No turn should apply more than maxBatch commands");
+    }
+}
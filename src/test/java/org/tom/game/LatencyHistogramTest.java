@@ -0,0 +1,53 @@
+package org.tom.game;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.tom.entities.HistogramBuckets;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("LatencyHistogram Tests")
+class LatencyHistogramTest
+{
+    @Test
+    @DisplayName("Every bucket's middle value maps back to the same bucket")
+    void buckets()
+    {
+        for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1)
+        {
+            int index = HistogramBuckets.indexOf(value);
+            assertEquals(index, HistogramBuckets.indexOf(HistogramBuckets.valueOf(index)), "Bucket of " + value);
+        }
+        assertEquals(63, HistogramBuckets.indexOf(63), "Small values are exact");
+    }
+
+
+    @Test
+    @DisplayName("Percentiles are within the bucket precision of the exact values")
+    void percentiles()
+    {
+        SplittableRandom random = new SplittableRandom(7);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = (long) Math.exp(random.nextDouble(2, 20));     // From a few ns to about half a second
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double p : new double[]{0.5, 0.9, 0.99, 0.999})
+        {
+            long exact = values[(int) Math.ceil(p * values.length) - 1];
+            assertEquals(exact, histogram.percentile(p), exact * 0.04, "p" + p * 100);
+        }
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(values.length, histogram.getCount());
+
+        histogram.reset();
+        assertEquals(0, histogram.percentile(0.99), "An empty histogram reports 0");
+    }
+}
@@ -0,0 +1,106 @@
+package org.tom.game;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.tom.entities.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ReplayVerifier Tests")
+class ReplayVerifierTest
+{
+    @TempDir
+    Path dir;
+
+
+    /**
+     * Plays a few turns on a server recording to <code>commands.log</code>, from a world saved to
+     * <code>start.snap</code>
+     */
+    private void record() throws IOException
+    {
+        EntityStore store = new EntityStore(16);
+        List<Fleet> fleets = new ArrayList<>();
+        for (int p = 1; p <= 2; p++)
+        {
+            Fleet fleet = new Fleet(new Player(p));
+            fleet.addEntities(new Starbase(new Sector(0, 0), store), new Starship(new Sector(0, 0), store),
+                    new Starship(new Sector(0, 0), store));
+            fleets.add(fleet);
+        }
+        Snapshot.write(dir.resolve("start.snap"), fleets);
+
+        try (CommandLog log = CommandLog.create(dir.resolve("commands.log"));
+             GameServer server = new GameServer(fleets, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                     4096, 1024))
+        {
+            server.recordTo(log);
+            server.start();
+            try (SocketChannel channel = SocketChannel.open(server.getAddress()))
+            {
+                BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel),
+                        StandardCharsets.US_ASCII));
+                Writer out = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.US_ASCII);
+                for (String line : List.of("PLAYER 1", "ATTACK 0 2 0", "DOCK 1 0", "MOVE 0 3 3", "ATTACKBASE 1 2 0",
+                        "UNDOCK 1 0", "ATTACK 1 2 1"))
+                {
+                    out.write(line + "\n");
+                    out.flush();
+                    assertNotNull(in.readLine());
+                }
+            }
+        }
+    }
+
+
+    @Test
+    @DisplayName("A replay of a recorded game matches it turn for turn")
+    void matches() throws IOException
+    {
+        record();
+        List<String> lines = Files.readAllLines(dir.resolve("commands.log"));
+        assertEquals(6, lines.stream().filter(l -> l.startsWith("TURN")).count(), "One turn per command");
+        assertEquals("1 ATTACK 0 2 0", lines.getFirst());
+
+        assertEquals(Optional.empty(), ReplayVerifier.verify(Snapshot.read(dir.resolve("start.snap")),
+                dir.resolve("commands.log")));
+    }
+
+
+    @Test
+    @DisplayName("The first turn whose state differs is reported")
+    void diverges() throws IOException
+    {
+        record();
+        Path log = dir.resolve("commands.log");
+        List<String> lines = Files.readAllLines(log);
+        int move = lines.indexOf("1 MOVE 0 3 3");
+        lines.set(move, "1 MOVE 0 4 3");
+        Files.write(log, lines);
+
+        ReplayVerifier.Divergence divergence = ReplayVerifier.verify(Snapshot.read(dir.resolve("start.snap")), log)
+                .orElseThrow();
+        assertEquals(3, divergence.turn());
+        assertNotEquals(divergence.expected(), divergence.actual());
+
+        Files.writeString(log, "1 FLY 0\n");
+        assertThrows(IOException.class, () -> ReplayVerifier.verify(Snapshot.read(dir.resolve("start.snap")), log));
+    }
+}
@@ -0,0 +1,121 @@
+package org.tom.game;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.tom.entities.*;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("TurnScheduler Tests")
+class TurnSchedulerTest
+{
+    private Fleet attackers;
+    private Fleet defenders;
+    private Starbase base;
+
+
+    /**
+     * Builds an attacking fleet of 200 starships in sector 1,1 and a defending starbase with one docked ship in
+     * sector 0,0
+     */
+    @BeforeEach
+    void setWorld()
+    {
+        EntityStore store = new EntityStore(256);
+        attackers = new Fleet(new Player(1));
+        for (int i = 0; i < 200; i++)
+        {
+            attackers.addEntities(new Starship(new Sector(1, 1), store));
+        }
+
+        defenders = new Fleet(new Player(2));
+        base = new Starbase(new Sector(0, 0), store);
+        defenders.addEntities(base, new Starship(new Sector(0, 0), store));
+    }
+
+
+    @Test
+    @DisplayName("Movement runs before combat, and combat before repair")
+    void phaseOrder()
+    {
+        TurnScheduler scheduler = new TurnScheduler(Duration.ofSeconds(10));
+        Starship defender = defenders.getStarships().getFirst();
+        defender.setHealth(10);
+        defender.dockToStarbase(base);
+
+        // Queued in reverse phase order: the attack only lands if the move happens first
+        scheduler.queueRepair(defender);
+        scheduler.queueAttack(attackers.getStarships().getFirst(), base);
+        scheduler.queueMove(attackers, new Sector(0, 0));
+
+        assertEquals(3, scheduler.tick(), "All three orders should run");
+        assertTrue(base.getHealth() < 500, "The attack should land after the move");
+        assertEquals(25, defender.getHealth(), 1e-9, "The repair should run");
+        assertEquals(0, scheduler.remaining());
+        assertEquals(1, scheduler.getPhaseTimes(TurnScheduler.Phase.COMBAT).getCount(), "Each phase is timed once per tick");
+    }
+
+
+    @Test
+    @DisplayName("Orders beyond the budget are deferred to later ticks")
+    void budget()
+    {
+        TurnScheduler scheduler = new TurnScheduler(Duration.ZERO);
+        scheduler.queueMove(attackers, new Sector(0, 0));
+        scheduler.queueAttackWithAll(attackers, base);
+
+        assertEquals(TurnScheduler.CHECK_EVERY, scheduler.tick(), "One batch of orders should run per tick");
+        assertEquals(201 - TurnScheduler.CHECK_EVERY, scheduler.remaining());
+        assertEquals(1, scheduler.getOverruns(), "A zero budget is always overrun");
+
+        int ticks = 1;
+        while (scheduler.remaining() > 0)
+        {
+            scheduler.tick();
+            ticks++;
+        }
+        assertEquals(4, ticks, "201 orders take four ticks");
+        assertTrue(scheduler.getDeferred() > 0, "Deferred orders should be counted");
+        assertEquals(4, scheduler.getTickTimes().getCount());
+    }
+
+
+    @Test
+    @DisplayName("Started schedulers tick on their own until closed")
+    void start() throws InterruptedException
+    {
+        try (TurnScheduler scheduler = new TurnScheduler(Duration.ofMillis(5)))
+        {
+            scheduler.queueMove(attackers, new Sector(0, 0));
+            scheduler.start(Duration.ofMillis(5));
+            Thread.sleep(100);
+            assertTrue(scheduler.getTicks() > 3, "Several ticks should have run");
+            assertEquals(0, scheduler.remaining());
+        }
+        assertEquals(new Sector(0, 0), attackers.getStarships().getFirst().getSector());
+    }
+
+
+    @Test
+    @DisplayName("An order that throws is counted as a failure and the rest still run")
+    void failures() throws InterruptedException
+    {
+        try (TurnScheduler scheduler = new TurnScheduler(Duration.ofMillis(5)))
+        {
+            scheduler.queue(TurnScheduler.Phase.MOVEMENT, () -> { throw new IllegalStateException("broken order"); });
+            scheduler.queueMove(attackers, new Sector(0, 0));
+            assertEquals(2, scheduler.tick());
+            assertEquals(1, scheduler.getFailures());
+            assertEquals(new Sector(0, 0), attackers.getStarships().getFirst().getSector());
+
+            scheduler.queue(TurnScheduler.Phase.COMBAT, () -> { throw new IllegalStateException("broken order"); });
+            scheduler.start(Duration.ofMillis(5));
+            Thread.sleep(100);
+            assertTrue(scheduler.getTicks() > 3, "The scheduler should keep ticking after a failure");
+            assertEquals(2, scheduler.getFailures());
+        }
+    }
+}
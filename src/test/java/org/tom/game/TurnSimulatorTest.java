@@ -0,0 +1,196 @@
+package org.tom.game;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.tom.entities.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("TurnSimulator Tests")
+class TurnSimulatorTest
+{
+    private static ForkJoinPool pool;
+
+    @TempDir
+    Path dir;
+
+
+    /**
+     * Uses a dedicated pool so the parallel path really runs on several threads
+     */
+    @BeforeAll
+    static void setPool()
+    {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void closePool()
+    {
+        pool.shutdown();
+    }
+
+
+    /**
+     * Asserts that every entity in both worlds has the same state, comparing doubles bit-for-bit
+     */
+    private static void assertSameWorld(List<Fleet> expected, List<Fleet> actual)
+    {
+        for (int f = 0; f < expected.size(); f++)
+        {
+            List<Entity> a = new ArrayList<>(expected.get(f).getStarbases());
+            a.addAll(expected.get(f).getStarships());
+            List<Entity> b = new ArrayList<>(actual.get(f).getStarbases());
+            b.addAll(actual.get(f).getStarships());
+
+            assertEquals(a.size(), b.size());
+            for (int i = 0; i < a.size(); i++)
+            {
+                assertEquals(Double.doubleToLongBits(a.get(i).getHealth()), Double.doubleToLongBits(b.get(i).getHealth()));
+                assertEquals(Double.doubleToLongBits(a.get(i).getDefenceStrength()), Double.doubleToLongBits(b.get(i).getDefenceStrength()));
+                assertEquals(a.get(i).isDestroyed(), b.get(i).isDestroyed());
+            }
+        }
+    }
+
+
+    @Test
+    @DisplayName("Parallel turns match sequential turns bit-for-bit")
+    void step()
+    {
+        for (long seed = 0; seed < 5; seed++)
+        {
+            List<Fleet> sequentialWorld = TestWorlds.battle(new EntityStore(4096), seed, 3, 300, 4, false);
+            List<Fleet> parallelWorld = TestWorlds.battle(new EntityStore(4096), seed, 3, 300, 4, false);
+            TurnSimulator sequential = new TurnSimulator(sequentialWorld, pool);
+            TurnSimulator parallel = new TurnSimulator(parallelWorld, pool);
+
+            for (int turn = 0; turn < 6; turn++)
+            {
+                TurnResult expected = sequential.stepSequential();
+                TurnResult actual = parallel.step();
+                assertEquals(expected, actual, "Turn summaries should match");
+                assertSameWorld(sequentialWorld, parallelWorld);
+            }
+        }
+    }
+
+
+    @Test
+    @DisplayName("Parallel turns keep change trackers on a non-concurrent store consistent")
+    void stepTracked()
+    {
+        List<Fleet> sequentialWorld = TestWorlds.battle(new EntityStore(4096), 7, 3, 300, 4, false);
+        List<Fleet> parallelWorld = TestWorlds.battle(new EntityStore(4096), 7, 3, 300, 4, false);
+        EntityStore sequentialStore = sequentialWorld.getFirst().getStarshipAt(0).orElseThrow().getStore();
+        EntityStore parallelStore = parallelWorld.getFirst().getStarshipAt(0).orElseThrow().getStore();
+        StateDelta expectedDelta = StateDelta.track(sequentialStore);
+        StateDelta delta = StateDelta.track(parallelStore);
+        WorldPublisher publisher = WorldPublisher.track(parallelStore, parallelWorld);
+        StateHash.track(parallelStore, parallelWorld);
+        TurnSimulator sequential = new TurnSimulator(sequentialWorld, pool);
+        TurnSimulator parallel = new TurnSimulator(parallelWorld, pool);
+
+        for (int turn = 0; turn < 6; turn++)
+        {
+            assertEquals(sequential.stepSequential(), parallel.step());
+            assertSameWorld(sequentialWorld, parallelWorld);
+            assertEquals(expectedDelta.size(), delta.size(), "Every changed entity should be marked once");
+            expectedDelta.write();
+            delta.write();
+
+            WorldView view = publisher.publish();
+            for (Fleet fleet : parallelWorld)
+            {
+                for (Starship ship : fleet.getStarships())
+                {
+                    assertEquals(Double.doubleToLongBits(ship.getHealth()),
+                            Double.doubleToLongBits(view.state(ship).health()));
+                }
+            }
+        }
+    }
+
+
+    @Test
+    @DisplayName("The incremental state hash matches a full rehash after parallel turns")
+    void stepHashed()
+    {
+        List<Fleet> world = TestWorlds.battle(new EntityStore(4096), 11, 3, 300, 4, false);
+        EntityStore store = world.getFirst().getStarshipAt(0).orElseThrow().getStore();
+        StateHash stateHash = StateHash.track(store, world);
+        TurnSimulator simulator = new TurnSimulator(world, pool);
+
+        for (int turn = 0; turn < 6; turn++)
+        {
+            simulator.step();
+            assertEquals(StateHash.of(world), stateHash.hash(), "Turn " + turn);
+        }
+    }
+
+
+    @Test
+    @DisplayName("A journal of parallel turns replays to the same world")
+    void stepJournalled() throws IOException
+    {
+        List<Fleet> world = TestWorlds.battle(new EntityStore(4096), 13, 3, 300, 4, false);
+        EntityStore store = world.getFirst().getStarshipAt(0).orElseThrow().getStore();
+        Path start = dir.resolve("start.snap");
+        Snapshot.write(start, world);
+        EventJournal journal = new EventJournal(dir.resolve("journal"), 100);
+        store.setJournal(journal);
+        TurnSimulator simulator = new TurnSimulator(world, pool);
+
+        for (int turn = 0; turn < 6; turn++)
+        {
+            simulator.step();
+            for (Starship ship : world.get(turn % 3).getStarships())
+            {
+                if (!ship.isDestroyed()) ship.setHealth(ship.getHealth() + 1);     // Changed between turns on this thread
+            }
+        }
+        journal.close();
+
+        Path end = dir.resolve("end.snap");
+        Snapshot.write(end, world);
+        List<Fleet> replayed = JournalReplayer.replay(journal.getDirectory(), Snapshot.read(start), new EntityStore(16));
+        assertEquals(List.of(), JournalReplayer.verify(replayed, end));
+    }
+
+
+    @Test
+    @DisplayName("Undocked ships attack the first live hostile and docked ships repair")
+    void turnRules()
+    {
+        Sector sector = new Sector(0, 0);
+        Fleet fleet1 = new Fleet(new Player(1));
+        Fleet fleet2 = new Fleet(new Player(2));
+        Starship attacker = new Starship(sector);
+        Starbase enemyBase = new Starbase(sector);
+        Starship enemyShip = new Starship(sector);
+        Starship repairing = new Starship(new Sector(9, 9));    // Docked far from its base
+        fleet1.addEntities(attacker);
+        fleet2.addEntities(enemyBase, enemyShip, repairing);
+
+        repairing.setHealth(10);
+        repairing.dockToStarbase(enemyBase);
+        repairing.repair();
+
+        TurnResult result = new TurnSimulator(List.of(fleet1, fleet2), pool).step();
+
+        assertEquals(1, result.battleGroups(), "Docking should join the two sectors into one group");
+        assertEquals(2, result.attacks(), "The attacker and the undocked enemy ship should each attack once");
+        assertEquals(1, result.repairs());
+        assertTrue(enemyBase.getHealth() < 500, "Starbases come before starships in target order");
+        assertEquals(50, repairing.getHealth(), 1e-9, "The docked ship should repair from 25% to 50%");
+    }
+}